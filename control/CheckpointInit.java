@@ -0,0 +1,168 @@
+package control;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.zip.GZIPInputStream;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Fallible;
+import peersim.core.Network;
+import peersim.util.ExtendedRandom;
+import protocol.LinkableProtocol;
+import protocol.MessagesExchangerProtocol;
+import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.LocationRing;
+import structure.Message;
+
+/**
+ *  Class that implements the initializer that sets up the overlay network resuming it from a checkpoint written by the
+ *  {@code CheckpointWriter} control, as alternative to the {@code OverlayInit} initializer. So, several experiments can
+ *  be branched from the same (e.g. converged) overlay network without simulating again its warm-up. <br><br>
+ *
+ *  The resumed simulation starts from time 0 (the remaining durations of the swap leases are preserved) and without the
+ *  messages that were in-flight at the checkpoint time.
+ **/
+
+public class CheckpointInit implements peersim.core.Control
+{
+	// the configuration file's string representing the prefix of the prototype node used during the simulation
+	private final String FPeer_prefix;
+
+	// the path of the checkpoint file
+	private final String filePath;
+
+	// the PID of the used Linkable protocol
+	private final int linkablePID;
+
+	// the PID of the protocol "MessagesExchangerProtocol"
+	private final int protocolPID;
+
+	// flag that specifies if the location ring (the routing accuracy oracle) is built on the resumed overlay network
+	private final boolean locationRing;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the initializer.
+	 **/
+	public CheckpointInit(String prefix)
+	{
+		this.FPeer_prefix = Configuration.getString(prefix + ".FPeer_prefix");
+		this.filePath = Configuration.getString(prefix + ".file");
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+		this.protocolPID = Configuration.getPid(prefix + ".protocol");
+		this.locationRing = Configuration.getBoolean(prefix + ".locationRing", false);
+	}
+
+
+	/**
+	 * Reads the checkpoint file and resumes from it the overlay network and the simulation state.
+	 * @return {@code true}, if a problem occurs and the execution must be stopped; {@code false} otherwise.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		long elapsedTime = System.currentTimeMillis();
+		final long now = CommonState.getTime();
+
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(this.filePath), 1 << 16)));
+
+			// header and global state
+			if (in.readInt() != CheckpointWriter.MAGIC || in.readInt() != CheckpointWriter.VERSION)
+				throw new IOException("not a checkpoint file, or unsupported checkpoint version");
+
+			final long checkpointTime = in.readLong();
+			Message.setNextMessageID(in.readLong());
+
+			final byte[] randomBytes = new byte[in.readInt()];
+			in.readFully(randomBytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(randomBytes));
+			CommonState.r = (ExtendedRandom) ois.readObject();
+
+			LocationKeysManager.readFrom(in);
+
+			// the FPeers must be created in serial order, on an empty FPeers directory, to get the checkpoint serials
+			if (FPeerDirectory.size() != 0)
+				throw new IOException("the overlay network is not empty");
+
+			final int numFPeers = in.readInt();
+			for (int serial = 0; serial < numFPeers; serial++)
+			{
+				// a recycled serial is skipped, so the next FPeers keep their serials
+				if (!in.readBoolean())
+				{
+					FPeerDirectory.skip();
+					continue;
+				}
+
+				FPeer fpeer = new FPeer(this.FPeer_prefix, in.readUTF(), 0.0);
+				fpeer.readStateFrom(in, now);
+
+				// the FPeers that have left the overlay network keep their serials (until the HashMaps are resumed), but they are
+				// not resumed into it
+				if (fpeer.isDeparted())
+					fpeer.setFailState(Fallible.DEAD);
+				else
+					Network.add(fpeer);
+			}
+
+			// neighborhoods and HashMaps, after that all the FPeers (and their location keys) are resumed
+			for (int serial = 0; serial < numFPeers; serial++)
+			{
+				final FPeer fpeer = FPeerDirectory.get(serial);
+				if (fpeer == null)
+					continue;
+
+				((LinkableProtocol) fpeer.getProtocol(this.linkablePID)).readNeighborsFrom(in);
+				((MessagesExchangerProtocol) fpeer.getProtocol(this.protocolPID)).readStateFrom(in);
+			}
+
+			// the recycled serials, then the ones of the departed FPeers (no message is in-flight in the resumed simulation)
+			int[] freeSerials = new int[in.readInt()];
+			for (int i = 0; i < freeSerials.length; i++)
+				freeSerials[i] = in.readInt();
+			FPeerDirectory.setFreeSerials(freeSerials);
+
+			for (int serial = 0; serial < numFPeers; serial++)
+			{
+				final FPeer fpeer = FPeerDirectory.get(serial);
+				if (fpeer != null && fpeer.isDeparted())
+					FPeerDirectory.recycle(fpeer);
+			}
+
+			// if requested, build the location ring on the resumed location keys
+			if (this.locationRing)
+				LocationRing.rebuild();
+
+			elapsedTime = System.currentTimeMillis() - elapsedTime;
+			System.out.println("CHECKPOINT INITIALIZER: overlay network of " + numFPeers + " FPeers resumed from the checkpoint at time " + checkpointTime + " (" + elapsedTime + " ms) ...");
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			// if some problems occurs, stop the execution...
+			System.out.println("CHECKPOINT INITIALIZER: checkpoint reading error at path \"" + this.filePath + "\" ...\nError details: " + e.getMessage() + "\n\n*** Execution stopped ***");
+			return true;
+		}
+		finally
+		{
+			try
+			{
+				// close the checkpoint file
+				if (in != null)
+					in.close();
+			}
+			catch (IOException e) { }
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,144 @@
+package control;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import protocol.LinkableProtocol;
+import protocol.MessagesExchangerProtocol;
+import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.Message;
+
+/**
+ *  Class that implements the control that writes a checkpoint of the whole simulation state on a (compressed) binary file,
+ *  from which a simulation can be resumed with the {@code CheckpointInit} initializer. The checkpoint contains: <br>
+ *  - the simulation time, the message identifiers counter and the state of the pseudo-random generator; <br>
+ *  - the sets of the generated FPeers and contents location keys ({@code LocationKeysManager}); <br>
+ *  - for each FPeer (in serial order): identifier, location key, store, cache and swap lease (a recycled serial is written
+ *    only as free); <br>
+ *  - for each FPeer: the serials of its neighbors and the entries of its HashMap (pending messages); <br>
+ *  - the recycled serials, in order of re-assignment. <br><br>
+ *
+ *  The in-flight messages (i.e. the events of the simulator) are not part of the checkpoint: the resumed simulation starts
+ *  from time 0 without them, and their HashMap entries are removed by the usual cleanup. It should be scheduled once,
+ *  with the parameter {@code at} (e.g. after the convergence of the location keys).
+ **/
+
+public class CheckpointWriter implements peersim.core.Control
+{
+	// magic number and version of the checkpoint format
+	static final int MAGIC = 0x46504b43;
+	static final int VERSION = 4;
+
+	// the path of the checkpoint file
+	private final String filePath;
+
+	// the PID of the used Linkable protocol
+	private final int linkablePID;
+
+	// the PID of the protocol "MessagesExchangerProtocol"
+	private final int protocolPID;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public CheckpointWriter(String prefix)
+	{
+		this.filePath = Configuration.getString(prefix + ".file");
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+		this.protocolPID = Configuration.getPid(prefix + ".protocol");
+	}
+
+
+	/**
+	 * Writes the checkpoint of the simulation state on the checkpoint file.
+	 * @return {@code true}, if a problem occurs and the execution must be stopped; {@code false} otherwise.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		long elapsedTime = System.currentTimeMillis();
+		final long now = CommonState.getTime();
+		final int numFPeers = FPeerDirectory.size();
+
+		DataOutputStream out = null;
+		try
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(this.filePath), 1 << 16)));
+
+			// header and global state
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(now);
+			out.writeLong(Message.getNextMessageID());
+
+			// the pseudo-random generator is written with the Java serialization, since its seed is not otherwise accessible
+			ByteArrayOutputStream randomBytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(randomBytes);
+			oos.writeObject(CommonState.r);
+			oos.close();
+			out.writeInt(randomBytes.size());
+			out.write(randomBytes.toByteArray());
+
+			LocationKeysManager.writeTo(out);
+
+			// the FPeers are written in serial order, so the resumed FPeers get the same serials
+			out.writeInt(numFPeers);
+			for (int serial = 0; serial < numFPeers; serial++)
+			{
+				final FPeer fpeer = FPeerDirectory.get(serial);
+				out.writeBoolean(fpeer != null);
+				if (fpeer == null)
+					continue;
+
+				out.writeUTF(fpeer.getIdentifier());
+				fpeer.writeStateTo(out, now);
+			}
+
+			// neighborhoods and HashMaps refer to the FPeers by serial, so they are written after all the FPeers
+			for (int serial = 0; serial < numFPeers; serial++)
+			{
+				final FPeer fpeer = FPeerDirectory.get(serial);
+				if (fpeer == null)
+					continue;
+
+				((LinkableProtocol) fpeer.getProtocol(this.linkablePID)).writeNeighborsTo(out);
+				((MessagesExchangerProtocol) fpeer.getProtocol(this.protocolPID)).writeStateTo(out);
+			}
+
+			final int[] freeSerials = FPeerDirectory.getFreeSerials();
+			out.writeInt(freeSerials.length);
+			for (int serial : freeSerials)
+				out.writeInt(serial);
+		}
+		catch (IOException e)
+		{
+			System.out.println("CHECKPOINT: error during checkpoint writing at path \"" + this.filePath + "\" ...\nError details: " + e.getMessage() + "\n\n*** Execution stopped ***");
+			return true;
+		}
+		finally
+		{
+			try
+			{
+				// close the checkpoint file
+				if (out != null)
+					out.close();
+			}
+			catch (IOException e) { }
+		}
+
+		elapsedTime = System.currentTimeMillis() - elapsedTime;
+		System.out.println("CHECKPOINT: simulation state at time " + now + " written at path \"" + this.filePath + "\" (" + elapsedTime + " ms) ...");
+
+		return false;
+	}
+}
@@ -0,0 +1,223 @@
+package control;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import engine.ParallelEDSimulator;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+import peersim.dynamics.NodeInitializer;
+import peersim.edsim.CDScheduler;
+import protocol.ProtocolStatistics;
+import protocol.ProtocolStatistics.Counter;
+import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.LocationRing;
+
+/**
+ *  Class that implements the control that simulates the churn of the overlay network: each time it is executed (parameter
+ *  {@code step}), on average {@code leaves} pseudo-random FPeers leave the overlay network and {@code joins} new FPeers join
+ *  it. Each join and leave costs O(degree), without scans of the overlay network, so the control can run at high rates. <br><br>
+ *
+ *  A leaving FPeer is removed from the neighborhoods of its neighbors, and its stored content location keys are handed off
+ *  to its neighbors (if {@code handoff}) or lost (see {@code FPeer.leave}). For {@code grace} units of time (by default,
+ *  the maximum delay of the transport of {@code protocol}) it stays in the PeerSim network, marked as departed, and it
+ *  bounces to their senders the messages that were in-flight toward it, so that they are routed again (see
+ *  {@code MessagesExchangerProtocol}); then it is removed from the PeerSim network (in O(1), see {@code Network.remove(int)}),
+ *  that removes it also from the simulation (failure state DEAD). Once no in-flight message refers to it, its serial is
+ *  recycled and its store released (see {@code FPeerDirectory.recycle}), so under a steady churn the memory of the simulation
+ *  does not grow. <br><br>
+ *
+ *  A joining FPeer gets a pseudo-random location key and identifier, it is linked to {@code degree} pseudo-random FPeers of
+ *  the overlay network and the node initializers {@code init.*} are applied to it, e.g. {@code peersim.edsim.CDScheduler}
+ *  to schedule its cycles (skipped with the parallel engine, that schedules the cycles by itself).
+ **/
+
+public class ChurnControl implements peersim.core.Control
+{
+	// the configuration file's string representing the prefix of the prototype node used during the simulation
+	private final String FPeer_prefix;
+
+	// the PID of the used Linkable protocol
+	private final int linkablePID;
+
+	// mean number of FPeers that leave and that join the overlay network at each execution
+	private final double leaves;
+	private final double joins;
+
+	// number of neighbors of each joining FPeer
+	private final int degree;
+
+	// flag that specifies if the stored content location keys of a leaving FPeer are handed off to its neighbors
+	private final boolean handoff;
+
+	// minimum size of the overlay network (departed FPeers not counted), under which the FPeers do not leave
+	private final int minSize;
+
+	// time during which a departed FPeer bounces the in-flight messages, before its removal from the simulation
+	private final long grace;
+
+	// the node initializers applied to the joining FPeers
+	private final NodeInitializer[] initializers;
+
+	// the departed FPeers not yet removed from the simulation, in order of departure
+	private final ArrayDeque<FPeer> departed;
+
+	// the FPeers removed from the simulation whose serials are not yet recycled
+	private final ArrayList<FPeer> removed;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public ChurnControl(String prefix)
+	{
+		this.FPeer_prefix = Configuration.getString(prefix + ".FPeer_prefix");
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+		this.leaves = Configuration.getDouble(prefix + ".leaves", 0.0);
+		this.joins = Configuration.getDouble(prefix + ".joins", 0.0);
+		this.degree = Configuration.getInt(prefix + ".degree", 5);
+		this.handoff = Configuration.getBoolean(prefix + ".handoff", false);
+		this.minSize = Configuration.getInt(prefix + ".minSize", 2);
+
+		// by default, the grace time lasts the maximum delay of the transport used by the protocol, plus one
+		final String protocolPrefix = "protocol." + Configuration.lookupPid(Configuration.getPid(prefix + ".protocol"));
+		final String transportPrefix = "protocol." + Configuration.lookupPid(Configuration.getPid(protocolPrefix + ".transport_pid"));
+		this.grace = Configuration.getLong(prefix + ".grace", Configuration.getLong(transportPrefix + ".maxdelay", 0) + 1);
+
+		Object[] inits = Configuration.getInstanceArray(prefix + ".init");
+		this.initializers = new NodeInitializer[inits.length];
+		for (int i = 0; i < inits.length; i++)
+			this.initializers[i] = (NodeInitializer) inits[i];
+
+		this.departed = new ArrayDeque<FPeer>();
+		this.removed = new ArrayList<FPeer>();
+	}
+
+
+	/**
+	 * Draws the number of FPeers to move in the current execution, given the mean {@code rate}: its integer part, plus one
+	 * with probability equal to its fractional part.
+	 * @param rate the mean number of FPeers to move at each execution
+	 * @return the number of FPeers to move.
+	 **/
+	private static int draw(double rate)
+	{
+		final int n = (int) rate;
+		return (CommonState.r.nextDouble() < rate - n) ? n + 1 : n;
+	}
+
+
+	/**
+	 * Performs the departure of a pseudo-random FPeer of the overlay network.
+	 * @param now the current simulation time
+	 **/
+	private void leave(long now)
+	{
+		// draw a pseudo-random FPeer not yet departed (with a bounded number of attempts, so the departure can be skipped)
+		FPeer fpeer = (FPeer) Network.get(CommonState.r.nextInt(Network.size()));
+		for (int attempts = 1; fpeer.isDeparted() && attempts < 8; attempts++)
+			fpeer = (FPeer) Network.get(CommonState.r.nextInt(Network.size()));
+
+		if (fpeer.isDeparted())
+			return;
+
+		final int storedKeys = fpeer.getContentStore().size();
+		final int handedOff = fpeer.leave(this.linkablePID, this.handoff, now);
+		this.departed.addLast(fpeer);
+
+		ProtocolStatistics.increment(Counter.FPEERS_LEFT);
+		ProtocolStatistics.add(Counter.KEYS_HANDED_OFF, handedOff);
+		ProtocolStatistics.add(Counter.KEYS_LOST, storedKeys - handedOff);
+	}
+
+
+	/**
+	 * Performs the join of a new FPeer into the overlay network.
+	 **/
+	private void join()
+	{
+		FPeer fpeer = null;
+		try
+		{
+			// allocates an FPeer having a pseudo-random identifier (32 hexadecimal digits, as the Data Sets ones) and an
+			// uniform, pseudo-random, double-precision location key
+			final String ID = String.format("%016x%016x", CommonState.r.nextLong(), CommonState.r.nextLong());
+			fpeer = new FPeer(this.FPeer_prefix, ID, LocationKeysManager.generateUniform(false, CommonState.r));
+		}
+		catch (UnsupportedOperationException exc)
+		{
+			System.out.println("CHURN CONTROL: FPeer's creation: " + exc.getMessage());
+			return;
+		}
+
+		// link it to "degree" pseudo-random FPeers of the overlay network (with a bounded number of attempts, since the
+		// drawn FPeers can be already linked or departed)
+		final int networkSize = Network.size();
+		for (int attempts = 0, linked = 0; networkSize > 0 && linked < this.degree && attempts < 4 * this.degree; attempts++)
+		{
+			final FPeer neighbor = (FPeer) Network.get(CommonState.r.nextInt(networkSize));
+			if (!neighbor.isDeparted() && fpeer.linkWith(neighbor, this.linkablePID))
+				linked++;
+		}
+
+		// add it into the PeerSim network, into the parallel engine (if used) and into the location ring (if maintained), and
+		// apply the initializers
+		Network.add(fpeer);
+		ParallelEDSimulator.addFPeer(fpeer);
+		LocationRing.added(fpeer);
+		for (NodeInitializer init : this.initializers)
+		{
+			if (!(init instanceof CDScheduler && ParallelEDSimulator.isRunning()))
+				init.initialize(fpeer);
+		}
+
+		ProtocolStatistics.increment(Counter.FPEERS_JOINED);
+	}
+
+
+	/**
+	 * Removes from the simulation the departed FPeers whose grace time is expired and recycles the serials of the removed
+	 * ones no more referred by in-flight messages, then performs the departures and the joins of the current execution.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		final long now = CommonState.getTime();
+
+		// the departed FPeers are removed in order of departure (the last FPeer of the PeerSim network takes the index of the
+		// removed one, and the removal releases the state of the removed one, see "onKill")
+		while (!this.departed.isEmpty() && now - this.departed.peekFirst().getDepartureTime() >= this.grace)
+		{
+			final FPeer fpeer = this.departed.pollFirst();
+			Network.remove(fpeer.getIndex());
+			this.removed.add(fpeer);
+		}
+
+		// the recycled serials are re-assigned to the joining FPeers (a message in-flight toward a removed FPeer, when the
+		// grace time is shorter than the transport delay, is discarded without discounting its references: its serial is
+		// then never recycled)
+		int kept = 0;
+		for (int i = 0; i < this.removed.size(); i++)
+		{
+			final FPeer fpeer = this.removed.get(i);
+			if (!FPeerDirectory.recycle(fpeer))
+				this.removed.set(kept++, fpeer);
+		}
+		for (int i = this.removed.size() - 1; i >= kept; i--)
+			this.removed.remove(i);
+
+		final int numLeaves = draw(this.leaves);
+		for (int i = 0; i < numLeaves && Network.size() - this.departed.size() > this.minSize; i++)
+			leave(now);
+
+		final int numJoins = draw(this.joins);
+		for (int i = 0; i < numJoins; i++)
+			join();
+
+		return false;
+	}
+}
@@ -0,0 +1,56 @@
+package control;
+
+import peersim.config.Configuration;
+import peersim.core.Network;
+import protocol.ProtocolStatistics;
+import protocol.ProtocolStatistics.Counter;
+import structure.FPeer;
+
+/**
+ *  Class that implements the control that, periodically (parameter {@code step}), makes each FPeer of the overlay network
+ *  receive a copy of the current store Bloom filter of each one of its neighbors (see {@code FPeer.refreshNeighborFilters}).
+ *  The GET routing with {@code filterRouting} reads only these copies, so between two executions it sees the stores of the
+ *  neighbors as they were at the last one. <br><br>
+ *
+ *  The bytes of the copied filters (the traffic of the exchange) are counted in {@code FILTER_SNAPSHOT_BYTES}, the memory of
+ *  the copies is written in the report of the simulation, and the claims of stale copies are counted in
+ *  {@code FILTER_STALE_POSITIVES}: a shorter {@code step} lowers the staleness at the cost of more traffic. <br>
+ *  N.B. the control reads the stores of all the neighbors, so it is executed serially (at the barriers of the parallel engine).
+ **/
+
+public class FilterExchange implements peersim.core.Control
+{
+	// the PID of the used Linkable protocol
+	private final int linkablePID;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public FilterExchange(String prefix)
+	{
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+	}
+
+
+	/**
+	 * Refreshes the copies of the neighbors' filters of all the FPeers in the overlay network.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		long copiedBytes = 0;
+		for (int i = 0; i < Network.size(); i++)
+		{
+			final FPeer fpeer = (FPeer) Network.get(i);
+			if (fpeer.isUp() && !fpeer.isDeparted())
+				copiedBytes += fpeer.refreshNeighborFilters(this.linkablePID);
+		}
+
+		ProtocolStatistics.add(Counter.FILTER_SNAPSHOT_BYTES, copiedBytes);
+
+		return false;
+	}
+}
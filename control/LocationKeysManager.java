@@ -1,12 +1,19 @@
 package control;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
 
+import engine.ParallelEDSimulator;
+import engine.SimulationContext;
+
 /**
  * Class that manages, using uniform probability distribution, the generation and manipulation of the location keys to assign
- * to overlay's FPeers and contents.
+ * to overlay's FPeers and contents. The methods that access the sets of generated keys are synchronized, so they can be
+ * invoked concurrently by the shards of the parallel engine.
  * 
  *  @author  Giuseppe Miraglia
  *  @since   March 9, 2015  
@@ -20,54 +27,110 @@ public class LocationKeysManager
 	// maximum number of iteration to use during location keys generation
 	private static int MAX_ITERATIONS = 5000;
 
-	// set of already generated Fpeer location keys
-	private static HashSet<Double> hsFpeers = new HashSet<Double>();
 
-	// set of already generated content location keys
-	private static HashSet<Double> hsContents = new HashSet<Double>();	
+	/**
+	 * Gets out the set of already generated FPeers location keys, held by the simulation context.
+	 * @return the set of FPeers location keys.
+	 **/
+	private static HashSet<Double> fpeersKeys()
+	{
+		return SimulationContext.current().getFPeersLocationKeys();
+	}
+
+
+	/**
+	 * Gets out the set of already generated contents location keys, held by the simulation context.
+	 * @return the set of contents location keys.
+	 **/
+	private static HashSet<Double> contentsKeys()
+	{
+		return SimulationContext.current().getContentsLocationKeys();
+	}
+
 
 	/**
-	 * Implements the operation of tossing of a biased coin, using a pseudo-random generator allocated with seed equal to the current 
-	 * system nano time. <br>
+	 * Implements the operation of tossing of a biased coin, using the pseudo-random generator of the simulation (so the result
+	 * depends only on the configured random seed). <br>
 	 * Notice that when {@code biasFactor} = 0.5, the tossing operation is equivalent to the toss of a balanced coin (equiprobability).
 	 * @param biasFactor the biasing factor of the coin to toss, in [0.0, 1.0]
 	 * @return HEAD or TAIL, based on the random generator result w.r.t. the {@code biasFactor}.
 	 * @throws UnsupportedOperationException if the {@code biasFactor} value is out of range [0.0, 1.0].
 	 **/
 	public static Coin tossCoin(double biasFactor)
+	{
+		return tossCoin(biasFactor, ParallelEDSimulator.currentRandom());
+	}
+
+
+	/**
+	 * Implements the operation of tossing of a biased coin, using the passed pseudo-random generator {@code rand}.
+	 * @param biasFactor the biasing factor of the coin to toss, in [0.0, 1.0]
+	 * @param rand		 the pseudo-random generator to use
+	 * @return HEAD or TAIL, based on the random generator result w.r.t. the {@code biasFactor}.
+	 * @throws UnsupportedOperationException if the {@code biasFactor} value is out of range [0.0, 1.0].
+	 **/
+	public static Coin tossCoin(double biasFactor, Random rand)
 	{
 		if (biasFactor < 0.0 || biasFactor > 1.0)
 			throw new UnsupportedOperationException("toss bias factor out of range...");
 
-		final double val = new Random(System.nanoTime()).nextDouble();
+		final double val = rand.nextDouble();
 
 		return (val < biasFactor) ? Coin.HEAD : Coin.TAIL;
 	}
 
 	/**
-	 * Generates a pseudo-random, evenly distributed, unique, double-precision location key to assign to a FPeer or a content.
+	 * Generates a pseudo-random, evenly distributed, unique, double-precision location key to assign to a FPeer or a content,
+	 * using the pseudo-random generator of the simulation.
 	 * @param useAsContent flag that specify if the generated location key must be a content location key
 	 * @throws UnsupportedOperationException if, after MAX_ITERATION iterations, the method is unable to generate an unique location key.
 	 * @return the generated location key.
 	 **/
 	public static double generateUniform(boolean useAsContent)
+	{
+		return generateUniform(useAsContent, ParallelEDSimulator.currentRandom());
+	}
+
+
+	/**
+	 * Generates a pseudo-random, evenly distributed, unique, double-precision location key to assign to a FPeer or a content,
+	 * using the passed pseudo-random generator {@code rand}.
+	 * @param useAsContent flag that specify if the generated location key must be a content location key
+	 * @param rand		   the pseudo-random generator to use
+	 * @throws UnsupportedOperationException if, after MAX_ITERATION iterations, the method is unable to generate an unique location key.
+	 * @return the generated location key.
+	 **/
+	public static synchronized double generateUniform(boolean useAsContent, Random rand)
 	{		
+		final double locKey = drawUniform(rand);
+
+		// add the generated location key to the list of FPeer's location keys or contents location keys
+		if (!useAsContent) 
+			fpeersKeys().add(locKey);
+		else
+			contentsKeys().add(locKey);
+
+		return locKey;
+	}
+
+
+	/**
+	 * Draws, using the passed pseudo-random generator {@code rand}, a pseudo-random, evenly distributed, double-precision 
+	 * location key different from all the already generated location keys, WITHOUT registering it. 
+	 * @param rand the pseudo-random generator to use
+	 * @throws UnsupportedOperationException if, after MAX_ITERATION iterations, the method is unable to draw an unique location key.
+	 * @return the drawn location key.
+	 **/
+	public static synchronized double drawUniform(Random rand)
+	{
 		for (int i = 0; i < MAX_ITERATIONS; i++)
 		{
 			// generate a pseudo-random, evenly distributed, double-precision number in [0.0, 1.0)
-			double locKey = Math.random();
+			double locKey = rand.nextDouble();
 
 			// check the uniqueness of the generated number in the set of FPeers and contents location keys
-			if (!hsFpeers.contains(locKey) && !hsContents.contains(locKey))
-			{
-				// add the generated location key to the list of FPeer's location keys or contents location keys
-				if (!useAsContent) 
-					hsFpeers.add(locKey);
-				else
-					hsContents.add(locKey);
-
+			if (!fpeersKeys().contains(locKey) && !contentsKeys().contains(locKey))
 				return locKey;
-			}
 		}
 
 		// if after MAX_ITERATIONS we are unable to generate an unique number, throw an exception..
@@ -75,28 +138,112 @@ public class LocationKeysManager
 	}
 
 
+	/**
+	 * Registers the passed (previously drawn) location key {@code locKey} as content location key.
+	 * @param locKey the content location key to register
+	 * @return {@code true} if the location key is registered. {@code false} if it is already used by an FPeer or a content.
+	 **/
+	public static synchronized boolean registerContentLocationKey(double locKey)
+	{
+		if (fpeersKeys().contains(locKey))
+			return false;
+
+		return contentsKeys().add(locKey);
+	}
+
+
 	/**
 	 * Selects, in a pseudo-random fashion, a content location key from the set of already generated and available
-	 * content location keys.
+	 * content location keys, using the pseudo-random generator of the simulation.
 	 * @return a pseudo-random selected existing content location key, if it exists.
 	 * @throws UnsupportedOperationException if the set of already generate content location keys is empty.
 	 **/
 	public static double getAvailableContentLocationKey()
+	{
+		return getAvailableContentLocationKey(ParallelEDSimulator.currentRandom());
+	}
+
+
+	/**
+	 * Selects, using the passed pseudo-random generator {@code rand}, a content location key from the set of already 
+	 * generated and available content location keys.
+	 * @param rand the pseudo-random generator to use
+	 * @return a pseudo-random selected existing content location key, if it exists.
+	 * @throws UnsupportedOperationException if the set of already generate content location keys is empty.
+	 **/
+	public static synchronized double getAvailableContentLocationKey(Random rand)
 	{
 		// if the set of generated content location keys is empty 
-		if (hsContents.size() == 0)
+		if (contentsKeys().size() == 0)
 			throw new UnsupportedOperationException("no content location keys available...");
 
 		// ... otherwise, select pseudo-randomly an index in [0, size)
 		double selectedLocKey = -1.0;
-		int index = (new Random(System.nanoTime())).nextInt(hsContents.size());
+		int index = rand.nextInt(contentsKeys().size());
 
 		// iterate on the set to find the index-th content location key
-		Iterator<Double> it = hsContents.iterator();
+		Iterator<Double> it = contentsKeys().iterator();
 		for (int i = 0; i <= index && it.hasNext(); i++)
 			selectedLocKey = it.next().doubleValue();
 
 		return selectedLocKey;
 	}
 
+
+	/**
+	 * Writes the sets of the generated FPeers and contents location keys on the passed {@code out} stream, in iteration order.
+	 * @param out the stream on which write the sets
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public static synchronized void writeTo(DataOutput out) throws IOException
+	{
+		writeSet(out, fpeersKeys());
+		writeSet(out, contentsKeys());
+	}
+
+
+	/**
+	 * Replaces the sets of the generated FPeers and contents location keys with the ones read from the passed {@code in} 
+	 * stream, as written by {@code writeTo}. Since the sets only grow, re-inserting the keys in the written iteration order
+	 * rebuilds the same iteration order (used by {@code getAvailableContentLocationKey}).
+	 * @param in the stream from which read the sets
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public static synchronized void readFrom(DataInput in) throws IOException
+	{
+		final HashSet<Double> fpeersKeys = readSet(in);
+		SimulationContext.current().setLocationKeys(fpeersKeys, readSet(in));
+	}
+
+
+	/**
+	 * Writes the passed set of location keys {@code hs} on the passed {@code out} stream, in iteration order.
+	 * @param out the stream on which write the set
+	 * @param hs  the set to write
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	private static void writeSet(DataOutput out, HashSet<Double> hs) throws IOException
+	{
+		out.writeInt(hs.size());
+		for (Double locKey : hs)
+			out.writeDouble(locKey);
+	}
+
+
+	/**
+	 * Reads a set of location keys from the passed {@code in} stream.
+	 * @param in the stream from which read the set
+	 * @return the read set.
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	private static HashSet<Double> readSet(DataInput in) throws IOException
+	{
+		HashSet<Double> hs = new HashSet<Double>();
+
+		final int size = in.readInt();
+		for (int i = 0; i < size; i++)
+			hs.add(in.readDouble());
+
+		return hs;
+	}
 }
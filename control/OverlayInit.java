@@ -1,14 +1,16 @@
 package control;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 
+import engine.SimulationContext;
+import engine.TopologyCache;
 import peersim.config.Configuration;
 import peersim.core.Network;
 import protocol.LinkableProtocol;
 import structure.FPeer;
+import structure.LocationRing;
 
 /**
  *  Class that implements the initializer that parses the given Data Set and sets up the overlay network from it.
@@ -27,6 +29,12 @@ public class OverlayInit implements peersim.core.Control
 	
 	// the path of the Data Set to parse in order to set up the overlay network
 	private final String datasetPath;				 	
+
+	// flag that specifies if the location ring (the routing accuracy oracle) is built on the created overlay network
+	private final boolean locationRing;
+
+	// flag that specifies if the heap occupied by the created FPeers is measured
+	private final boolean measureMemory;
 	
 
 	/**
@@ -43,7 +51,36 @@ public class OverlayInit implements peersim.core.Control
 
 		// get the PID of the used Linkable protocol
 		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+
+		// get the flag on the location ring
+		this.locationRing = Configuration.getBoolean(prefix + ".locationRing", false);
+
+		// get the flag on the memory measurement
+		this.measureMemory = Configuration.getBoolean(prefix + ".measureMemory", false);
 	} 
+
+
+	/**
+	 * Gets out the heap bytes occupied by each FPeer, as measured at the creation of the overlay network (see {@code measureMemory}).
+	 * @return the heap bytes of each FPeer, or {@code -1} if not measured.
+	 **/
+	public static double getMeasuredBytesPerFPeer()
+	{
+		return SimulationContext.current().getMeasuredBytesPerFPeer();
+	}
+
+
+	/**
+	 * Gets out the heap used after a garbage collection.
+	 * @param memory the memory management bean of the JVM
+	 * @return the bytes of heap used.
+	 **/
+	private static long usedHeapAfterGC(MemoryMXBean memory)
+	{
+		memory.gc();
+		memory.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
 	
 	/**
 	 * Adds a new FPeer into the overlay network, generating an unique, pseudo-random, double-precision location key for it.
@@ -72,7 +109,8 @@ public class OverlayInit implements peersim.core.Control
 
 	/**
 	 * The method performs the following operations: <br>
-	 * 1) Parses the given data set (from a path, specified in the configuration file) using the values in it as FPeer identifiers; <br>
+	 * 1) Parses the given data set (from a path, specified in the configuration file) using the values in it as FPeer identifiers
+	 *    (the parsed data set is cached, so the simulations of a sweep parse it only once); <br>
 	 * 2) Creates the correspondent overlay network, allocating FPeers and filling their neighborhoods; <br>
 	 * 3) Assigns an unique location key to each allocated FPeer, pseudo-random and evenly generated.
 	 * @return {@code true}, if a problem occurs and the execution must be stopped; {@code false} otherwise.
@@ -80,73 +118,88 @@ public class OverlayInit implements peersim.core.Control
 	@Override
 	public boolean execute() 
 	{
-		BufferedReader reader = null;
-		long elapsedTime = -1;
-		String line = "";
+		// get current time (in ms)
+		long elapsedTime = System.currentTimeMillis();
+
+		System.out.println("OVERLAY INITIALIZER: Creating overlay network parsing dataset at path \"" + this.datasetPath + "\" ...");
 
+		TopologyCache.Topology topology = null;
 		try 
 		{	
-			// get current time (in ms)
-			elapsedTime = System.currentTimeMillis();
+			topology = TopologyCache.get(this.datasetPath);
+		} 
+		catch (IOException e) 
+		{
+			// if some problems occurs, stop the execution...
+			System.out.println("OVERLAY INITIALIZER: Dataset parsing error at path \"" + this.datasetPath + "\" ...\nError details: " + e.getMessage() + "\n\n*** Execution stopped ***");
+			return true;
+		} 
 
-			// create a buffered reader for the file at the specified path
-			reader = new BufferedReader(new FileReader(this.datasetPath));
+		// FPeers allocated so far, by index of the data set (allocated in order of first appearance of their identifiers)
+		FPeer[] fpeers = new FPeer[topology.getNumFPeers()];
 
-			System.out.println("OVERLAY INITIALIZER: Creating overlay network parsing dataset at path \"" + this.datasetPath + "\" ...");
+		// degrees of the FPeers, by index of the data set, so that each neighborhood is allocated once with its final size
+		int[] degrees = new int[fpeers.length];
+		for (int e = 0; e < topology.getNumEdges(); e++)
+		{
+			degrees[topology.getEdgeSource(e)]++;
+			degrees[topology.getEdgeTarget(e)]++;
+		}
 
-			// HashMap used to check and retrieve efficiently FPeers during the parsing of the dataset
-			HashMap<String, FPeer> hashmap = new HashMap<String, FPeer>();
-			FPeer p_sx = null, p_dx = null;
+		// if requested, measure the heap used before the creation of the FPeers
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		final long heapBefore = this.measureMemory ? usedHeapAfterGC(memory) : 0;
 
-			// read the file line-by-line
-			while ((line = reader.readLine()) != null) 
-			{			
-				// split the line on comma
-				String[] identifiers = line.split(",");
+		// replay the edges in file order
+		for (int e = 0; e < topology.getNumEdges(); e++)
+		{
+			final int sx = topology.getEdgeSource(e);
+			final int dx = topology.getEdgeTarget(e);
 
-				// check if already exist an FPeer with identifiers[0]
-				if ((p_sx = hashmap.get(identifiers[0])) == null)
-				{
-					// if not, allocates an FPeer for it and add it into the overlay
-					p_sx = createAndAddFPeer(identifiers[0]);
+			// if not already done, allocate the FPeers of the edge and add them into the overlay
+			if (fpeers[sx] == null)
+			{
+				fpeers[sx] = createAndAddFPeer(topology.getIdentifier(sx));
+				((LinkableProtocol) fpeers[sx].getProtocol(linkablePID)).ensureCapacity(degrees[sx]);
+			}
+			if (fpeers[dx] == null)
+			{
+				fpeers[dx] = createAndAddFPeer(topology.getIdentifier(dx));
+				((LinkableProtocol) fpeers[dx].getProtocol(linkablePID)).ensureCapacity(degrees[dx]);
+			}
 
-					// add the association (id, FPeer_ref) for it in the HashMap
-					hashmap.put(identifiers[0], p_sx);
-				}
+			// add p_sx -> p_dx link into the overlay network
+			((LinkableProtocol) fpeers[sx].getProtocol(linkablePID)).addNeighbor(fpeers[dx]);
 
-				// check if already exist an FPeer with identifiers[1]
-				if ((p_dx = hashmap.get(identifiers[1])) == null)
-				{
-					// if not, allocates an FPeer for it and add it into the overlay
-					p_dx = createAndAddFPeer(identifiers[1]);
+			// add p_dx -> p_sx link into the overlay network
+			((LinkableProtocol) fpeers[dx].getProtocol(linkablePID)).addNeighbor(fpeers[sx]);
+		}
 
-					// add the association (id, FPeer_ref) for it in the HashMap
-					hashmap.put(identifiers[1], p_dx);
-				}
+		// trim only the neighborhoods allocated larger than their sizes, i.e. the ones of the FPeers having duplicated edges in
+		// the data set (the others already have their final sizes)
+		for (int i = 0; i < fpeers.length; i++)
+		{
+			if (fpeers[i] == null)
+				continue;
 
-				// add p_sx -> p_dx link into the overlay network
-				((LinkableProtocol) p_sx.getProtocol(linkablePID)).addNeighbor(p_dx);
+			final LinkableProtocol lp = (LinkableProtocol) fpeers[i].getProtocol(linkablePID);
+			if (lp.degree() < degrees[i])
+				lp.pack();
+		}
 
-				// add p_dx -> p_sx link into the overlay network
-				((LinkableProtocol) p_dx.getProtocol(linkablePID)).addNeighbor(p_sx);
-			}
-		} 
-		catch (IOException e) 
+		// if requested, measure the heap occupied by the FPeers (with their protocols, stores and neighborhoods), before
+		// building the location ring
+		if (this.measureMemory && fpeers.length > 0)
 		{
-			// if some problems occurs, stop the execution...
-			System.out.println("OVERLAY INITIALIZER: Dataset parsing error at path \"" + this.datasetPath + "\" ...\nError details: " + e.getMessage() + "\n\n*** Execution stopped ***");
-			return true;
-		} 
-		finally 
-		{
-			try 
-			{
-				// close the reading buffer after the parsing
-				reader.close();
-			} 
-			catch (Exception e) { }
+			final double measuredBytesPerFPeer = (double) (usedHeapAfterGC(memory) - heapBefore) / fpeers.length;
+			SimulationContext.current().setMeasuredBytesPerFPeer(measuredBytesPerFPeer);
+			System.out.println("OVERLAY INITIALIZER: " + Math.round(measuredBytesPerFPeer) + " heap bytes per FPeer (" + fpeers.length + " FPeers) ...");
 		}
 
+		// if requested, build the location ring, maintained from now on by the swaps
+		if (this.locationRing)
+			LocationRing.rebuild();
+
 		// get current time and compute parsing/overlay creation elapsed time (in ms)
 		elapsedTime = System.currentTimeMillis() - elapsedTime;
 
@@ -0,0 +1,154 @@
+package control;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+import peersim.core.Node;
+import protocol.MessagesExchangerProtocol;
+import protocol.MessagesExchangerProtocol.CycleIntent;
+import structure.FPeer;
+
+/**
+ *  Class that implements the control that executes the cycle-driven side of the protocol for all the FPeers of the overlay
+ *  network, in parallel, as alternative to the {@code CDScheduler} initializer. It must be scheduled with the period of the
+ *  cycle (parameter {@code step}). <br><br>
+ *
+ *  Each time step is executed in two phases: <br>
+ *  1) the FPeers are split in contiguous ranges, one for each thread, and each thread prepares the cycles of its FPeers
+ *     (HashMap cleanup, requests decisions and PUT candidates computation), collecting the requests in a private buffer; <br>
+ *  2) the buffers are merged in FPeers order and the requests are performed (GET keys selection, PUT keys registration,
+ *     messages creation and sending), so a GET can select the keys PUT earlier in the same time step. <br><br>
+ *
+ *  All the decisions of an FPeer use a pseudo-random generator seeded by a number drawn from the PeerSim common generator
+ *  ({@code CommonState.r}), for all the FPeers in network order, before the phase 1): so the results are reproducible from
+ *  the simulation seed and do not depend on the number of threads (with {@code threads 1} the control is the sequential
+ *  mode of itself). <br>
+ *  The {@code CDScheduler} mode draws the seeds in the same way (at the first cycle of each time step), so an FPeer takes
+ *  the same decisions in both the modes from the same state. The results can still differ: with the {@code CDScheduler}
+ *  the requests are performed in the order of the scheduler (not in FPeers order) and interleaved with the events of the
+ *  same time step, and the seeds are drawn at the first cycle, not before the events of the time step.
+ **/
+
+public class ParallelCycleScheduler implements peersim.core.Control
+{
+	// the PID of the protocol having the cycle-driven side to execute
+	private final int protocolPID;
+
+	// the number of threads used to prepare the cycles
+	private final int numThreads;
+
+	// the pool of threads used to prepare the cycles
+	private final ExecutorService pool;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public ParallelCycleScheduler(String prefix)
+	{
+		this.protocolPID = Configuration.getPid(prefix + ".protocol");
+		this.numThreads = Configuration.getInt(prefix + ".threads", Runtime.getRuntime().availableProcessors());
+
+		// daemon threads, so the pool does not prevent the termination of the simulator
+		this.pool = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "cycle-scheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+
+	/**
+	 * Draws from the PeerSim common generator the seeds of the pseudo-random generators of the FPeers for the current time
+	 * step, one for each FPeer of the overlay network (up or not), in network order (also used by the {@code CDScheduler}
+	 * mode of the protocol, see {@code MessagesExchangerProtocol.nextCycle}).
+	 * @param networkSize the size of the overlay network
+	 * @return the seeds, indexed by network position.
+	 **/
+	public static long[] drawSeeds(int networkSize)
+	{
+		long[] seeds = new long[networkSize];
+		for (int i = 0; i < networkSize; i++)
+			seeds[i] = CommonState.r.nextLong();
+
+		return seeds;
+	}
+
+
+	/**
+	 * Executes the cycle-driven side of the protocol for all the up FPeers of the overlay network.
+	 * @return always {@code false}.
+	 * @throws RuntimeException if the preparation of a cycle fails (or the control is interrupted).
+	 **/
+	@Override
+	public boolean execute()
+	{
+		final long time = CommonState.getTime();
+		final int networkSize = Network.size();
+		final long[] seeds = drawSeeds(networkSize);
+
+		// phase 1): each thread prepares the cycles of a contiguous range of FPeers, in its own buffer
+		ArrayList<Callable<ArrayList<CycleIntent>>> tasks = new ArrayList<Callable<ArrayList<CycleIntent>>>(this.numThreads);
+		for (int t = 0; t < this.numThreads; t++)
+		{
+			final int from = (int) ((long) t * networkSize / this.numThreads);
+			final int to = (int) ((long) (t + 1) * networkSize / this.numThreads);
+
+			tasks.add(new Callable<ArrayList<CycleIntent>>()
+			{
+				@Override
+				public ArrayList<CycleIntent> call()
+				{
+					ArrayList<CycleIntent> buffer = new ArrayList<CycleIntent>(to - from);
+					for (int i = from; i < to; i++)
+					{
+						final Node node = Network.get(i);
+						if (!node.isUp())
+							continue;
+
+						final FPeer fpeer = (FPeer) node;
+						MessagesExchangerProtocol prot = (MessagesExchangerProtocol) fpeer.getProtocol(protocolPID);
+						buffer.add(prot.prepareCycle(fpeer, time, new Random(seeds[i])));
+					}
+					return buffer;
+				}
+			});
+		}
+
+		try
+		{
+			// phase 2): merge the buffers in FPeers order and perform the requests
+			for (Future<ArrayList<CycleIntent>> f : this.pool.invokeAll(tasks))
+			{
+				for (CycleIntent intent : f.get())
+					((MessagesExchangerProtocol) intent.getFPeer().getProtocol(this.protocolPID)).commitCycle(intent);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("cycle execution interrupted at time " + time + "...", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("cycle execution failed at time " + time + "...", e.getCause());
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,295 @@
+package control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+import protocol.LinkableProtocol;
+import structure.DistanceKernels;
+import structure.FPeer;
+import structure.FPeerDirectory;
+
+/**
+ *  Class that implements the initializer that preloads {@code keys} content location keys directly into the overlay network
+ *  created by the "ovinit" initializer, without routing PUT and PUT_REPLICATION messages. <br><br>
+ *
+ *  Each content location key is stored on its ideal holder, i.e. the FPeer of the overlay network having the closest location
+ *  key (found by binary search on a location-sorted index of all the FPeers), and replicated as the PUT_REPLICATION messages
+ *  of the holder would replicate it: a replica starts from each of the top-{@code replicationFactor} neighbors of the holder
+ *  and moves, greedily, toward the closest not yet visited neighbor, until no neighbor is closer or the HTL is exhausted. <br><br>
+ *
+ *  The content location keys are generated (and registered into the {@code LocationKeysManager}) sequentially, the placements
+ *  are computed in parallel on {@code threads} threads and the content location keys are stored in keys order, so the
+ *  resulting overlay network does not depend on the number of threads.
+ **/
+
+public class PreloadInit implements peersim.core.Control
+{
+	// the PID associated to the used Linkable Protocol
+	private final int linkablePID;
+
+	// the number of content location keys to preload
+	private final int numKeys;
+
+	// the number of threads used to compute the placements
+	private final int numThreads;
+
+	// the PUT replication factor and the maximum HTL value of the protocol whose placement rules are reproduced
+	private final int replicationFactor;
+	private final int maxHTL;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the initializer.
+	 **/
+	public PreloadInit(String prefix)
+	{
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+		this.numKeys = Configuration.getInt(prefix + ".keys");
+		this.numThreads = Configuration.getInt(prefix + ".threads", Runtime.getRuntime().availableProcessors());
+
+		// the placement rules are the ones of the protocol "protocol"
+		final String protocolPrefix = "protocol." + Configuration.lookupPid(Configuration.getPid(prefix + ".protocol"));
+		this.replicationFactor = Configuration.getInt(protocolPrefix + ".replicationFactor");
+		this.maxHTL = Configuration.getInt(protocolPrefix + ".maxHTL");
+	}
+
+
+	/**
+	 * Finds, in the location-sorted index of the FPeers, the FPeer whose location key is the closest (w.r.t. the circular
+	 * distance) to the passed content location key {@code contentLocKey}.
+	 * @param sorted		the FPeers, sorted by increasing location key
+	 * @param sortedKeys	the location keys of {@code sorted}
+	 * @param contentLocKey	the content location key
+	 * @return the ideal holder of {@code contentLocKey}.
+	 **/
+	private static FPeer findHolder(FPeer[] sorted, double[] sortedKeys, double contentLocKey)
+	{
+		// the candidates are the FPeers immediately before and after the content location key, on the ring
+		final int index = Arrays.binarySearch(sortedKeys, contentLocKey);
+		if (index >= 0)
+			return sorted[index];
+
+		final int after = (-index - 1) % sorted.length;
+		final int before = (after + sorted.length - 1) % sorted.length;
+
+		final double distBefore = sorted[before].getDistanceFromLocationKey(contentLocKey);
+		final double distAfter = sorted[after].getDistanceFromLocationKey(contentLocKey);
+		return (distBefore <= distAfter) ? sorted[before] : sorted[after];
+	}
+
+
+	/**
+	 * Checks if the passed FPeer {@code fpeer} is among the first {@code size} FPeers of {@code fpeers}.
+	 * @param fpeers	the array of FPeers
+	 * @param size		the number of valid FPeers of {@code fpeers}
+	 * @param fpeer		the FPeer to search
+	 * @return {@code true} if {@code fpeer} is found. {@code false} otherwise.
+	 **/
+	private static boolean contains(FPeer[] fpeers, int size, FPeer fpeer)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (fpeers[i] == fpeer)
+				return true;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Computes the placement of the passed content location key {@code contentLocKey}: its ideal holder, followed by the FPeers
+	 * on which the replicas of the holder end (the same FPeer can appear more than once).
+	 * @param sorted		the FPeers, sorted by increasing location key
+	 * @param sortedKeys	the location keys of {@code sorted}
+	 * @param contentLocKey	the content location key
+	 * @param placement		the array, of length {@code replicationFactor + 1}, in which store the serials of the FPeers
+	 * 						(-1 for the replicas not placed)
+	 **/
+	private void place(FPeer[] sorted, double[] sortedKeys, double contentLocKey, int[] placement)
+	{
+		Arrays.fill(placement, -1);
+
+		final FPeer holder = findHolder(sorted, sortedKeys, contentLocKey);
+		placement[0] = holder.getSerial();
+
+		// the FPeers already visited by the replicas (a PUT_REPLICATION reaching one of them would collide): at most the holder
+		// and maxHTL FPeers for each replica, so a linear scan is cheaper than an hash set
+		FPeer[] visited = new FPeer[1 + this.replicationFactor * this.maxHTL];
+		double[] dists = new double[0];
+		int numVisited = 0;
+		visited[numVisited++] = holder;
+
+		ArrayList<FPeer> topToReplicate = ((LinkableProtocol) holder.getProtocol(this.linkablePID)).retrieveTopKNeighbors(contentLocKey, this.replicationFactor);
+		for (int k = 0; k < topToReplicate.size(); k++)
+		{
+			FPeer current = topToReplicate.get(k);
+			if (contains(visited, numVisited, current))
+				continue;
+			visited[numVisited++] = current;
+
+			// the holder is the closest FPeer of the overlay network, so the HTL of a replica is never reset
+			FPeer receivedFrom = holder;
+			for (int HTL = this.maxHTL - 1; HTL > 0; HTL--)
+			{
+				// get the closest neighbor not yet visited, different from the FPeer from which the replica comes, if it is closer
+				// than the current FPeer (the distances of the neighborhood are computed once, without ranking it, then the
+				// minimum is searched again only if the closest neighbor is rejected)
+				FPeer candidate = null;
+				final double currentDist = current.getDistanceFromLocationKey(contentLocKey);
+				LinkableProtocol lp = (LinkableProtocol) current.getProtocol(this.linkablePID);
+				if (dists.length < lp.degree())
+					dists = new double[Math.max(lp.degree(), 2 * dists.length)];
+
+				lp.computeDistances(contentLocKey, dists);
+				int j = DistanceKernels.argmin(dists, 0, lp.degree());
+				while (j >= 0 && dists[j] < currentDist)
+				{
+					final FPeer neighbor = (FPeer) lp.getNeighbor(j);
+					if (neighbor != receivedFrom && !contains(visited, numVisited, neighbor))
+					{
+						candidate = neighbor;
+						break;
+					}
+
+					dists[j] = Double.POSITIVE_INFINITY;
+					j = DistanceKernels.argmin(dists, 0, lp.degree());
+				}
+
+				// if such neighbor does not exist, the replica ends on the current FPeer
+				if (candidate == null)
+					break;
+
+				visited[numVisited++] = candidate;
+				receivedFrom = current;
+				current = candidate;
+			}
+
+			placement[k + 1] = current.getSerial();
+		}
+	}
+
+
+	/**
+	 * Generates the content location keys, computes their placements in parallel and stores them on the FPeers.
+	 * @return {@code true}, if a problem occurs and the execution must be stopped; {@code false} otherwise.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		long elapsedTime = System.currentTimeMillis();
+		System.out.println("PRELOAD INITIALIZER: Preloading " + this.numKeys + " content location keys on " + this.numThreads + " threads ...");
+
+		if (Network.size() == 0)
+		{
+			System.out.println("PRELOAD INITIALIZER: empty overlay network, no content location keys preloaded ...");
+			return false;
+		}
+
+		// build the location-sorted index of the FPeers of the overlay network
+		final FPeer[] sorted = new FPeer[Network.size()];
+		for (int i = 0; i < sorted.length; i++)
+			sorted[i] = (FPeer) Network.get(i);
+		Arrays.sort(sorted);
+
+		final double[] sortedKeys = new double[sorted.length];
+		for (int i = 0; i < sorted.length; i++)
+			sortedKeys[i] = sorted[i].getLocationKey();
+
+		// generate (and register) the content location keys, sequentially, with the pseudo-random generator of the simulation
+		final double[] keys = new double[this.numKeys];
+		for (int i = 0; i < this.numKeys; i++)
+		{
+			try
+			{
+				keys[i] = LocationKeysManager.generateUniform(true, CommonState.r);
+			}
+			catch (UnsupportedOperationException exc)
+			{
+				System.out.println("PRELOAD INITIALIZER: content location key generation: " + exc.getMessage() + "\n\n*** Execution stopped ***");
+				return true;
+			}
+		}
+
+		// compute the placements of contiguous ranges of content location keys, one for each thread
+		final int width = this.replicationFactor + 1;
+		final int[] placements = new int[this.numKeys * width];
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(this.numThreads);
+		for (int t = 0; t < this.numThreads; t++)
+		{
+			final int from = (int) ((long) t * this.numKeys / this.numThreads);
+			final int to = (int) ((long) (t + 1) * this.numKeys / this.numThreads);
+
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					int[] placement = new int[width];
+					for (int i = from; i < to; i++)
+					{
+						place(sorted, sortedKeys, keys[i], placement);
+						System.arraycopy(placement, 0, placements, i * width, width);
+					}
+					return null;
+				}
+			});
+		}
+
+		// daemon threads, so the pool does not prevent the termination of the simulator
+		ExecutorService pool = Executors.newFixedThreadPool(this.numThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "preload-init");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		try
+		{
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			System.out.println("PRELOAD INITIALIZER: placements computation failed ...\nError details: " + e + "\n\n*** Execution stopped ***");
+			return true;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		// store the content location keys on their holders and replicas, in keys order (the storages can be bounded)
+		long stored = 0;
+		for (int i = 0; i < this.numKeys; i++)
+		{
+			for (int k = 0; k < width; k++)
+			{
+				final int serial = placements[i * width + k];
+				if (serial >= 0 && FPeerDirectory.get(serial).addContentLocationKey(keys[i]))
+					stored++;
+			}
+		}
+
+		// get current time and compute preload elapsed time (in ms)
+		elapsedTime = System.currentTimeMillis() - elapsedTime;
+
+		System.out.println("PRELOAD INITIALIZER: " + this.numKeys + " content location keys preloaded (" + stored + " copies stored, " + elapsedTime + " ms) ...");
+
+		return false;
+	}
+}
@@ -0,0 +1,305 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import engine.SimulationContext;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Network;
+import protocol.MessagesExchangerProtocol;
+import protocol.ProtocolStatistics;
+import protocol.ProtocolStatistics.Counter;
+import structure.FPeer;
+
+/**
+ *  Class that implements the control that takes, periodically (parameter {@code step}), a snapshot of the simulation
+ *  metrics: requests issued and completed by type, messages in-flight, HashMaps entries, stores sizes, SWAP acceptance
+ *  rate, events processed per second, heap used and garbage collection time. <br><br>
+ *
+ *  Each snapshot is appended, as a JSON line, to the metrics file of the simulation, and it is exposed through the JMX
+ *  MBean {@code FreenetSimulator:type=SimulationMetrics,run=<extension>} (see {@code SimulationMetricsMXBean}), so that a
+ *  long simulation can be watched while it runs; the {@code run} key is the extension of the statistics files of the
+ *  simulation, so the simulations running in the same JVM expose distinct MBeans.
+ **/
+
+public class SimulationMetrics implements peersim.core.Control, SimulationMetricsMXBean
+{
+	// parameter name of the PID of the protocol "MessagesExchangerProtocol"
+	private static final String PAR_PROTOCOL = "protocol";
+
+	// name of the MBean of the metrics (followed by the run key)
+	private static final String MBEAN_NAME = "FreenetSimulator:type=SimulationMetrics,run=";
+
+
+	/**
+	 *  Class that implements a snapshot of the simulation metrics (never modified after its publication).
+	 **/
+	private static class Snapshot
+	{
+		private long simulationTime;
+		private Map<String, Long> requestsIssued = Collections.emptyMap();
+		private Map<String, Long> requestsCompleted = Collections.emptyMap();
+		private long messagesInFlight;
+		private long SRmessagesEntries;
+		private long storedKeys;
+		private int maxStoreSize;
+		private double swapAcceptanceRate;
+		private double eventsPerSecond;
+		private long heapUsed;
+		private long gcTime;
+	}
+
+
+	// the PID of the protocol "MessagesExchangerProtocol"
+	private final int protocolPID;
+
+	// the last taken snapshot (published to the MBean readers)
+	private volatile Snapshot last;
+
+	// number of processed events and wall-clock time (in nanoseconds) at the previous snapshot
+	private long lastEvents;
+	private long lastWallTime;
+
+
+	/**
+	 * Constructor method. Registers the control as MBean of the platform MBean server.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public SimulationMetrics(String prefix)
+	{
+		this.protocolPID = Configuration.getPid(prefix + "." + PAR_PROTOCOL);
+		this.last = new Snapshot();
+		this.lastEvents = 0;
+		this.lastWallTime = System.nanoTime();
+
+		try
+		{
+			// replace the MBean of a previous simulation with the same statistics extension, if any (the MBeans of the other
+			// simulations in the same JVM have a different run key, so they are left registered)
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(MBEAN_NAME + SimulationContext.current().getStatisticsFileExtension());
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		}
+		catch (JMException e)
+		{
+			System.out.println("SIMULATION METRICS: error during MBean registration:\n" + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Takes a snapshot of the simulation metrics, publishes it to the MBean and appends it to the metrics file.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		Snapshot snap = new Snapshot();
+		snap.simulationTime = CommonState.getTime();
+
+		// requests issued and completed, by type
+		Map<String, Long> issued = new LinkedHashMap<String, Long>();
+		issued.put("GET", ProtocolStatistics.get(Counter.GET_REQUESTS));
+		issued.put("PUT", ProtocolStatistics.get(Counter.PUT_REQUESTS));
+		issued.put("SWAP", ProtocolStatistics.get(Counter.SWAP_SESSIONS_STARTED));
+		snap.requestsIssued = Collections.unmodifiableMap(issued);
+
+		Map<String, Long> completed = new LinkedHashMap<String, Long>();
+		completed.put("GET_FOUND", ProtocolStatistics.get(Counter.GET_FOUND));
+		completed.put("GET_NOTFOUND", ProtocolStatistics.get(Counter.GET_NOTFOUND));
+		completed.put("PUT_OK", ProtocolStatistics.get(Counter.PUT_OK));
+		completed.put("PUT_COLLISION", ProtocolStatistics.get(Counter.PUT_COLLISION));
+		completed.put("SWAP_OK", ProtocolStatistics.get(Counter.SWAP_SESSIONS_COMPLETED));
+		completed.put("SWAP_REFUSED", ProtocolStatistics.get(Counter.SWAP_SESSIONS_REFUSED));
+		snap.requestsCompleted = Collections.unmodifiableMap(completed);
+
+		// messages in-flight (the messages sent to failed FPeers are never delivered, so they remain counted)
+		snap.messagesInFlight = ProtocolStatistics.get(Counter.MESSAGES_SENT) - ProtocolStatistics.get(Counter.MESSAGES_DELIVERED);
+
+		// HashMaps entries and stores sizes of all the FPeers
+		for (int i = 0; i < Network.size(); i++)
+		{
+			final FPeer fpeer = (FPeer) Network.get(i);
+			snap.SRmessagesEntries += ((MessagesExchangerProtocol) fpeer.getProtocol(this.protocolPID)).getSRmessagesCount();
+
+			final int storeSize = fpeer.getContentStore().size();
+			snap.storedKeys += storeSize;
+			snap.maxStoreSize = Math.max(snap.maxStoreSize, storeSize);
+		}
+
+		// SWAP acceptance rate, on the answered SWAP sessions
+		final long swapOK = ProtocolStatistics.get(Counter.SWAP_SESSIONS_COMPLETED);
+		final long swapAnswered = swapOK + ProtocolStatistics.get(Counter.SWAP_SESSIONS_REFUSED);
+		snap.swapAcceptanceRate = (swapAnswered == 0) ? 0.0 : (double) swapOK / swapAnswered;
+
+		// events processed per second of wall-clock time, since the previous snapshot
+		final long events = ProtocolStatistics.get(Counter.EVENTS_PROCESSED);
+		final long wallTime = System.nanoTime();
+		snap.eventsPerSecond = (wallTime == this.lastWallTime) ? 0.0 : (events - this.lastEvents) * 1e9 / (wallTime - this.lastWallTime);
+		this.lastEvents = events;
+		this.lastWallTime = wallTime;
+
+		// heap used and total garbage collection time
+		snap.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			snap.gcTime += Math.max(0, gc.getCollectionTime());
+
+		// publish the snapshot and append it to the metrics file
+		this.last = snap;
+		writeSnapshot(snap);
+
+		return false;
+	}
+
+
+	/**
+	 * Appends the passed snapshot {@code snap}, as a JSON line, to the metrics file of the simulation.
+	 * @param snap the snapshot to write
+	 **/
+	private static void writeSnapshot(Snapshot snap)
+	{
+		StringBuilder sb = new StringBuilder("{");
+		sb.append("\"time\":").append(snap.simulationTime);
+		sb.append(",\"issued\":");
+		appendJSON(sb, snap.requestsIssued);
+		sb.append(",\"completed\":");
+		appendJSON(sb, snap.requestsCompleted);
+		sb.append(",\"inFlight\":").append(snap.messagesInFlight);
+		sb.append(",\"srEntries\":").append(snap.SRmessagesEntries);
+		sb.append(",\"storedKeys\":").append(snap.storedKeys);
+		sb.append(",\"maxStoreSize\":").append(snap.maxStoreSize);
+		sb.append(",\"swapAcceptance\":").append(snap.swapAcceptanceRate);
+		sb.append(",\"eventsPerSec\":").append(snap.eventsPerSecond);
+		sb.append(",\"heapUsed\":").append(snap.heapUsed);
+		sb.append(",\"gcTimeMs\":").append(snap.gcTime);
+		sb.append("}");
+
+		PrintWriter metricsFile = null;
+		try
+		{
+			metricsFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sim_metrics_" + MessagesExchangerProtocol.getStatisticsFileExtension() + ".jsonl", true)));
+			metricsFile.println(sb);
+		}
+		catch (IOException e)
+		{
+			System.out.println("SIMULATION METRICS: error during metrics file opening/writing:\n" + e.getMessage());
+		}
+		finally
+		{
+			// close the file
+			if (metricsFile != null)
+				metricsFile.close();
+		}
+	}
+
+
+	/**
+	 * Appends the passed map {@code map} (with keys that do not need escaping), as a JSON object, to {@code sb}.
+	 * @param sb	the builder on which append the map
+	 * @param map	the map to append
+	 **/
+	private static void appendJSON(StringBuilder sb, Map<String, Long> map)
+	{
+		sb.append("{");
+		boolean first = true;
+		for (Map.Entry<String, Long> e : map.entrySet())
+		{
+			if (!first)
+				sb.append(",");
+			sb.append("\"").append(e.getKey()).append("\":").append(e.getValue());
+			first = false;
+		}
+		sb.append("}");
+	}
+
+
+	@Override
+	public long getSimulationTime()
+	{
+		return this.last.simulationTime;
+	}
+
+
+	@Override
+	public Map<String, Long> getRequestsIssued()
+	{
+		return this.last.requestsIssued;
+	}
+
+
+	@Override
+	public Map<String, Long> getRequestsCompleted()
+	{
+		return this.last.requestsCompleted;
+	}
+
+
+	@Override
+	public long getMessagesInFlight()
+	{
+		return this.last.messagesInFlight;
+	}
+
+
+	@Override
+	public long getSRmessagesEntries()
+	{
+		return this.last.SRmessagesEntries;
+	}
+
+
+	@Override
+	public long getStoredKeys()
+	{
+		return this.last.storedKeys;
+	}
+
+
+	@Override
+	public int getMaxStoreSize()
+	{
+		return this.last.maxStoreSize;
+	}
+
+
+	@Override
+	public double getSwapAcceptanceRate()
+	{
+		return this.last.swapAcceptanceRate;
+	}
+
+
+	@Override
+	public double getEventsPerSecond()
+	{
+		return this.last.eventsPerSecond;
+	}
+
+
+	@Override
+	public long getHeapUsed()
+	{
+		return this.last.heapUsed;
+	}
+
+
+	@Override
+	public long getGcTime()
+	{
+		return this.last.gcTime;
+	}
+}
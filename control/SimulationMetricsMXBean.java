@@ -0,0 +1,88 @@
+package control;
+
+import java.util.Map;
+
+/**
+ *  Management interface of the {@code SimulationMetrics} control: it exposes through JMX the values of the last snapshot
+ *  of the simulation metrics, so that a long simulation can be watched (e.g. with JConsole) while it runs.
+ **/
+
+public interface SimulationMetricsMXBean
+{
+	/**
+	 * Gets out the simulated time of the last snapshot.
+	 * @return the simulated time of the last snapshot.
+	 **/
+	public long getSimulationTime();
+
+
+	/**
+	 * Gets out the number of requests issued up to now, by request type (GET, PUT, SWAP).
+	 * @return the number of issued requests, by type.
+	 **/
+	public Map<String, Long> getRequestsIssued();
+
+
+	/**
+	 * Gets out the number of requests completed up to now, by outcome type (e.g. GET_FOUND, PUT_OK, SWAP_REFUSED).
+	 * @return the number of completed requests, by outcome type.
+	 **/
+	public Map<String, Long> getRequestsCompleted();
+
+
+	/**
+	 * Gets out the number of messages sent and not yet delivered.
+	 * @return the number of messages in-flight.
+	 **/
+	public long getMessagesInFlight();
+
+
+	/**
+	 * Gets out the total number of entries of the FPeers' HashMaps of the received and sent messages.
+	 * @return the total number of HashMaps entries.
+	 **/
+	public long getSRmessagesEntries();
+
+
+	/**
+	 * Gets out the total number of content location keys stored by the FPeers.
+	 * @return the total number of stored keys.
+	 **/
+	public long getStoredKeys();
+
+
+	/**
+	 * Gets out the maximum number of content location keys stored by a single FPeer.
+	 * @return the maximum size of a store.
+	 **/
+	public int getMaxStoreSize();
+
+
+	/**
+	 * Gets out the ratio between the SWAP sessions completed and the SWAP sessions answered (completed or refused).
+	 * @return the SWAP acceptance rate.
+	 **/
+	public double getSwapAcceptanceRate();
+
+
+	/**
+	 * Gets out the number of events (messages deliveries and cycles) processed per second of wall-clock time, since the
+	 * previous snapshot.
+	 * @return the events processed per second.
+	 **/
+	public double getEventsPerSecond();
+
+
+	/**
+	 * Gets out the heap memory used by the simulator, in bytes.
+	 * @return the used heap memory.
+	 **/
+	public long getHeapUsed();
+
+
+	/**
+	 * Gets out the total time spent in garbage collection, in milliseconds.
+	 * @return the garbage collection time.
+	 **/
+	public long getGcTime();
+}
@@ -0,0 +1,157 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import peersim.core.CommonState;
+import peersim.core.Network;
+import protocol.MessagesExchangerProtocol;
+import protocol.ProtocolStatistics;
+import protocol.ProtocolStatistics.Counter;
+import protocol.RoutingStretch;
+import structure.ContentCache;
+import structure.DistanceKernels;
+import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.LatencyHistogram;
+import structure.Message.Type;
+import structure.NeighborColumns;
+import structure.StoreColumns;
+
+/**
+ *  Class that implements the control that writes, on a report file, a summary of the protocol counters collected during
+ *  the simulation (e.g. SWAP sessions outcomes, GET hit ratio, stores evictions, cache hit rate, Bloom filters memory, requests latencies percentiles). 
+ *  It should be scheduled with the {@code FINAL} flag, so that it is executed only once, at the end of the simulation.
+ **/
+
+public class SimulationReport implements peersim.core.Control
+{
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public SimulationReport(String prefix)
+	{
+	}
+
+
+	/**
+	 * Writes the summary of the protocol counters on the report file of the simulation.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		PrintWriter reportFile = null;
+		try 
+		{
+			// create the report file, with the same extension of the statistics file of the simulation
+			reportFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sim_report_" + MessagesExchangerProtocol.getStatisticsFileExtension() + ".stat", false)));
+			reportFile.println("Simulation Time: \t " + CommonState.getTime());
+
+			// wait for the background threads of the routing stretch analysis (if enabled) to measure all the samples
+			RoutingStretch.finish();
+
+			// write the values of all the counters
+			for (Counter c : Counter.values())
+				reportFile.println(c + ": \t " + ProtocolStatistics.get(c));
+
+			// collect the stores and caches statistics of all the FPeers
+			long storedKeys = 0, evictions = 0, cachedKeys = 0, filtersMemory = 0, snapshotsMemory = 0;
+			for (int i = 0; i < Network.size(); i++)
+			{
+				final FPeer fpeer = (FPeer) Network.get(i);
+				storedKeys += fpeer.getContentStore().size();
+				evictions += fpeer.getContentStore().getEvictions();
+				if (fpeer.getContentStore().getFilter() != null)
+					filtersMemory += fpeer.getContentStore().getFilter().memoryBytes();
+				snapshotsMemory += fpeer.getNeighborFiltersMemory();
+
+				final ContentCache cache = fpeer.getContentCache();
+				if (cache != null)
+					cachedKeys += cache.size();
+			}
+
+			// the GET hit ratio is computed on all the ended GET requests
+			final long getFound = ProtocolStatistics.get(Counter.GET_FOUND);
+			final long getEnded = getFound + ProtocolStatistics.get(Counter.GET_NOTFOUND);
+
+			reportFile.println("GET Hit Ratio: \t " + ((getEnded == 0) ? 0.0 : (double) getFound / getEnded));
+			reportFile.println("Stored Keys: \t " + storedKeys);
+			reportFile.println("Store Evictions: \t " + evictions);
+			reportFile.println("Cache Hit Rate: \t " + ProtocolStatistics.ratio(Counter.CACHE_HITS, Counter.CACHE_LOOKUPS));
+			reportFile.println("Cached Keys: \t " + cachedKeys);
+			reportFile.println("Filter False Positive Rate: \t " + ProtocolStatistics.ratio(Counter.FILTER_FALSE_POSITIVES, Counter.FILTER_FORWARDS));
+			reportFile.println("Filters Memory (bytes): \t " + filtersMemory);
+			reportFile.println("Filter Stale Positive Rate: \t " + ProtocolStatistics.ratio(Counter.FILTER_STALE_POSITIVES, Counter.FILTER_FORWARDS));
+			reportFile.println("Filter Copies Memory (bytes): \t " + snapshotsMemory);
+			reportFile.println("Filter Copies Memory per FPeer (bytes): \t " + ((Network.size() == 0) ? 0.0 : (double) snapshotsMemory / Network.size()));
+
+			// write the memory of the shared columns (directory, and neighborhoods and stores slots with "columnarState") and
+			// the heap occupied by each FPeer, as measured at the creation of the overlay network (if measured)
+			final long columnsMemory = FPeerDirectory.memoryBytes() + NeighborColumns.memoryBytes() + StoreColumns.memoryBytes();
+			reportFile.println("Columns Memory (directory/neighbors/stores bytes): \t " + FPeerDirectory.memoryBytes() + "\t" + NeighborColumns.memoryBytes() + "\t" + StoreColumns.memoryBytes());
+			reportFile.println("Columns Memory per FPeer (bytes): \t " + ((FPeerDirectory.size() == 0) ? 0.0 : (double) columnsMemory / FPeerDirectory.size()));
+			if (OverlayInit.getMeasuredBytesPerFPeer() >= 0)
+				reportFile.println("Measured Heap per FPeer (bytes): \t " + OverlayInit.getMeasuredBytesPerFPeer());
+
+			// write the implementation of the distance kernels (the results do not depend on it)
+			reportFile.println("Distance Kernels: \t " + DistanceKernels.describe());
+
+			// write the percentiles of the end-to-end and per-hop latencies, for each outcome of the ended requests
+			for (Type t : Type.values())
+			{
+				final LatencyHistogram latency = ProtocolStatistics.getLatencyHistogram(t);
+				if (latency.getCount() == 0)
+					continue;
+
+				final LatencyHistogram hopLatency = ProtocolStatistics.getHopLatencyHistogram(t);
+				final double scale = ProtocolStatistics.HOP_LATENCY_SCALE;
+				reportFile.println(t + " Latency (count/mean/p50/p90/p99/max): \t " + latency.getCount() + "\t" + latency.getMean() + "\t" 
+								   + latency.getPercentile(50) + "\t" + latency.getPercentile(90) + "\t" + latency.getPercentile(99) + "\t" + latency.getMax());
+				reportFile.println(t + " Hop Latency (mean/p50/p90/p99/max): \t " + (hopLatency.getMean() / scale) + "\t" + (hopLatency.getPercentile(50) / scale) + "\t" 
+								   + (hopLatency.getPercentile(90) / scale) + "\t" + (hopLatency.getPercentile(99) / scale) + "\t" + (hopLatency.getMax() / scale));
+			}
+
+			// write the percentiles of the routing stretches of the sampled requests (if analyzed), for each outcome
+			if (RoutingStretch.isEnabled())
+			{
+				for (Type t : Type.values())
+				{
+					final LatencyHistogram stretch = RoutingStretch.getStretchHistogram(t);
+					if (stretch.getCount() == 0)
+						continue;
+
+					final double scale = RoutingStretch.STRETCH_SCALE;
+					reportFile.println(t + " Stretch (count/mean/p50/p90/p99/max): \t " + stretch.getCount() + "\t" + (stretch.getMean() / scale) + "\t" + (stretch.getPercentile(50) / scale) + "\t" 
+									   + (stretch.getPercentile(90) / scale) + "\t" + (stretch.getPercentile(99) / scale) + "\t" + (stretch.getMax() / scale));
+				}
+			}
+
+			// write the routing accuracy w.r.t. the location ring oracle (if maintained), for each outcome of the ended requests
+			for (Type t : Type.values())
+			{
+				final LatencyHistogram rankDistance = ProtocolStatistics.getRankDistanceHistogram(t);
+				if (rankDistance.getCount() == 0)
+					continue;
+
+				reportFile.println(t + " Routing Accuracy (count/mean rank distance/p50/p90/p99/max/mean key gap): \t " + rankDistance.getCount() + "\t" + rankDistance.getMean() + "\t" 
+								   + rankDistance.getPercentile(50) + "\t" + rankDistance.getPercentile(90) + "\t" + rankDistance.getPercentile(99) + "\t" + rankDistance.getMax() + "\t" + ProtocolStatistics.getMeanKeyGap(t));
+			}
+		}
+		catch (IOException e) 
+		{
+			System.out.println("SIMULATION REPORT: error during report file opening/writing:\n" + e.getMessage());
+		}
+		finally
+		{
+			// close the file
+			if (reportFile != null)
+				reportFile.close();
+		}
+
+		return false;
+	}
+}
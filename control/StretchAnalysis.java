@@ -0,0 +1,43 @@
+package control;
+
+import peersim.config.Configuration;
+import protocol.RoutingStretch;
+
+/**
+ *  Class that implements the control that drives the sampled analysis of the routing stretch (see {@code RoutingStretch}):
+ *  it enables the sampling of the ended requests and, periodically (parameter {@code step}), freezes a snapshot of the
+ *  overlay network on which the background threads compute the shortest paths of the buffered samples. The stretches are
+ *  written in the report of the simulation. <br><br>
+ *
+ *  A shorter {@code step} measures the samples on snapshots closer to the overlay network on which they were routed (the
+ *  swaps change it continuously), at the cost of more frequent snapshots.
+ **/
+
+public class StretchAnalysis implements peersim.core.Control
+{
+	/**
+	 * Constructor method. Enables the sampling of the ended requests.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public StretchAnalysis(String prefix)
+	{
+		RoutingStretch.enable(Configuration.getPid(prefix + ".linkable_pid"),
+							  Configuration.getDouble(prefix + ".sampling", 0.01),
+							  Configuration.getInt(prefix + ".maxPending", 100000),
+							  Configuration.getInt(prefix + ".maxDepth", 32),
+							  Configuration.getInt(prefix + ".threads", 2));
+	}
+
+
+	/**
+	 * Freezes a snapshot of the overlay network and hands the buffered samples to the background threads.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		RoutingStretch.refresh();
+
+		return false;
+	}
+}
@@ -0,0 +1,139 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import protocol.MessagesExchangerProtocol;
+import structure.LinkLengthStatistics;
+
+/**
+ *  Class that implements the control that watches, periodically (parameter {@code step}), the convergence of the location
+ *  keys swapping, through the mean log link length of the overlay network (see {@code LinkLengthStatistics}), and detects
+ *  the end of the warm-up: the plateau is reached when the relative change of the mean, over the last {@code window}
+ *  samples, is lower than {@code epsilon}. <br><br>
+ *
+ *  At the plateau, the control performs its {@code action}: <br>
+ *  - {@code none}: the plateau is only reported; <br>
+ *  - {@code requests}: the FPeers generate GET and PUT requests only after the warm-up (before, they only swap); <br>
+ *  - {@code swaps}: the FPeers stop starting new SWAP sessions after the warm-up. <br><br>
+ *
+ *  Each sample (time, mean log link length, links and histogram of the links lengths) is appended to the convergence file
+ *  of the simulation.
+ **/
+
+public class SwapConvergence implements peersim.core.Control
+{
+	// enum for the actions performed at the plateau
+	private static enum Action {NONE, REQUESTS, SWAPS}
+
+	// the PID of the used Linkable protocol
+	private final int linkablePID;
+
+	// number of samples over which the plateau is checked, and relative change threshold
+	private final int window;
+	private final double epsilon;
+
+	// the action to perform at the plateau
+	private final Action action;
+
+	// the last samples of the mean log link length (circular buffer) and the number of taken samples
+	private final double[] samples;
+	private long numSamples;
+
+	// the time at which the plateau has been detected (-1 if not yet)
+	private long plateauTime;
+
+
+	/**
+	 * Constructor method. If the action is {@code requests}, disables the requests generation until the plateau.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the control.
+	 **/
+	public SwapConvergence(String prefix)
+	{
+		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+		this.window = Math.max(1, Configuration.getInt(prefix + ".window", 5));
+		this.epsilon = Configuration.getDouble(prefix + ".epsilon", 0.001);
+		this.action = Action.valueOf(Configuration.getString(prefix + ".action", "none").toUpperCase());
+
+		this.samples = new double[this.window + 1];
+		this.numSamples = 0;
+		this.plateauTime = -1;
+
+		MessagesExchangerProtocol.setRequestsEnabled(this.action != Action.REQUESTS);
+		MessagesExchangerProtocol.setSwapsEnabled(true);
+	}
+
+
+	/**
+	 * Samples the mean log link length, checks the plateau and, when it is reached the first time, performs the action.
+	 * @return always {@code false}.
+	 **/
+	@Override
+	public boolean execute()
+	{
+		final long now = CommonState.getTime();
+
+		// the first execution computes the statistics scanning the overlay network; then, they are updated by the swaps
+		if (!LinkLengthStatistics.isEnabled())
+			LinkLengthStatistics.rebuild(this.linkablePID);
+
+		final double mean = LinkLengthStatistics.getMeanLogLength();
+		this.samples[(int) (this.numSamples % this.samples.length)] = mean;
+		this.numSamples++;
+
+		// compare the last sample with the one taken "window" samples before
+		if (this.plateauTime < 0 && this.numSamples > this.window)
+		{
+			final double previous = this.samples[(int) (this.numSamples % this.samples.length)];
+			if (Math.abs(mean - previous) <= this.epsilon * Math.abs(previous))
+			{
+				this.plateauTime = now;
+				System.out.println("SWAP CONVERGENCE: plateau of the mean log link length (" + mean + ") detected at time " + now + " ...");
+
+				if (this.action == Action.REQUESTS)
+					MessagesExchangerProtocol.setRequestsEnabled(true);
+				else if (this.action == Action.SWAPS)
+					MessagesExchangerProtocol.setSwapsEnabled(false);
+			}
+		}
+
+		writeSample(now, mean);
+
+		return false;
+	}
+
+
+	/**
+	 * Appends the current sample, as a tab-separated line, to the convergence file of the simulation.
+	 * @param now	the current simulation time
+	 * @param mean	the current mean log link length
+	 **/
+	private void writeSample(long now, double mean)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(now).append('\t').append(mean).append('\t').append(LinkLengthStatistics.getNumLinks()).append('\t').append(this.plateauTime >= 0);
+		for (long count : LinkLengthStatistics.getHistogram())
+			sb.append('\t').append(count);
+
+		PrintWriter convergenceFile = null;
+		try
+		{
+			convergenceFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sim_convergence_" + MessagesExchangerProtocol.getStatisticsFileExtension() + ".stat", true)));
+			convergenceFile.println(sb);
+		}
+		catch (IOException e)
+		{
+			System.out.println("SWAP CONVERGENCE: error during convergence file opening/writing:\n" + e.getMessage());
+		}
+		finally
+		{
+			// close the file
+			if (convergenceFile != null)
+				convergenceFile.close();
+		}
+	}
+}
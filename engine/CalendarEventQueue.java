@@ -0,0 +1,346 @@
+package engine;
+
+import java.util.PriorityQueue;
+
+import peersim.config.Configuration;
+import peersim.core.Node;
+import peersim.edsim.PriorityQ;
+
+/**
+ *  Event queue for the PeerSim {@code EDSimulator} (parameter {@code simulation.eventqueue}), alternative to the default
+ *  binary heap. It is a calendar queue: a ring of FIFO buckets, one for each unit of time of the window
+ *  [cursor, cursor + buckets), where the events are enqueued and dequeued in O(1); the events beyond the window wait in an
+ *  overflow heap, and are moved into the ring when the window reaches them. <br><br>
+ *
+ *  Differently from the default heap, which breaks the ties between the events having the same time with pseudo-random
+ *  priorities, the events having the same time are delivered in FIFO order. The events added with an explicit priority
+ *  (i.e. the controls) are delivered before the other events having the same time, in priority order.
+ **/
+
+public class CalendarEventQueue implements PriorityQ
+{
+	// parameter name of the number of buckets of the ring
+	private static final String PAR_BUCKETS = "buckets";
+
+	// initial capacity of a bucket
+	private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+
+	/**
+	 *  Class that implements a FIFO bucket of the ring, as circular parallel arrays (all the events of a bucket have the
+	 *  same time, so it is not stored).
+	 **/
+	private static class Bucket
+	{
+		// the events, the nodes and the protocol identifiers of the enqueued events
+		private Object[] events = new Object[INITIAL_BUCKET_CAPACITY];
+		private Node[] nodes = new Node[INITIAL_BUCKET_CAPACITY];
+		private byte[] pids = new byte[INITIAL_BUCKET_CAPACITY];
+
+		// position of the first event and number of events
+		private int head = 0;
+		private int count = 0;
+
+
+		/**
+		 * Appends an event to the bucket, enlarging it if needed.
+		 * @param event	the event to append
+		 * @param node	the node to which deliver the event
+		 * @param pid	the identifier of the protocol to which deliver the event
+		 **/
+		private void append(Object event, Node node, byte pid)
+		{
+			if (this.count == this.events.length)
+			{
+				Object[] newEvents = new Object[this.count * 2];
+				Node[] newNodes = new Node[this.count * 2];
+				byte[] newPids = new byte[this.count * 2];
+				for (int i = 0; i < this.count; i++)
+				{
+					final int j = (this.head + i) % this.events.length;
+					newEvents[i] = this.events[j];
+					newNodes[i] = this.nodes[j];
+					newPids[i] = this.pids[j];
+				}
+
+				this.events = newEvents;
+				this.nodes = newNodes;
+				this.pids = newPids;
+				this.head = 0;
+			}
+
+			final int tail = (this.head + this.count) % this.events.length;
+			this.events[tail] = event;
+			this.nodes[tail] = node;
+			this.pids[tail] = pid;
+			this.count++;
+		}
+
+
+		/**
+		 * Removes the first event of the (not empty) bucket, copying it into the passed {@code ev}.
+		 * @param ev the event in which copy the removed event
+		 **/
+		private void removeFirst(PriorityQ.Event ev)
+		{
+			ev.event = this.events[this.head];
+			ev.node = this.nodes[this.head];
+			ev.pid = this.pids[this.head];
+
+			// release the references, so that the delivered events can be collected
+			this.events[this.head] = null;
+			this.nodes[this.head] = null;
+			this.head = (this.head + 1) % this.events.length;
+			this.count--;
+		}
+	}
+
+
+	/**
+	 *  Class that implements an event waiting outside the ring (overflow or explicit priority events), ordered by time,
+	 *  priority and insertion order.
+	 **/
+	private static class Entry implements Comparable<Entry>
+	{
+		private final long time;
+		private final long priority;
+		private final long seq;
+		private final Object event;
+		private final Node node;
+		private final byte pid;
+
+		private Entry(long _time, long _priority, long _seq, Object _event, Node _node, byte _pid)
+		{
+			this.time = _time;
+			this.priority = _priority;
+			this.seq = _seq;
+			this.event = _event;
+			this.node = _node;
+			this.pid = _pid;
+		}
+
+		@Override
+		public int compareTo(Entry e)
+		{
+			if (this.time != e.time)
+				return (this.time < e.time) ? -1 : 1;
+			if (this.priority != e.priority)
+				return (this.priority < e.priority) ? -1 : 1;
+			return Long.compare(this.seq, e.seq);
+		}
+	}
+
+
+	// the ring of buckets (its length is a power of two) and the relative mask
+	private final Bucket[] ring;
+	private final int mask;
+
+	// the first time of the ring window: the bucket of time t, for t in [cursor, cursor + ring.length), is ring[t & mask]
+	private long cursor;
+
+	// number of events in the ring
+	private int ringCount;
+
+	// the events beyond the ring window
+	private final PriorityQueue<Entry> overflow;
+
+	// the events added with an explicit priority (e.g. the controls)
+	private final PriorityQueue<Entry> prioritized;
+
+	// insertion counter, used to keep the FIFO order among the events outside the ring
+	private long seq;
+
+	// the event returned by {@code removeFirst} (re-used, as in the PeerSim heap)
+	private final PriorityQ.Event ev;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the PeerSim configuration file, of the event queue.
+	 **/
+	public CalendarEventQueue(String prefix)
+	{
+		final int buckets = Configuration.getInt(prefix + "." + PAR_BUCKETS, 1024);
+		this.ring = new Bucket[Integer.highestOneBit(Math.max(2, buckets) - 1) << 1];
+		this.mask = this.ring.length - 1;
+		this.cursor = 0;
+		this.ringCount = 0;
+		this.overflow = new PriorityQueue<Entry>();
+		this.prioritized = new PriorityQueue<Entry>();
+		this.seq = 0;
+		this.ev = new PriorityQ.Event();
+
+		// register the queue into the context of the simulation, so that the DirectTransport enqueues the zero-delay events directly
+		SimulationContext.current().setEventQueue(this);
+	}
+
+
+	/**
+	 * Appends an event to the bucket of the passed time, that must be in the ring window.
+	 * @param time	the time of the event
+	 * @param event	the event
+	 * @param node	the node to which deliver the event
+	 * @param pid	the identifier of the protocol to which deliver the event
+	 **/
+	private void appendToRing(long time, Object event, Node node, byte pid)
+	{
+		final int index = (int) (time & this.mask);
+		if (this.ring[index] == null)
+			this.ring[index] = new Bucket();
+
+		this.ring[index].append(event, node, pid);
+		this.ringCount++;
+	}
+
+
+	/**
+	 * Moves into the ring the overflow events that are in the ring window.
+	 **/
+	private void migrateOverflow()
+	{
+		final long windowEnd = this.cursor + this.ring.length;
+		while (!this.overflow.isEmpty() && this.overflow.peek().time < windowEnd)
+		{
+			final Entry e = this.overflow.poll();
+			this.appendToRing(e.time, e.event, e.node, e.pid);
+		}
+	}
+
+
+	/**
+	 * Checks if the bucket of the current cursor time is empty.
+	 * @return {@code true} if the bucket is empty. {@code false} otherwise.
+	 **/
+	private boolean cursorBucketEmpty()
+	{
+		final Bucket b = this.ring[(int) (this.cursor & this.mask)];
+		return b == null || b.count == 0;
+	}
+
+
+	/**
+	 * Returns the number of events in the queue.
+	 * @return the number of events in the queue.
+	 **/
+	@Override
+	public int size()
+	{
+		return this.ringCount + this.overflow.size() + this.prioritized.size();
+	}
+
+
+	/**
+	 * Adds an event to the queue, in FIFO order with the other events having the same time.
+	 * @param time	the time of the event
+	 * @param event	the event
+	 * @param node	the node to which deliver the event
+	 * @param pid	the identifier of the protocol to which deliver the event
+	 **/
+	@Override
+	public void add(long time, Object event, Node node, byte pid)
+	{
+		// the events are never added in the past of the cursor, since the cursor never goes beyond the current time
+		if (time < this.cursor + this.ring.length)
+			this.appendToRing(Math.max(time, this.cursor), event, node, pid);
+		else
+			this.overflow.add(new Entry(time, 0, this.seq++, event, node, pid));
+	}
+
+
+	/**
+	 * Adds an event having an explicit priority to the queue: it will be delivered before all the events having the same
+	 * time and added without priority.
+	 * @param time		the time of the event
+	 * @param event		the event
+	 * @param node		the node to which deliver the event
+	 * @param pid		the identifier of the protocol to which deliver the event
+	 * @param priority	the priority of the event (lower values first)
+	 **/
+	@Override
+	public void add(long time, Object event, Node node, byte pid, long priority)
+	{
+		this.prioritized.add(new Entry(time, priority, this.seq++, event, node, pid));
+	}
+
+
+	/**
+	 * Adds an event at the time of the cursor, i.e. the current time of the simulation.
+	 * @param event	the event
+	 * @param node	the node to which deliver the event
+	 * @param pid	the identifier of the protocol to which deliver the event
+	 * @param now	the current time of the simulation
+	 **/
+	void addNow(Object event, Node node, byte pid, long now)
+	{
+		this.appendToRing(Math.max(now, this.cursor), event, node, pid);
+	}
+
+
+	/**
+	 * Removes the first event of the queue.
+	 * @return the first event of the queue (the returned object is re-used by the next calls), or {@code null} if the
+	 * 		   queue is empty.
+	 **/
+	@Override
+	public PriorityQ.Event removeFirst()
+	{
+		if (this.size() == 0)
+			return null;
+
+		// the cursor must not go beyond the time of the first prioritized event
+		final long limit = this.prioritized.isEmpty() ? Long.MAX_VALUE : this.prioritized.peek().time;
+
+		// if the ring is empty, jump directly to the first overflow event
+		if (this.ringCount == 0 && !this.overflow.isEmpty() && this.overflow.peek().time < limit)
+		{
+			this.cursor = Math.max(this.cursor, this.overflow.peek().time);
+			this.migrateOverflow();
+		}
+
+		// search for the first not empty bucket
+		while (this.ringCount > 0 && this.cursorBucketEmpty() && this.cursor < limit)
+		{
+			this.cursor++;
+			this.migrateOverflow();
+		}
+
+		if (this.ringCount > 0 && !this.cursorBucketEmpty() && this.cursor < limit)
+		{
+			this.ring[(int) (this.cursor & this.mask)].removeFirst(this.ev);
+			this.ev.time = this.cursor;
+			this.ringCount--;
+		}
+		else
+		{
+			final Entry e = this.prioritized.poll();
+			this.ev.time = e.time;
+			this.ev.event = e.event;
+			this.ev.node = e.node;
+			this.ev.pid = e.pid;
+		}
+
+		return this.ev;
+	}
+
+
+	/**
+	 * Returns the maximum time that can be stored in the queue.
+	 * @return the maximum time.
+	 **/
+	@Override
+	public long maxTime()
+	{
+		return Long.MAX_VALUE;
+	}
+
+
+	/**
+	 * Returns the maximum priority that can be stored in the queue (bounded, since the simulator adds 1 to it).
+	 * @return the maximum priority.
+	 **/
+	@Override
+	public long maxPriority()
+	{
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,74 @@
+package engine;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Node;
+import peersim.edsim.EDSimulator;
+import peersim.transport.Transport;
+
+/**
+ *  Transport protocol for the zero-delay links: it delivers (RELIABLY) messages at the current time of the simulation. 
+ *  If the {@code EDSimulator} uses the {@code CalendarEventQueue} (registered in the {@code SimulationContext}), the 
+ *  messages are appended directly to the FIFO bucket of the current time, skipping all the intermediate checks; otherwise, they are scheduled with a zero delay through
+ *  the {@code EDSimulator}.
+ **/
+
+public class DirectTransport implements Transport
+{
+	// the end time of the simulation (the messages are not delivered at, or after, this time)
+	private final long endTime;
+
+
+	/**
+	 * Constructor method.
+	 * @param prefix the prefix, in the configuration file, of the protocol.
+	 **/
+	public DirectTransport(String prefix)
+	{
+		this.endTime = Configuration.getLong("simulation.endtime", Long.MAX_VALUE);
+	}
+
+
+	/**
+	 * Returns the transport itself, since it has no per-node state.
+	 * @return the transport itself.
+	 **/
+	@Override
+	public Object clone()
+	{
+		return this;
+	}
+
+
+	/**
+	 * Delivers the message {@code msg}, from {@code src} to the protocol {@code pid} of {@code dest}, at the current time.
+	 * @param src  the node that sends the message
+	 * @param dest the node to which deliver the message
+	 * @param msg  the message to deliver
+	 * @param pid  the identifier of the protocol to which deliver the message
+	 **/
+	@Override
+	public void send(Node src, Node dest, Object msg, int pid)
+	{
+		final CalendarEventQueue queue = SimulationContext.current().getEventQueue();
+		final long now = CommonState.getTime();
+
+		if (queue == null)
+			EDSimulator.add(0, msg, dest, pid);
+		else if (now < this.endTime)
+			queue.addNow(msg, dest, (byte) pid, now);
+	}
+
+
+	/**
+	 * Returns the delivery delay, always 0.
+	 * @param src  the node that sends the message
+	 * @param dest the node to which deliver the message
+	 * @return 0.
+	 **/
+	@Override
+	public long getLatency(Node src, Node dest)
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,469 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import peersim.config.Configuration;
+import peersim.config.ParsedProperties;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+import peersim.core.Scheduler;
+import peersim.edsim.CDScheduler;
+import peersim.util.ExtendedRandom;
+import structure.FPeer;
+
+/**
+ *  Class that implements a multi-core, conservative, parallel discrete-event engine for the simulation of the overlay
+ *  network, alternative to the single-threaded PeerSim {@code EDSimulator}. <br><br>
+ *
+ *  The FPeers are partitioned into shards of contiguous location keys (sorted at the start of the simulation) and each
+ *  shard is executed by its own thread. The simulated time advances by windows [T, T + lookahead), where the lookahead
+ *  is the minimum delay of the {@code ShardedTransport}: no event generated inside a window can be delivered to another
+ *  shard inside the same window, so the shards can process their windows independently. At the end of each window
+ *  (barrier) the cross-shard events are moved from the lock-free inboxes to the shards' queues and the actions that
+ *  touch the state of FPeers owned by different shards (e.g. the location keys swap) are executed serially. <br><br>
+ *
+ *  The cycle-driven side of the protocol is executed by the engine itself (the {@code CDScheduler} initializer is
+ *  skipped) at the beginning of the windows aligned with its period, and the configured controls are executed at the
+ *  barriers. Notice that, during a window, {@code CommonState.getTime()} returns the window start time. <br>
+ *  The lookahead is set by the {@code ShardedTransport}, that never uses a minimum delay lower than 1 (so the shipped
+ *  configuration, {@code conf_parallel.cfg}, always runs in parallel); with any other transport the lookahead stays 0, the
+ *  conservative synchronization can not advance in parallel and the engine falls back on a single shard. <br>
+ *  During a window, the handlers only read the state of the FPeers owned by other shards, without side effects (e.g. the
+ *  cached sums of the log-distances are peeked, the stores are checked only at the barriers and the neighbors' filters
+ *  are read from the copies held by each FPeer); everything else (e.g. the swap leases, the registry of the contents
+ *  location keys, the cancelled walks) is a barrier action. The barrier actions are executed in a fixed order, and each
+ *  shard has its own pseudo-random generator and range of messages identifiers, so a simulation with the same seed and
+ *  the same number of shards gives the same results. <br><br>
+ *
+ *  Usage: {@code java engine.ParallelEDSimulator <configuration file>}
+ **/
+
+public class ParallelEDSimulator
+{
+	// configuration parameter: number of shards (threads) to use
+	private static final String PAR_SHARDS = "simulation.shards";
+
+	// configuration parameter: name of the protocol having the cycle-driven side to execute
+	private static final String PAR_CYCLE_PROTOCOL = "simulation.cycle_protocol";
+
+	// the lookahead used for the conservative synchronization of the shards (minimum transport delay)
+	private static long lookahead = 0;
+
+	// the shards of the simulation
+	private static Shard[] shards;
+
+	// shard identifier of each FPeer, indexed by FPeer serial
+	private static int[] shardOfSerial;
+
+	// the shard executed by the current thread ({@code null} outside the windows execution)
+	private static final ThreadLocal<Shard> currentShard = new ThreadLocal<Shard>();
+
+	// flag that indicates if the engine is running the simulation
+	private static volatile boolean running = false;
+
+
+	/**
+	 * Sets the lookahead used for the conservative synchronization of the shards.
+	 * @param value the minimum delay with which a message can be delivered
+	 **/
+	static void setLookahead(long value)
+	{
+		lookahead = value;
+	}
+
+
+	/**
+	 * Checks if the parallel engine is running the simulation.
+	 * @return {@code true} if the parallel engine is running the simulation. {@code false} otherwise.
+	 **/
+	public static boolean isRunning()
+	{
+		return running;
+	}
+
+
+	/**
+	 * Gets out the pseudo-random generator of the shard executed by the current thread (or the PeerSim common one, if the
+	 * current thread is not executing a shard).
+	 * @return the pseudo-random generator to use in the current thread.
+	 **/
+	public static ExtendedRandom currentRandom()
+	{
+		final Shard shard = currentShard.get();
+		return (shard == null) ? CommonState.r : shard.random;
+	}
+
+
+	/**
+	 * Gets out the current simulated time of the shard executed by the current thread (or the PeerSim common one, if the
+	 * current thread is not executing a shard).
+	 * @return the current simulated time in the current thread.
+	 **/
+	public static long currentTime()
+	{
+		final Shard shard = currentShard.get();
+		return (shard == null) ? CommonState.getTime() : shard.currentTime;
+	}
+
+
+	/**
+	 * Generates the identifier of a new message created by the shard executed by the current thread: each shard draws the
+	 * identifiers from its own range, so they do not depend on the threads interleaving.
+	 * @return the identifier of the new message, or {@code -1} if the current thread is not executing a shard.
+	 **/
+	static long newMessageID()
+	{
+		final Shard shard = currentShard.get();
+		return (shard == null) ? -1 : shard.newMessageID();
+	}
+
+
+	/**
+	 * Gets out the greatest counter of the messages identifiers of the shards (0 if the parallel engine is not used).
+	 * @return the low bits of the identifier of the next message created by the shards.
+	 **/
+	static long getShardsNextMessageID()
+	{
+		long next = 0;
+		if (shards != null)
+			for (Shard shard : shards)
+				next = Math.max(next, shard.getNextMessageID());
+
+		return next;
+	}
+
+
+	/**
+	 * Schedules the delivery of the event {@code event} to the protocol {@code pid} of {@code node}, {@code delay} units
+	 * of time after the current time of the running shard.
+	 * @param delay	the delivery delay
+	 * @param event	the event to deliver
+	 * @param node	the FPeer to which deliver the event
+	 * @param pid	the identifier of the protocol to which deliver the event
+	 **/
+	public static void add(long delay, Object event, Node node, int pid)
+	{
+		final Shard source = currentShard.get();
+		final Shard dest = shards[shardOfSerial[((FPeer) node).getSerial()]];
+
+		// outside the windows execution (e.g. initializers, controls) the engine is single-threaded
+		if (source == null)
+		{
+			dest.enqueue(dest.newEvent(CommonState.getTime() + delay, event, node, pid));
+			return;
+		}
+
+		final Shard.Event e = source.newEvent(source.currentTime + delay, event, node, pid);
+		if (source == dest)
+			dest.enqueue(e);
+		else
+			dest.inbox.add(e);
+	}
+
+
+	/**
+	 * Executes the passed {@code action} serially at the end of the current window, if the parallel engine is running,
+	 * or immediately otherwise. It must be used for the operations that modify the state of FPeers owned by other shards,
+	 * or the state shared by all the shards. The actions are executed in shard order and, for each shard, in registration
+	 * order, with the time, the pseudo-random generator and the messages identifiers of the shard that registered them.
+	 * @param action the action to execute
+	 **/
+	public static void runAtBarrier(Runnable action)
+	{
+		final Shard shard = currentShard.get();
+
+		if (shard == null)
+			action.run();
+		else
+			shard.deferToBarrier(action);
+	}
+
+
+	/**
+	 * Assigns the passed FPeer, that has joined the overlay network during the simulation (see the {@code ChurnControl}), to
+	 * a shard, so that its events are delivered and its cycles are executed. It does nothing if the parallel engine is not
+	 * used. It must be invoked outside the windows execution (e.g. by a control).
+	 * @param fpeer the FPeer that has joined the overlay network
+	 **/
+	public static void addFPeer(FPeer fpeer)
+	{
+		if (shards == null)
+			return;
+
+		final int serial = fpeer.getSerial();
+		if (serial >= shardOfSerial.length)
+			shardOfSerial = Arrays.copyOf(shardOfSerial, Math.max(serial + 1, 2 * shardOfSerial.length));
+
+		// the location key of a joined FPeer is pseudo-random, so the joined FPeers are spread on the shards by serial (it is
+		// appended, since its serial can be a recycled one: the shards visit the joined FPeers in order of join)
+		final int s = serial % shards.length;
+		shardOfSerial[serial] = s;
+		shards[s].nodes.add(fpeer);
+	}
+
+
+	/**
+	 * Partitions the FPeers of the overlay network in {@code numShards} shards of contiguous location keys.
+	 * @param numShards the number of shards to create
+	 **/
+	private static void partitionNetwork(int numShards)
+	{
+		final long seed = CommonState.r.getLastSeed();
+		final long nextMessageID = SimulationContext.current().getNextMessageID();
+		shards = new Shard[numShards];
+		for (int s = 0; s < numShards; s++)
+		{
+			shards[s] = new Shard(s, seed + s);
+			shards[s].setNextMessageID(nextMessageID);
+		}
+
+		// sort the FPeers by location key
+		FPeer[] sorted = new FPeer[Network.size()];
+		int maxSerial = -1;
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = (FPeer) Network.get(i);
+			maxSerial = Math.max(maxSerial, sorted[i].getSerial());
+		}
+		Arrays.sort(sorted);
+
+		// assign ranges of equal size to the shards
+		shardOfSerial = new int[maxSerial + 1];
+		for (int i = 0; i < sorted.length; i++)
+			shardOfSerial[sorted[i].getSerial()] = (int) ((long) i * numShards / sorted.length);
+
+		// each shard visits its FPeers in increasing serial order
+		Arrays.sort(sorted, new Comparator<FPeer>()
+		{
+			@Override
+			public int compare(FPeer p1, FPeer p2)
+			{
+				return Integer.compare(p1.getSerial(), p2.getSerial());
+			}
+		});
+
+		for (FPeer fpeer : sorted)
+			shards[shardOfSerial[fpeer.getSerial()]].nodes.add(fpeer);
+	}
+
+
+	/**
+	 * Computes the first time, greater or equal than {@code time}, in which the passed scheduler is active.
+	 * @param sch	the scheduler to check
+	 * @param time	the time from which start the search
+	 * @return the first activation time, or {@code Long.MAX_VALUE} if the scheduler is no more active.
+	 **/
+	private static long nextActivation(Scheduler sch, long time)
+	{
+		if (sch.fin)
+			return Long.MAX_VALUE;
+
+		long next = (time <= sch.from) ? sch.from : sch.from + ((time - sch.from + sch.step - 1) / sch.step) * sch.step;
+
+		return (next < sch.until) ? next : Long.MAX_VALUE;
+	}
+
+
+	/**
+	 * Runs the initializers of the configuration file, skipping the {@code CDScheduler} ones (the cycle-driven side of
+	 * the protocol is scheduled by the engine itself).
+	 **/
+	private static void runInitializers()
+	{
+		final String[] names = Configuration.getNames("init");
+
+		for (String name : names)
+		{
+			final Object init = Configuration.getInstance(name);
+			if (init instanceof CDScheduler)
+			{
+				System.out.println("- Skipping initializer " + name + ": cycle-driven side scheduled by the parallel engine");
+				continue;
+			}
+
+			System.out.println("- Running initializer " + name + ": " + init.getClass());
+			((Control) init).execute();
+		}
+	}
+
+
+	/**
+	 * Runs the simulation until the configured end time.
+	 * @throws InterruptedException if the main thread is interrupted while waiting for the shards
+	 * @throws ExecutionException if the execution of a shard fails
+	 **/
+	private static void runSimulation() throws InterruptedException, ExecutionException
+	{
+		final long endTime = Configuration.getLong("simulation.endtime");
+		final String cycleProtocol = Configuration.getString(PAR_CYCLE_PROTOCOL, "hp");
+		final int cyclePid = Configuration.lookupPid(cycleProtocol);
+		final long cycleStep = Configuration.getLong("protocol." + cycleProtocol + ".step");
+
+		// load the controls and their schedulers
+		final String[] controlNames = Configuration.getNames("control");
+		final Control[] controls = new Control[controlNames.length];
+		final Scheduler[] schedulers = new Scheduler[controlNames.length];
+		for (int i = 0; i < controlNames.length; i++)
+		{
+			controls[i] = (Control) Configuration.getInstance(controlNames[i]);
+			schedulers[i] = new Scheduler(controlNames[i]);
+		}
+
+		runInitializers();
+
+		// with zero lookahead (i.e. without the ShardedTransport) the shards can not advance in parallel
+		int numShards = Configuration.getInt(PAR_SHARDS, Runtime.getRuntime().availableProcessors());
+		if (lookahead < 1 && numShards > 1)
+		{
+			System.out.println("ParallelEDSimulator: lookahead is 0 (no ShardedTransport configured), falling back on a single shard ...");
+			numShards = 1;
+		}
+
+		partitionNetwork(numShards);
+		System.out.println("ParallelEDSimulator: " + numShards + " shards, lookahead " + lookahead + " ...");
+
+		ExecutorService pool = Executors.newFixedThreadPool(numShards);
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numShards);
+
+		// window bounds shared with the shards' tasks (published by the executor's happens-before)
+		final long[] window = new long[3];
+
+		for (final Shard shard : shards)
+		{
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					currentShard.set(shard);
+					try
+					{
+						shard.runWindow(window[0], window[1], (int) window[2]);
+					}
+					finally
+					{
+						currentShard.remove();
+					}
+					return null;
+				}
+			});
+		}
+
+		long nextCycleTime = 0;
+		long now = 0;
+		final long startTime = System.currentTimeMillis();
+		running = true;
+
+		try
+		{
+			while (true)
+			{
+				// compute the next simulated time in which something happens
+				long T = nextCycleTime;
+				for (Shard shard : shards)
+					T = Math.min(T, shard.nextEventTime());
+				for (Scheduler sch : schedulers)
+					T = Math.min(T, nextActivation(sch, now));
+
+				if (T >= endTime)
+					break;
+
+				CommonState.setTime(T);
+
+				// execute the controls active at the current time
+				for (int i = 0; i < controls.length; i++)
+					if (nextActivation(schedulers[i], T) == T)
+						controls[i].execute();
+
+				// compute the end of the window
+				final boolean isCycleTime = (T == nextCycleTime);
+				if (isCycleTime)
+					nextCycleTime += cycleStep;
+
+				long windowEnd = Math.min(endTime, nextCycleTime);
+				if (numShards > 1)
+					windowEnd = Math.min(windowEnd, T + lookahead);
+				for (Scheduler sch : schedulers)
+					windowEnd = Math.min(windowEnd, nextActivation(sch, T + 1));
+
+				// execute the shards in parallel for the window
+				window[0] = T;
+				window[1] = windowEnd;
+				window[2] = isCycleTime ? cyclePid : -1;
+				for (Future<Void> f : pool.invokeAll(tasks))
+					f.get();
+
+				// barrier: serial cross-shard actions and delivery of the cross-shard events
+				for (Shard shard : shards)
+				{
+					currentShard.set(shard);
+					try
+					{
+						shard.runBarrierActions();
+					}
+					finally
+					{
+						currentShard.remove();
+					}
+				}
+				for (Shard shard : shards)
+					shard.drainInbox();
+
+				now = windowEnd;
+			}
+		}
+		finally
+		{
+			running = false;
+			pool.shutdown();
+		}
+
+		// execute the final controls
+		CommonState.setTime(endTime);
+		for (int i = 0; i < controls.length; i++)
+			if (schedulers[i].fin)
+				controls[i].execute();
+
+		long processedEvents = 0;
+		for (Shard shard : shards)
+			processedEvents += shard.processedEvents;
+
+		final long elapsedTime = Math.max(1, System.currentTimeMillis() - startTime);
+		System.out.println("ParallelEDSimulator: " + processedEvents + " events processed in " + elapsedTime + " ms ("
+							+ (processedEvents * 1000 / elapsedTime) + " events/sec) ...");
+	}
+
+
+	/**
+	 * Loads the configuration file passed as argument and runs the simulation with the parallel engine.
+	 * @param args the PeerSim configuration file (and optional properties overrides)
+	 **/
+	public static void main(String[] args)
+	{
+		System.out.println("ParallelEDSimulator: loading configuration ...");
+		Configuration.setConfig(new ParsedProperties(args));
+		CommonState.initializeRandom(Configuration.getLong(CommonState.PAR_SEED, System.currentTimeMillis()));
+		CommonState.setEndTime(Configuration.getLong("simulation.endtime"));
+		Network.reset();
+
+		try
+		{
+			runSimulation();
+		}
+		catch (Exception e)
+		{
+			System.out.println("ParallelEDSimulator: simulation aborted ...\nError details: " + e);
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
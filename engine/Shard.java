@@ -0,0 +1,271 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import peersim.cdsim.CDProtocol;
+import peersim.core.Fallible;
+import peersim.core.Node;
+import peersim.edsim.EDProtocol;
+import peersim.util.ExtendedRandom;
+
+/**
+ *  Class that implements a partition (shard) of the overlay network simulated by the {@code ParallelEDSimulator}.
+ *  Each shard owns a subset of the FPeers and a private event queue, and it is executed by a single thread at a time.
+ *  Events sent to FPeers owned by other shards are delivered through the (lock-free) inbox of the destination shard.
+ **/
+
+class Shard
+{
+	/**
+	 * Class that implements an event scheduled into a shard. Events are ordered by delivery time and, for equal times,
+	 * by sequence number: the sequence embeds the identifier of the shard that generated the event (in a window or in one
+	 * of its barrier actions), or of the destination shard for the events generated outside the windows (e.g. by the
+	 * controls). Each shard generates its events in a fixed order (its window, then its barrier actions, executed in
+	 * shard order), so the order of the events does not depend on the threads interleaving.
+	 **/
+	static class Event implements Comparable<Event>
+	{
+		// the delivery time of the event
+		final long time;
+
+		// the sequence number of the event (generator shard identifier in the high bits)
+		final long seq;
+
+		// the payload of the event
+		final Object payload;
+
+		// the node to which deliver the event
+		final Node node;
+
+		// the identifier of the protocol to which deliver the event
+		final int pid;
+
+		Event(long _time, long _seq, Object _payload, Node _node, int _pid)
+		{
+			this.time = _time;
+			this.seq = _seq;
+			this.payload = _payload;
+			this.node = _node;
+			this.pid = _pid;
+		}
+
+		@Override
+		public int compareTo(Event e)
+		{
+			if (this.time != e.time)
+				return (this.time < e.time) ? -1 : 1;
+			else
+				return (this.seq < e.seq) ? -1 : ((this.seq == e.seq) ? 0 : 1);
+		}
+	}
+
+	// number of bits of the sequence numbers (and of the messages identifiers) reserved to the per-shard counters
+	static final int SEQ_BITS = 44;
+
+	// the identifier of the shard
+	final int id;
+
+	// pseudo-random generator private to the shard
+	final ExtendedRandom random;
+
+	// the FPeers owned by the shard, in increasing serial order
+	final ArrayList<Node> nodes;
+
+	// lock-free inbox of the events sent by the other shards
+	final ConcurrentLinkedQueue<Event> inbox;
+
+	// private event queue of the shard
+	private final PriorityQueue<Event> queue;
+
+	// actions to execute serially at the end of the current window, and the simulated times at which they are registered
+	private final ArrayList<Runnable> barrierActions;
+	private final ArrayList<Long> barrierTimes;
+
+	// counter used to generate the sequence numbers of the events
+	private long nextSeq;
+
+	// counter used to generate the identifiers of the messages created by the shard
+	private long nextMessageID;
+
+	// the simulated time of the event currently processed by the shard
+	long currentTime;
+
+	// number of events processed by the shard up to now
+	long processedEvents;
+
+
+	/**
+	 * Constructor method.
+	 * @param _id	the identifier of the shard
+	 * @param seed	the seed of the shard's pseudo-random generator
+	 **/
+	Shard(int _id, long seed)
+	{
+		this.id = _id;
+		this.random = new ExtendedRandom(seed);
+		this.nodes = new ArrayList<Node>();
+		this.inbox = new ConcurrentLinkedQueue<Event>();
+		this.queue = new PriorityQueue<Event>();
+		this.barrierActions = new ArrayList<Runnable>();
+		this.barrierTimes = new ArrayList<Long>();
+		this.nextSeq = 0;
+		this.nextMessageID = 0;
+		this.currentTime = 0;
+		this.processedEvents = 0;
+	}
+
+
+	/**
+	 * Creates a new event generated by the shard, assigning it the next sequence number.
+	 * @param time		the delivery time of the event
+	 * @param payload	the payload of the event
+	 * @param node		the node to which deliver the event
+	 * @param pid		the identifier of the protocol to which deliver the event
+	 * @return the created event.
+	 **/
+	Event newEvent(long time, Object payload, Node node, int pid)
+	{
+		return new Event(time, ((long) this.id << SEQ_BITS) | this.nextSeq++, payload, node, pid);
+	}
+
+
+	/**
+	 * Generates the identifier of a new message created by the shard: the shard identifier (plus one, so that the range
+	 * of the identifiers generated outside the shards stays free) is in the high bits.
+	 * @return the identifier of the new message.
+	 **/
+	long newMessageID()
+	{
+		return ((long) (this.id + 1) << SEQ_BITS) | this.nextMessageID++;
+	}
+
+
+	/**
+	 * Gets out the counter of the messages identifiers of the shard.
+	 * @return the counter that holds the low bits of the identifier of the next message created by the shard.
+	 **/
+	long getNextMessageID()
+	{
+		return this.nextMessageID;
+	}
+
+
+	/**
+	 * Changes the counter of the messages identifiers of the shard (e.g. when a simulation is resumed from a checkpoint,
+	 * the counters start after the identifiers already used).
+	 * @param value the low bits of the identifier of the next message created by the shard
+	 **/
+	void setNextMessageID(long value)
+	{
+		this.nextMessageID = value;
+	}
+
+
+	/**
+	 * Adds the passed event {@code e} to the private queue of the shard.
+	 * @param e the event to add
+	 **/
+	void enqueue(Event e)
+	{
+		this.queue.add(e);
+	}
+
+
+	/**
+	 * Moves all the events received from the other shards into the private queue of the shard.
+	 **/
+	void drainInbox()
+	{
+		Event e;
+		while ((e = this.inbox.poll()) != null)
+			this.queue.add(e);
+	}
+
+
+	/**
+	 * Gets out the delivery time of the next event of the shard.
+	 * @return the delivery time of the next event, or {@code Long.MAX_VALUE} if the queue is empty.
+	 **/
+	long nextEventTime()
+	{
+		final Event e = this.queue.peek();
+		return (e == null) ? Long.MAX_VALUE : e.time;
+	}
+
+
+	/**
+	 * Registers an action to execute serially at the end of the current window, at the current simulated time of the shard.
+	 * @param action the action to execute
+	 **/
+	void deferToBarrier(Runnable action)
+	{
+		this.barrierActions.add(action);
+		this.barrierTimes.add(this.currentTime);
+	}
+
+
+	/**
+	 * Executes in registration order, and then forgets, all the actions registered for the end of the current window: each
+	 * action sees the simulated time at which it has been registered, and the actions registered by the executed ones are
+	 * executed in the same pass.
+	 **/
+	void runBarrierActions()
+	{
+		for (int i = 0; i < this.barrierActions.size(); i++)
+		{
+			this.currentTime = this.barrierTimes.get(i);
+			this.barrierActions.get(i).run();
+		}
+
+		this.barrierActions.clear();
+		this.barrierTimes.clear();
+	}
+
+
+	/**
+	 * Executes the shard for the window [{@code windowStart}, {@code windowEnd}): if {@code cyclePid >= 0}, first executes
+	 * the cycle-driven side of the protocol {@code cyclePid} for all the up FPeers of the shard; then processes, in order,
+	 * all the events of the queue having delivery time less than {@code windowEnd}.
+	 * @param windowStart	the start time of the window
+	 * @param windowEnd		the (excluded) end time of the window
+	 * @param cyclePid		the identifier of the cycle-driven protocol to execute, or {@code -1}
+	 **/
+	void runWindow(long windowStart, long windowEnd, int cyclePid)
+	{
+		this.currentTime = windowStart;
+
+		if (cyclePid >= 0)
+		{
+			// the FPeers removed from the simulation (e.g. after that they have left the overlay network) are dropped from
+			// the shard, preserving the order of the others
+			int kept = 0;
+			for (int i = 0; i < this.nodes.size(); i++)
+			{
+				final Node node = this.nodes.get(i);
+				if (node.getFailState() == Fallible.DEAD)
+					continue;
+
+				this.nodes.set(kept++, node);
+				if (node.isUp())
+					((CDProtocol) node.getProtocol(cyclePid)).nextCycle(node, cyclePid);
+			}
+
+			for (int i = this.nodes.size() - 1; i >= kept; i--)
+				this.nodes.remove(i);
+		}
+
+		while (!this.queue.isEmpty() && this.queue.peek().time < windowEnd)
+		{
+			final Event e = this.queue.poll();
+			this.currentTime = e.time;
+
+			// events toward not-up nodes are discarded, as in the PeerSim event-driven engine
+			if (e.node.isUp())
+				((EDProtocol) e.node.getProtocol(e.pid)).processEvent(e.node, e.pid, e.payload);
+
+			this.processedEvents++;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package engine;
+
+import peersim.config.Configuration;
+import peersim.core.Node;
+import peersim.transport.Transport;
+
+/**
+ *  Transport protocol to use with the {@code ParallelEDSimulator}. It delivers (RELIABLY) messages with a random delay
+ *  in [mindelay, maxdelay] (uniform distribution), scheduling them directly into the engine's shard owning the receiver.
+ *  The minimum delay is the lookahead used by the engine for the conservative synchronization of the shards, so it is
+ *  at least 1 unit of time: a configured minimum delay of 0 (zero-delay links) is raised to 1, since with a zero lookahead
+ *  the engine could only run a single shard.
+ **/
+
+public class ShardedTransport implements Transport
+{
+	// the lowest minimum delay (and so lookahead) accepted by the transport
+	private static final long MIN_LOOKAHEAD = 1;
+
+	// flag that indicates if the raise of the minimum delay has already been printed (the transport is built once per use)
+	private static boolean raisePrinted = false;
+
+	// minimum delay with which a message is delivered
+	private final long minDelay;
+
+	// width of the interval of the delivery delays
+	private final long delayRange;
+
+
+	/**
+	 * Constructor method. Reads the delays interval from the PeerSim configuration file, using {@code prefix}, and
+	 * communicates to the engine the lookahead derived from the minimum delay.
+	 * @param prefix the prefix, in the configuration file, of the protocol.
+	 **/
+	public ShardedTransport(String prefix)
+	{
+		final long configuredMinDelay = Configuration.getLong(prefix + ".mindelay");
+		final long maxDelay = Configuration.getLong(prefix + ".maxdelay");
+
+		if (maxDelay < configuredMinDelay)
+			throw new IllegalArgumentException("the maximum delay must be greater than or equal to the minimum delay...");
+
+		// a zero minimum delay would give a zero lookahead, i.e. a single shard: it is raised to the lowest accepted one
+		this.minDelay = Math.max(MIN_LOOKAHEAD, configuredMinDelay);
+		if (this.minDelay != configuredMinDelay && !raisePrinted)
+		{
+			raisePrinted = true;
+			System.out.println("ShardedTransport: minimum delay " + configuredMinDelay + " raised to " + this.minDelay + " (lookahead of the parallel engine) ...");
+		}
+
+		this.delayRange = Math.max(maxDelay, this.minDelay) - this.minDelay + 1;
+
+		ParallelEDSimulator.setLookahead(this.minDelay);
+	}
+
+
+	/**
+	 * Returns the transport itself, since it has no per-node state.
+	 * @return the transport itself.
+	 **/
+	@Override
+	public Object clone()
+	{
+		return this;
+	}
+
+
+	/**
+	 * Schedules the delivery of the message {@code msg}, from {@code src} to the protocol {@code pid} of {@code dest},
+	 * after a random delay.
+	 * @param src  the node that sends the message
+	 * @param dest the node to which deliver the message
+	 * @param msg  the message to deliver
+	 * @param pid  the identifier of the protocol to which deliver the message
+	 **/
+	@Override
+	public void send(Node src, Node dest, Object msg, int pid)
+	{
+		ParallelEDSimulator.add(this.getLatency(src, dest), msg, dest, pid);
+	}
+
+
+	/**
+	 * Computes a random delay in [mindelay, maxdelay], using the pseudo-random generator of the running shard.
+	 * @param src  the node that sends the message
+	 * @param dest the node to which deliver the message
+	 * @return the delivery delay.
+	 **/
+	@Override
+	public long getLatency(Node src, Node dest)
+	{
+		if (this.delayRange == 1)
+			return this.minDelay;
+		else
+			return this.minDelay + ParallelEDSimulator.currentRandom().nextLong(this.delayRange);
+	}
+}
@@ -0,0 +1,437 @@
+package engine;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import peersim.config.Configuration;
+import protocol.ProtocolLog;
+import protocol.ProtocolStatistics;
+import protocol.RoutingStretch;
+import structure.FPeerDirectory;
+import structure.LinkLengthStatistics;
+import structure.LocationRing;
+import structure.NeighborColumns;
+import structure.PackedMessageStore;
+import structure.StoreColumns;
+
+/**
+ *  Class that holds the state of a simulation that is not owned by a single FPeer: the sets of the generated FPeers and
+ *  contents location keys, the counter of the messages identifiers, the store of the packed in-flight messages, the
+ *  calendar event queue (if used), the extension (and header flag) of the statistics files, the FPeers directory, the
+ *  shared columns of the neighborhoods and of the stores, the location ring, the protocol settings, flags, event log,
+ *  cancelled walks and statistics, and the links lengths and routing stretch statistics. It is created, from the PeerSim
+ *  configuration, at its first use during the simulation. <br><br>
+ *
+ *  PeerSim keeps its own state (network, simulation time, configuration) in static fields, so a JVM runs one simulation
+ *  per class loader: the {@code SweepRunner} runs each simulation in its own class loader, so each one has its own
+ *  context. The extension of the statistics files can be fixed with the parameter {@code simulation.statisticsExtension},
+ *  so that concurrent simulations write different files.
+ **/
+
+public class SimulationContext
+{
+	// parameter name of the extension of the statistics files
+	private static final String PAR_EXTENSION = "simulation.statisticsExtension";
+
+	// the context of the running simulation
+	private static volatile SimulationContext current = null;
+
+	// set of already generated FPeers location keys, and set of already generated contents location keys
+	private HashSet<Double> fpeersLocationKeys;
+	private HashSet<Double> contentsLocationKeys;
+
+	// counter to assign an unique identifier to new messages created outside the shards of the parallel engine (the
+	// shards draw from their own ranges, see "newMessageID")
+	private final AtomicLong nextMessageID;
+
+	// unique suffix for statistics file used during the simulation
+	private final long statisticsFileExtension;
+
+	// flag that indicates if the general statistics of the simulation are already written or not
+	private boolean simStatToWrite;
+
+	// store of the in-flight messages in packed representation (created at its first use)
+	private PackedMessageStore packedMessageStore;
+
+	// the calendar event queue of the simulation ({@code null} if the simulator uses another event queue)
+	private volatile CalendarEventQueue eventQueue;
+
+	// the directory of the FPeers, by serial number, with their scalar state
+	private final FPeerDirectory fpeerDirectory;
+
+	// the shared columns of the neighborhoods, and the ones of the bounded stores by capacity (used with "columnarState")
+	private final NeighborColumns neighborColumns;
+	private final HashMap<Integer, StoreColumns> storeColumns;
+
+	// the location ring of the overlay network (the routing accuracy oracle)
+	private final LocationRing locationRing;
+
+	// the settings of the protocols, by prefix (read at the creation of the protocol of the first FPeer)
+	private final HashMap<String, Object> protocolSettings;
+
+	// flags that indicate if the FPeers generate new requests and new SWAP sessions during their cycles (e.g. switched
+	// by the "SwapConvergence" control at the end of the warm-up)
+	private volatile boolean requestsEnabled;
+	private volatile boolean swapsEnabled;
+
+	// the structured event log of the protocol ({@code null} if the log is disabled)
+	private ProtocolLog eventLog;
+
+	// the multi-walker GET requests already ended with a GET_FOUND, with the number of their walkers still in flight, that
+	// are cancelled at their next hop (concurrent, since the walkers are handled by the shards of the parallel engine)
+	private final ConcurrentHashMap<Long, AtomicInteger> cancelledWalks;
+
+	// the counters and the histograms of the protocol events
+	private final ProtocolStatistics protocolStatistics;
+
+	// the statistics of the links lengths, and the sampled analysis of the routing stretch
+	private final LinkLengthStatistics linkLengthStatistics;
+	private final RoutingStretch routingStretch;
+
+	// heap bytes occupied by each FPeer, as measured at the creation of the overlay network (-1 if not measured)
+	private double measuredBytesPerFPeer;
+
+
+	/**
+	 * Constructor method. Initializes an empty context, reading the extension of the statistics files from the PeerSim
+	 * configuration (by default, the current timestamp).
+	 **/
+	private SimulationContext()
+	{
+		this.fpeersLocationKeys = new HashSet<Double>();
+		this.contentsLocationKeys = new HashSet<Double>();
+		this.nextMessageID = new AtomicLong(0);
+		this.statisticsFileExtension = Configuration.getLong(PAR_EXTENSION, System.currentTimeMillis());
+		this.simStatToWrite = true;
+		this.packedMessageStore = null;
+		this.eventQueue = null;
+		this.fpeerDirectory = new FPeerDirectory();
+		this.neighborColumns = new NeighborColumns();
+		this.storeColumns = new HashMap<Integer, StoreColumns>();
+		this.locationRing = new LocationRing();
+		this.protocolSettings = new HashMap<String, Object>();
+		this.requestsEnabled = true;
+		this.swapsEnabled = true;
+		this.eventLog = null;
+		this.cancelledWalks = new ConcurrentHashMap<Long, AtomicInteger>();
+		this.protocolStatistics = new ProtocolStatistics();
+		this.linkLengthStatistics = new LinkLengthStatistics();
+		this.routingStretch = new RoutingStretch();
+		this.measuredBytesPerFPeer = -1;
+	}
+
+
+	/**
+	 * Gets out the context of the running simulation, creating it at the first invocation.
+	 * @return the simulation context.
+	 **/
+	public static SimulationContext current()
+	{
+		SimulationContext ctx = current;
+		if (ctx == null)
+		{
+			synchronized (SimulationContext.class)
+			{
+				if ((ctx = current) == null)
+					current = ctx = new SimulationContext();
+			}
+		}
+
+		return ctx;
+	}
+
+
+	/**
+	 * Gets out the set of the generated FPeers location keys (to access only while holding the lock of the {@code LocationKeysManager}).
+	 * @return the set of FPeers location keys.
+	 **/
+	public HashSet<Double> getFPeersLocationKeys()
+	{
+		return this.fpeersLocationKeys;
+	}
+
+
+	/**
+	 * Gets out the set of the generated contents location keys (to access only while holding the lock of the {@code LocationKeysManager}).
+	 * @return the set of contents location keys.
+	 **/
+	public HashSet<Double> getContentsLocationKeys()
+	{
+		return this.contentsLocationKeys;
+	}
+
+
+	/**
+	 * Replaces the sets of the generated FPeers and contents location keys (e.g. when the simulation is resumed from a checkpoint).
+	 * @param fpeersKeys	the new set of FPeers location keys
+	 * @param contentsKeys	the new set of contents location keys
+	 **/
+	public void setLocationKeys(HashSet<Double> fpeersKeys, HashSet<Double> contentsKeys)
+	{
+		this.fpeersLocationKeys = fpeersKeys;
+		this.contentsLocationKeys = contentsKeys;
+	}
+
+
+	/**
+	 * Generates the identifier of a new message: from the range of the shard, if the message is created by a shard of the
+	 * parallel engine, or from the counter of the context otherwise.
+	 * @return the identifier of the new message.
+	 **/
+	public long newMessageID()
+	{
+		final long shardMessageID = ParallelEDSimulator.newMessageID();
+		return (shardMessageID >= 0) ? shardMessageID : this.nextMessageID.getAndIncrement();
+	}
+
+
+	/**
+	 * Gets out the counter of the messages identifiers, i.e. the greatest between the one of the context and the ones of
+	 * the shards (so that the shards of a resumed simulation do not re-use the identifiers of the in-flight messages).
+	 * @return the counter that holds the (low bits of the) identifier of the next created message.
+	 **/
+	public long getNextMessageID()
+	{
+		return Math.max(this.nextMessageID.get(), ParallelEDSimulator.getShardsNextMessageID());
+	}
+
+
+	/**
+	 * Changes the counter of the messages identifiers.
+	 * @param messageID the identifier of the next created message
+	 **/
+	public void setNextMessageID(long messageID)
+	{
+		this.nextMessageID.set(messageID);
+	}
+
+
+	/**
+	 * Gets out the extension used for the names of the statistics files of the simulation.
+	 * @return the extension of the statistics files.
+	 **/
+	public long getStatisticsFileExtension()
+	{
+		return this.statisticsFileExtension;
+	}
+
+
+	/**
+	 * Verifies, only once, if the general statistics of the simulation must be written (i.e. at the first invocation).
+	 * @return {@code true} at the first invocation. {@code false} otherwise.
+	 **/
+	public synchronized boolean takeSimStatToWrite()
+	{
+		final boolean toWrite = this.simStatToWrite;
+		this.simStatToWrite = false;
+		return toWrite;
+	}
+
+
+	/**
+	 * Gets out the calendar event queue of the simulation.
+	 * @return the calendar event queue, or {@code null} if the simulator uses another event queue.
+	 **/
+	public CalendarEventQueue getEventQueue()
+	{
+		return this.eventQueue;
+	}
+
+
+	/**
+	 * Sets the calendar event queue of the simulation (invoked by the queue itself, when it is allocated).
+	 * @param queue the calendar event queue of the simulation
+	 **/
+	void setEventQueue(CalendarEventQueue queue)
+	{
+		this.eventQueue = queue;
+	}
+
+
+	/**
+	 * Gets out the store of the in-flight messages in packed representation, creating it at the first invocation.
+	 * @return the packed messages store of the simulation.
+	 **/
+	public synchronized PackedMessageStore getPackedMessageStore()
+	{
+		if (this.packedMessageStore == null)
+			this.packedMessageStore = new PackedMessageStore();
+
+		return this.packedMessageStore;
+	}
+
+
+	/**
+	 * Gets out the directory of the FPeers of the simulation.
+	 * @return the FPeers directory.
+	 **/
+	public FPeerDirectory getFPeerDirectory()
+	{
+		return this.fpeerDirectory;
+	}
+
+
+	/**
+	 * Gets out the shared columns of the neighborhoods of the FPeers.
+	 * @return the neighborhoods columns.
+	 **/
+	public NeighborColumns getNeighborColumns()
+	{
+		return this.neighborColumns;
+	}
+
+
+	/**
+	 * Gets out the shared columns of the bounded stores of the FPeers, by capacity (to access only while holding the lock of
+	 * the {@code StoreColumns} class).
+	 * @return the stores columns, by capacity.
+	 **/
+	public HashMap<Integer, StoreColumns> getStoreColumns()
+	{
+		return this.storeColumns;
+	}
+
+
+	/**
+	 * Gets out the location ring of the overlay network.
+	 * @return the location ring.
+	 **/
+	public LocationRing getLocationRing()
+	{
+		return this.locationRing;
+	}
+
+
+	/**
+	 * Gets out the settings of the protocols, by prefix (to access only while holding the lock of the returned map).
+	 * @return the protocols settings, by prefix.
+	 **/
+	public HashMap<String, Object> getProtocolSettings()
+	{
+		return this.protocolSettings;
+	}
+
+
+	/**
+	 * Verifies if the FPeers generate new GET and PUT requests during their cycles.
+	 * @return {@code true} if the requests are enabled. {@code false} otherwise.
+	 **/
+	public boolean areRequestsEnabled()
+	{
+		return this.requestsEnabled;
+	}
+
+
+	/**
+	 * Enables or disables the generation of new GET and PUT requests during the cycles of the FPeers.
+	 * @param enabled {@code true} to generate new requests, {@code false} otherwise
+	 **/
+	public void setRequestsEnabled(boolean enabled)
+	{
+		this.requestsEnabled = enabled;
+	}
+
+
+	/**
+	 * Verifies if the FPeers start new SWAP sessions during their cycles.
+	 * @return {@code true} if the SWAP sessions are enabled. {@code false} otherwise.
+	 **/
+	public boolean areSwapsEnabled()
+	{
+		return this.swapsEnabled;
+	}
+
+
+	/**
+	 * Enables or disables the starting of new SWAP sessions during the cycles of the FPeers.
+	 * @param enabled {@code true} to start new SWAP sessions, {@code false} otherwise
+	 **/
+	public void setSwapsEnabled(boolean enabled)
+	{
+		this.swapsEnabled = enabled;
+	}
+
+
+	/**
+	 * Gets out the structured event log of the protocol.
+	 * @return the event log, or {@code null} if the log is disabled (or not yet opened).
+	 **/
+	public ProtocolLog getEventLog()
+	{
+		return this.eventLog;
+	}
+
+
+	/**
+	 * Sets the structured event log of the protocol (opened by the protocol settings, while holding the lock of the
+	 * protocols settings map).
+	 * @param log the event log of the simulation
+	 **/
+	public void setEventLog(ProtocolLog log)
+	{
+		this.eventLog = log;
+	}
+
+
+	/**
+	 * Gets out the multi-walker GET requests already ended, with the number of their walkers still in flight.
+	 * @return the cancelled walks, by message identifier.
+	 **/
+	public ConcurrentHashMap<Long, AtomicInteger> getCancelledWalks()
+	{
+		return this.cancelledWalks;
+	}
+
+
+	/**
+	 * Gets out the counters and the histograms of the protocol events.
+	 * @return the protocol statistics.
+	 **/
+	public ProtocolStatistics getProtocolStatistics()
+	{
+		return this.protocolStatistics;
+	}
+
+
+	/**
+	 * Gets out the statistics of the links lengths of the overlay network.
+	 * @return the links lengths statistics.
+	 **/
+	public LinkLengthStatistics getLinkLengthStatistics()
+	{
+		return this.linkLengthStatistics;
+	}
+
+
+	/**
+	 * Gets out the sampled analysis of the routing stretch.
+	 * @return the routing stretch analysis.
+	 **/
+	public RoutingStretch getRoutingStretch()
+	{
+		return this.routingStretch;
+	}
+
+
+	/**
+	 * Gets out the heap bytes occupied by each FPeer, as measured at the creation of the overlay network.
+	 * @return the heap bytes of each FPeer, or {@code -1} if not measured.
+	 **/
+	public double getMeasuredBytesPerFPeer()
+	{
+		return this.measuredBytesPerFPeer;
+	}
+
+
+	/**
+	 * Sets the heap bytes occupied by each FPeer, as measured at the creation of the overlay network.
+	 * @param bytes the heap bytes of each FPeer
+	 **/
+	public void setMeasuredBytesPerFPeer(double bytes)
+	{
+		this.measuredBytesPerFPeer = bytes;
+	}
+}
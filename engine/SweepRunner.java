@@ -0,0 +1,263 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Class that implements the runner of a parameters sweep: it runs, concurrently on a pool of threads of the same JVM, a
+ *  simulation for each combination of the values of the swept parameters, e.g. <br>
+ *  {@code java engine.SweepRunner conf.cfg threads=8 protocol.hp.maxHTL=10,15,20 protocol.hp.replicationFactor=1,3 random.seed=1,2,3} <br>
+ *  runs 18 simulations of {@code conf.cfg}, 8 at a time. The other arguments are: {@code simulator} (the class whose
+ *  {@code main} runs a simulation, by default {@code peersim.Simulator}; e.g. {@code engine.ParallelEDSimulator}). <br><br>
+ *
+ *  Since PeerSim keeps its state in static fields, each simulation runs in its own class loader, so it has its own PeerSim
+ *  state and its own {@code SimulationContext}; only the {@code TopologyCache} is shared, so each Data Set is parsed once.
+ *  Each simulation writes its statistics files with a different extension, listed (with the values of the swept
+ *  parameters and the outcome of the simulation) in the index file {@code ../statistics/sweep_<timestamp>.tsv}. <br><br>
+ *
+ *  N.B. a configuration error stops the whole sweep (PeerSim terminates the JVM), and the prints of the concurrent
+ *  simulations are interleaved on the standard output.
+ **/
+
+public class SweepRunner
+{
+	// the classes loaded by the parent class loader, so shared by all the simulations of the sweep
+	private static final String SHARED_CLASSES = TopologyCache.class.getName();
+
+
+	/**
+	 *  Class that implements the class loader of a single simulation: it loads by itself the classes of the class path
+	 *  (PeerSim and the simulator), delegating to the parent only the platform classes and the shared ones.
+	 **/
+	private static class SimulationClassLoader extends URLClassLoader
+	{
+		private SimulationClassLoader(URL[] urls, ClassLoader parent)
+		{
+			super(urls, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+		{
+			if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.") || name.startsWith(SHARED_CLASSES))
+				return super.loadClass(name, resolve);
+
+			synchronized (getClassLoadingLock(name))
+			{
+				Class<?> c = findLoadedClass(name);
+				if (c == null)
+				{
+					try
+					{
+						c = findClass(name);
+					}
+					catch (ClassNotFoundException e)
+					{
+						return super.loadClass(name, resolve);
+					}
+				}
+
+				if (resolve)
+					resolveClass(c);
+				return c;
+			}
+		}
+	}
+
+
+	/**
+	 * Builds the arguments (configuration overrides) of all the combinations of the values of the swept parameters.
+	 * @param names		the names of the swept parameters
+	 * @param values	the values of each swept parameter
+	 * @return the list of the overrides of each combination.
+	 **/
+	private static List<String[]> combinations(List<String> names, List<String[]> values)
+	{
+		List<String[]> combinations = new ArrayList<String[]>();
+		combinations.add(new String[0]);
+
+		for (int p = 0; p < names.size(); p++)
+		{
+			List<String[]> extended = new ArrayList<String[]>();
+			for (String[] prefix : combinations)
+			{
+				for (String value : values.get(p))
+				{
+					String[] combination = new String[prefix.length + 1];
+					System.arraycopy(prefix, 0, combination, 0, prefix.length);
+					combination[prefix.length] = names.get(p) + "=" + value;
+					extended.add(combination);
+				}
+			}
+			combinations = extended;
+		}
+
+		return combinations;
+	}
+
+
+	/**
+	 * Runs a simulation in a new class loader, invoking the {@code main} method of the passed simulator class.
+	 * @param urls				the class path of the simulation
+	 * @param simulatorClass	the name of the simulator class
+	 * @param args				the arguments of the simulator (configuration file and overrides)
+	 * @throws Exception if the simulation is aborted
+	 **/
+	private static void runSimulation(URL[] urls, String simulatorClass, String[] args) throws Exception
+	{
+		final Thread thread = Thread.currentThread();
+		final ClassLoader previousLoader = thread.getContextClassLoader();
+
+		SimulationClassLoader loader = new SimulationClassLoader(urls, SweepRunner.class.getClassLoader());
+		try
+		{
+			thread.setContextClassLoader(loader);
+			Class.forName(simulatorClass, true, loader).getMethod("main", String[].class).invoke(null, (Object) args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+		}
+		finally
+		{
+			thread.setContextClassLoader(previousLoader);
+			loader.close();
+		}
+	}
+
+
+	/**
+	 * Parses the sweep from the arguments, runs its simulations and writes the index file of the sweep.
+	 * @param args the PeerSim configuration file, followed by the sweep arguments and by the swept parameters
+	 * @throws Exception if the sweep cannot be started
+	 **/
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length == 0)
+		{
+			System.out.println("Usage: java engine.SweepRunner <configuration file> [threads=<n>] [simulator=<class>] [<parameter>=<value>[,<value>...]]...");
+			return;
+		}
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		String simulatorClass = "peersim.Simulator";
+		List<String> names = new ArrayList<String>();
+		List<String[]> values = new ArrayList<String[]>();
+
+		for (int i = 1; i < args.length; i++)
+		{
+			final int eq = args[i].indexOf('=');
+			if (eq <= 0)
+				throw new IllegalArgumentException("malformed sweep argument \"" + args[i] + "\"");
+
+			final String name = args[i].substring(0, eq);
+			final String value = args[i].substring(eq + 1);
+			if (name.equals("threads"))
+				numThreads = Integer.parseInt(value);
+			else if (name.equals("simulator"))
+				simulatorClass = value;
+			else
+			{
+				names.add(name);
+				values.add(value.split(","));
+			}
+		}
+
+		// the class path of the simulations is the one of the runner
+		String[] classPath = System.getProperty("java.class.path").split(File.pathSeparator);
+		final URL[] urls = new URL[classPath.length];
+		for (int i = 0; i < classPath.length; i++)
+		{
+			try
+			{
+				urls[i] = new File(classPath[i]).toURI().toURL();
+			}
+			catch (MalformedURLException e)
+			{
+				throw new IllegalArgumentException("invalid class path entry \"" + classPath[i] + "\"", e);
+			}
+		}
+
+		final List<String[]> combinations = combinations(names, values);
+		final long sweepExtension = System.currentTimeMillis();
+		System.out.println("SWEEP: running " + combinations.size() + " simulations of \"" + args[0] + "\" on " + numThreads + " threads ...");
+
+		// submit a simulation for each combination, each one with a different statistics files extension
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		final long[] elapsedTimes = new long[combinations.size()];
+		for (int i = 0; i < combinations.size(); i++)
+		{
+			final int run = i;
+			final String[] combination = combinations.get(i);
+			final String[] simArgs = new String[combination.length + 2];
+			simArgs[0] = args[0];
+			System.arraycopy(combination, 0, simArgs, 1, combination.length);
+			simArgs[simArgs.length - 1] = "simulation.statisticsExtension=" + (sweepExtension + run);
+
+			final String simulator = simulatorClass;
+			results.add(pool.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					long elapsedTime = System.currentTimeMillis();
+					runSimulation(urls, simulator, simArgs);
+					elapsedTimes[run] = System.currentTimeMillis() - elapsedTime;
+					return null;
+				}
+			}));
+		}
+
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		// write the index file of the sweep
+		PrintWriter indexFile = null;
+		try
+		{
+			indexFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sweep_" + sweepExtension + ".tsv")));
+			indexFile.println("extension\tparameters\toutcome\telapsedMs");
+			for (int i = 0; i < combinations.size(); i++)
+			{
+				String outcome = "OK";
+				try
+				{
+					results.get(i).get();
+				}
+				catch (Exception e)
+				{
+					outcome = "FAILED: " + e.getCause();
+				}
+
+				final String parameters = String.join(" ", combinations.get(i));
+				indexFile.println((sweepExtension + i) + "\t" + parameters + "\t" + outcome + "\t" + elapsedTimes[i]);
+				System.out.println("SWEEP: simulation " + (sweepExtension + i) + " [" + parameters + "] " + outcome + " (" + elapsedTimes[i] + " ms) ...");
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("SWEEP: error during index file opening/writing:\n" + e.getMessage());
+		}
+		finally
+		{
+			// close the file
+			if (indexFile != null)
+				indexFile.close();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import structure.PackedIdentifiers;
+
+/**
+ *  Class that implements the cache of the parsed Data Sets (friendship graphs), so that the simulations that use the same
+ *  Data Set parse it only once. A parsed Data Set is read-only: it holds the (packed) identifiers of the FPeers, in order
+ *  of first appearance, and the edges, in file order, so the overlay networks built from it are the same built parsing the file. <br><br>
+ *
+ *  The {@code SweepRunner} loads this class with the shared class loader, so the cache is shared by all the simulations
+ *  of a sweep, even if each one runs in its own class loader.
+ **/
+
+public class TopologyCache
+{
+	/**
+	 *  Class that implements a parsed Data Set (never modified after its parsing).
+	 **/
+	public static final class Topology
+	{
+		// identifiers of the FPeers, in order of first appearance
+		private final PackedIdentifiers identifiers;
+
+		// source and target indexes of the edges, in file order (edge i is (edges[2i], edges[2i + 1]))
+		private final int[] edges;
+
+		private Topology(PackedIdentifiers identifiers, int[] edges)
+		{
+			this.identifiers = identifiers;
+			this.edges = edges;
+		}
+
+		/**
+		 * Gets out the number of FPeers of the Data Set.
+		 * @return the number of FPeers.
+		 **/
+		public int getNumFPeers()
+		{
+			return this.identifiers.size();
+		}
+
+		/**
+		 * Gets out the identifier of the passed FPeer index.
+		 * @param index the index of the FPeer, in order of first appearance
+		 * @return the identifier of the FPeer.
+		 **/
+		public String getIdentifier(int index)
+		{
+			return this.identifiers.get(index);
+		}
+
+		/**
+		 * Gets out the number of edges of the Data Set.
+		 * @return the number of edges.
+		 **/
+		public int getNumEdges()
+		{
+			return this.edges.length / 2;
+		}
+
+		/**
+		 * Gets out the index of the source FPeer of the passed edge.
+		 * @param edge the index of the edge, in file order
+		 * @return the index of the source FPeer.
+		 **/
+		public int getEdgeSource(int edge)
+		{
+			return this.edges[2 * edge];
+		}
+
+		/**
+		 * Gets out the index of the target FPeer of the passed edge.
+		 * @param edge the index of the edge, in file order
+		 * @return the index of the target FPeer.
+		 **/
+		public int getEdgeTarget(int edge)
+		{
+			return this.edges[2 * edge + 1];
+		}
+	}
+
+
+	// the parsed Data Sets, by canonical path
+	private static final HashMap<String, Topology> cache = new HashMap<String, Topology>();
+
+
+	/**
+	 * Gets out the Data Set at the passed path, parsing it only if it is not already cached (the simulations that need
+	 * the same Data Set at the same time wait for a single parsing).
+	 * @param path the path of the Data Set (a comma-separated edge per line)
+	 * @return the parsed Data Set.
+	 * @throws IOException if an error occurs during the parsing
+	 **/
+	public static synchronized Topology get(String path) throws IOException
+	{
+		final String canonicalPath = new File(path).getCanonicalPath();
+
+		Topology topology = cache.get(canonicalPath);
+		if (topology == null)
+		{
+			topology = parse(canonicalPath);
+			cache.put(canonicalPath, topology);
+		}
+
+		return topology;
+	}
+
+
+	/**
+	 * Parses the Data Set at the passed path.
+	 * @param path the path of the Data Set
+	 * @return the parsed Data Set.
+	 * @throws IOException if an error occurs during the parsing
+	 **/
+	private static Topology parse(String path) throws IOException
+	{
+		PackedIdentifiers identifiers = new PackedIdentifiers(1024);
+		HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+		int[] edges = new int[1024];
+		int numEdges = 0;
+
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				// split the line on comma, and get (or assign) the index of both the FPeers
+				String[] ids = line.split(",");
+				if (2 * numEdges + 2 > edges.length)
+					edges = Arrays.copyOf(edges, edges.length * 2);
+
+				for (int k = 0; k < 2; k++)
+				{
+					Integer index = indexes.get(ids[k]);
+					if (index == null)
+					{
+						index = identifiers.add(ids[k]);
+						indexes.put(ids[k], index);
+					}
+					edges[2 * numEdges + k] = index;
+				}
+				numEdges++;
+			}
+		}
+		finally
+		{
+			// close the reading buffer after the parsing
+			reader.close();
+		}
+
+		identifiers.trimToSize();
+		return new Topology(identifiers, Arrays.copyOf(edges, 2 * numEdges));
+	}
+}
@@ -1,15 +1,24 @@
 package protocol;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.NoSuchElementException;
 
 import peersim.core.Node;
+import structure.DistanceKernels;
 import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.HashMapEntry;
+import structure.NeighborColumns;
 
 /**
- * Implements the Linkable protocol that manages the FPeer's neighborhood view.
+ * Implements the Linkable protocol that manages the FPeer's neighborhood view. The neighbors are kept as serial numbers
+ * (see {@code FPeerDirectory}), with their cached location keys, in a region of two arrays: the arrays of the protocol or,
+ * if the FPeers use the {@code columnarState} layout, a region of the shared {@code NeighborColumns}.
  * 
  *  @author  Giuseppe Miraglia
  *  @since   March 9, 2015  
@@ -17,9 +26,43 @@ import structure.FPeer;
 
 public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Protocol
 {
-	// Red-Black Tree that stores references to all the neighbors FPeers, sorted by FPeer's increasing location key
-	// It ensures all basic operations time complexity in O(logN)
-	private TreeSet<FPeer> neighborsRBTree;		
+	// initial capacity of the neighbors arrays
+	private static final int INITIAL_CAPACITY = 8;
+
+	// the distances of the neighbors computed by the greedy selection (see "retrieveClosestNeighbor"), one array for each
+	// thread of the parallel engine
+	private static final ThreadLocal<double[]> distances = new ThreadLocal<double[]>()
+	{
+		@Override
+		protected double[] initialValue()
+		{
+			return new double[INITIAL_CAPACITY];
+		}
+	};
+
+	// array whose region [base, base + capacity) stores the serials of all the neighbors FPeers, sorted by FPeer's increasing
+	// location key (if not "dirty")
+	private int[] neighborsSerials;
+
+	// cache of the location keys of the neighbors, aligned with "neighborsSerials", used for the binary searches
+	private double[] neighborsLocKeys;
+
+	// first index and number of entries of the region of the arrays
+	private int base;
+	private int capacity;
+
+	// the region of the shared columns that holds the neighbors (see "NeighborColumns"), or -1 if the arrays are owned by the protocol
+	private long region;
+
+	// indicates if the neighbors are held by the shared columns
+	private boolean columnar;
+
+	// number of neighbors stored in the region
+	private int size;
+
+	// indicates if some neighbor has changed location key after the last sorting, so the arrays must be re-sorted before 
+	// the next access (volatile, since the neighborhood can be read also by the FPeers owned by other shards of the parallel engine)
+	private volatile boolean dirty;
 
 
 	/**
@@ -28,7 +71,40 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	 **/
 	public LinkableProtocol(String prefix)
 	{
-		this.neighborsRBTree = new TreeSet<FPeer>();
+		this.initOwnArrays();
+	}
+
+
+	/**
+	 * Initializes the protocol with an empty neighborhood, held by arrays owned by the protocol.
+	 **/
+	private void initOwnArrays()
+	{
+		this.neighborsSerials = new int[INITIAL_CAPACITY];
+		this.neighborsLocKeys = new double[INITIAL_CAPACITY];
+		this.base = 0;
+		this.capacity = INITIAL_CAPACITY;
+		this.region = -1;
+		this.columnar = false;
+		this.size = 0;
+		this.dirty = false;
+	}
+
+
+	/**
+	 * Makes the (empty) neighborhood held by a region of the shared {@code NeighborColumns}, allocated at the first insertion.
+	 * It is invoked by the FPeers allocated with the {@code columnarState} layout.
+	 **/
+	public void useColumns()
+	{
+		this.neighborsSerials = null;
+		this.neighborsLocKeys = null;
+		this.base = 0;
+		this.capacity = 0;
+		this.region = -1;
+		this.columnar = true;
+		this.size = 0;
+		this.dirty = false;
 	}
 
 
@@ -53,12 +129,161 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 		}
 
 		// performs "constructor" actions on the clone
-		lp.neighborsRBTree = new TreeSet<FPeer>();
+		lp.initOwnArrays();
 
 		return lp;
 	}
 
 
+	/**
+	 * Marks the neighborhood as not sorted, because some neighbor has changed its location key (e.g. after a swap). 
+	 * The neighborhood will be re-sorted, in bulk, at the next access.
+	 **/
+	public void markDirty()
+	{
+		this.dirty = true;
+	}
+
+
+	/**
+	 * Re-sorts the neighborhood by location key, if it is marked as dirty, refreshing the cached location keys. <br>
+	 * N.B. it uses the insertion sort, since after a swap only few neighbors are out of place.
+	 **/
+	private void ensureSorted()
+	{
+		if (!this.dirty)
+			return;
+
+		synchronized (this)
+		{
+			if (!this.dirty)
+				return;
+
+			final int[] serials = this.neighborsSerials;
+			final double[] locKeys = this.neighborsLocKeys;
+			final int first = this.base, end = this.base + this.size;
+
+			// refresh the cache of the location keys
+			for (int i = first; i < end; i++)
+				locKeys[i] = FPeerDirectory.getLocationKey(serials[i]);
+
+			// insertion sort of the two aligned arrays
+			for (int i = first + 1; i < end; i++)
+			{
+				final int serial = serials[i];
+				final double locKey = locKeys[i];
+
+				int j = i - 1;
+				while (j >= first && locKeys[j] > locKey)
+				{
+					serials[j + 1] = serials[j];
+					locKeys[j + 1] = locKeys[j];
+					j--;
+				}
+
+				serials[j + 1] = serial;
+				locKeys[j + 1] = locKey;
+			}
+
+			this.dirty = false;
+		}
+	}
+
+
+	/**
+	 * Searches the passed location key {@code locKey} among the (sorted) location keys of the neighbors.
+	 * @param locKey the location key to search
+	 * @return the index of the neighbor having {@code locKey} as location key, if it exists; 
+	 * 		   {@code -(insertion point) - 1} otherwise (see {@code Arrays.binarySearch}).
+	 **/
+	private int indexOf(double locKey)
+	{
+		this.ensureSorted();
+		if (this.size == 0)
+			return -1;
+
+		// the search works on the absolute indexes of the region
+		final int index = Arrays.binarySearch(this.neighborsLocKeys, this.base, this.base + this.size, locKey);
+		return (index >= 0) ? index - this.base : index + this.base;
+	}
+
+
+	/**
+	 * Searches the passed serial {@code serial} among the serials of the neighbors, by a linear scan.
+	 * @param serial the serial of the FPeer to search
+	 * @return the index of the neighbor having {@code serial} as serial, if it exists; {@code -1} otherwise.
+	 **/
+	private int indexOfSerial(int serial)
+	{
+		for (int i = 0; i < this.size; i++)
+			if (this.neighborsSerials[this.base + i] == serial)
+				return i;
+
+		return -1;
+	}
+
+
+	/**
+	 * Gets out the neighbor at the passed position {@code index} of the (sorted) neighborhood.
+	 * @param index the position of the neighbor, in [0, size)
+	 * @return the neighbor FPeer.
+	 **/
+	private FPeer neighborAt(int index)
+	{
+		return FPeerDirectory.get(this.neighborsSerials[this.base + index]);
+	}
+
+
+	/**
+	 * Moves the neighborhood into a region of the passed capacity {@code newCapacity} (rounded up to a power of two, if not
+	 * {@code exact}, in the shared columns): of the shared columns, if the neighborhood is held by them, or of new arrays
+	 * owned by the protocol.
+	 * @param newCapacity	the minimum capacity of the new region
+	 * @param exact			flag that specifies if the region of the shared columns has exactly the passed capacity
+	 **/
+	private void resize(int newCapacity, boolean exact)
+	{
+		if (!this.columnar)
+		{
+			this.neighborsSerials = Arrays.copyOf(this.neighborsSerials, newCapacity);
+			this.neighborsLocKeys = Arrays.copyOf(this.neighborsLocKeys, newCapacity);
+			this.capacity = newCapacity;
+			return;
+		}
+
+		// copy the neighbors into a new region of the columns, and release the old one
+		final long newRegion = NeighborColumns.allocate(newCapacity, exact);
+		final int[] newSerials = NeighborColumns.getSerialsPage(newRegion);
+		final double[] newLocKeys = NeighborColumns.getLocationKeysPage(newRegion);
+		final int newBase = NeighborColumns.getBase(newRegion);
+		if (this.size > 0)
+		{
+			System.arraycopy(this.neighborsSerials, this.base, newSerials, newBase, this.size);
+			System.arraycopy(this.neighborsLocKeys, this.base, newLocKeys, newBase, this.size);
+		}
+		if (this.region != -1)
+			NeighborColumns.release(this.region, this.capacity);
+
+		this.neighborsSerials = newSerials;
+		this.neighborsLocKeys = newLocKeys;
+		this.base = newBase;
+		this.capacity = exact ? newCapacity : NeighborColumns.regionCapacity(newCapacity);
+		this.region = newRegion;
+	}
+
+
+	/**
+	 * Enlarges the neighborhood, if needed, so that it holds the passed number of neighbors {@code minCapacity} without other
+	 * enlargements (e.g. when the final degree of the FPeer is known, at the creation of the overlay network).
+	 * @param minCapacity the number of neighbors to hold
+	 **/
+	public void ensureCapacity(int minCapacity)
+	{
+		if (minCapacity > this.capacity)
+			this.resize(minCapacity, true);
+	}
+
+
 	/**
 	 * Checks if the passed FPeer {@code peer} is a neighbor of the running FPeer.
 	 * @param  peer the FPeer to compare with the running FPeer
@@ -67,7 +292,7 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	@Override
 	public boolean contains(Node peer) 
 	{
-		return this.neighborsRBTree.contains((FPeer) peer);
+		return this.indexOf(((FPeer) peer).getLocationKey()) >= 0;
 	}
 
 
@@ -80,7 +305,28 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	@Override
 	public boolean addNeighbor(Node peer) 
 	{
-		return this.neighborsRBTree.add((FPeer) peer);
+		final FPeer fpeer = (FPeer) peer;
+		final double locKey = fpeer.getLocationKey();
+
+		// find the insertion point (a neighbor having the same location key is already in the neighborhood)
+		int index = this.indexOf(locKey);
+		if (index >= 0)
+			return false;
+		index = -index - 1;
+
+		// enlarge the region, if needed (it can be empty, after a packing or before the first insertion)
+		if (this.size == this.capacity)
+			this.resize(Math.max(INITIAL_CAPACITY, this.size * 2), false);
+
+		// shift the greater neighbors and insert the new one
+		final int at = this.base + index;
+		System.arraycopy(this.neighborsSerials, at, this.neighborsSerials, at + 1, this.size - index);
+		System.arraycopy(this.neighborsLocKeys, at, this.neighborsLocKeys, at + 1, this.size - index);
+		this.neighborsSerials[at] = fpeer.getSerial();
+		this.neighborsLocKeys[at] = locKey;
+		this.size++;
+
+		return true;
 	}
 
 
@@ -92,7 +338,26 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	 **/
 	public boolean removeNeighbor(FPeer fpeer)
 	{
-		return this.neighborsRBTree.remove(fpeer);
+		// the binary search misses if the FPeer has changed location key without marking the neighborhood as dirty (e.g. with
+		// an asymmetric link, the swap of the FPeer marks only its own neighbors): fall back on the scan of the serials, and 
+		// mark the neighborhood as dirty, since its cached location keys are stale
+		int index = this.indexOf(fpeer.getLocationKey());
+		if (index < 0)
+		{
+			index = this.indexOfSerial(fpeer.getSerial());
+			if (index < 0)
+				return false;
+
+			this.dirty = true;
+		}
+
+		// shift the greater neighbors over the removed one
+		final int at = this.base + index;
+		System.arraycopy(this.neighborsSerials, at + 1, this.neighborsSerials, at, this.size - index - 1);
+		System.arraycopy(this.neighborsLocKeys, at + 1, this.neighborsLocKeys, at, this.size - index - 1);
+		this.size--;
+
+		return true;
 	}
 
 
@@ -103,7 +368,7 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	@Override
 	public int degree() 
 	{
-		return this.neighborsRBTree.size();
+		return this.size;
 	}
 
 
@@ -119,30 +384,28 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 		if (index < 0 || index >= this.degree())
 			throw new IndexOutOfBoundsException();
 
-		Iterator<FPeer> it = this.neighborsRBTree.iterator();
-
-		FPeer fpeer = null;
-		for (int i = 0; it.hasNext() && i <= index; i++)
-			fpeer = it.next();
-
-		return fpeer;
+		this.ensureSorted();
+		return this.neighborAt(index);
 	}
 
 
 	/**
 	 * Returns the FPeer, neighbor of the running FPeer, having location key equal to the passed location key {@code locKey}.
+	 * (or, if it does not exist, the neighbor with the smallest greater location key or, at last, with the greatest one).
 	 * @param locKey  the location key based on which retrieve the neighbor FPeer
 	 * @return the FPeer that have {@code locKey} as location key
+	 * @throws NoSuchElementException if the running FPeer has no neighbors
 	 **/
 	public FPeer getNeighborByLocationKey(double locKey)
 	{
-		final FPeer aux_peer = new FPeer(null, null, locKey);
-		final NavigableSet<FPeer> tailSet = this.neighborsRBTree.tailSet(aux_peer, true);
+		if (this.size == 0)
+			throw new NoSuchElementException();
 
-		if (tailSet.size() > 0)
-			return tailSet.first();
-		else
-			return this.neighborsRBTree.headSet(aux_peer, true).last();
+		int index = this.indexOf(locKey);
+		if (index < 0)
+			index = Math.min(-index - 1, this.size - 1);
+
+		return this.neighborAt(index);
 	}
 
 
@@ -152,7 +415,28 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	 **/
 	public Iterator<FPeer> getNeighborsIterator()
 	{
-		return this.neighborsRBTree.iterator();
+		this.ensureSorted();
+
+		return new Iterator<FPeer>()
+		{
+			// index of the next neighbor to return
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return this.next < size;
+			}
+
+			@Override
+			public FPeer next()
+			{
+				if (this.next >= size)
+					throw new NoSuchElementException();
+
+				return neighborAt(this.next++);
+			}
+		};
 	}
 
 
@@ -163,40 +447,64 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 	 * @param locationKey  the location key on which perform the similarity check
 	 * @param k			   the maximum number of most similar FPeers that the method should returns
 	 * @return topK		   the list of the {@code k} most similar FPeer w.r.t the passed {@code locationKey}, in decreasing order
-	 * 					   of similarity. 
+	 * 					   of similarity (the neighbors at the same distance in increasing order of location key). 
 	 **/
 	public ArrayList<FPeer> retrieveTopKNeighbors(double locationKey, int k)
 	{
-		// BR-Tree "clone" call needed because of side-effect operations 
-		// N.B. only the tree structure are cloned, so FPeers inside the RBtree are NOT cloned
-		@SuppressWarnings("unchecked")
-		TreeSet<FPeer> clonedRBT = (TreeSet<FPeer>) this.neighborsRBTree.clone();	
+		// start the flight recorder event of the retrieving
+		final ProtocolEvents.TopKNeighbors event = new ProtocolEvents.TopKNeighbors();
+		event.begin();
 
-		// use an auxiliary FPeer for comparisons in the tree
-		FPeer aux_fpeer = new FPeer(null, null, locationKey);
+		// the closest neighbor alone is found with a single pass of the kernel on the cached location keys, unless it has the
+		// passed location key (it is skipped, see below)
+		if (k == 1)
+		{
+			this.ensureSorted();
+			final int closest = DistanceKernels.argminDistance(this.neighborsLocKeys, this.base, this.base + this.size, locationKey);
+			if (closest >= 0 && this.neighborsLocKeys[closest] != locationKey)
+			{
+				ArrayList<FPeer> topK = new ArrayList<FPeer>(1);
+				topK.add(this.neighborAt(closest - this.base));
+
+				event.end();
+				if (event.shouldCommit())
+				{
+					event.k = k;
+					event.nodeDegree = this.size;
+					event.neighborsScanned = this.size;
+					event.commit();
+				}
+
+				return topK;
+			}
+		}
 
-		// get the set of all FPeers with location key strictly less than the passed location key
-		NavigableSet<FPeer> less_peers =  clonedRBT.headSet(aux_fpeer, false);
+		// find the range of the neighbors having location key equal to the passed one (at most one neighbor)
+		int index = this.indexOf(locationKey);
+		final int lessEnd = (index >= 0) ? index : -index - 1;
+		final int greaterStart = (index >= 0) ? index + 1 : lessEnd;
 
-		// get the set of all FPeers with location key strictly greater than the passed location key
-		NavigableSet<FPeer> greater_peers =  clonedRBT.tailSet(aux_fpeer, false);
+		// the FPeers with location key strictly less than the passed location key are in [lessFirst, lessLast], while the 
+		// FPeers with location key strictly greater are in [greaterFirst, greaterLast] (the ranges shrink as FPeers are taken)
+		int lessFirst = 0, lessLast = lessEnd - 1;
+		int greaterFirst = greaterStart, greaterLast = this.size - 1;
 
 		// allocate the array list that will contains the top-k location key-closest FPeers for the passed location key
 		ArrayList<FPeer> topK = new ArrayList<FPeer>();
 
-		// fill the top-k array list with FPeers of "less_peers" and "greater_peers" sets
-		for (int added = 0; less_peers.size() > 0 && greater_peers.size() > 0 && added < k; added++)
+		// fill the top-k array list with FPeers of "less" and "greater" ranges
+		for (int added = 0; lessLast >= lessFirst && greaterFirst <= greaterLast && added < k; added++)
 		{
 			// compute the distance between the passed location key and the location keys 
-			// of the two closest candidates FPeer of the sets "greater_peers" and "less_peers"
-			final double dist_less = less_peers.last().getDistanceFromLocationKey(locationKey);
-			final double dist_greater = greater_peers.first().getDistanceFromLocationKey(locationKey);
+			// of the two closest candidates FPeer of the ranges "greater" and "less"
+			final double dist_less = DistanceKernels.circularDistance(this.neighborsLocKeys[this.base + lessLast], locationKey);
+			final double dist_greater = DistanceKernels.circularDistance(this.neighborsLocKeys[this.base + greaterFirst], locationKey);
 
 			// add to the top-k array list the candidate FPeer with smallest distance
-			if (dist_less < dist_greater)
-				topK.add(less_peers.pollLast());
+			if (dist_less <= dist_greater)
+				topK.add(this.neighborAt(lessLast--));
 			else
-				topK.add(greater_peers.pollFirst());								
+				topK.add(this.neighborAt(greaterFirst++));
 		}
 
 		// if less than k items are inserted in top-k array list
@@ -205,25 +513,165 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 			// compute the remaining number of FPeers to add to top-k array list
 			final int residuals = k - topK.size();
 
-			// check if the loop is exited because of "less_peers" or "greater_peers" emptiness
-			NavigableSet<FPeer> residual_peers = (less_peers.size() == 0) ? greater_peers : less_peers;
+			// check if the loop is exited because of "less" or "greater" range emptiness
+			int first, last;
+			if (lessLast < lessFirst)
+			{
+				first = greaterFirst;
+				last = greaterLast;
+			}
+			else
+			{
+				first = lessFirst;
+				last = lessLast;
+			}
 
-			// insert from "residual_peers" the "residuals" FPeers closest to the passed location key
-			for (int j = 0; j < residuals && residual_peers.size() > 0; j++)
+			// insert from the residual range the "residuals" FPeers closest to the passed location key
+			for (int j = 0; j < residuals && first <= last; j++)
 			{
-				final double dist_first = residual_peers.first().getDistanceFromLocationKey(locationKey);
-				final double dist_last = residual_peers.last().getDistanceFromLocationKey(locationKey);
-				if (dist_first < dist_last)
-					topK.add(residual_peers.pollFirst());
+				final double dist_first = DistanceKernels.circularDistance(this.neighborsLocKeys[this.base + first], locationKey);
+				final double dist_last = DistanceKernels.circularDistance(this.neighborsLocKeys[this.base + last], locationKey);
+				if (dist_first <= dist_last)
+					topK.add(this.neighborAt(first++));
 				else
-					topK.add(residual_peers.pollLast());			
+					topK.add(this.neighborAt(last--));
 			}
 		}
 
+		// commit the flight recorder event, only if it is recorded (each step compares the closest candidates of two ranges,
+		// so the scanned neighbors are the taken ones plus the last compared one, if any)
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.k = k;
+			event.nodeDegree = this.size;
+			event.neighborsScanned = Math.min(this.size, topK.size() + 1);
+			event.commit();
+		}
+
 		return topK;
 	}
 
 
+	/**
+	 * Selects the neighbor of the running FPeer for the greedy routing: the closest one w.r.t. the passed location key
+	 * {@code locKey} that is not the passed FPeer {@code excluded} and that is not already in the {@code sentTo} field of
+	 * the passed HashMap entry {@code entry} (i.e. the first valid one in the order of {@code retrieveTopKNeighbors}). The distances are computed in a
+	 * single pass, then the kernel finds the minimum, excluding the rejected neighbors, until a valid one is found.
+	 * @param locKey	the location key on which perform the similarity check
+	 * @param entry		the HashMap entry of the routed message (can be {@code null})
+	 * @param excluded	the FPeer to avoid (can be {@code null})
+	 * @return the closest valid neighbor, or {@code null} if there are no valid neighbors.
+	 **/
+	public FPeer retrieveClosestNeighbor(double locKey, HashMapEntry entry, FPeer excluded)
+	{
+		this.ensureSorted();
+
+		double[] dists = distances.get();
+		if (dists.length < this.size)
+		{
+			dists = new double[Math.max(this.size, 2 * dists.length)];
+			distances.set(dists);
+		}
+
+		DistanceKernels.circularDistances(this.neighborsLocKeys, this.base, this.base + this.size, locKey, dists);
+
+		// the neighbor having the passed location key, if any, is skipped (as in "retrieveTopKNeighbors")
+		int index = DistanceKernels.argmin(dists, 0, this.size);
+		while (index >= 0)
+		{
+			final FPeer fpeer_cand = this.neighborAt(index);
+			if (this.neighborsLocKeys[this.base + index] != locKey && fpeer_cand != excluded 
+				&& (entry == null || !entry.alreadySentTo(fpeer_cand)))
+				return fpeer_cand;
+
+			dists[index] = Double.POSITIVE_INFINITY;
+			index = DistanceKernels.argmin(dists, 0, this.size);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Computes the circular distances between the passed location key {@code locKey} and the location keys of the neighbors
+	 * of the running FPeer, in a single pass on the cached location keys (see {@code DistanceKernels}).
+	 * @param locKey the location key from which compute the distances
+	 * @param dists	 the array in which store the distances, in the order of {@code getNeighbor} (at least {@code degree()} long)
+	 **/
+	public void computeDistances(double locKey, double[] dists)
+	{
+		this.ensureSorted();
+		DistanceKernels.circularDistances(this.neighborsLocKeys, this.base, this.base + this.size, locKey, dists);
+	}
+
+
+	/**
+	 * Computes the sum of the logarithms of the circular distances between the passed location key {@code locKey} and the
+	 * location keys of the neighbors of the running FPeer, skipping the passed FPeer {@code excluded}, in a single pass on
+	 * the cached location keys (see {@code DistanceKernels}).
+	 * @param locKey	the location key from which compute the distances
+	 * @param excluded	the FPeer to skip (can be {@code null}, or not a neighbor)
+	 * @return the sum of the logarithms of the distances.
+	 **/
+	public double logDistanceSum(double locKey, FPeer excluded)
+	{
+		this.ensureSorted();
+
+		final int first = this.base, end = this.base + this.size;
+		final int index = (excluded == null) ? -1 : this.indexOf(excluded.getLocationKey());
+		if (index < 0 || this.neighborsSerials[first + index] != excluded.getSerial())
+			return DistanceKernels.logDistanceSum(this.neighborsLocKeys, first, end, locKey);
+
+		// the ranges before and after the excluded neighbor
+		return DistanceKernels.logDistanceSum(this.neighborsLocKeys, first, first + index, locKey) 
+			   + DistanceKernels.logDistanceSum(this.neighborsLocKeys, first + index + 1, end, locKey);
+	}
+
+
+	/**
+	 * Writes the serials of the neighbors of the running FPeer on the passed {@code out} stream.
+	 * @param out the stream on which write the neighbors
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeNeighborsTo(DataOutput out) throws IOException
+	{
+		this.ensureSorted();
+
+		out.writeInt(this.size);
+		for (int i = 0; i < this.size; i++)
+			out.writeInt(this.neighborsSerials[this.base + i]);
+	}
+
+
+	/**
+	 * Adds to the neighborhood of the running FPeer the neighbors read from the passed {@code in} stream, as written by
+	 * {@code writeNeighborsTo}.
+	 * @param in the stream from which read the neighbors
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public void readNeighborsFrom(DataInput in) throws IOException
+	{
+		final int readSize = in.readInt();
+		for (int i = 0; i < readSize; i++)
+			this.addNeighbor(FPeerDirectory.get(in.readInt()));
+	}
+
+
+	/**
+	 * Marks as dirty the neighborhoods of all the neighbors of the running FPeer, after that the running FPeer has changed its
+	 * location key (e.g. after a swap).
+	 * @param linkablePID  the protocol identifier of the Linkable protocol used during the simulation
+	 **/
+	public void markNeighborhoodDirty(int linkablePID)
+	{
+		this.ensureSorted();
+
+		for (int i = 0; i < this.size; i++)
+			((LinkableProtocol) this.neighborAt(i).getProtocol(linkablePID)).markDirty();
+	}
+
+
 	/**
 	 * Performs the update (adding or removing) of the neighborhood tree-representation of each one of the neighbors of the 
 	 * running FPeer with the passed FPeer {@code fpeer_update}, avoiding the passed FPeer {@code fpeer_toAvoid}.
@@ -238,7 +686,7 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 		boolean finalResult = true;
 
 		// iterate on the neighborhood of the running protocol
-		Iterator<FPeer> it = this.neighborsRBTree.iterator();
+		Iterator<FPeer> it = this.getNeighborsIterator();
 
 		while (it.hasNext())
 		{
@@ -264,22 +712,36 @@ public class LinkableProtocol implements peersim.core.Linkable, peersim.core.Pro
 
 
 	/**
-	 * ... Not implemented ...
+	 * Releases the neighborhood of the running FPeer (and its region of the shared columns, if any), when it leaves the
+	 * overlay network. <br>
+	 * N.B. the running FPeer is not removed from the neighborhoods of its neighbors (see {@code FPeer.leave}).
 	 **/
 	@Override
 	public void onKill() 
 	{
-		// TODO Auto-generated method stub
+		if (this.region != -1)
+			NeighborColumns.release(this.region, this.capacity);
+
+		this.neighborsSerials = this.columnar ? null : new int[0];
+		this.neighborsLocKeys = this.columnar ? null : new double[0];
+		this.base = 0;
+		this.capacity = 0;
+		this.region = -1;
+		this.size = 0;
+		this.dirty = false;
 	}
 
 
 	/**
-	 * ... Not implemented ...
+	 * Trims the capacity of the neighbors arrays to the number of neighbors (e.g. after that the overlay network is created).
+	 * The regions of the shared columns are not trimmed: they are allocated with the exact capacity, when the degree is known
+	 * in advance (see {@code ensureCapacity}).
 	 **/
 	@Override
 	public void pack() 
 	{
-		// TODO Auto-generated method stub
+		if (!this.columnar && this.size < this.capacity)
+			this.resize(this.size, true);
 	}
 
 }
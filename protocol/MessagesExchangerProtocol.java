@@ -1,6 +1,8 @@
 package protocol;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -9,21 +11,34 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import control.LocationKeysManager;
 import control.LocationKeysManager.Coin;
+import control.ParallelCycleScheduler;
+import engine.DirectTransport;
+import engine.ParallelEDSimulator;
+import engine.SimulationContext;
 import peersim.cdsim.CDState;
 import peersim.config.Configuration;
 import peersim.core.Network;
 import peersim.core.Node;
-import peersim.transport.UniformRandomTransport;
+import peersim.transport.Transport;
+import protocol.ProtocolStatistics.Counter;
+import structure.ContentCache;
+import structure.CountingBloomFilter;
+import structure.DistanceKernels;
 import structure.FPeer;
+import structure.FPeerDirectory;
 import structure.HashMapEntry;
+import structure.LocationRing;
 import structure.Message;
 import structure.Message.Type;
+import structure.MulticastEnvelope;
+import structure.PackedMessageStore;
 
 /**
  *  Class that implements the Hybrid Cycle-Driven & Event-Driven protocol and so manages the FPeer's periodic requests and 
@@ -33,46 +48,141 @@ import structure.Message.Type;
  *  @since   March 9, 2015  
  **/
 
-public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peersim.cdsim.CDProtocol
+public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peersim.cdsim.CDProtocol, peersim.core.Cleanable
 {
-	// unique suffix for statistics file used during the current simulation
-	private static long statisticsFileExtension = System.currentTimeMillis();		
+	/**
+	 *  Class that holds the configuration of the protocol, read once from the PeerSim configuration file and shared by the
+	 *  protocols of all the FPeers: so the protocol of each FPeer holds only a reference to it, besides its own state.
+	 **/
+	private static final class Settings
+	{
+		// protocol identifier of the Hybrid-Protocol itself
+		final int itselfPID;		
+
+		// protocol identifier of the used Transport protocol
+		final int transportPID;			
+
+		// protocol identifier of the used Linkable protocol
+		final int linkablePID;
+
+		// maximum HTL value used to bound the Greedy Depth-First Routing
+		final int maxHTL;		
+
+		// maximum HTL value used to bound the SWAP requests
+		final int maxHTLswap;
+
+		// maximum number of neighbors toward expand a successfully PUT (key replication)
+		final int replicationFactor;
+
+		// interval, in minutes, based on which the protocol decides that an HashMap's entry is to mark as "useless"
+		final long uselessFactor;
+
+		// frequency, in units of time, based on which the protocol removes from HashMap the "useless" messages-entries
+		final int cleanupFrequency;
+
+		// frequency, in number of cycles, that FPeers tries to performs a SWAP operation
+		final int swapFrequency;	
+
+		// factor used to model the probability to send a GET request rather a PUT request, during the "nextCycle" execution
+		final double biasFactor;			
+
+		// flag that specify if the in-flight messages are kept in the packed message store (events carry only a slot handle)
+		final boolean packedMessages;
+
+		// struct-of-arrays store of the in-flight messages of the simulation, shared by all the FPeers (null if packed messages
+		// are disabled)
+		final PackedMessageStore packedStore;
 
-	// flag that indicates if the general statistics of the simulations are already written or not
-	private static boolean simStatToWrite = true;
+		// flag that specify if the PUT replications are sent as a single multicast event (only if the transport delays are equal)
+		final boolean multicastReplication;
 
-	// protocol identifier of the Hybrid-Protocol itself
-	private int itselfPID;		
+		// duration, in units of time, of the swap leases acquired by the FPeers involved in a SWAP session
+		final long swapLeaseDuration;
 
-	// protocol identifier of the used Transport protocol
-	private int transportPID;			
+		// flag that specify if the FPeers that relay a GET_FOUND message cache the found content location key
+		final boolean pathCaching;
 
-	// protocol identifier of the used Linkable protocol
-	private int linkablePID;
+		// capacity and replacement policy of the FPeers caches (used only if path caching is enabled)
+		final int cacheCapacity;
+		final ContentCache.Policy cachePolicy;
 
-	// maximum HTL value used to bound the Greedy Depth-First Routing
-	private int maxHTL;		
+		// flag that specify if the GET messages are forwarded to a neighbor whose store Bloom filter claims the content location key
+		final boolean filterRouting;
 
-	// maximum HTL value used to bound the SWAP requests
-	private int maxHTLswap;
+		// number of concurrent walkers launched by a GET request toward the top neighbors of the requester (1 = single walker)
+		final int walkers;
 
-	// maximum number of neighbors toward expand a successfully PUT (key replication)
-	private int replicationFactor;
+		// structured event log of the protocol, shared by all the FPeers ({@code null} if the log is disabled)
+		final ProtocolLog eventLog;
 
-	// interval, in minutes, based on which the protocol decides that an HashMap's entry is to mark as "useless"
-	private long uselessFactor;
+		// seeds of the cycles of the FPeers, indexed by network position, and the time step in which they have been drawn
+		// (see "nextCycle")
+		long[] cycleSeeds;
+		long cycleSeedsTime;
 
-	// frequency, in units of time, based on which the protocol removes from HashMap the "useless" messages-entries
-	private int cleanupFrequency;
 
-	// frequency, in number of cycles, that FPeers tries to performs a SWAP operation
-	private int swapFrequency;	
+		/**
+		 * Constructor method. Reads the configuration of the protocol from the PeerSim configuration file, using {@code prefix}.
+		 * @param prefix  the prefix, in the configuration file, representing the class.
+		 **/
+		Settings(String prefix)
+		{
+			this.itselfPID = Configuration.getPid(prefix + ".itself_pid");
+			this.transportPID = Configuration.getPid(prefix + ".transport_pid");
+			this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
+			this.maxHTL = Configuration.getInt(prefix + ".maxHTL");
+			this.maxHTLswap = Configuration.getInt(prefix + ".maxHTLswap");
+			this.replicationFactor = Configuration.getInt(prefix + ".replicationFactor");
+			this.swapFrequency = Configuration.getInt(prefix + ".swapFrequency");
+			this.uselessFactor = Configuration.getLong(prefix + ".uselessFactor");
+			this.cleanupFrequency = Configuration.getInt(prefix + ".cleanupFrequency");
+			this.biasFactor = Configuration.getDouble(prefix + ".coinBiasing");
+			this.packedMessages = Configuration.getBoolean(prefix + ".packedMessages", false);
+
+			// a single multicast event can replace the replication messages only if all of them would have the same delay
+			// (the direct transport delivers all the messages with zero delay; any other transport must declare equal delays)
+			final String transportPrefix = "protocol." + Configuration.lookupPid(this.transportPID);
+			this.multicastReplication = Configuration.getBoolean(prefix + ".multicastReplication", false) 
+										&& (DirectTransport.class.isAssignableFrom(Configuration.getClass(transportPrefix))
+											|| Configuration.getLong(transportPrefix + ".mindelay", 0) == Configuration.getLong(transportPrefix + ".maxdelay", -1));
+
+			// by default, a lease lasts twice the time needed by the longest SWAP session (random walk and answer, at maximum delay)
+			this.swapLeaseDuration = Configuration.getLong(prefix + ".swapLeaseDuration", 
+										2 * (this.maxHTLswap + 1) * Math.max(1, Configuration.getLong(transportPrefix + ".maxdelay", 1)));
+
+			// path caching configuration
+			this.pathCaching = Configuration.getBoolean(prefix + ".pathCaching", false);
+			this.cacheCapacity = Configuration.getInt(prefix + ".cacheCapacity", 50);
+			this.cachePolicy = ContentCache.Policy.valueOf(Configuration.getString(prefix + ".cachePolicy", "LRU").toUpperCase());
+			this.filterRouting = Configuration.getBoolean(prefix + ".filterRouting", false);
+			this.walkers = Math.max(1, Configuration.getInt(prefix + ".walkers", 1));
+
+			// get the packed message store of the simulation, shared by all the FPeers, if needed
+			this.packedStore = this.packedMessages ? SimulationContext.current().getPackedMessageStore() : null;
+
+			// opens the event log of the simulation, if enabled and not already opened
+			final SimulationContext ctx = SimulationContext.current();
+			if (Configuration.getBoolean(prefix + ".eventLog", false) && ctx.getEventLog() == null)
+			{
+				try
+				{
+					ctx.setEventLog(new ProtocolLog(prefix + ".eventLog", "../statistics/sim_log_" + getStatisticsFileExtension() + ".tsv"));
+				}
+				catch (IOException e)
+				{
+					System.out.println("Error during event log file opening:\n" + e.getMessage());
+				}
+			}
+			this.eventLog = ctx.getEventLog();
 
-	// factor used to model the probability to send a GET request rather a PUT request, during the "nextCycle" execution
-	private double biasFactor;			
+			this.cycleSeeds = null;
+			this.cycleSeedsTime = -1;
+		}
+	}
 
-	// flag that specify if the prints are allowed or not, during the simulation messages exchange
-	private boolean printsAllowed;							
+
+	// the settings of the protocol, shared by the protocols of all the FPeers
+	private Settings settings;
 
 	// HashMap that stores triples (ID, locKey, [locKey1,...]) if the running FPeer have received a message with identifier = "ID" 
 	// from the FPeer with location key "locKey" and have sent a message with identifier = "ID" to the FPeers having location keys
@@ -81,22 +191,24 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 
 	/**
-	 * Constructor method. Sets up internal fields from the PeerSim configuration file, using {@code prefix}.
+	 * Constructor method. Sets up internal fields from the PeerSim configuration file, using {@code prefix} (the settings are
+	 * read only by the protocol of the first FPeer, and shared with the others).
 	 * @param prefix  the prefix, in the configuration file, representing the class.
 	 **/
 	public MessagesExchangerProtocol(String prefix)
 	{
-		this.itselfPID = Configuration.getPid(prefix + ".itself_pid");
-		this.transportPID = Configuration.getPid(prefix + ".transport_pid");
-		this.linkablePID = Configuration.getPid(prefix + ".linkable_pid");
-		this.maxHTL = Configuration.getInt(prefix + ".maxHTL");
-		this.maxHTLswap = Configuration.getInt(prefix + ".maxHTLswap");
-		this.replicationFactor = Configuration.getInt(prefix + ".replicationFactor");
-		this.swapFrequency = Configuration.getInt(prefix + ".swapFrequency");
-		this.uselessFactor = Configuration.getLong(prefix + ".uselessFactor");
-		this.cleanupFrequency = Configuration.getInt(prefix + ".cleanupFrequency");
-		this.biasFactor = Configuration.getDouble(prefix + ".coinBiasing");
-		this.printsAllowed = Configuration.getBoolean(prefix + ".allowPrints");			
+		// the settings of the protocol, by prefix, are held by the simulation context
+		final HashMap<String, Object> settingsByPrefix = SimulationContext.current().getProtocolSettings();
+		synchronized (settingsByPrefix)
+		{
+			this.settings = (Settings) settingsByPrefix.get(prefix);
+			if (this.settings == null)
+			{
+				this.settings = new Settings(prefix);
+				settingsByPrefix.put(prefix, this.settings);
+			}
+		}
+
 		this.SRmessages = new HashMap<Long, HashMapEntry>();
 	}
 
@@ -121,18 +233,7 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 			return null;
 		}
 
-		// set up the fields of the cloned protocol (behave as constructor method)
-		cloned_prot.itselfPID = this.itselfPID;
-		cloned_prot.transportPID = this.transportPID;
-		cloned_prot.linkablePID = this.linkablePID;
-		cloned_prot.maxHTL = this.maxHTL;
-		cloned_prot.maxHTLswap = this.maxHTLswap;
-		cloned_prot.replicationFactor = this.replicationFactor;
-		cloned_prot.swapFrequency = this.swapFrequency;
-		cloned_prot.uselessFactor = this.uselessFactor;
-		cloned_prot.cleanupFrequency = this.cleanupFrequency;
-		cloned_prot.biasFactor = this.biasFactor;
-		cloned_prot.printsAllowed = this.printsAllowed;
+		// set up the fields of the cloned protocol (behave as constructor method; the settings are shared)
 		cloned_prot.SRmessages = new HashMap<Long, HashMapEntry>();
 
 		return cloned_prot;
@@ -142,7 +243,8 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	/**
 	 * Cleanup routine for deallocation of useless entries in the protocol's HashMap. 
 	 * All the HashMap's entries that are not used for more than {@code inactivityToUseless} minutes are removed from the
-	 * HashMap, saving memory.
+	 * HashMap, saving memory (with the cancellation of the walkers still in flight, if the entry is the one of a request
+	 * of the FPeer).
 	 **/
 	private void cleanHashMap()
 	{
@@ -157,14 +259,39 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		{
 			// if the current entry is not used for more than "inactivityToUseless" minutes, mark it as "useless"
 			final long diffInMinutes = Math.abs(currentTime - entry.getValue().getLastModTimetamp()) / 60000;
-			if (diffInMinutes > this.uselessFactor)
+			if (diffInMinutes > this.settings.uselessFactor)
 				toRemoveIDs.add(entry.getKey());
 		}
 
 		// remove all the useless HashMap's entries
 		for (Long key : toRemoveIDs)
 		{
-			this.SRmessages.remove(key);
+			forgetCancelledWalks(key, this.SRmessages.remove(key));
+		}
+	}
+
+
+	/**
+	 * Forgets the cancellation of the walkers of the passed request, when the entry {@code entry} of the request is removed
+	 * from the HashMap of the FPeer that has performed it: the walkers not yet reached by the cancellation (e.g. lost with
+	 * the FPeers that have left the overlay network) would otherwise keep it forever.
+	 * @param messageID	the identifier of the request
+	 * @param entry		the removed HashMap entry of the request
+	 **/
+	private void forgetCancelledWalks(final long messageID, HashMapEntry entry)
+	{
+		// only the requester removes the cancellation (the FPeers that relay the walkers have their own entries), after that
+		// it has been registered (with the parallel engine, both are executed serially at the end of the window)
+		if (this.settings.walkers > 1 && entry.getReceivedFrom().getProtocol(this.settings.itselfPID) == this)
+		{
+			ParallelEDSimulator.runAtBarrier(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					SimulationContext.current().getCancelledWalks().remove(messageID);
+				}
+			});
 		}
 	}
 
@@ -172,32 +299,66 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	/**
 	 * Writes statistics of the passed message {@code mex} on the statistics file of the simulation.
 	 * Statistics consists in the pairs (messageType, messageTHC).
+	 * The writing is synchronized on the class, since the statistics file is shared by all the FPeers; with the parallel 
+	 * engine it is executed serially at the end of the current window, so the lines are written in a fixed order.
 	 * @param mex  the message on which writes statistics
 	 **/
 	private void writeStatisticsOnFile(Message mex) 
+	{
+		final Type messageType = mex.getMessageType();
+		final int THC = mex.getTHC();
+		ParallelEDSimulator.runAtBarrier(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				synchronized (MessagesExchangerProtocol.class)
+				{
+					writeStatisticsOnFileUnsafe(messageType, THC);
+				}
+			}
+		});
+
+		// count the ended GET requests, for the GET hit ratio (e.g. including the misses caused by the stores evictions)
+		if (mex.getMessageType() == Type.GET_FOUND)
+			ProtocolStatistics.increment(Counter.GET_FOUND);
+		else if (mex.getMessageType() == Type.GET_NOTFOUND)
+			ProtocolStatistics.increment(Counter.GET_NOTFOUND);
+		else if (mex.getMessageType() == Type.PUT_OK)
+			ProtocolStatistics.increment(Counter.PUT_OK);
+		else if (mex.getMessageType() == Type.PUT_COLLISION)
+			ProtocolStatistics.increment(Counter.PUT_COLLISION);
+	}
+
+
+	/**
+	 * Implements {@code writeStatisticsOnFile} without any synchronization.
+	 * @param messageType	the type of the message on which writes statistics
+	 * @param THC			the THC of the message on which writes statistics
+	 **/
+	private void writeStatisticsOnFileUnsafe(Type messageType, int THC) 
 	{
 		PrintWriter statFile = null;
 		try 
 		{
 			// try to open the statistics file and to write statistics on it
-			statFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sim_stat_" + statisticsFileExtension + ".stat", true)));
+			statFile = new PrintWriter(new BufferedWriter(new FileWriter("../statistics/sim_stat_" + getStatisticsFileExtension() + ".stat", true)));
 
 			// only the first time, write generics simulation statistics
-			if (simStatToWrite)
+			if (SimulationContext.current().takeSimStatToWrite())
 			{
 				statFile.println("---------------------------------------------------");
 				statFile.println("Simulation DateTime: \t " + (new SimpleDateFormat("yyyy/MM/dd HH:mm:ss")).format(new Date()));
 				statFile.println("Overlay Size: \t " + Network.size());
 				statFile.println("Overlay Log-Size: \t " +  (Math.log(Network.size()) / Math.log(2)));
-				statFile.println("Simulation max-HTL: \t " + this.maxHTL);
-				statFile.println("Simulation maxSwap-HTL: \t " + this.maxHTLswap);
-				statFile.println("Simulation Key-Replication Factor: \t " + this.replicationFactor);
+				statFile.println("Simulation max-HTL: \t " + this.settings.maxHTL);
+				statFile.println("Simulation maxSwap-HTL: \t " + this.settings.maxHTLswap);
+				statFile.println("Simulation Key-Replication Factor: \t " + this.settings.replicationFactor);
 				statFile.println("---------------------------------------------------\n");
-				simStatToWrite = false;
 			}
 
 			// write statistics for the current message
-			statFile.println(mex.getMessageType() + "\t" + mex.getTHC());
+			statFile.println(messageType + "\t" + THC);
 		}
 		catch (IOException e) 
 		{
@@ -212,6 +373,105 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	}
 
 
+	/**
+	 * Writes the entries of the FPeer's HashMap (pending messages) on the passed {@code out} stream. The entries of the
+	 * messages received from FPeers detached from their serials (see {@code FPeerDirectory.recycle}) are not written, since
+	 * their answers can no more be sent back.
+	 * @param out the stream on which write the entries
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeStateTo(DataOutput out) throws IOException
+	{
+		int entries = 0;
+		for (HashMapEntry entry : this.SRmessages.values())
+			if (entry.getReceivedFrom().getSerial() >= 0)
+				entries++;
+
+		out.writeInt(entries);
+		for (Entry<Long, HashMapEntry> entry : this.SRmessages.entrySet())
+		{
+			if (entry.getValue().getReceivedFrom().getSerial() < 0)
+				continue;
+
+			out.writeLong(entry.getKey());
+			entry.getValue().writeTo(out);
+		}
+	}
+
+
+	/**
+	 * Replaces the entries of the FPeer's HashMap with the ones read from the passed {@code in} stream, as written by 
+	 * {@code writeStateTo}.
+	 * @param in the stream from which read the entries
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public void readStateFrom(DataInput in) throws IOException
+	{
+		this.SRmessages.clear();
+
+		final int entries = in.readInt();
+		for (int i = 0; i < entries; i++)
+		{
+			final long messageID = in.readLong();
+			this.SRmessages.put(messageID, HashMapEntry.readFrom(in));
+		}
+	}
+
+
+	/**
+	 * Releases the entries of the FPeer's HashMap, when the FPeer is removed from the simulation (after that it has left the
+	 * overlay network, see the {@code ChurnControl}).
+	 **/
+	@Override
+	public void onKill()
+	{
+		for (Entry<Long, HashMapEntry> entry : this.SRmessages.entrySet())
+			forgetCancelledWalks(entry.getKey(), entry.getValue());
+
+		this.SRmessages.clear();
+	}
+
+
+	/**
+	 * Gets out the number of entries (forward messages received or sent and not yet cleaned up) of the FPeer's HashMap.
+	 * @return the number of entries of the HashMap.
+	 **/
+	public int getSRmessagesCount()
+	{
+		return this.SRmessages.size();
+	}
+
+
+	/**
+	 * Enables or disables the generation of new GET and PUT requests during the cycles of all the FPeers.
+	 * @param enabled {@code true} to generate new requests, {@code false} otherwise
+	 **/
+	public static void setRequestsEnabled(boolean enabled)
+	{
+		SimulationContext.current().setRequestsEnabled(enabled);
+	}
+
+
+	/**
+	 * Enables or disables the starting of new SWAP sessions during the cycles of all the FPeers.
+	 * @param enabled {@code true} to start new SWAP sessions, {@code false} otherwise
+	 **/
+	public static void setSwapsEnabled(boolean enabled)
+	{
+		SimulationContext.current().setSwapsEnabled(enabled);
+	}
+
+
+	/**
+	 * Gets out the extension (creation timestamp) used for the names of the statistics files of the current simulation.
+	 * @return the extension of the statistics files.
+	 **/
+	public static long getStatisticsFileExtension()
+	{
+		return SimulationContext.current().getStatisticsFileExtension();
+	}
+
+
 	/**
 	 * Verifies if the passed location key {@code locKey1} is closest, in term of circular distance, than the other 
 	 * passed location key {@code locKey2} w.r.t. the passed {@code contentLocKey}.
@@ -223,51 +483,58 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 **/
 	private boolean isLessWrtContent(double locKey1, double locKey2, double contentLocKey)
 	{
-		final double dist1 = Math.abs(locKey1 - contentLocKey);
-		final double dist2 = Math.abs(locKey2 - contentLocKey);
-
-		return (Math.min(dist1, 1 - dist1) < Math.min(dist2, 1 - dist2));
+		return (DistanceKernels.circularDistance(locKey1, contentLocKey) < DistanceKernels.circularDistance(locKey2, contentLocKey));
 	}
 
 
 	/**
-	 * Tries to find a candidate FPeer, scanning {@code neighborsList} from the beginning, that satisfies the following
-	 * two tests: <br><br>
-	 * 
-	 * test 1) it is not already present in the {@code sentTo} field of the passed HashMap {@code entry}; <br>
-	 * test 2) it is different from the passed FPeer {@code toAvoid}.
-	 * 
+	 * Tries to find a candidate FPeer, scanning {@code neighborsList} from the beginning, that is valid for the greedy
+	 * routing (see {@code LinkableProtocol.retrieveClosestNeighbor}) and whose store Bloom filter claims the passed content
+	 * location key {@code contentLocKey}. The filters are the copies received by the running FPeer {@code fpeer} (see
+	 * {@code FPeer.refreshNeighborFilters}), so they can be stale: a claim of a copy that the store and the live filter do
+	 * not confirm is counted as a stale positive.
+	 * @param fpeer			the running FPeer
 	 * @param neighborsList	the list of neighbors to scan
 	 * @param entry			the HashMap entry to check
 	 * @param toAvoid		the FPeer to avoid
+	 * @param contentLocKey	the content location key to search in the Bloom filters
 	 * @return a neighbors list's index in [0, size) if a candidate is found, >= size if it is not found.
 	 **/
-	private int findBestIndex(ArrayList<FPeer> neighborsList, HashMapEntry entry, FPeer toAvoid)
+	private int findFilterMatchIndex(FPeer fpeer, ArrayList<FPeer> neighborsList, HashMapEntry entry, FPeer toAvoid, final double contentLocKey)
 	{
-		int index = 0;
-		for (; index < neighborsList.size(); index++)
+		for (int index = 0; index < neighborsList.size(); index++)
 		{
-			// get index-th neighbor as candidate
 			final FPeer fpeer_cand = neighborsList.get(index);
+			final CountingBloomFilter filter = fpeer.getNeighborFilter(fpeer_cand);
 
-			// check equality between the selected candidate and the FPeer to avoid
-			final boolean areEquals = (fpeer_cand == toAvoid);
+			// skip the candidates that are not valid for the greedy routing or whose filter does not claim the key
+			if (fpeer_cand == toAvoid || (entry != null && entry.alreadySentTo(fpeer_cand)))
+				continue;
+			if (filter == null || !filter.mightContain(contentLocKey))
+				continue;
 
-			// if the entry is null, only the test 2) is needed (no sent previously)
-			if (entry == null) 
+			// count the filter-driven forwards, and the false positives among them (statistics only): the store of the
+			// candidate is checked at the end of the window, since it could be owned by another shard of the parallel engine
+			ProtocolStatistics.increment(Counter.FILTER_FORWARDS);
+			ParallelEDSimulator.runAtBarrier(new Runnable()
 			{
-				if (areEquals)
-					continue;
-				else
-					break;
-			}
+				@Override
+				public void run()
+				{
+					if (fpeer_cand.getContentStore().peek(contentLocKey))
+						return;
+
+					ProtocolStatistics.increment(Counter.FILTER_FALSE_POSITIVES);
+					final CountingBloomFilter live = fpeer_cand.getContentStore().getFilter();
+					if (live == null || !live.mightContain(contentLocKey))
+						ProtocolStatistics.increment(Counter.FILTER_STALE_POSITIVES);
+				}
+			});
 
-			// otherwise, perform test 1) + test 2)
-			if (!entry.alreadySentTo(fpeer_cand) && !areEquals)
-				break;
+			return index;
 		}
 
-		return index;
+		return neighborsList.size();
 	}
 
 
@@ -320,26 +587,47 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	
 	/**
 	 * Sends the message {@code msg} from the FPeer {@code sender} to Hybrid protocol of the FPeer {@code receiver}.
-	 * Furthermore, if the message is a GET or a PUT request, the method increases its THC value.
+	 * Furthermore, if the message is a GET or a PUT request, the method increases its THC value. <br>
+	 * If {@code receiver} has left the overlay network (e.g. it is the next hop of a backward message), the message is
+	 * not sent and it is counted as lost.
 	 * @param sender  	the node that send the message
 	 * @param receiver 	the node to which send the message
 	 * @param msg 		the message to send
 	 **/
 	private void sendMessage(Node sender, Node receiver, Message msg)
 	{
+		if (((FPeer) receiver).isDeparted())
+		{
+			ProtocolStatistics.increment(Counter.MESSAGES_LOST);
+			return;
+		}
+
 		// get the transport protocol of the sender node
-		UniformRandomTransport urt = (UniformRandomTransport) sender.getProtocol(this.transportPID);
+		Transport urt = (Transport) sender.getProtocol(this.settings.transportPID);
 
 		// increase message THC (True Hop Counter) for GET and PUT requests (statistics only)
 		final Type mexType = msg.getMessageType();
 		if (mexType == Type.GET || mexType == Type.PUT)
 			msg.increaseTHC();
 
-		// send the message msg to the protocol having eventdrivenPID of the FPeer receiver
-		urt.send(sender, receiver, msg, this.itselfPID);
+		// count the messages of the GET requests, forward and backward (statistics only)
+		if (mexType == Type.GET || mexType == Type.GET_NOTFOUND || mexType == Type.GET_FOUND)
+			ProtocolStatistics.increment(Counter.GET_TRAFFIC);
+
+		// the FPeers referred by the in-flight message keep their serials until its delivery (see "FPeerDirectory.recycle")
+		FPeerDirectory.retain(msg.getLastHopFPeer());
+		FPeerDirectory.retain(msg.getResponderFPeer());
+
+		// send the message msg to the protocol having eventdrivenPID of the FPeer receiver (if the packed representation is 
+		// enabled, the message is stored in the packed store and the event carries only the handle of its slot)
+		if (this.settings.packedMessages)
+			urt.send(sender, receiver, this.settings.packedStore.store(msg), this.settings.itselfPID);
+		else
+			urt.send(sender, receiver, msg, this.settings.itselfPID);
+		ProtocolStatistics.increment(Counter.MESSAGES_SENT);
 
-		if (printsAllowed)
-			System.out.println("FPeer " + ((FPeer)sender).toString() + ": sent message " + msg.toString() + " ...");
+		if (this.settings.eventLog != null)
+			this.settings.eventLog.log(ProtocolLog.Event.SENT, ParallelEDSimulator.currentTime(), (FPeer) sender, (FPeer) receiver, msg);
 	}
 	
 	
@@ -354,8 +642,16 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	private void replicatesTowardNeighbors(FPeer fpeer, double contentLocKey) 
 	{
 		// get top-"replicationFactor" (maximum, if exists) neighbors of the running FPeer
-		LinkableProtocol lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
-		ArrayList<FPeer> topToReplicate = lp.retrieveTopKNeighbors(contentLocKey, this.replicationFactor);
+		LinkableProtocol lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+		ArrayList<FPeer> topToReplicate = lp.retrieveTopKNeighbors(contentLocKey, this.settings.replicationFactor);
+
+		// if allowed, replicates with a single multicast event (not with the parallel engine, since the receivers could be
+		// owned by different shards)
+		if (this.settings.multicastReplication && topToReplicate.size() > 1 && !ParallelEDSimulator.isRunning())
+		{
+			multicastTowardNeighbors(fpeer, contentLocKey, topToReplicate);
+			return;
+		}
 
 		// replicates the stored content location key on top-"replicationFactor" neighbors				
 		Message replMex = null;
@@ -370,7 +666,7 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 			else
 			{
 				// creates the first replication message
-				replMex = new Message(Type.PUT_REPLICATION, contentLocKey, this.maxHTL);
+				replMex = new Message(Type.PUT_REPLICATION, contentLocKey, this.settings.maxHTL);
 				replMex.changeLastHopFPeer(fpeer);
 				replMex.decreaseHTL();
 				replMex.changePathClosestLocKey(fpeer.getLocationKey());
@@ -394,6 +690,43 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	}
 
 	
+	/**
+	 * Replicates the passed content location key {@code contentLocKey} from the running FPeer {@code fpeer} toward the passed
+	 * top-neighbors {@code topToReplicate}, as {@code replicatesTowardNeighbors} does, but with a single PUT_REPLICATION message
+	 * shared by all the neighbors and delivered with a single (multicast) event.
+	 * 
+	 * @param fpeer			 the running FPeer that will perform the replication process
+	 * @param contentLocKey	 the content location key to replicate in the overlay network
+	 * @param topToReplicate the top-neighbors toward which replicate the content location key
+	 **/
+	private void multicastTowardNeighbors(FPeer fpeer, double contentLocKey, ArrayList<FPeer> topToReplicate)
+	{
+		// creates the replication message, shared by all the neighbors
+		Message replMex = new Message(Type.PUT_REPLICATION, contentLocKey, this.settings.maxHTL);
+		replMex.changeLastHopFPeer(fpeer);
+		replMex.decreaseHTL();
+		replMex.changePathClosestLocKey(fpeer.getLocationKey());
+
+		// add HashMap entry for the replication message, with the information "sent to" for all the neighbors
+		HashMapEntry entry = new HashMapEntry(fpeer);
+		for (FPeer fpeer_k : topToReplicate)
+			entry.addSent(fpeer_k);
+		this.SRmessages.put(replMex.getMessageID(), entry);
+
+		// send the (frozen) message to all the neighbors with a single event, scheduled toward the running FPeer itself: so
+		// the event does not depend on the state of any receiver (a down receiver would drop it for all the others), and each
+		// receiver is checked at the delivery (the transport delays are equal, so the delivery time is the same)
+		Transport urt = (Transport) fpeer.getProtocol(this.settings.transportPID);
+		for (int k = 0; k < topToReplicate.size(); k++)
+			FPeerDirectory.retain(fpeer);
+		urt.send(fpeer, fpeer, new MulticastEnvelope(replMex, topToReplicate), this.settings.itselfPID);
+		ProtocolStatistics.add(Counter.MESSAGES_SENT, topToReplicate.size());
+
+		if (this.settings.eventLog != null)
+			this.settings.eventLog.log(ProtocolLog.Event.MULTICAST, ParallelEDSimulator.currentTime(), fpeer, null, replMex);
+	}
+
+
 	/**
 	 * Utility method that handles the forwarding of the passed message {@code m}, performing the following operations: <br>
 	 * 
@@ -436,6 +769,144 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	}
 
 
+	/**
+	 * Checks if the passed content location key {@code contentLocKey} is in the cache of the passed FPeer {@code fpeer},
+	 * updating the cache statistics.
+	 * @param fpeer			the FPeer whose cache is checked
+	 * @param contentLocKey	the content location key to search in the cache
+	 * @return {@code true} if the content location key is cached by the FPeer. {@code false} otherwise.
+	 **/
+	private boolean isCachedContentLocationKey(FPeer fpeer, double contentLocKey)
+	{
+		final ContentCache cache = fpeer.getContentCache();
+		ProtocolStatistics.increment(Counter.CACHE_LOOKUPS);
+
+		if (cache == null || !cache.contains(contentLocKey))
+			return false;
+
+		ProtocolStatistics.increment(Counter.CACHE_HITS);
+		return true;
+	}
+
+
+	/**
+	 * Stores the passed content location key {@code contentLocKey} in the cache of the passed FPeer {@code fpeer} 
+	 * (allocating the cache the first time), if it is not already stored in the FPeer's storage.
+	 * @param fpeer			the FPeer that caches the content location key
+	 * @param contentLocKey	the content location key to cache
+	 **/
+	private void cacheContentLocationKey(FPeer fpeer, double contentLocKey)
+	{
+		if (fpeer.containsContentLocationKey(contentLocKey))
+			return;
+
+		ContentCache cache = fpeer.getContentCache();
+		if (cache == null)
+		{
+			cache = new ContentCache(this.settings.cacheCapacity, this.settings.cachePolicy);
+			fpeer.setContentCache(cache);
+		}
+
+		if (cache.add(contentLocKey))
+			ProtocolStatistics.increment(Counter.CACHE_INSERTIONS);
+	}
+
+
+	/**
+	 * Records the routing accuracy of the ended request {@code mex}, comparing the location key closest to the content location
+	 * key encountered during its routing with the location key of the FPeer truly closest to it (see {@code LocationRing}):
+	 * two binary searches on the location ring.
+	 * @param mex the message with which the request ends (e.g. GET_FOUND, GET_NOTFOUND, PUT_OK)
+	 **/
+	private static void recordRoutingAccuracy(Message mex)
+	{
+		final double contentLocKey = mex.getMessageLocationKey();
+		final double reachedLocKey = mex.getPathClosestLocKey();
+		final double closestLocKey = LocationRing.getClosestLocationKey(contentLocKey);
+		if (Double.isNaN(closestLocKey))
+			return;
+
+		// the key-space gap is the excess of the circular distance of the reached location key over the minimum one
+		final double reachedDist = Math.abs(reachedLocKey - contentLocKey);
+		final double closestDist = Math.abs(closestLocKey - contentLocKey);
+		final double keyGap = Math.min(reachedDist, 1 - reachedDist) - Math.min(closestDist, 1 - closestDist);
+
+		ProtocolStatistics.recordRoutingAccuracy(mex.getMessageType(), reachedLocKey == closestLocKey, LocationRing.rankDistance(reachedLocKey, closestLocKey), Math.max(0.0, keyGap));
+	}
+
+
+	/**
+	 * Checks if the passed message {@code mex} is a walker of a multi-walker GET already ended with a GET_FOUND: in that case,
+	 * the walker is cancelled (i.e. the message is dropped by the caller).
+	 * @param mex the received message of a GET request (e.g. GET, GET_NOTFOUND, GET_FOUND)
+	 * @return {@code true} if the walker is cancelled. {@code false} otherwise.
+	 **/
+	private boolean isCancelledWalker(Message mex)
+	{
+		final ConcurrentHashMap<Long, AtomicInteger> cancelledWalks = SimulationContext.current().getCancelledWalks();
+		final AtomicInteger inFlight = cancelledWalks.get(mex.getMessageID());
+		if (inFlight == null)
+		{
+			// until the cancellation is registered (with the parallel engine, at the end of the window in which the request
+			// ends), the requester drops the walkers it receives, counting them in its entry of the request (see "endWalker")
+			final HashMapEntry entry = this.SRmessages.get(mex.getMessageID());
+			if (entry == null || entry.getWalkers() >= 0)
+				return false;
+
+			entry.setWalkers(entry.getWalkers() + 1);
+		}
+		else if (inFlight.decrementAndGet() == 0)
+		{
+			// the last cancelled walker removes the request from the cancelled ones
+			cancelledWalks.remove(mex.getMessageID());
+		}
+
+		ProtocolStatistics.increment(Counter.GET_WALKERS_CANCELLED);
+		return true;
+	}
+
+
+	/**
+	 * Ends, at the requester, the walker of a multi-walker GET carried by the passed message {@code mex}: the first GET_FOUND
+	 * ends the request, and the walkers still in flight are cancelled; a GET_NOTFOUND ends the request only if it is carried
+	 * by the last walker in flight. <br>
+	 * The cancelled walkers are counted (as a negative number) in the entry of the requester, and the cancellation shared
+	 * with the other FPeers is registered serially at the end of the current window of the parallel engine (immediately,
+	 * otherwise), with the walkers not yet dropped by the requester.
+	 * @param entry	the HashMap entry of the requester, relative to the request
+	 * @param mex	the message with which the walker ends (e.g. GET_FOUND, GET_NOTFOUND)
+	 * @return {@code true} if the request ends with {@code mex}. {@code false} otherwise.
+	 **/
+	private static boolean endWalker(final HashMapEntry entry, Message mex)
+	{
+		final int others = entry.getWalkers() - 1;
+		if (mex.getMessageType() == Type.GET_FOUND)
+		{
+			entry.setWalkers(-others);
+			if (others > 0)
+			{
+				final long messageID = mex.getMessageID();
+				ParallelEDSimulator.runAtBarrier(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (entry.getWalkers() < 0)
+							SimulationContext.current().getCancelledWalks().put(messageID, new AtomicInteger(-entry.getWalkers()));
+					}
+				});
+			}
+
+			return true;
+		}
+
+		entry.setWalkers(others);
+		ProtocolStatistics.increment(Counter.GET_WALKERS_EXHAUSTED);
+
+		return (others == 0);
+	}
+
+
 	/**
 	 * Handles the {@code fpeer}'s receiving of the backward message {@code mex} (e.g. PUT_OK, PUT_COLLISION, GET_FOUND),
 	 * performing the following operations: <br>
@@ -449,16 +920,46 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 **/
 	private void handleBackwardMessage(FPeer fpeer, Message mex)
 	{
+		// the GET_FOUND of a cancelled walker is dropped
+		if (this.settings.walkers > 1 && mex.getMessageType() == Type.GET_FOUND && isCancelledWalker(mex))
+			return;
+
 		// query the own HashMap using the message ID to get the entry of the FORWARD message relative to the received BACKWARD message
 		HashMapEntry fwd_entry = this.SRmessages.get(mex.getMessageID());
 		final FPeer backw_fpeer = fwd_entry.getReceivedFrom();
 
+		// if the FPeer from which it has received the FORWARD message has left the overlay network, the backward path is
+		// broken: the entry is useless and the message is lost
+		if (backw_fpeer.isDeparted())
+		{
+			this.SRmessages.remove(mex.getMessageID());
+			ProtocolStatistics.increment(Counter.MESSAGES_LOST);
+			return;
+		}
+
 		// if, in the HashMap entry, it found that the FORWARD message correspondent to the now receive BACKWARD message is sent  
 		// by itself, then the running FPeer is the owner of the backward message, so routing ends with the received message
 		if (backw_fpeer == fpeer)
 		{
-			if (printsAllowed)
-				System.out.println("FPeer " + fpeer + ": routing for contentLocKey = " + mex.getMessageLocationKey() + " ends with " + mex.getMessageType() + " ...");
+			// a multi-walker GET ends with its first GET_FOUND, or with the GET_NOTFOUND of its last walker in flight
+			if (fwd_entry.getWalkers() > 0 && !endWalker(fwd_entry, mex))
+				return;
+
+			if (this.settings.eventLog != null)
+				this.settings.eventLog.log(ProtocolLog.Event.ROUTING_END, ParallelEDSimulator.currentTime(), fpeer, null, mex);
+
+			// record the end-to-end latency of the request (in simulated time), if its creation time is known
+			if (mex.getCreationTime() >= 0)
+				ProtocolStatistics.recordLatency(mex.getMessageType(), ParallelEDSimulator.currentTime() - mex.getCreationTime(), mex.getTHC());
+
+			// record the routing accuracy of the request w.r.t. the location ring oracle (if maintained)
+			final Type outcome = mex.getMessageType();
+			if (LocationRing.isEnabled() && (outcome == Type.GET_FOUND || outcome == Type.GET_NOTFOUND || outcome == Type.PUT_OK))
+				recordRoutingAccuracy(mex);
+
+			// sample the request for the routing stretch analysis (if enabled)
+			if (RoutingStretch.isEnabled())
+				RoutingStretch.sample(mex, fpeer);
 
 			// write statistics on a file
 			writeStatisticsOnFile(mex);
@@ -467,6 +968,10 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		{
 			// ... otherwise, the forward message is received by a running FPeer's neighbor
 
+			// if path caching is enabled, the running FPeer caches the content found by the relayed GET
+			if (this.settings.pathCaching && mex.getMessageType() == Type.GET_FOUND)
+				cacheContentLocationKey(fpeer, mex.getMessageLocationKey());
+
 			// change the last hop location key to the location key of the running FPeer
 			mex.changeLastHopFPeer(fpeer);
 
@@ -513,6 +1018,10 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 **/
 	private void handleReceivedGET(FPeer fpeer, Message mex)
 	{
+		// a cancelled walker (of a multi-walker GET already ended) is dropped
+		if (this.settings.walkers > 1 && isCancelledWalker(mex))
+			return;
+
 		final double contentLocKey = mex.getMessageLocationKey();
 		final double fpeer_locKey = fpeer.getLocationKey();
 
@@ -524,14 +1033,20 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 		// CHECK 0): if the running FPeer's location key is closest (w.r.t. content location key) than all
 		// FPeer's location keys encountered during the routing of the current processed message, it changes  
-		// the message's "closest w.r.t. content location key" information with that location key 
+		// the message's "closest w.r.t. content location key" information with that location key, and it becomes the
+		// responder of the request, if the content is not found (statistics only)
 		final boolean isClosestInPath = ((fpeer_locKey == mex.getPathClosestLocKey()) || isLessWrtContent(fpeer_locKey, mex.getPathClosestLocKey(), contentLocKey));
 		if (isClosestInPath)
+		{
 			mex.changePathClosestLocKey(fpeer_locKey);
+			mex.changeResponderFPeer(fpeer);
+		}
 
-		// CHECK 1): if the running FPeer contains the requested location key, it sends backward a GET_FOUND message
-		if (fpeer.containsContentLocationKey(contentLocKey))
+		// CHECK 1): if the running FPeer contains the requested location key (in its storage or, if path caching is enabled, 
+		// in its cache), it sends backward a GET_FOUND message
+		if (fpeer.containsContentLocationKey(contentLocKey) || (this.settings.pathCaching && isCachedContentLocationKey(fpeer, contentLocKey)))
 		{	
+			mex.changeResponderFPeer(fpeer);
 			if (isGETmsg)
 				changeAndSendMessage(mex, Type.GET_FOUND, fpeer, fpeer_receivedFrom);
 			else
@@ -559,7 +1074,7 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		// CHECK 3): if the running FPeer's content location key is the closest w.r.t. content location key encountered 
 		// during the message routing, it resets message's HTL value to the maximum
 		if (isClosestInPath)
-			mex.resetHTLTo(this.maxHTL);
+			mex.resetHTLTo(this.settings.maxHTL);
 
 
 		// CHECK 4): if, also after the reset check, the HTL is still 0, backward the relative GET_NOTFOUND message to  
@@ -577,19 +1092,29 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 		// ... otherwise, HTL > 0 ...
 
-		// get the running FPeer's neighbors ranked by "closest w.r.t. the content location key"
-		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
-		ArrayList<FPeer> topNeighbors = fpeer_lp.retrieveTopKNeighbors(contentLocKey, fpeer_lp.degree());
+		// if filter routing is enabled, search first for a valid neighbor (see below) whose store Bloom filter (the copy received
+		// by the running FPeer) claims the content location key, so that the GET message reaches it directly: the neighbors
+		// are ranked by "closest w.r.t. the content location key"
+		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+		FPeer fpeer_cand = null;
+		if (this.settings.filterRouting)
+		{
+			ArrayList<FPeer> topNeighbors = fpeer_lp.retrieveTopKNeighbors(contentLocKey, fpeer_lp.degree());
+			final int index = findFilterMatchIndex(fpeer, topNeighbors, messageIDEntry, fpeer_receivedFrom, contentLocKey);
+			if (index < topNeighbors.size())
+				fpeer_cand = topNeighbors.get(index);
+		}
 
 		// search for a running FPeer's candidate neighbor to forward the GET message, with the following characteristics:
 		// 1) it is the closest w.r.t. the content location key, in the neighbors set (running FPeer not considered)
 		// 2) it is different from all the already visited neighbors 
 		// 3) it is different from the FPeer from which the running FPeer has received the associate GET message
-		final int index = findBestIndex(topNeighbors, messageIDEntry, fpeer_receivedFrom);
+		if (fpeer_cand == null)
+			fpeer_cand = fpeer_lp.retrieveClosestNeighbor(contentLocKey, messageIDEntry, fpeer_receivedFrom);
 
 		// if there are no valid neighbors available, backward the relative GET_NOTFOUND message to the neighbor from which it has 
 		// received the relative GET message (obviously, only if it is not the owner, when processing a received GET_NOTFOUND)
-		if (index >= topNeighbors.size())
+		if (fpeer_cand == null)
 		{
 			if (isGETmsg)
 				changeAndSendMessage(mex, Type.GET_NOTFOUND, fpeer, fpeer_receivedFrom);
@@ -598,11 +1123,8 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		}
 		else
 		{
-			// ... otherwise, selects the candidate FPeer neighbor at found index, forwards the GET message to the    
-			// candidate FPeer and adds informations relative to the message into the running FPeer's HashMap
-
-			FPeer fpeer_cand = topNeighbors.get(index);
-
+			// ... otherwise, forwards the GET message to the candidate FPeer and adds informations relative to the message 
+			// into the running FPeer's HashMap
 			if (!isGETmsg)
 				mex.changeMessageType(Type.GET);
 
@@ -633,28 +1155,34 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		// get message's content location key
 		final double contentLocKey = mex.getMessageLocationKey();
 
+		// get the entry relative to the received message (possibly NULL)
+		HashMapEntry messageIDEntry = this.SRmessages.get(mex.getMessageID());
+
+		// get the FPeer from which the running FPeer have received the PUT message: if the message is bounced back by a next
+		// hop that has left the overlay network, it is the one stored in the entry of the message (when first forwarded)
+		final FPeer fpeer_lastHop = mex.getLastHopFPeer();
+		final FPeer fpeer_recFrom = (fpeer_lastHop.isDeparted() && messageIDEntry != null) ? messageIDEntry.getReceivedFrom() : fpeer_lastHop;
+
 		// if the running FPeer has received a PUT request for a content that it already stores, then 
 		// it sends a PUT_COLLISION message toward the FPeer from which it has received the PUT
 		if (fpeer.containsContentLocationKey(contentLocKey))
 		{
-			changeAndSendMessage(mex, Type.PUT_COLLISION, fpeer, mex.getLastHopFPeer());
+			mex.changeResponderFPeer(fpeer);
+			changeAndSendMessage(mex, Type.PUT_COLLISION, fpeer, fpeer_recFrom);
 			return;
 		}
 
 		// ... otherwise, the running FPeer does not contains the content location key to PUT
 
-		// get the FPeer from which the running FPeer have received the PUT message
-		final FPeer fpeer_recFrom = mex.getLastHopFPeer();
-
-		// get the candidate running FPeer's neighbor closest w.r.t. the content location key
-		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
-		final FPeer fpeer_cand = fpeer_lp.retrieveTopKNeighbors(contentLocKey, 1).get(0);
+		// get the candidate running FPeer's neighbor closest w.r.t. the content location key (if the running FPeer has still 
+		// some neighbors)
+		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+		final ArrayList<FPeer> topNeighbor = fpeer_lp.retrieveTopKNeighbors(contentLocKey, 1);
 
 		// if the candidate neighbor is closest to the content location key than the running FPeer
-		if (isLessWrtContent(fpeer_cand.getLocationKey(), fpeer.getLocationKey(), contentLocKey))
+		if (!topNeighbor.isEmpty() && isLessWrtContent(topNeighbor.get(0).getLocationKey(), fpeer.getLocationKey(), contentLocKey))
 		{	
-			// get the entry relative to the received message (possibly NULL)
-			HashMapEntry messageIDEntry = this.SRmessages.get(mex.getMessageID());
+			final FPeer fpeer_cand = topNeighbor.get(0);
 
 			// forward the PUT message to the candidate FPeer and add informations relative to the message into the  
 			// running FPeer's HashMap
@@ -667,6 +1195,10 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 			// store the content location key in the running FPeer's keys storage
 			fpeer.addContentLocationKey(contentLocKey);
 
+			// the PUT is routed greedily, so the running FPeer is the closest w.r.t. the content location key in the routing path
+			mex.changePathClosestLocKey(fpeer.getLocationKey());
+			mex.changeResponderFPeer(fpeer);
+
 			// change message type, last hop FPeer and send the message toward the FPeer from which have received the PUT message
 			changeAndSendMessage(mex, Type.PUT_OK, fpeer, fpeer_recFrom);
 
@@ -705,6 +1237,9 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 *  PUT_REPLICATION message to this candidate neighbor, decreasing the message's HTL value.
 	 *  Otherwise, it stores the content location key to replicate in its own storage.
 	 * 
+	 * N.B. the received message can be frozen (shared by the receivers of a multicast): the changes of CHECK 0 and CHECK 2 are
+	 * applied to the message only when it is sent again, so a frozen message is copied only if it is forwarded.
+	 * 
 	 * @param fpeer	the FPeer that have received the message (e.g. PUT_REPLICATION, PUT_REPL_COLLISION)
 	 * @param mex	the received message (e.g. PUT_REPLICATION, PUT_REPL_COLLISION)
 	 **/
@@ -719,10 +1254,8 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 		// CHECK 0): if the running FPeer's location key is closest (w.r.t. content location key) than all
 		// FPeer's location keys encountered during the routing of the current processed message, it changes  
-		// the message's "closest w.r.t. content location key" information with that location key 
+		// the message's "closest w.r.t. content location key" information with that location key (applied lazily)
 		final boolean isClosestInPath = ((fpeer_locKey == mex.getPathClosestLocKey()) || isLessWrtContent(fpeer_locKey, mex.getPathClosestLocKey(), contentLocKey));
-		if (isClosestInPath)
-			mex.changePathClosestLocKey(fpeer_locKey);
 
 		// get the HashMap's entry relative to the current processed message's ID
 		HashMapEntry messageIDEntry = this.SRmessages.get(mex.getMessageID());
@@ -734,63 +1267,58 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		// have already received the same PUT_REPLICATION message, so it sends backward a PUT_REPL_COLLISION message
 		if (isPUT_REPL && messageIDEntry != null)
 		{
-			changeAndSendMessage(mex, Type.PUT_REPL_COLLISION, fpeer, fpeer_receivedFrom);
+			changeAndSendMessage(applyPathChanges(mex, isClosestInPath, fpeer_locKey, false), Type.PUT_REPL_COLLISION, fpeer, fpeer_receivedFrom);
 			return;
 		}
 
 		// CHECK 2): if the running FPeer's content location key is the closest w.r.t. content location key  
-		// encountered during the message routing, it resets message's HTL value to the maximum
-		if (isClosestInPath)
-			mex.resetHTLTo(this.maxHTL);
+		// encountered during the message routing, it resets message's HTL value to the maximum (applied lazily)
+		final int HTL = isClosestInPath ? this.settings.maxHTL : mex.getHTL();
 
 
 		// CHECK 3): if the message have HTL = 0, stores the content location key in running FPeer's storage and ends the routing for 
 		// the message; furthermore, in the case of PUT_REPLICATION, stores also informations for cycle-avoidance in its own HashMap
-		if (mex.getHTL() == 0)
+		if (HTL == 0)
 		{
 			if (isPUT_REPL)
 				storeContentAndInfo(mex, fpeer, messageIDEntry);
 			else
 				fpeer.addContentLocationKey(contentLocKey);
 
-			if (printsAllowed)
-				System.out.println("FPeer " + fpeer + ": contentLocKey=" + contentLocKey + " replication stored ...");
+			if (this.settings.eventLog != null)
+				this.settings.eventLog.log(ProtocolLog.Event.REPLICA_STORED, ParallelEDSimulator.currentTime(), fpeer, null, mex);
 
 			return;
 		}
 
 
-		// get the running FPeer's neighbors ranked by "closest w.r.t. the content location key"
-		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
-		ArrayList<FPeer> topNeighbors = fpeer_lp.retrieveTopKNeighbors(contentLocKey, fpeer_lp.degree());
-
 		// search for a running FPeer's candidate neighbor to forward the PUT_REPLICATION message, with the following characteristics:
 		// 1) it is the closest w.r.t. the content location key, in the neighborhood (running FPeer not considered)
 		// 2) it is different from all the already visited neighbors  
 		// 3) it is different from the FPeer from which the running FPeer has received the current processed message
-		final int index = findBestIndex(topNeighbors, messageIDEntry, fpeer_receivedFrom);
+		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+		FPeer fpeer_cand = fpeer_lp.retrieveClosestNeighbor(contentLocKey, messageIDEntry, fpeer_receivedFrom);
 
 		// if there are no valid neighbors available, stores the content location key in running FPeer's storage and ends the routing 
 		// for the message; furthermore, in the case of PUT_REPLICATION, stores also informations for cycle-avoidance in its own HashMap
-		if (index >= topNeighbors.size())
+		if (fpeer_cand == null)
 		{		
 			if (isPUT_REPL)
 				storeContentAndInfo(mex, fpeer, messageIDEntry);
 			else
 				fpeer.addContentLocationKey(contentLocKey);
 
-			if (printsAllowed)
-				System.out.println("FPeer " + fpeer + ": contentLocKey=" + contentLocKey + " replication stored ...");
+			if (this.settings.eventLog != null)
+				this.settings.eventLog.log(ProtocolLog.Event.REPLICA_STORED, ParallelEDSimulator.currentTime(), fpeer, null, mex);
 		}
 		else
 		{
-			// ... otherwise, select the candidate FPeer neighbor at found index
-			FPeer fpeer_cand = topNeighbors.get(index);
-
-			// if the candidate neighbor is closest to the content location key than the running FPeer, forwards a PUT_REPLICATION 
+			// ... otherwise, if the candidate neighbor is closest to the content location key than the running FPeer, forwards a PUT_REPLICATION 
 			// message to the candidate FPeer and stores informations for cycle-avoidance in its own HashMap
 			if (isLessWrtContent(fpeer_cand.getLocationKey(), fpeer_locKey, contentLocKey))
 			{
+				mex = applyPathChanges(mex, isClosestInPath, fpeer_locKey, true);
+
 				if (isPUT_REPL)
 					handleMessageForwarding(mex, messageIDEntry, fpeer, fpeer_cand, fpeer_receivedFrom);
 				else
@@ -811,25 +1339,52 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 				else
 					fpeer.addContentLocationKey(contentLocKey);
 
-				if (printsAllowed)
-					System.out.println("FPeer " + fpeer + ": contentLocKey=" + contentLocKey + " replication stored ...");
+				if (this.settings.eventLog != null)
+					this.settings.eventLog.log(ProtocolLog.Event.REPLICA_STORED, ParallelEDSimulator.currentTime(), fpeer, null, mex);
 			}
 		}
 	}
 
 	
+	/**
+	 * Applies to the passed message {@code mex} the changes of CHECK 0 and (if {@code resetHTL}) CHECK 2 of the
+	 * PUT_REPLICATION handling, copying it first if it is frozen.
+	 * @param mex				the received message
+	 * @param isClosestInPath	flag that indicates if the running FPeer is the closest encountered during the routing
+	 * @param fpeer_locKey		the location key of the running FPeer
+	 * @param resetHTL			flag that indicates if the HTL value must be reset to the maximum
+	 * @return the modified message (possibly a copy of {@code mex}).
+	 **/
+	private Message applyPathChanges(Message mex, boolean isClosestInPath, double fpeer_locKey, boolean resetHTL)
+	{
+		Message m = mex.mutable();
+
+		if (isClosestInPath)
+		{
+			m.changePathClosestLocKey(fpeer_locKey);
+
+			if (resetHTL)
+				m.resetHTLTo(this.settings.maxHTL);
+		}
+
+		return m;
+	}
+
+
 	/**
 	 * Tries to select a neighbor of the passed FPeer {@code fpeer_proposer} to involves into a SWAP process with itself.
-	 * The choice is made taking care that a neighbor is not already involved in a SWAP process with another FPeer and that
-	 * the selecting process ends also if no FPeers are available, after some attempts.
+	 * The choice is made taking care that a neighbor is not already involved in a SWAP process with another FPeer (i.e. it
+	 * does not hold a not expired swap lease) and that the selecting process ends also if no FPeers are available, after 
+	 * some attempts.
 	 * @param fpeer_proposer the running FPeer that tries to select an its neighbor
 	 * @param lp			 the Linkable protocol of the running FPeer
+	 * @param rand			 the pseudo-random generator to use for the selection
+	 * @param now			 the current simulated time
 	 * @return {@code null} if the running FPeer is involved itself in a SWAP process or there are no neighbors available for
 	 * 		   the SWAP. {@code fpeer_candidate}, the reference to the selected FPeer, if it is availbale for the SWAP.
 	 */
-	private FPeer selectNeighborForSwap(FPeer fpeer_proposer, LinkableProtocol lp)
+	private FPeer selectNeighborForSwap(FPeer fpeer_proposer, LinkableProtocol lp, Random rand, long now)
 	{
-		Random rand = new Random(System.nanoTime());
 		boolean selectedSuccessfully = false;
 		final int neighborhoodSize = lp.degree();
 		FPeer fpeer_candidate = null;
@@ -842,7 +1397,7 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 			// if the selected candidate FPeer is already involved in a SWAP process with another FPeer, go next;
 			// otherwise, select it as SWAP candidate
-			if (fpeer_candidate.isInvolvedInSwap())
+			if (fpeer_candidate.isInvolvedInSwap(now))
 				continue;
 			else
 				selectedSuccessfully = true;
@@ -862,48 +1417,80 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 * this from which it has received the actual request) toward which forward the SWAP request. 
 	 * Otherwise, if HTL = 0, it performs the following actions: <br><br>
 	 * 
-	 * 1) computes the product of the distances between the SWAP request-owner FPeer's location key and the location keys of each one 
-	 *    of its neighbors (see "prodAA"); <br>
+	 * 1) gets the (incrementally maintained) sum of the log-distances between the SWAP request-owner FPeer's location key and the 
+	 *    location keys of each one of its neighbors (see "logAA"); <br>
 	 * 
-	 * 2) computes the product of the distances between {@code fpeer}'s location key and the location keys of each one of the
-	 *    SWAP request-owner FPeer's neighbors (see "prodBA"); <br>
+	 * 2) computes the sum of the log-distances between {@code fpeer}'s location key and the location keys of each one of the
+	 *    SWAP request-owner FPeer's neighbors (see "logBA"); <br>
 	 * 
-	 * 3) computes the product of the distances between the {@code fpeer}'s location key and the location keys of each one of its
-	 * 	  neighbors (see "prodBB"); <br>
+	 * 3) gets the (incrementally maintained) sum of the log-distances between the {@code fpeer}'s location key and the location keys 
+	 * 	  of each one of its neighbors (see "logBB"); <br>
 	 * 
-	 * 4) computes the product of the distances between the SWAP request-owner FPeer's location key and the location keys of each one
-	 * 	  of {@code fpeer}'s neighbors (see "prodAB"); <br><br>
+	 * 4) computes the sum of the log-distances between the SWAP request-owner FPeer's location key and the location keys of each one
+	 * 	  of {@code fpeer}'s neighbors (see "logAB"); <br><br>
 	 *     
-	 * After, it computes the product between the distances before and after (the eventual) swap of the two involved FPeers (see "D1" and "D2"). 
+	 * In all the sums the two involved FPeers do not count as neighbors of each other. After, it computes the logarithms of the
+	 * products of the distances before and after (the eventual) swap of the two involved FPeers (see "logD1" and "logD2"). 
 	 * 
 	 * The next backward operation depends on the values of "D1" and "D2": <br><br>
 	 * 
 	 * 		- if D1 >  D2, then {@code fpeer} send a SWAP_OK message to the FPeer owner of the SWAP request (swap request approved); <br>
-	 * 		- if D2 <= D1, then {@code fpeer} send a SWAP_OK message with probability D1 / D2 (see "D_AB"), while a 
-	 * 		  SWAP_REFUSED otherwise (swap request refused).
+	 * 		- if D2 <= D1, then {@code fpeer} send a SWAP_OK message with probability D1 / D2 (computed as exp(logD1 - logD2)), 
+	 * 		  while a SWAP_REFUSED otherwise (swap request refused).
 	 * 
 	 * @param fpeer  the FPeer that have received the SWAP message
 	 * @param mex	 the received SWAP message
 	 **/
-	private void handleReceivedSWAP(FPeer fpeer, Message mex)
+	private void handleReceivedSWAP(final FPeer fpeer, final Message mex)
+	{
+		// the session's lease is moved to (or checked on) FPeers that can be owned by other shards, so with the parallel
+		// engine the request is processed serially at the end of the current window (immediately, otherwise)
+		// N.B. the message is retained, since a packed message is a flyweight re-filled by the next delivery
+		final Message request = mex.retain();
+		ParallelEDSimulator.runAtBarrier(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				processSWAP(fpeer, request);
+			}
+		});
+	}
+
+
+	/**
+	 * Processes the SWAP message {@code mex} received by {@code fpeer}, as described in {@code handleReceivedSWAP}.
+	 * @param fpeer  the FPeer that have received the SWAP message
+	 * @param mex	 the received SWAP message
+	 **/
+	private void processSWAP(FPeer fpeer, Message mex)
 	{
 		// stores locally some utility fields to make fast further accesses
 		final FPeer fpeer_proposer = mex.getLastHopFPeer();
 		final double fpeer_locKey = fpeer.getLocationKey();
 		final double fpeer_proposer_locKey = fpeer_proposer.getLocationKey();
-		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
+		final LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+		final long sessionID = mex.getMessageID();
+		final long now = ParallelEDSimulator.currentTime();
+
+		// if the lease of the session on the running FPeer is expired (e.g. the message was delayed too much), the FPeer could
+		// be already involved in another session: refuse the request
+		if (!fpeer.holdsSwapLease(sessionID, now))
+		{
+			changeAndSendMessage(mex, Type.SWAP_REFUSED, fpeer, fpeer_proposer);
+			return;
+		}
 		
 		// if the HTL of the message is still greater than 0
 		if (mex.getHTL() > 0)
 		{
 			// select a neighbor peer different from which that have sent the SWAP request
-			// and forward the request to him, decreasing the HTL value
-			FPeer fpeer_cand = selectNeighborForSwap(fpeer, fpeer_lp);
-			if (fpeer_cand != null && fpeer_cand != fpeer_proposer)
+			// and forward the request to him, decreasing the HTL value and moving the session's lease to him
+			FPeer fpeer_cand = selectNeighborForSwap(fpeer, fpeer_lp, ParallelEDSimulator.currentRandom(), now);
+			if (fpeer_cand != null && fpeer_cand != fpeer_proposer && fpeer_cand.acquireSwapLease(sessionID, now, this.settings.swapLeaseDuration))
 			{
 				mex.decreaseHTL();
-				fpeer.setSwapStatus(false);
-				fpeer_cand.setSwapStatus(true);
+				fpeer.releaseSwapLease(sessionID);
 				this.sendMessage(fpeer, fpeer_cand, mex);
 				return;
 			}
@@ -911,45 +1498,28 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 
 		// ... otherwise, HTL = 0 ...
 		
-		// get iterators to scan neighbors lists of the running and SWAP request-owner FPeers
-		Iterator<FPeer> fpeer_it_A = ((LinkableProtocol) fpeer_proposer.getProtocol(linkablePID)).getNeighborsIterator();
-		Iterator<FPeer> fpeer_it_B = fpeer_lp.getNeighborsIterator();
-
-		// allocates variables for temporary distances computing
-		double currentLocKey, prodAA, prodBB, prodAB, prodBA, D1, D2, D_AB;
-		prodAA = prodBB = prodAB = prodBA = 1.0;
+		// get the Linkable protocol of the SWAP request-owner FPeer
+		final LinkableProtocol fpeer_proposer_lp = (LinkableProtocol) fpeer_proposer.getProtocol(this.settings.linkablePID);
 
-		// scanning the neighbor list of the FPeer owner of the SWAP request
-		while (fpeer_it_A.hasNext())
-		{
-			currentLocKey = fpeer_it_A.next().getLocationKey();
+		// log-distance between the two involved FPeers, to remove from the sums in which they are neighbors of each other
+		final double logDistAB = Math.log(fpeer.getDistanceFromLocationKey(fpeer_proposer_locKey));
 
-			if (currentLocKey != fpeer_locKey)
-			{
-				prodAA *= fpeer_proposer.getDistanceFromLocationKey(currentLocKey);
-				prodBA *= fpeer.getDistanceFromLocationKey(currentLocKey);
-			}
-		}
+		// current sums of the involved FPeers, maintained incrementally (the involved FPeers do not count)
+		// N.B. the sum of the SWAP request-owner FPeer is only read (it could be owned by another shard of the parallel engine)
+		final double logAA = fpeer_proposer.peekNeighborsLogDistanceSum(this.settings.linkablePID) - (fpeer_proposer_lp.contains(fpeer) ? logDistAB : 0.0);
+		final double logBB = fpeer.getNeighborsLogDistanceSum(this.settings.linkablePID) - (fpeer_lp.contains(fpeer_proposer) ? logDistAB : 0.0);
 
-		// scanning the neighbor list of the running FPeer
-		while (fpeer_it_B.hasNext())
-		{
-			currentLocKey = fpeer_it_B.next().getLocationKey();
+		// hypothetical sums of the involved FPeers after the (eventual) swap, that need the scan of the neighborhoods (a single
+		// pass on the location keys of each one)
+		final double logBA = fpeer_proposer_lp.logDistanceSum(fpeer_locKey, fpeer);
+		final double logAB = fpeer_lp.logDistanceSum(fpeer_proposer_locKey, fpeer_proposer);
 
-			if (currentLocKey != fpeer_proposer_locKey)
-			{
-				prodBB *= fpeer.getDistanceFromLocationKey(currentLocKey);
-				prodAB *= fpeer_proposer.getDistanceFromLocationKey(currentLocKey);
-			}				
-		}
+		// compute the logarithms of the products of the distances before and after the (eventual) swap
+		final double logD1 = logAA + logBB;
+		final double logD2 = logBA + logAB;
 
-		// compute the ratio between the distances before and after the (eventual) swap
-		D1 = (prodAA * prodBB);
-		D2 = (prodBA * prodAB);
-		D_AB = D1 / D2;
-
-		// accept or refuse the SWAP request based on values of D1, D2 and their ratio
-		if (D1 > D2 || (new Random(System.nanoTime())).nextDouble() < D_AB)
+		// accept or refuse the SWAP request based on values of D1, D2 and their ratio (in log-space, so without underflow)
+		if (logD1 > logD2 || ParallelEDSimulator.currentRandom().nextDouble() < Math.exp(logD1 - logD2))
 			changeAndSendMessage(mex, Type.SWAP_OK, fpeer, fpeer_proposer);
 		else
 			changeAndSendMessage(mex, Type.SWAP_REFUSED, fpeer, fpeer_proposer);
@@ -970,21 +1540,56 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 * @param fpeer  the FPeer that have received the answer message
 	 * @param mex	 the received answer message (e.g. SWAP_OK, SWAP_REFUSED)
 	 **/
-	private void handleReceivedSWAPanswer(FPeer fpeer, Message mex)
+	private void handleReceivedSWAPanswer(final FPeer fpeer, final Message mex)
+	{
+		// the swap modifies the state of the two FPeers and of all their neighbors, so with the parallel engine it is 
+		// executed serially at the end of the current window (immediately, otherwise)
+		// N.B. the message is retained, since a packed message is a flyweight re-filled by the next delivery
+		final Message answer = mex.retain();
+		ParallelEDSimulator.runAtBarrier(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				completeSWAP(fpeer, answer);
+			}
+		});
+	}
+
+
+	/**
+	 * Completes the SWAP process answered by the message {@code mex}, as described in {@code handleReceivedSWAPanswer}.
+	 * @param fpeer  the FPeer that have received the answer message
+	 * @param mex	 the received answer message (e.g. SWAP_OK, SWAP_REFUSED)
+	 **/
+	private void completeSWAP(FPeer fpeer, Message mex)
 	{
 		// get the FPeer from which have received the answer to the SWAP request
 		FPeer fpeer_toSwap = mex.getLastHopFPeer();
+		final long sessionID = mex.getMessageID();
+		final long now = ParallelEDSimulator.currentTime();
 
-		// if the SWAP request sent in the past is approved, performs really the swap
+		// if the SWAP request sent in the past is approved, performs really the swap, but only if both the FPeers still hold 
+		// the lease of the session (otherwise, one of them could be already involved in another session)
 		if (mex.getMessageType() == Type.SWAP_OK)
-			fpeer.swapWith(fpeer_toSwap, this.linkablePID);
+		{
+			if (!fpeer_toSwap.isDeparted() && fpeer.holdsSwapLease(sessionID, now) && fpeer_toSwap.holdsSwapLease(sessionID, now))
+			{
+				fpeer.swapWith(fpeer_toSwap, this.settings.linkablePID);
+				ProtocolStatistics.increment(Counter.SWAP_SESSIONS_COMPLETED);
+			}
+			else
+				ProtocolStatistics.increment(Counter.SWAP_SESSIONS_EXPIRED);
+		}
+		else
+			ProtocolStatistics.increment(Counter.SWAP_SESSIONS_REFUSED);
 
-		// set running FPeer and swapped-neighbor's status in "not involved into a SWAP process"
-		fpeer.setSwapStatus(false);
-		fpeer_toSwap.setSwapStatus(false);
+		// release the leases of the session of the running FPeer and of the swapped-neighbor
+		fpeer.releaseSwapLease(sessionID);
+		fpeer_toSwap.releaseSwapLease(sessionID);
 
-		if (printsAllowed)
-			System.out.println("FPeer " + fpeer + ": swapping with FPeer " + fpeer_toSwap + " ends with " + mex.getMessageType() + " ...");
+		if (this.settings.eventLog != null)
+			this.settings.eventLog.log(ProtocolLog.Event.SWAP_END, now, fpeer, fpeer_toSwap, mex);
 	}
 	
 
@@ -998,11 +1603,63 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	public void processEvent(Node peer, int pid, Object message) 
 	{
 		// adjust objects to the right types and get running FPeer Linkable protocol to access its neighbors
+		// N.B. with packed messages enabled, the event carries the handle of the message slot in the packed store
 		FPeer fpeer = (FPeer) peer;		
-		Message mex = (Message) message;
+		ProtocolStatistics.increment(Counter.EVENTS_PROCESSED);
+
+		// a multicast event (delivered to its sender) is dispatched to the protocols of all its receivers, that share the same
+		// frozen message: a receiver removed from the overlay network loses it, a departed one bounces it (see "deliverMessage")
+		if (message instanceof MulticastEnvelope)
+		{
+			final MulticastEnvelope envelope = (MulticastEnvelope) message;
+			for (FPeer receiver : envelope.getReceivers())
+			{
+				if (receiver.isUp())
+					((MessagesExchangerProtocol) receiver.getProtocol(pid)).deliverMessage(receiver, envelope.getPayload());
+				else
+				{
+					// the message is no more in-flight, but it is lost
+					FPeerDirectory.release(envelope.getPayload().getLastHopFPeer());
+					ProtocolStatistics.increment(Counter.MESSAGES_DELIVERED);
+					ProtocolStatistics.increment(Counter.MESSAGES_LOST);
+				}
+			}
+
+			return;
+		}
+
+		deliverMessage(fpeer, (message instanceof Integer) ? this.settings.packedStore.take((Integer) message) : (Message) message);
+	}
+
+
+	/**
+	 * Handles the delivery of the message {@code mex} to the FPeer {@code fpeer}, dispatching it to the handler of its type.
+	 * @param fpeer the FPeer that have received the message
+	 * @param mex	the received message
+	 **/
+	private void deliverMessage(FPeer fpeer, Message mex)
+	{
+		// count the delivered messages, to compute the messages in-flight (statistics only), and discount the references of
+		// the message to the FPeers
+		ProtocolStatistics.increment(Counter.MESSAGES_DELIVERED);
+		FPeerDirectory.release(mex.getLastHopFPeer());
+		FPeerDirectory.release(mex.getResponderFPeer());
+
+		// a message in-flight when the running FPeer has left the overlay network is bounced to its sender
+		if (fpeer.isDeparted())
+		{
+			bounceMessage(fpeer, mex);
+			return;
+		}
 
-		if (printsAllowed)
-			System.out.println("FPeer " + fpeer.toString() + ": received message " + mex.toString() + " ...");
+		// start the flight recorder event of the handling (the type and the HTL are read before that the handler changes them)
+		final ProtocolEvents.MessageHandled event = new ProtocolEvents.MessageHandled();
+		final Type receivedType = mex.getMessageType();
+		final int receivedHTL = mex.getHTL();
+		event.begin();
+
+		if (this.settings.eventLog != null)
+			this.settings.eventLog.log(ProtocolLog.Event.RECEIVED, ParallelEDSimulator.currentTime(), fpeer, mex.getLastHopFPeer(), mex);
 
 		// test the type of the message received by the running FPeer
 		switch (mex.getMessageType())
@@ -1049,6 +1706,62 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 			break;
 		}
 		}
+
+		// commit the flight recorder event, only if it is recorded
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.messageType = receivedType.name();
+			event.HTL = receivedHTL;
+			event.fpeerSerial = fpeer.getSerial();
+			event.nodeDegree = ((LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID)).degree();
+			event.commit();
+		}
+	}
+
+
+	/**
+	 * Handles the delivery of the message {@code mex} to the FPeer {@code fpeer} that has left the overlay network (while the
+	 * message was in-flight), as the failure of the hop toward {@code fpeer}: <br><br>
+	 * 
+	 * - a GET is answered with a GET_NOTFOUND, so the sender routes it toward its next candidate neighbor; <br>
+	 * - a PUT is sent back as it is, so the sender routes it again (or stores the content location key); <br>
+	 * - a PUT_REPLICATION is answered with a PUT_REPL_COLLISION, so the sender replicates toward its next candidate neighbor; <br>
+	 * - a SWAP is answered with a SWAP_REFUSED, so the proposer ends the session; <br>
+	 * - a backward message (or a SWAP answer) is lost, since the request can not be completed by {@code fpeer}.
+	 * 
+	 * @param fpeer the departed FPeer that have received the message
+	 * @param mex	the received message
+	 **/
+	private void bounceMessage(FPeer fpeer, Message mex)
+	{
+		final FPeer fpeer_sender = mex.getLastHopFPeer();
+
+		switch (mex.getMessageType())
+		{
+		case GET:
+			changeAndSendMessage(mex, Type.GET_NOTFOUND, fpeer, fpeer_sender);
+			break;
+
+		case PUT:
+			changeAndSendMessage(mex, Type.PUT, fpeer, fpeer_sender);
+			break;
+
+		case PUT_REPLICATION:
+			// the message can be frozen (shared by the receivers of a multicast)
+			changeAndSendMessage(mex.mutable(), Type.PUT_REPL_COLLISION, fpeer, fpeer_sender);
+			break;
+
+		case SWAP:
+			changeAndSendMessage(mex, Type.SWAP_REFUSED, fpeer, fpeer_sender);
+			break;
+
+		default:
+			ProtocolStatistics.increment(Counter.MESSAGES_LOST);
+			return;
+		}
+
+		ProtocolStatistics.increment(Counter.HOPS_VANISHED);
 	}
 
 
@@ -1061,7 +1774,9 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 *  
 	 *  - for {@code mexType} = GET, {@code fpeer_sender} search the passed content location key {@code contentLocKey} into the overlay network, 
 	 *    sending a GET message request. The message is sent to the neighbor that have location key closest w.r.t. the content location key 
-	 *    {@code contentLocKey} to get. <br>
+	 *    {@code contentLocKey} to get. If {@code walkers} > 1, a GET message (walker) having the same identifier is sent to each of
+	 *    the top-{@code walkers} neighbors: the request ends with the first GET_FOUND (the other walkers are cancelled at their
+	 *    next hop), or with the GET_NOTFOUND of the last walker. <br>
 	 *    
 	 *	- for {@code mexType} = SWAP, {@code fpeer_sender} select randomly an its neighbor and send to it the SWAP message request. <br><br>
 	 *     
@@ -1078,20 +1793,35 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 	 * @param contentLocKey the content location key to GET from or PUT into the overlay network (unused for SWAP request)
 	 **/
 	public void performRequest(Type mexType, FPeer fpeer_sender, double contentLocKey)
+	{
+		performRequest(mexType, fpeer_sender, contentLocKey, null, ParallelEDSimulator.currentRandom());
+	}
+
+
+	/**
+	 * Implements the GET, PUT and SWAP requests operations, as described in {@code performRequest(Type, FPeer, double)}, 
+	 * possibly exploiting an already computed candidate neighbor.
+	 * @param mexType		  the type of the request to perform (e.g. GET, PUT or SWAP)    
+	 * @param fpeer_sender	  the FPeer that performs the request into the overlay
+	 * @param contentLocKey	  the content location key to GET from or PUT into the overlay network (unused for SWAP request)
+	 * @param fpeer_candidate the neighbor closest w.r.t. the content location key, if already computed (GET and PUT only); 
+	 * 						  {@code null} otherwise
+	 * @param rand			  the pseudo-random generator to use for the selection of the SWAP candidate
+	 **/
+	private void performRequest(Type mexType, FPeer fpeer_sender, double contentLocKey, FPeer fpeer_candidate, Random rand)
 	{		
 		// get the Linkable protocol of the sender FPeer to access to its neighbors
-		final LinkableProtocol lp = (LinkableProtocol) fpeer_sender.getProtocol(linkablePID);
+		final LinkableProtocol lp = (LinkableProtocol) fpeer_sender.getProtocol(this.settings.linkablePID);
 
 		// select the running FPeer's candidate neighbor to which forward the request
-		FPeer fpeer_candidate = null;
 		if (mexType == Type.SWAP)
 		{
 			// if the running FPeer is already involved in a SWAP process, abort the request
-			if (fpeer_sender.isInvolvedInSwap())
+			if (fpeer_sender.isInvolvedInSwap(ParallelEDSimulator.currentTime()))
 				return;
 					
 			// select a candidate to send the SWAP requesr
-			fpeer_candidate = selectNeighborForSwap(fpeer_sender, lp);
+			fpeer_candidate = selectNeighborForSwap(fpeer_sender, lp, rand, ParallelEDSimulator.currentTime());
 
 			// if there are no available candidates, abort the request
 			if (fpeer_candidate == null)
@@ -1100,18 +1830,26 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		else
 		{
 			// ... otherwise, for GET and PUT requests ...
+			ProtocolStatistics.increment((mexType == Type.GET) ? Counter.GET_REQUESTS : Counter.PUT_REQUESTS);
 
 			// if the content location key to is already stored in the running FPeer storage, does not forward away the request
 			if (fpeer_sender.containsContentLocationKey(contentLocKey))
 			{
-				if (printsAllowed)
-					System.out.println("FPeer " + fpeer_sender + ": content location key = " + contentLocKey + " already stored in my storage, " + mexType + " request not forwarded ...");
+				if (this.settings.eventLog != null)
+					this.settings.eventLog.log(ProtocolLog.Event.REQUEST_LOCAL, ParallelEDSimulator.currentTime(), fpeer_sender, mexType, contentLocKey);
 
 				return;
 			}
 
 			// select as "candidate" the neighbor FPeer having location key closest to the content location key to GET/PUT
-			fpeer_candidate = lp.retrieveTopKNeighbors(contentLocKey, 1).get(0);
+			// (an FPeer isolated by the departures of all its neighbors can not perform the request)
+			if (fpeer_candidate == null)
+			{
+				if (lp.degree() == 0)
+					return;
+
+				fpeer_candidate = lp.retrieveTopKNeighbors(contentLocKey, 1).get(0);
+			}
 
 			// for PUT request, if the running FPeer's location key is closest w.r.t. the content location key than the candidate's location key		
 			if (mexType == Type.PUT && isLessWrtContent(fpeer_sender.getLocationKey(), fpeer_candidate.getLocationKey(), contentLocKey))
@@ -1122,8 +1860,8 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 				// replicates the content location key toward its "replicationFactor" top-neighbors
 				replicatesTowardNeighbors(fpeer_sender, contentLocKey);
 
-				if (printsAllowed)
-					System.out.println("FPeer " + fpeer_sender + ": content location key = " + contentLocKey + " stored in myself storage, , PUT request not forwarded ...");
+				if (this.settings.eventLog != null)
+					this.settings.eventLog.log(ProtocolLog.Event.REQUEST_LOCAL, ParallelEDSimulator.currentTime(), fpeer_sender, mexType, contentLocKey);
 
 				return;
 			}
@@ -1132,75 +1870,287 @@ public class MessagesExchangerProtocol implements peersim.edsim.EDProtocol, peer
 		// create the GET/PUT/SWAP message changing the last-hop FPeer to the running FPeer
 		Message requestMessage = null;
 		if (mexType == Type.SWAP)
-			requestMessage = new Message(mexType, contentLocKey, this.maxHTLswap);
+			requestMessage = new Message(mexType, contentLocKey, this.settings.maxHTLswap);
 		else
-			requestMessage = new Message(mexType, contentLocKey, this.maxHTL);
+			requestMessage = new Message(mexType, contentLocKey, this.settings.maxHTL);
 
 		requestMessage.changeLastHopFPeer(fpeer_sender);
 		requestMessage.changePathClosestLocKey(fpeer_sender.getLocationKey());
+		requestMessage.changeCreationTime(ParallelEDSimulator.currentTime());
 
 		// decrease the HTL value of the received message after the last hop
 		requestMessage.decreaseHTL();
 
-		// send the request message to the "candidate" neighbor
-		this.sendMessage(fpeer_sender, fpeer_candidate, requestMessage);
-
 		if (mexType == Type.SWAP)
 		{
-			// set the swapping status of the two FPeers as "involved in a SWAP process"
-			fpeer_sender.setSwapStatus(true);
-			fpeer_candidate.setSwapStatus(true);
+			// start a new SWAP session (identified by the request message): the two FPeers acquire the session's lease, so
+			// they are "involved in a SWAP process" until the session ends or the lease expires
+			final long sessionID = requestMessage.getMessageID();
+			// N.B. the leases are acquired atomically, and the cycles are committed serially (with the parallel engine, at the
+			// end of the window, in a fixed order), so the previous "involved in a SWAP" checks are only hints
+			final long now = ParallelEDSimulator.currentTime();
+			if (!fpeer_sender.acquireSwapLeases(fpeer_candidate, sessionID, now, this.settings.swapLeaseDuration))
+				return;
+
+			ProtocolStatistics.increment(Counter.SWAP_SESSIONS_STARTED);
+		}
+
+		// for a multi-walker GET, each of the top-"walkers" neighbors (the first one is the candidate) receives a walker, i.e. a
+		// clone of the request message, having its same identifier (so the walkers never visit the same FPeer twice)
+		ArrayList<FPeer> walkersTargets = null;
+		if (mexType == Type.GET && this.settings.walkers > 1)
+		{
+			walkersTargets = lp.retrieveTopKNeighbors(contentLocKey, Math.min(this.settings.walkers, lp.degree()));
+			fpeer_candidate = walkersTargets.get(0);
 		}
+
+		// send the request message to the "candidate" neighbor (the walkers are cloned before, since the sending increases the 
+		// THC of the sent message)
+		if (walkersTargets == null)
+			this.sendMessage(fpeer_sender, fpeer_candidate, requestMessage);
 		else
 		{
-			// store informations "request received by myself" and "request sent to candidate fpeer_candidate"
+			for (int i = walkersTargets.size() - 1; i >= 0; i--)
+				this.sendMessage(fpeer_sender, walkersTargets.get(i), (i == 0) ? requestMessage : (Message) requestMessage.clone());
+		}
+
+		// for GET and PUT requests ...
+		if (mexType != Type.SWAP)
+		{
+			// store informations "request received by myself" and "request sent to candidate fpeer_candidate" (or to all the
+			// walkers targets, with the number of walkers in flight)
 			final long reqMessageID = requestMessage.getMessageID();
-			this.SRmessages.put(reqMessageID, new HashMapEntry(fpeer_sender));
-			this.SRmessages.get(reqMessageID).addSent(fpeer_candidate);
+			final HashMapEntry reqEntry = new HashMapEntry(fpeer_sender);
+			this.SRmessages.put(reqMessageID, reqEntry);
+
+			if (walkersTargets == null)
+				reqEntry.addSent(fpeer_candidate);
+			else
+			{
+				for (FPeer target : walkersTargets)
+					reqEntry.addSent(target);
+
+				reqEntry.setWalkers(walkersTargets.size());
+				ProtocolStatistics.add(Counter.GET_WALKERS_LAUNCHED, walkersTargets.size());
+			}
 		}
 
-		if (printsAllowed)
-			System.out.println("FPeer " + fpeer_sender + ": request " + requestMessage + " forwarded ...");
+		if (this.settings.eventLog != null)
+			this.settings.eventLog.log(ProtocolLog.Event.REQUEST_SENT, ParallelEDSimulator.currentTime(), fpeer_sender, fpeer_candidate, requestMessage);
 	}
 
 
 	/**
-	 * Implements the running FPeer's performing of some requests, based on probability and periods criteria.
-	 * @param peer  the overlay network's FPeer associated to the protocol that performs the cycle
-	 * @param pid   the protocol identifier of the running protocol
+	 * Class that collects the requests decided by an FPeer during the cycle-driven side of the protocol, before they are
+	 * performed (i.e. before the relative messages are created and sent).
 	 **/
-	@Override
-	public void nextCycle(Node peer, int pid) 
+	public static class CycleIntent
 	{
-		// get the simulation time
-		final long currentTime = CDState.getTime();
+		// the FPeer that performs the cycle
+		private final FPeer fpeer;
 
-		// cast general Node to FPeer
-		final FPeer fpeer = (FPeer) peer;
+		// the pseudo-random generator used for the decisions of the cycle
+		private final Random rand;
+
+		// flag that indicates if the FPeer tries to perform a SWAP request
+		private boolean swap;
+
+		// the type of the GET/PUT request to perform ({@code null} if no request)
+		private Type requestType;
+
+		// the content location key of the GET/PUT request
+		private double contentLocKey;
+
+		// the neighbor closest w.r.t. the content location key ({@code null} if not needed)
+		private FPeer candidate;
+
+		private CycleIntent(FPeer _fpeer, Random _rand)
+		{
+			this.fpeer = _fpeer;
+			this.rand = _rand;
+			this.swap = false;
+			this.requestType = null;
+			this.contentLocKey = -1.0;
+			this.candidate = null;
+		}
+
+		/**
+		 * Gets out the FPeer that performs the cycle.
+		 * @return the FPeer that performs the cycle.
+		 **/
+		public FPeer getFPeer()
+		{
+			return this.fpeer;
+		}
+	}
+
+
+	/**
+	 * Implements the first phase of the cycle of the running FPeer {@code fpeer}: it performs the periodic HashMap cleanup and 
+	 * decides, based on probability and periods criteria, the requests to perform. It modifies only the state of {@code fpeer},
+	 * it does not send messages and it does not register new content location keys, so it can be executed concurrently for 
+	 * different FPeers. <br>
+	 * N.B. the content location key of a GET request is selected by {@code commitCycle}, so that the GET can select also the
+	 * content location keys PUT by the FPeers whose cycles are committed before, as in the sequential execution.
+	 * @param fpeer			the overlay network's FPeer that performs the cycle
+	 * @param currentTime	the current simulation time
+	 * @param rand			the pseudo-random generator to use for all the decisions of the cycle
+	 * @return the requests decided by the FPeer.
+	 **/
+	public CycleIntent prepareCycle(FPeer fpeer, long currentTime, Random rand)
+	{
+		CycleIntent intent = new CycleIntent(fpeer, rand);
+
+		// an FPeer that has left the overlay network performs no requests (its cycles end when it is removed from the simulation)
+		if (fpeer.isDeparted())
+			return intent;
 
 		// if the cleanup period decades, performs periodically HashMap's cleanup
-		if ((currentTime % this.cleanupFrequency) == 0)
+		if ((currentTime % this.settings.cleanupFrequency) == 0)
 			cleanHashMap();
 
 		// if the SWAP period decades, try to swap with a random selected neighbor
-		if ((currentTime % this.swapFrequency) == 0)
-			performRequest(Type.SWAP, fpeer, -1.0);
+		intent.swap = SimulationContext.current().areSwapsEnabled() && ((currentTime % this.settings.swapFrequency) == 0);
+
+		// if the requests generation is disabled (e.g. during the warm-up), or if the FPeer is isolated by the departures of 
+		// all its neighbors, the FPeer performs only the SWAP
+		if (!SimulationContext.current().areRequestsEnabled() || ((LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID)).degree() == 0)
+		{
+			intent.requestType = null;
+			return intent;
+		}
+
+		// toss a biased coin: if the result is HEAD perform a GET request (its key is selected at the commit), otherwise a 
+		// PUT request of a new content
+		if (LocationKeysManager.tossCoin(this.settings.biasFactor, rand) == Coin.HEAD)
+		{
+			intent.requestType = Type.GET;
+			return intent;
+		}
+
+		try
+		{
+			intent.requestType = Type.PUT;
+			intent.contentLocKey = LocationKeysManager.drawUniform(rand);
+		}
+		catch (UnsupportedOperationException exc) 
+		{
+			intent.requestType = null;
+			return intent;
+		}
+
+		// pre-compute the neighbor closest w.r.t. the content location key, if the PUT request will be forwarded
+		if (!fpeer.containsContentLocationKey(intent.contentLocKey))
+		{
+			final LinkableProtocol lp = (LinkableProtocol) fpeer.getProtocol(this.settings.linkablePID);
+			intent.candidate = lp.retrieveTopKNeighbors(intent.contentLocKey, 1).get(0);
+		}
+
+		return intent;
+	}
+
+
+	/**
+	 * Implements the second phase of the cycle of an FPeer: it performs the requests decided by {@code prepareCycle}, 
+	 * selecting the content location key of the GET request, registering the new content location keys and creating and 
+	 * sending the relative messages. If the content location key of a PUT request has been registered by another FPeer after
+	 * that it was drawn (i.e. during the same time step), a new one is drawn (and counted as redrawn).
+	 * @param intent the requests decided by the FPeer during the first phase of the cycle
+	 **/
+	public void commitCycle(CycleIntent intent)
+	{
+		// the cycle of the FPeer counts as a processed event (statistics only)
+		ProtocolStatistics.increment(Counter.EVENTS_PROCESSED);
 
-		// toss a biased coin: if the result is HEAD
-		if (LocationKeysManager.tossCoin(this.biasFactor) == Coin.HEAD)
+		// select the content location key of the GET request (before the SWAP, as in the decisions order of the first phase)
+		if (intent.requestType == Type.GET)
 		{
 			try
 			{
-				// perform a GET request
-				performRequest(Type.GET, fpeer, LocationKeysManager.getAvailableContentLocationKey());
+				intent.contentLocKey = LocationKeysManager.getAvailableContentLocationKey(intent.rand);
+			}
+			catch (UnsupportedOperationException exc)
+			{
+				intent.requestType = null;
 			}
-			catch (UnsupportedOperationException exc) { }
 		}
-		else
+
+		if (intent.swap)
+			performRequest(Type.SWAP, intent.fpeer, -1.0, null, intent.rand);
+
+		// redraw the content location key of the PUT request, if it has been registered in the meanwhile (the precomputed
+		// candidate refers to the old key)
+		if (intent.requestType == Type.PUT && !LocationKeysManager.registerContentLocationKey(intent.contentLocKey))
 		{
-			// perform a PUT request
-			performRequest(Type.PUT, fpeer, LocationKeysManager.generateUniform(true));
+			ProtocolStatistics.increment(Counter.CYCLE_PUT_KEYS_REDRAWN);
+			try
+			{
+				intent.contentLocKey = LocationKeysManager.generateUniform(true, intent.rand);
+				intent.candidate = null;
+			}
+			catch (UnsupportedOperationException exc)
+			{
+				return;
+			}
 		}
+
+		if (intent.requestType != null)
+			performRequest(intent.requestType, intent.fpeer, intent.contentLocKey, intent.candidate, intent.rand);
+	}
+
+
+	/**
+	 * Gets out the seed of the pseudo-random generator of the cycle of {@code fpeer} at the time step {@code time}: at the
+	 * first cycle of each time step, the seeds of all the FPeers (up or not) are drawn from the PeerSim common generator in
+	 * network order, as the {@code ParallelCycleScheduler} does.
+	 * @param fpeer	the FPeer that performs the cycle
+	 * @param time	the current time step
+	 * @return the seed of the cycle of {@code fpeer}.
+	 **/
+	private long cycleSeed(FPeer fpeer, long time)
+	{
+		// the seeds are drawn again also if the network has grown after that they have been drawn (e.g. by the churn)
+		if (this.settings.cycleSeedsTime != time || fpeer.getIndex() >= this.settings.cycleSeeds.length)
+		{
+			this.settings.cycleSeeds = ParallelCycleScheduler.drawSeeds(Network.size());
+			this.settings.cycleSeedsTime = time;
+		}
+
+		return this.settings.cycleSeeds[fpeer.getIndex()];
+	}
+
+
+	/**
+	 * Implements the running FPeer's performing of some requests, based on probability and periods criteria. <br>
+	 * With the {@code CDScheduler}, the decisions of the cycle are drawn as with the {@code ParallelCycleScheduler} (see
+	 * {@code cycleSeed}), and the requests are performed immediately; with the parallel engine, they are drawn from the 
+	 * pseudo-random generator of the shard, and the requests are performed at the end of the current window.
+	 * @param peer  the overlay network's FPeer associated to the protocol that performs the cycle
+	 * @param pid   the protocol identifier of the running protocol
+	 **/
+	@Override
+	public void nextCycle(Node peer, int pid) 
+	{
+		final FPeer fpeer = (FPeer) peer;
+		final long time = CDState.getTime();
+
+		if (!ParallelEDSimulator.isRunning())
+		{
+			commitCycle(prepareCycle(fpeer, time, new Random(cycleSeed(fpeer, time))));
+			return;
+		}
+
+		// the requests select and register contents location keys and acquire the swap leases of FPeers owned by other
+		// shards, so they are performed serially at the end of the current window
+		final CycleIntent intent = prepareCycle(fpeer, time, ParallelEDSimulator.currentRandom());
+		ParallelEDSimulator.runAtBarrier(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				commitCycle(intent);
+			}
+		});
 	}
 
 }
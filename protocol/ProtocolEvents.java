@@ -0,0 +1,85 @@
+package protocol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  Class that collects the Java Flight Recorder events of the protocol handlers, used to profile the simulation (e.g. with
+ *  JDK Mission Control) and find out which FPeers (e.g. hubs) and which message types take the most time. <br><br>
+ *
+ *  All the events are disabled by default: when they are not recorded, the JIT removes their allocation and the values of
+ *  their fields are never computed. They are enabled by a recording with the settings file {@code run/freenet.jfc}, e.g.
+ *  {@code -XX:StartFlightRecording=settings=freenet.jfc,filename=sim.jfr}.
+ **/
+
+public class ProtocolEvents
+{
+	/**
+	 *  Event of the handling of a message delivered to an FPeer (from the receiving to the end of the relative handler).
+	 **/
+	@Name("freenet.MessageHandled")
+	@Label("Message Handled")
+	@Description("Handling of a message delivered to an FPeer")
+	@Category({"Freenet Simulator", "Protocol"})
+	@Enabled(false)
+	public static class MessageHandled extends Event
+	{
+		@Label("Message Type")
+		public String messageType;
+
+		@Label("HTL")
+		public int HTL;
+
+		@Label("FPeer Serial")
+		public int fpeerSerial;
+
+		@Label("Node Degree")
+		public int nodeDegree;
+	}
+
+
+	/**
+	 *  Event of the swap of the location keys (and stored contents) of two FPeers.
+	 **/
+	@Name("freenet.LocationSwap")
+	@Label("Location Swap")
+	@Description("Swap of the location keys of two FPeers, including the update of their neighborhoods")
+	@Category({"Freenet Simulator", "Protocol"})
+	@Enabled(false)
+	public static class LocationSwap extends Event
+	{
+		@Label("First FPeer Serial")
+		public int firstSerial;
+
+		@Label("Second FPeer Serial")
+		public int secondSerial;
+
+		@Label("Neighbors Scanned")
+		public int neighborsScanned;
+	}
+
+
+	/**
+	 *  Event of the retrieving of the top-k neighbors of an FPeer closest to a location key.
+	 **/
+	@Name("freenet.TopKNeighbors")
+	@Label("Top-K Neighbors")
+	@Description("Retrieving of the neighbors closest to a location key")
+	@Category({"Freenet Simulator", "Protocol"})
+	@Enabled(false)
+	public static class TopKNeighbors extends Event
+	{
+		@Label("K")
+		public int k;
+
+		@Label("Node Degree")
+		public int nodeDegree;
+
+		@Label("Neighbors Scanned")
+		public int neighborsScanned;
+	}
+}
@@ -0,0 +1,337 @@
+package protocol;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import peersim.config.Configuration;
+import structure.FPeer;
+import structure.Message;
+import structure.Message.Type;
+
+/**
+ *  Class that implements the structured event log of the protocol, that replaces the prints of the simulation. Each record
+ *  is a fixed set of primitive fields (time, event, FPeers serials, message identifier, type, HTL, THC and location key),
+ *  stored into pre-allocated batches of columns and formatted, as a compact tab-separated line, only by a background
+ *  writer thread, so the simulation never builds strings for the log. <br><br>
+ *
+ *  The logged records can be selected by: <br>
+ *  - sampling rate, for each message type: the sampling is a deterministic function of the message identifier (or of the
+ *    location key, for the records without message), so all the records of a sampled request are kept and the pseudo-random
+ *    generators of the simulation are not used; <br>
+ *  - range of serials of the FPeer that logs the record; <br>
+ *  - range of location keys of the message (or of the content). <br><br>
+ *
+ *  When all the batches are waiting to be written, the simulation waits for the writer, so no record is lost.
+ **/
+
+public class ProtocolLog
+{
+	// enum for the logged events
+	public static enum Event {SENT, MULTICAST, RECEIVED, REQUEST_LOCAL, REQUEST_SENT, ROUTING_END, REPLICA_STORED, SWAP_END}
+
+	// cached arrays of the events and of the message types, indexed by ordinal
+	private static final Event[] EVENTS = Event.values();
+	private static final Type[] TYPES = Type.values();
+
+	// number of batches allocated by the log
+	private static final int NUM_BATCHES = 4;
+
+
+	/**
+	 *  Class that implements a batch of records, as parallel columns.
+	 **/
+	private static class Batch
+	{
+		private final long[] times;
+		private final byte[] events;
+		private final int[] fpeers;
+		private final int[] peers;
+		private final long[] messageIDs;
+		private final byte[] types;
+		private final int[] HTLs;
+		private final int[] THCs;
+		private final double[] keys;
+		private int size;
+
+		private Batch(int capacity)
+		{
+			this.times = new long[capacity];
+			this.events = new byte[capacity];
+			this.fpeers = new int[capacity];
+			this.peers = new int[capacity];
+			this.messageIDs = new long[capacity];
+			this.types = new byte[capacity];
+			this.HTLs = new int[capacity];
+			this.THCs = new int[capacity];
+			this.keys = new double[capacity];
+			this.size = 0;
+		}
+
+		private boolean isFull()
+		{
+			return this.size == this.times.length;
+		}
+	}
+
+
+	// the sampling rates, indexed by message type ordinal
+	private final double[] samplingRates;
+
+	// range of the serials of the logged FPeers and range of the logged location keys
+	private final int minFPeer;
+	private final int maxFPeer;
+	private final double minKey;
+	private final double maxKey;
+
+	// the batch currently filled by the simulation
+	private Batch current;
+
+	// the empty batches, and the full batches waiting to be written
+	private final ArrayBlockingQueue<Batch> freeBatches;
+	private final ArrayBlockingQueue<Batch> fullBatches;
+
+	// batch used to stop the writer thread
+	private final Batch endOfLog;
+
+	// the background writer thread
+	private final Thread writerThread;
+
+	// the log file
+	private final Writer out;
+
+
+	/**
+	 * Constructor method. Sets up the selection of the records from the PeerSim configuration file, using {@code prefix},
+	 * opens the log file and starts the writer thread (stopped and flushed at the JVM shutdown).
+	 * @param prefix	the prefix, in the configuration file, of the log parameters
+	 * @param fileName	the default name of the log file
+	 * @throws IOException if the log file cannot be opened
+	 **/
+	public ProtocolLog(String prefix, String fileName) throws IOException
+	{
+		// sampling rates: a default one, overridable for each message type
+		final double defaultRate = Configuration.getDouble(prefix + ".sampling", 1.0);
+		this.samplingRates = new double[TYPES.length];
+		for (Type t : TYPES)
+			this.samplingRates[t.ordinal()] = Configuration.getDouble(prefix + ".sampling." + t, defaultRate);
+
+		// FPeers and location keys filters (by default, everything is logged)
+		this.minFPeer = Configuration.getInt(prefix + ".minFPeer", 0);
+		this.maxFPeer = Configuration.getInt(prefix + ".maxFPeer", Integer.MAX_VALUE);
+		this.minKey = Configuration.getDouble(prefix + ".minKey", Double.NEGATIVE_INFINITY);
+		this.maxKey = Configuration.getDouble(prefix + ".maxKey", Double.POSITIVE_INFINITY);
+
+		// allocate all the batches once
+		final int batchSize = Math.max(1, Configuration.getInt(prefix + ".batchSize", 4096));
+		this.freeBatches = new ArrayBlockingQueue<Batch>(NUM_BATCHES);
+		this.fullBatches = new ArrayBlockingQueue<Batch>(NUM_BATCHES + 1);
+		for (int i = 1; i < NUM_BATCHES; i++)
+			this.freeBatches.add(new Batch(batchSize));
+		this.current = new Batch(batchSize);
+		this.endOfLog = new Batch(0);
+
+		// open the log file and write the header
+		this.out = new BufferedWriter(new FileWriter(Configuration.getString(prefix + ".file", fileName), false), 1 << 16);
+		this.out.write("time\tevent\tfpeer\tpeer\tmessageID\ttype\tHTL\tTHC\tkey\n");
+
+		this.writerThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeBatches();
+			}
+		}, "protocol-log-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				close();
+			}
+		}));
+	}
+
+
+	/**
+	 * Checks if a record is selected by the sampling and by the filters.
+	 * @param type			the message type of the record
+	 * @param sampleID		the value from which derive the sampling decision (e.g. the message identifier)
+	 * @param fpeerSerial	the serial of the FPeer that logs the record
+	 * @param key			the location key of the record
+	 * @return {@code true} if the record must be logged. {@code false} otherwise.
+	 **/
+	private boolean isSelected(Type type, long sampleID, int fpeerSerial, double key)
+	{
+		if (fpeerSerial < this.minFPeer || fpeerSerial > this.maxFPeer || key < this.minKey || key > this.maxKey)
+			return false;
+
+		final double rate = this.samplingRates[type.ordinal()];
+		if (rate >= 1.0)
+			return true;
+
+		return uniformOf(sampleID) < rate;
+	}
+
+
+	/**
+	 * Maps the passed identifier to a uniform value, for the deterministic sampling (the pseudo-random generators of the
+	 * simulation are not used).
+	 * @param sampleID the value from which derive the sampling decision (e.g. the message identifier)
+	 * @return the mixed identifier, as a value in [0, 1).
+	 **/
+	static double uniformOf(long sampleID)
+	{
+		long z = sampleID * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+
+
+	/**
+	 * Logs an event concerning the passed message {@code mex}, if selected.
+	 * @param event	the logged event
+	 * @param time	the simulated time of the event
+	 * @param fpeer	the FPeer that logs the event
+	 * @param peer	the other FPeer involved in the event (e.g. the receiver of a sent message), or {@code null}
+	 * @param mex	the message of the event
+	 **/
+	public void log(Event event, long time, FPeer fpeer, FPeer peer, Message mex)
+	{
+		if (this.isSelected(mex.getMessageType(), mex.getMessageID(), fpeer.getSerial(), mex.getMessageLocationKey()))
+			this.append(event, time, fpeer.getSerial(), (peer == null) ? -1 : peer.getSerial(), mex.getMessageID(),
+						mex.getMessageType(), mex.getHTL(), mex.getTHC(), mex.getMessageLocationKey());
+	}
+
+
+	/**
+	 * Logs an event concerning a request without message (e.g. a request ended in the storage of the requester), if selected.
+	 * @param event	the logged event
+	 * @param time	the simulated time of the event
+	 * @param fpeer	the FPeer that logs the event
+	 * @param type	the type of the request
+	 * @param key	the content location key of the request
+	 **/
+	public void log(Event event, long time, FPeer fpeer, Type type, double key)
+	{
+		if (this.isSelected(type, Double.doubleToLongBits(key), fpeer.getSerial(), key))
+			this.append(event, time, fpeer.getSerial(), -1, -1, type, 0, 0, key);
+	}
+
+
+	/**
+	 * Appends a record to the current batch, handing the batch to the writer thread when it is full.
+	 * @param event		the logged event
+	 * @param time		the simulated time of the event
+	 * @param fpeer		the serial of the FPeer that logs the event
+	 * @param peer		the serial of the other FPeer involved in the event (-1 if none)
+	 * @param messageID	the identifier of the message of the event (-1 if none)
+	 * @param type		the message type of the event
+	 * @param HTL		the HTL value of the message
+	 * @param THC		the THC value of the message
+	 * @param key		the location key of the message
+	 **/
+	private synchronized void append(Event event, long time, int fpeer, int peer, long messageID, Type type, int HTL, int THC, double key)
+	{
+		final Batch b = this.current;
+		final int i = b.size++;
+		b.times[i] = time;
+		b.events[i] = (byte) event.ordinal();
+		b.fpeers[i] = fpeer;
+		b.peers[i] = peer;
+		b.messageIDs[i] = messageID;
+		b.types[i] = (byte) type.ordinal();
+		b.HTLs[i] = HTL;
+		b.THCs[i] = THC;
+		b.keys[i] = key;
+
+		if (b.isFull())
+		{
+			try
+			{
+				// hand the full batch to the writer and wait (only if the writer is late) for an empty one
+				this.fullBatches.put(b);
+				this.current = this.freeBatches.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	/**
+	 * Implements the writer thread: it formats and writes the full batches, until the end of the log.
+	 **/
+	private void writeBatches()
+	{
+		StringBuilder sb = new StringBuilder(128);
+		try
+		{
+			while (true)
+			{
+				final Batch b = this.fullBatches.take();
+				if (b == this.endOfLog)
+					break;
+
+				for (int i = 0; i < b.size; i++)
+				{
+					sb.setLength(0);
+					sb.append(b.times[i]).append('\t').append(EVENTS[b.events[i]]).append('\t').append(b.fpeers[i]).append('\t')
+					  .append(b.peers[i]).append('\t').append(b.messageIDs[i]).append('\t').append(TYPES[b.types[i]]).append('\t')
+					  .append(b.HTLs[i]).append('\t').append(b.THCs[i]).append('\t').append(b.keys[i]).append('\n');
+					this.out.append(sb);
+				}
+
+				// recycle the batch
+				b.size = 0;
+				this.freeBatches.put(b);
+			}
+
+			this.out.flush();
+		}
+		catch (IOException e)
+		{
+			System.out.println("PROTOCOL LOG: error during log file writing:\n" + e.getMessage());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Writes the records still in the current batch, stops the writer thread and closes the log file.
+	 **/
+	public synchronized void close()
+	{
+		if (!this.writerThread.isAlive())
+			return;
+
+		try
+		{
+			this.fullBatches.put(this.current);
+			this.fullBatches.put(this.endOfLog);
+			this.writerThread.join();
+			this.out.close();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e)
+		{
+			System.out.println("PROTOCOL LOG: error during log file closing:\n" + e.getMessage());
+		}
+	}
+}
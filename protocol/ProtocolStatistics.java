@@ -0,0 +1,243 @@
+package protocol;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import engine.SimulationContext;
+import structure.LatencyHistogram;
+import structure.Message.Type;
+
+/**
+ *  Class that collects the global counters of the protocol events (e.g. SWAP sessions outcomes, cache lookups) and the
+ *  histograms of the requests latencies (in simulated time) and of the routing accuracy (w.r.t. the {@code LocationRing}
+ *  oracle), shared by all the FPeers of the overlay network. The counters
+ *  are striped ({@code LongAdder}), so they can be updated by the shards of the parallel engine without contention on a
+ *  single memory location; the histograms are atomic. The statistics of a simulation are held by its
+ *  {@code SimulationContext}, and the static methods act on the ones of the running simulation.
+ **/
+
+public class ProtocolStatistics
+{
+	// enum for the counted protocol events
+	public static enum Counter {SWAP_SESSIONS_STARTED, SWAP_SESSIONS_COMPLETED, SWAP_SESSIONS_REFUSED, SWAP_SESSIONS_EXPIRED,
+		CACHE_LOOKUPS, CACHE_HITS, CACHE_INSERTIONS, GET_FOUND, GET_NOTFOUND, FILTER_FORWARDS, FILTER_FALSE_POSITIVES,
+		GET_REQUESTS, PUT_REQUESTS, PUT_OK, PUT_COLLISION, MESSAGES_SENT, MESSAGES_DELIVERED, EVENTS_PROCESSED,
+		FPEERS_JOINED, FPEERS_LEFT, KEYS_HANDED_OFF, KEYS_LOST, HOPS_VANISHED, MESSAGES_LOST, ROUTES_AT_CLOSEST,
+		ROUTES_OFF_CLOSEST, GET_NOTFOUND_ABSENT, GET_NOTFOUND_LOCAL_MINIMUM, STRETCH_SAMPLES, STRETCH_SAMPLES_DROPPED,
+		STRETCH_UNREACHABLE, GET_TRAFFIC, GET_WALKERS_LAUNCHED, GET_WALKERS_EXHAUSTED, GET_WALKERS_CANCELLED,
+		CYCLE_PUT_KEYS_REDRAWN, FILTER_STALE_POSITIVES, FILTER_SNAPSHOT_BYTES}
+
+	// the values of the counters, indexed by counter ordinal
+	private final LongAdder[] counters;
+
+	// scale of the per-hop latencies, recorded in hundredths of unit of time
+	public static final int HOP_LATENCY_SCALE = 100;
+
+	// the histograms of the end-to-end and of the per-hop latencies, indexed by (outcome) message type ordinal
+	private final LatencyHistogram[] latencies;
+	private final LatencyHistogram[] hopLatencies;
+
+	// the histograms of the ring distances (in positions) between the closest FPeer reached by the requests and the truly
+	// closest one, and the sums of the key-space gaps between them, indexed by (outcome) message type ordinal
+	private final LatencyHistogram[] rankDistances;
+	private final DoubleAdder[] keyGaps;
+
+
+	/**
+	 * Constructor method. Creates the counters and the histograms, all empty (the statistics of a simulation are created by
+	 * its context).
+	 **/
+	public ProtocolStatistics()
+	{
+		this.counters = newCounters();
+		this.latencies = newHistograms();
+		this.hopLatencies = newHistograms();
+		this.rankDistances = newHistograms();
+		this.keyGaps = newGapSums();
+	}
+
+
+	/**
+	 * Gets out the protocol statistics of the running simulation, held by the simulation context.
+	 * @return the protocol statistics of the running simulation.
+	 **/
+	private static ProtocolStatistics current()
+	{
+		return SimulationContext.current().getProtocolStatistics();
+	}
+
+
+	/**
+	 * Allocates a striped counter for each counted protocol event.
+	 * @return the allocated counters, indexed by counter ordinal.
+	 **/
+	private static LongAdder[] newCounters()
+	{
+		LongAdder[] adders = new LongAdder[Counter.values().length];
+		for (int i = 0; i < adders.length; i++)
+			adders[i] = new LongAdder();
+
+		return adders;
+	}
+
+
+	/**
+	 * Allocates a histogram for each message type.
+	 * @return the allocated histograms, indexed by message type ordinal.
+	 **/
+	private static LatencyHistogram[] newHistograms()
+	{
+		LatencyHistogram[] histograms = new LatencyHistogram[Type.values().length];
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new LatencyHistogram();
+
+		return histograms;
+	}
+
+
+	/**
+	 * Allocates a (striped) sum for each message type.
+	 * @return the allocated sums, indexed by message type ordinal.
+	 **/
+	private static DoubleAdder[] newGapSums()
+	{
+		DoubleAdder[] sums = new DoubleAdder[Type.values().length];
+		for (int i = 0; i < sums.length; i++)
+			sums[i] = new DoubleAdder();
+
+		return sums;
+	}
+
+
+	/**
+	 * Increases by 1 the passed counter {@code c}.
+	 * @param c the counter to increase
+	 **/
+	public static void increment(Counter c)
+	{
+		current().counters[c.ordinal()].increment();
+	}
+
+
+	/**
+	 * Increases by the passed value {@code n} the passed counter {@code c}.
+	 * @param c the counter to increase
+	 * @param n the value to add to the counter
+	 **/
+	public static void add(Counter c, long n)
+	{
+		current().counters[c.ordinal()].add(n);
+	}
+
+
+	/**
+	 * Gets out the current value of the passed counter {@code c} (not atomic w.r.t. the concurrent updates).
+	 * @param c the counter to read
+	 * @return the current value of the counter.
+	 **/
+	public static long get(Counter c)
+	{
+		return current().counters[c.ordinal()].sum();
+	}
+
+
+	/**
+	 * Computes the ratio between the values of the two passed counters.
+	 * @param num the counter used as numerator
+	 * @param den the counter used as denominator
+	 * @return {@code num / den}, or {@code 0} if the value of {@code den} is 0.
+	 **/
+	public static double ratio(Counter num, Counter den)
+	{
+		final long d = get(den);
+		return (d == 0) ? 0.0 : (double) get(num) / d;
+	}
+
+
+	/**
+	 * Records the latency of a request ended with the passed outcome {@code outcome}.
+	 * @param outcome	the type of the message with which the request ends (e.g. GET_FOUND, PUT_OK)
+	 * @param latency	the end-to-end latency of the request, in simulated time
+	 * @param hops		the number of hops (THC) of the request, over which the latency (forward and backward paths) is divided
+	 **/
+	public static void recordLatency(Type outcome, long latency, int hops)
+	{
+		final ProtocolStatistics st = current();
+		st.latencies[outcome.ordinal()].record(latency);
+
+		// the per-hop latency is recorded in hundredths of unit of time, since it is usually fractional
+		if (hops > 0)
+			st.hopLatencies[outcome.ordinal()].record((latency * HOP_LATENCY_SCALE) / hops);
+	}
+
+
+	/**
+	 * Gets out the histogram of the end-to-end latencies of the requests ended with the passed outcome {@code outcome}.
+	 * @param outcome the type of the message with which the requests end
+	 * @return the histogram of the end-to-end latencies.
+	 **/
+	public static LatencyHistogram getLatencyHistogram(Type outcome)
+	{
+		return current().latencies[outcome.ordinal()];
+	}
+
+
+	/**
+	 * Gets out the histogram of the per-hop latencies (in hundredths of unit of time, see {@code HOP_LATENCY_SCALE}) of
+	 * the requests ended with the passed outcome {@code outcome}.
+	 * @param outcome the type of the message with which the requests end
+	 * @return the histogram of the per-hop latencies.
+	 **/
+	public static LatencyHistogram getHopLatencyHistogram(Type outcome)
+	{
+		return current().hopLatencies[outcome.ordinal()];
+	}
+
+
+	/**
+	 * Records the routing accuracy of a request ended with the passed outcome {@code outcome}, i.e. how far the closest FPeer
+	 * that it reached is from the FPeer truly closest to its location key. A GET_NOTFOUND that reached the truly closest FPeer
+	 * is counted as failed because the content is absent; otherwise, because the routing got stuck in a local minimum.
+	 * @param outcome		the type of the message with which the request ends (e.g. GET_FOUND, PUT_OK)
+	 * @param atClosest		flag that specifies if the request reached the truly closest FPeer
+	 * @param rankDistance	the number of positions of the location ring between the reached FPeer and the truly closest one
+	 * @param keyGap		the difference between the circular distances, from the location key of the request, of the reached
+	 * 						FPeer and of the truly closest one
+	 **/
+	public static void recordRoutingAccuracy(Type outcome, boolean atClosest, int rankDistance, double keyGap)
+	{
+		final ProtocolStatistics st = current();
+		st.rankDistances[outcome.ordinal()].record(rankDistance);
+		st.keyGaps[outcome.ordinal()].add(keyGap);
+
+		increment(atClosest ? Counter.ROUTES_AT_CLOSEST : Counter.ROUTES_OFF_CLOSEST);
+		if (outcome == Type.GET_NOTFOUND)
+			increment(atClosest ? Counter.GET_NOTFOUND_ABSENT : Counter.GET_NOTFOUND_LOCAL_MINIMUM);
+	}
+
+
+	/**
+	 * Gets out the histogram of the ring distances (in positions) between the closest FPeer reached by the requests ended
+	 * with the passed outcome {@code outcome} and the truly closest one.
+	 * @param outcome the type of the message with which the requests end
+	 * @return the histogram of the ring distances.
+	 **/
+	public static LatencyHistogram getRankDistanceHistogram(Type outcome)
+	{
+		return current().rankDistances[outcome.ordinal()];
+	}
+
+
+	/**
+	 * Gets out the mean key-space gap between the closest FPeer reached by the requests ended with the passed outcome
+	 * {@code outcome} and the truly closest one.
+	 * @param outcome the type of the message with which the requests end
+	 * @return the mean key-space gap, or {@code 0} if no request is recorded.
+	 **/
+	public static double getMeanKeyGap(Type outcome)
+	{
+		final ProtocolStatistics st = current();
+		final long count = st.rankDistances[outcome.ordinal()].getCount();
+		return (count == 0) ? 0.0 : st.keyGaps[outcome.ordinal()].sum() / count;
+	}
+}
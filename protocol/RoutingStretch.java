@@ -0,0 +1,418 @@
+package protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import engine.SimulationContext;
+
+import protocol.ProtocolStatistics.Counter;
+import structure.FPeer;
+import structure.FPeerDirectory;
+import structure.LatencyHistogram;
+import structure.Message;
+import structure.Message.Type;
+
+/**
+ *  Class that implements the sampled analysis of the routing stretch: for a sample of the ended requests, it compares the
+ *  hops actually taken toward the responder (the THC, that counts the sends of the GET and PUT requests, the backtracking
+ *  included) with the shortest path, in the overlay network, between the requester and the FPeer that has answered the
+ *  request (e.g. the one that found the content of a GET, or the one closest to the content location key reached by a GET
+ *  not found). <br><br>
+ *
+ *  The ended requests are sampled deterministically (see {@code ProtocolLog}) into a bounded buffer (the samples exceeding
+ *  it are dropped and counted). Periodically, the simulation freezes a snapshot of the adjacency of the overlay network
+ *  (compact arrays indexed by FPeer serial) and hands the buffered samples to a pool of background threads, that compute
+ *  the shortest paths on that snapshot with a BFS, bounded in depth, each one using two arrays as large as the overlay
+ *  network: so the simulation pays only the sampling and the snapshots, and never waits for the background threads (while
+ *  they are busy, the samples stay in the buffer). So at most one snapshot is in use at a time. The stretches are recorded,
+ *  for each message type, in hundredths (see {@code STRETCH_SCALE}). The state of the analysis of a simulation is held by
+ *  its {@code SimulationContext}, and the static methods act on the one of the running simulation.
+ **/
+
+public class RoutingStretch
+{
+	// scale of the stretches, recorded in hundredths since they are usually fractional
+	public static final int STRETCH_SCALE = 100;
+
+	// flag that indicates if the analysis is enabled
+	private boolean enabled;
+
+	// the PID of the used Linkable protocol
+	private int linkablePID;
+
+	// the sampling rate of the ended requests
+	private double samplingRate;
+
+	// the maximum depth of the BFS (the farther responders are counted as unreachable)
+	private int maxDepth;
+
+	// the buffered samples (message type ordinal, requester and responder serials, THC), as parallel columns
+	private int[] pendingTypes;
+	private int[] pendingRequesters;
+	private int[] pendingResponders;
+	private int[] pendingTHCs;
+	private int numPending;
+
+	// the pool of the background threads, and the BFS batches submitted to it
+	private ExecutorService pool;
+	private final ArrayList<Future<Void>> batches;
+
+	// the number of background threads, i.e. the number of BFS batches in which the samples are split
+	private int numThreads;
+
+	// the histograms of the stretches, indexed by (outcome) message type ordinal
+	private final LatencyHistogram[] stretches;
+
+
+	/**
+	 *  Class that implements a frozen snapshot of the adjacency of the overlay network, in compressed sparse rows: the
+	 *  neighbors of the FPeer having serial s are {@code targets[offsets[s]]}, ..., {@code targets[offsets[s + 1] - 1]}.
+	 **/
+	private static final class Snapshot
+	{
+		private final int[] offsets;
+		private final int[] targets;
+
+		private Snapshot(int[] offsets, int[] targets)
+		{
+			this.offsets = offsets;
+			this.targets = targets;
+		}
+
+		private int size()
+		{
+			return this.offsets.length - 1;
+		}
+	}
+
+
+	/**
+	 * Constructor method. Creates the analysis, not enabled (the analysis of a simulation is created by its context).
+	 **/
+	public RoutingStretch()
+	{
+		this.enabled = false;
+		this.batches = new ArrayList<Future<Void>>();
+		this.stretches = newHistograms();
+	}
+
+
+	/**
+	 * Gets out the routing stretch analysis of the running simulation, held by the simulation context.
+	 * @return the routing stretch analysis of the running simulation.
+	 **/
+	private static RoutingStretch current()
+	{
+		return SimulationContext.current().getRoutingStretch();
+	}
+
+
+	/**
+	 * Allocates a histogram for each message type.
+	 * @return the allocated histograms, indexed by message type ordinal.
+	 **/
+	private static LatencyHistogram[] newHistograms()
+	{
+		LatencyHistogram[] histograms = new LatencyHistogram[Type.values().length];
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new LatencyHistogram();
+
+		return histograms;
+	}
+
+
+	/**
+	 * Enables the analysis, allocating the buffer of the samples and the pool of the background threads.
+	 * @param _linkablePID	the PID of the used Linkable protocol
+	 * @param _samplingRate	the sampling rate of the ended requests
+	 * @param maxPending	the maximum number of samples buffered between two snapshots
+	 * @param _maxDepth		the maximum depth of the BFS
+	 * @param _numThreads	the number of background threads
+	 **/
+	public static void enable(int _linkablePID, double _samplingRate, int maxPending, int _maxDepth, int _numThreads)
+	{
+		final RoutingStretch rs = current();
+		rs.linkablePID = _linkablePID;
+		rs.samplingRate = _samplingRate;
+		rs.maxDepth = _maxDepth;
+		rs.numThreads = Math.max(1, _numThreads);
+
+		rs.pendingTypes = new int[maxPending];
+		rs.pendingRequesters = new int[maxPending];
+		rs.pendingResponders = new int[maxPending];
+		rs.pendingTHCs = new int[maxPending];
+		rs.numPending = 0;
+
+		// daemon threads, so the pool does not prevent the termination of the simulator
+		rs.pool = Executors.newFixedThreadPool(rs.numThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "routing-stretch");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		rs.enabled = true;
+	}
+
+
+	/**
+	 * Verifies if the analysis is enabled.
+	 * @return {@code true} if the analysis is enabled. {@code false} otherwise.
+	 **/
+	public static boolean isEnabled()
+	{
+		return current().enabled;
+	}
+
+
+	/**
+	 * Samples, if selected, the passed ended request {@code mex}: only the requests answered by an FPeer different from the
+	 * requester are sampled.
+	 * @param mex		the message with which the request ends (e.g. GET_FOUND, PUT_OK)
+	 * @param requester	the FPeer that has performed the request
+	 **/
+	public static void sample(Message mex, FPeer requester)
+	{
+		final RoutingStretch rs = current();
+		final FPeer responder = mex.getResponderFPeer();
+		if (responder == null || responder == requester || responder.getSerial() < 0 || ProtocolLog.uniformOf(mex.getMessageID()) >= rs.samplingRate)
+			return;
+
+		synchronized (rs)
+		{
+			if (rs.numPending == rs.pendingTypes.length)
+			{
+				ProtocolStatistics.increment(Counter.STRETCH_SAMPLES_DROPPED);
+				return;
+			}
+
+			rs.pendingTypes[rs.numPending] = mex.getMessageType().ordinal();
+			rs.pendingRequesters[rs.numPending] = requester.getSerial();
+			rs.pendingResponders[rs.numPending] = responder.getSerial();
+			rs.pendingTHCs[rs.numPending] = mex.getTHC();
+			rs.numPending++;
+
+			// the buffered sample keeps the serials of its FPeers until the refresh that freezes its snapshot
+			FPeerDirectory.retain(requester);
+			FPeerDirectory.retain(responder);
+		}
+	}
+
+
+	/**
+	 * Freezes a snapshot of the adjacency of the overlay network, scanning the neighborhoods of all the FPeers registered
+	 * (the departed ones have no neighbors, and the recycled serials are skipped).
+	 * @return the frozen snapshot.
+	 **/
+	private Snapshot freeze()
+	{
+		final int n = FPeerDirectory.size();
+		int[] offsets = new int[n + 1];
+		for (int s = 0; s < n; s++)
+			offsets[s + 1] = offsets[s] + ((FPeerDirectory.get(s) == null) ? 0 : ((LinkableProtocol) FPeerDirectory.get(s).getProtocol(linkablePID)).degree());
+
+		int[] targets = new int[offsets[n]];
+		for (int s = 0; s < n; s++)
+		{
+			if (FPeerDirectory.get(s) == null)
+				continue;
+
+			final LinkableProtocol lp = (LinkableProtocol) FPeerDirectory.get(s).getProtocol(linkablePID);
+			for (int j = 0; j < lp.degree(); j++)
+				targets[offsets[s] + j] = ((FPeer) lp.getNeighbor(j)).getSerial();
+		}
+
+		return new Snapshot(offsets, targets);
+	}
+
+
+	/**
+	 * Freezes a snapshot of the overlay network and hands the buffered samples to the background threads, that compute
+	 * their stretches on it, unless the threads are still busy with the previous samples. It must be called while the
+	 * overlay network is not changed (e.g. by a control).
+	 **/
+	public static void refresh()
+	{
+		final RoutingStretch rs = current();
+		if (!rs.enabled)
+			return;
+
+		// if the background threads are still busy, the samples stay in the buffer until the next refresh
+		for (int i = rs.batches.size() - 1; i >= 0; i--)
+		{
+			if (rs.batches.get(i).isDone())
+				rs.batches.remove(i);
+		}
+
+		if (!rs.batches.isEmpty())
+			return;
+
+		// take the buffered samples
+		final int count;
+		final int[] types, requesters, responders, THCs;
+		synchronized (rs)
+		{
+			count = rs.numPending;
+			types = Arrays.copyOf(rs.pendingTypes, count);
+			requesters = Arrays.copyOf(rs.pendingRequesters, count);
+			responders = Arrays.copyOf(rs.pendingResponders, count);
+			THCs = Arrays.copyOf(rs.pendingTHCs, count);
+			rs.numPending = 0;
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			FPeerDirectory.release(FPeerDirectory.get(requesters[i]));
+			FPeerDirectory.release(FPeerDirectory.get(responders[i]));
+		}
+
+		if (count == 0)
+			return;
+
+		// split the samples in a batch for each background thread
+		final Snapshot snapshot = rs.freeze();
+		for (int t = 0; t < rs.numThreads; t++)
+		{
+			final int from = (int) ((long) t * count / rs.numThreads);
+			final int to = (int) ((long) (t + 1) * count / rs.numThreads);
+			if (from == to)
+				continue;
+
+			rs.batches.add(rs.pool.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					rs.measure(snapshot, types, requesters, responders, THCs, from, to);
+					return null;
+				}
+			}));
+		}
+	}
+
+
+	/**
+	 * Computes and records the stretches of the passed range of samples, on the passed snapshot.
+	 * @param snapshot		the frozen snapshot of the overlay network
+	 * @param types			the message types ordinals of the samples
+	 * @param requesters	the requesters serials of the samples
+	 * @param responders	the responders serials of the samples
+	 * @param THCs			the THCs of the samples
+	 * @param from			the first sample of the range (included)
+	 * @param to			the last sample of the range (excluded)
+	 **/
+	private void measure(Snapshot snapshot, int[] types, int[] requesters, int[] responders, int[] THCs, int from, int to)
+	{
+		// the BFS arrays, allocated once for the whole range: the visit marks (the index of the sample that visited the FPeer,
+		// so they are never cleared) and the queue of the FPeers to visit
+		int[] visitedBy = new int[snapshot.size()];
+		Arrays.fill(visitedBy, -1);
+		int[] queue = new int[snapshot.size()];
+
+		for (int i = from; i < to; i++)
+		{
+			final int distance = shortestPath(snapshot, requesters[i], responders[i], i, visitedBy, queue);
+			ProtocolStatistics.increment(Counter.STRETCH_SAMPLES);
+
+			if (distance < 0)
+				ProtocolStatistics.increment(Counter.STRETCH_UNREACHABLE);
+			else
+				stretches[types[i]].record(Math.round((double) THCs[i] * STRETCH_SCALE / distance));
+		}
+	}
+
+
+	/**
+	 * Computes the length of the shortest path between the two passed FPeers, with a BFS (level by level) bounded by
+	 * {@code maxDepth}.
+	 * @param snapshot	the frozen snapshot of the overlay network
+	 * @param source	the serial of the source FPeer
+	 * @param target	the serial of the target FPeer (different from the source)
+	 * @param mark		the visit mark of the current BFS
+	 * @param visitedBy	the visit marks of the FPeers
+	 * @param queue		the queue of the FPeers to visit
+	 * @return the number of hops of the shortest path, or {@code -1} if the target is farther than {@code maxDepth} hops.
+	 **/
+	private int shortestPath(Snapshot snapshot, int source, int target, int mark, int[] visitedBy, int[] queue)
+	{
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		visitedBy[source] = mark;
+
+		for (int depth = 1; depth <= maxDepth && head < tail; depth++)
+		{
+			// visit all the FPeers of the current level, queueing the ones of the next level
+			final int levelEnd = tail;
+			while (head < levelEnd)
+			{
+				final int s = queue[head++];
+				for (int k = snapshot.offsets[s]; k < snapshot.offsets[s + 1]; k++)
+				{
+					final int neighbor = snapshot.targets[k];
+					if (neighbor == target)
+						return depth;
+
+					if (visitedBy[neighbor] != mark)
+					{
+						visitedBy[neighbor] = mark;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Hands the last buffered samples to the background threads and waits for the completion of all the submitted batches
+	 * (e.g. before reporting the stretches at the end of the simulation).
+	 **/
+	public static void finish()
+	{
+		final RoutingStretch rs = current();
+		if (!rs.enabled)
+			return;
+
+		try
+		{
+			// wait for the previous samples, then for the last buffered ones
+			for (int round = 0; round < 2; round++)
+			{
+				for (Future<Void> f : rs.batches)
+					f.get();
+				rs.batches.clear();
+
+				if (round == 0)
+					refresh();
+			}
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			System.out.println("ROUTING STRETCH: stretches computation failed ...\nError details: " + e);
+		}
+	}
+
+
+	/**
+	 * Gets out the histogram of the stretches (in hundredths, see {@code STRETCH_SCALE}) of the sampled requests ended with
+	 * the passed outcome {@code outcome}.
+	 * @param outcome the type of the message with which the requests end
+	 * @return the histogram of the stretches.
+	 **/
+	public static LatencyHistogram getStretchHistogram(Type outcome)
+	{
+		return current().stretches[outcome.ordinal()];
+	}
+}
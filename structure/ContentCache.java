@@ -0,0 +1,127 @@
+package structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  Class that implements the cache area of an FPeer, in which are stored the content location keys of the contents found 
+ *  by the GET requests relayed by the FPeer (path caching). The cache has a fixed capacity and, when full, evicts a key
+ *  according to the replacement policy: the least recently used key (LRU) or the oldest inserted key (FIFO).
+ **/
+
+public class ContentCache
+{
+	// enum for the replacement policies
+	public static enum Policy {LRU, FIFO}
+
+	// maximum number of content location keys stored in the cache
+	private final int capacity;
+
+	// the replacement policy of the cache
+	private final Policy policy;
+
+	// map that stores the cached content location keys, in eviction order (access order for LRU, insertion order for FIFO)
+	private final LinkedHashMap<Double, Boolean> keys;
+
+
+	/**
+	 * Constructor method.
+	 * @param _capacity	the maximum number of content location keys stored in the cache
+	 * @param policy	the replacement policy of the cache
+	 **/
+	public ContentCache(int _capacity, Policy policy)
+	{
+		this.capacity = _capacity;
+		this.policy = policy;
+		this.keys = new LinkedHashMap<Double, Boolean>(16, 0.75f, policy == Policy.LRU)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Double, Boolean> eldest)
+			{
+				return this.size() > capacity;
+			}
+		};
+	}
+
+
+	/**
+	 * Checks if the passed content location key {@code locKey} is in the cache (for LRU policy, the key becomes the most 
+	 * recently used).
+	 * @param locKey the content location key on which perform the check
+	 * @return {@code true} if the passed content location key is cached. {@code false} otherwise.
+	 **/
+	public boolean contains(double locKey)
+	{
+		return this.keys.get(locKey) != null;
+	}
+
+
+	/**
+	 * Adds the passed content location key {@code locKey} to the cache, evicting a key if the cache is full.
+	 * @param locKey the content location key to cache
+	 * @return {@code true} if the key was not already cached. {@code false} otherwise.
+	 **/
+	public boolean add(double locKey)
+	{
+		return this.keys.put(locKey, Boolean.TRUE) == null;
+	}
+
+
+	/**
+	 * Gets out the number of content location keys currently cached.
+	 * @return the number of cached content location keys.
+	 **/
+	public int size()
+	{
+		return this.keys.size();
+	}
+
+
+	/**
+	 * Gets out the maximum number of content location keys stored in the cache.
+	 * @return the capacity of the cache.
+	 **/
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+
+	/**
+	 * Writes the cache (configuration and keys, in eviction order) on the passed {@code out} stream.
+	 * @param out the stream on which write the cache
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(this.capacity);
+		out.writeByte(this.policy.ordinal());
+		out.writeInt(this.keys.size());
+		for (Double locKey : this.keys.keySet())
+			out.writeDouble(locKey);
+	}
+
+
+	/**
+	 * Creates a cache with the content read from the passed {@code in} stream, as written by {@code writeTo}.
+	 * @param in the stream from which read the cache
+	 * @return the read cache.
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public static ContentCache readFrom(DataInput in) throws IOException
+	{
+		ContentCache cache = new ContentCache(in.readInt(), Policy.values()[in.readByte()]);
+
+		// adding the keys in eviction order rebuilds the same order
+		final int size = in.readInt();
+		for (int i = 0; i < size; i++)
+			cache.add(in.readDouble());
+
+		return cache;
+	}
+}
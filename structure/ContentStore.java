@@ -0,0 +1,650 @@
+package structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *  Class that implements the datastore of an FPeer, in which are stored the content location keys of the contents that
+ *  the FPeer keeps. The store can be bounded: when a new key is added to a full store, a key is evicted according to the
+ *  replacement policy, LRU (least recently used key) or CLOCK (second-chance approximation of LRU). <br><br>
+ *
+ *  The store uses only primitive structures: the keys live in a slots array, indexed by an open-addressing hash table
+ *  (linear probing, with backward-shift deletion), while the policy state is kept in parallel arrays (doubly linked list
+ *  of slots for LRU, reference bits and hand for CLOCK). Optionally, the store keeps up to date a counting Bloom filter of 
+ *  its keys, that can be read by the neighbors of the FPeer. <br><br>
+ *
+ *  The arrays (and the filter) are allocated at the first insertion, and the slots grow by doubling up to the capacity, so
+ *  the FPeers that store few keys (or none) do not pay for the whole capacity. A bounded store can instead keep its slots
+ *  and its hash table in a row of the shared {@code StoreColumns} (with {@code columnarState}), allocated whole at the first
+ *  insertion: the arrays of the store are then the pages of the columns, accessed from the first slot and cell of the row.
+ **/
+
+public class ContentStore
+{
+	// enum for the replacement policies
+	public static enum Policy {LRU, CLOCK}
+
+	// marker of the empty cells of the hash table and of the ends of the LRU list
+	private static final int NONE = -1;
+
+	// number of slots allocated at the first insertion (at most the capacity of a bounded store)
+	private static final int INITIAL_CAPACITY = 16;
+
+	// shared arrays of the empty stores, never written (the first insertion allocates the arrays of the store)
+	private static final double[] EMPTY_KEYS = new double[0];
+	private static final int[] EMPTY_TABLE = {NONE};
+
+	// maximum number of keys stored (0 for an unbounded store)
+	private final int capacity;
+
+	// the replacement policy of the store
+	private final Policy policy;
+
+	// the stored keys, by slot (from the slot "base" of the array)
+	private double[] keys;
+
+	// index of the first slot of the store in the slots arrays, and number of slots of the store
+	private int base;
+	private int slots;
+
+	// number of used slots
+	private int size;
+
+	// hash table that maps the keys to their slots (NONE for empty cells), from the cell "tableBase" of the array; its length
+	// is a power of two
+	private int[] table;
+	private int tableBase;
+	private int tableLength;
+
+	// the shared columns that hold the slots and the hash table of the store ({@code null} if the store owns its arrays), and
+	// the row of the store (-1 if not yet allocated)
+	private final StoreColumns columns;
+	private long row;
+
+	// LRU list of the slots, from the least recently used ("head") to the most recently used ("tail")
+	private int[] prev;
+	private int[] next;
+	private int head;
+	private int tail;
+
+	// CLOCK reference bits, by slot, and position of the clock hand
+	private boolean[] referenced;
+	private int hand;
+
+	// number of keys evicted up to now
+	private long evictions;
+
+	// counting Bloom filter of the stored keys ({@code null} if not used, or not yet allocated)
+	private CountingBloomFilter filter;
+
+	// number of counters and of hash functions of the Bloom filter (0 counters if the filter is not used)
+	private final int filterCounters;
+	private final int filterHashes;
+
+
+	/**
+	 * Constructor method for a store without Bloom filter.
+	 * @param _capacity	the maximum number of keys stored ({@code 0} for an unbounded store)
+	 * @param _policy	the replacement policy of the store
+	 **/
+	public ContentStore(int _capacity, Policy _policy)
+	{
+		this(_capacity, _policy, 0, 0);
+	}
+
+
+	/**
+	 * Constructor method.
+	 * @param _capacity			the maximum number of keys stored ({@code 0} for an unbounded store)
+	 * @param _policy			the replacement policy of the store
+	 * @param filterCounters	the number of counters of the Bloom filter of the store ({@code 0} for no filter)
+	 * @param filterHashes		the number of hash functions of the Bloom filter of the store
+	 **/
+	public ContentStore(int _capacity, Policy _policy, int filterCounters, int filterHashes)
+	{
+		this(_capacity, _policy, filterCounters, filterHashes, false);
+	}
+
+
+	/**
+	 * Constructor method.
+	 * @param _capacity			the maximum number of keys stored ({@code 0} for an unbounded store)
+	 * @param _policy			the replacement policy of the store
+	 * @param filterCounters	the number of counters of the Bloom filter of the store ({@code 0} for no filter)
+	 * @param filterHashes		the number of hash functions of the Bloom filter of the store
+	 * @param columnar			flag that specifies if the slots of a bounded store are held by the shared {@code StoreColumns}
+	 * 							(an unbounded store always owns its arrays)
+	 **/
+	public ContentStore(int _capacity, Policy _policy, int filterCounters, int filterHashes, boolean columnar)
+	{
+		this.filter = null;
+		this.filterCounters = Math.max(0, filterCounters);
+		this.filterHashes = filterHashes;
+		this.capacity = Math.max(0, _capacity);
+		this.policy = _policy;
+		this.size = 0;
+		this.head = this.tail = NONE;
+		this.hand = 0;
+		this.evictions = 0;
+		this.keys = EMPTY_KEYS;
+		this.base = 0;
+		this.slots = 0;
+		this.table = EMPTY_TABLE;
+		this.tableBase = 0;
+		this.tableLength = EMPTY_TABLE.length;
+		this.columns = (columnar && this.capacity > 0) ? StoreColumns.forCapacity(this.capacity) : null;
+		this.row = -1;
+	}
+
+
+	/**
+	 * Computes the length of the hash table of a store having the passed number of slots {@code slots}.
+	 * @param slots the number of slots of the store
+	 * @return a power of two, at least twice {@code slots}.
+	 **/
+	static int tableLength(int slots)
+	{
+		return Integer.highestOneBit(Math.max(2, slots) - 1) << 2;
+	}
+
+
+	/**
+	 * Allocates (or enlarges, preserving the content) the slots arrays to the passed number of slots, and rebuilds the hash
+	 * table with a length of at least twice that number.
+	 * @param slots the new number of slots
+	 **/
+	private void allocateSlots(int slots)
+	{
+		// a store held by the columns takes, at the first insertion, a whole row (with an empty hash table)
+		if (this.columns != null)
+		{
+			this.row = this.columns.allocate();
+			this.keys = this.columns.getKeysPage(this.row);
+			this.prev = this.columns.getPrevPage(this.row);
+			this.next = this.columns.getNextPage(this.row);
+			this.referenced = this.columns.getReferencedPage(this.row);
+			this.table = this.columns.getTablePage(this.row);
+			this.base = this.columns.getSlotsBase(this.row);
+			this.slots = this.capacity;
+			this.tableBase = this.columns.getCellsBase(this.row);
+			this.tableLength = this.columns.getRowCells();
+			return;
+		}
+
+		double[] newKeys = new double[slots];
+		int[] newPrev = new int[slots];
+		int[] newNext = new int[slots];
+		boolean[] newReferenced = new boolean[slots];
+
+		if (this.size > 0)
+		{
+			System.arraycopy(this.keys, 0, newKeys, 0, this.size);
+			System.arraycopy(this.prev, 0, newPrev, 0, this.size);
+			System.arraycopy(this.next, 0, newNext, 0, this.size);
+			System.arraycopy(this.referenced, 0, newReferenced, 0, this.size);
+		}
+
+		this.keys = newKeys;
+		this.prev = newPrev;
+		this.next = newNext;
+		this.referenced = newReferenced;
+		this.slots = slots;
+		this.rebuildTable();
+	}
+
+
+	/**
+	 * Computes the number of slots to which enlarge the store when all its slots are used: twice the current number (at
+	 * least {@code INITIAL_CAPACITY}), but at most the capacity of a bounded store (the whole capacity, for a store held
+	 * by the columns).
+	 * @return the new number of slots.
+	 **/
+	private int grownSlots()
+	{
+		if (this.columns != null)
+			return this.capacity;
+
+		final int slots = Math.max(INITIAL_CAPACITY, this.slots * 2);
+		return (this.capacity > 0) ? Math.min(slots, this.capacity) : slots;
+	}
+
+
+	/**
+	 * Rebuilds the hash table of the used slots, with a length of at least twice the number of slots (a store held by the
+	 * columns re-uses the cells of its row).
+	 **/
+	private void rebuildTable()
+	{
+		if (this.columns == null)
+		{
+			this.table = new int[tableLength(this.slots)];
+			this.tableLength = this.table.length;
+		}
+		Arrays.fill(this.table, this.tableBase, this.tableBase + this.tableLength, NONE);
+		for (int slot = 0; slot < this.size; slot++)
+			this.table[this.tableBase + this.findCell(this.keys[this.base + slot])] = slot;
+	}
+
+
+	/**
+	 * Computes the home cell of the passed key {@code key} in the hash table.
+	 * @param key the key to hash
+	 * @return the home cell of the key.
+	 **/
+	private int homeCell(double key)
+	{
+		final long bits = Double.doubleToLongBits(key) * 0x9E3779B97F4A7C15L;
+		return (int) (bits >>> 33) & (this.tableLength - 1);
+	}
+
+
+	/**
+	 * Finds the cell of the hash table that contains the passed key {@code key} or, if the key is not stored, the empty
+	 * cell in which the key would be inserted.
+	 * @param key the key to search
+	 * @return the cell of the key.
+	 **/
+	private int findCell(double key)
+	{
+		final int mask = this.tableLength - 1;
+
+		int cell = this.homeCell(key);
+		int slot;
+		while ((slot = this.table[this.tableBase + cell]) != NONE && this.keys[this.base + slot] != key)
+			cell = (cell + 1) & mask;
+
+		return cell;
+	}
+
+
+	/**
+	 * Removes the key stored in the passed (not empty) cell {@code cell} of the hash table, shifting back the following
+	 * keys of the same cluster, so that no tombstone is needed.
+	 * @param cell the cell to empty
+	 **/
+	private void removeCell(int cell)
+	{
+		final int mask = this.tableLength - 1;
+
+		int hole = cell;
+		int j = cell;
+		while (true)
+		{
+			j = (j + 1) & mask;
+			if (this.table[this.tableBase + j] == NONE)
+				break;
+
+			// move back the key of cell j if its home cell is not in the (circular) interval (hole, j]
+			final int home = this.homeCell(this.keys[this.base + this.table[this.tableBase + j]]);
+			final boolean homeInInterval = (hole <= j) ? (hole < home && home <= j) : (hole < home || home <= j);
+			if (!homeInInterval)
+			{
+				this.table[this.tableBase + hole] = this.table[this.tableBase + j];
+				hole = j;
+			}
+		}
+
+		this.table[this.tableBase + hole] = NONE;
+	}
+
+
+	/**
+	 * Moves the passed slot {@code slot} at the end (most recently used) of the LRU list.
+	 * @param slot the slot to move
+	 **/
+	private void appendToLRU(int slot)
+	{
+		this.prev[this.base + slot] = this.tail;
+		this.next[this.base + slot] = NONE;
+
+		if (this.tail != NONE)
+			this.next[this.base + this.tail] = slot;
+		else
+			this.head = slot;
+
+		this.tail = slot;
+	}
+
+
+	/**
+	 * Removes the passed slot {@code slot} from the LRU list.
+	 * @param slot the slot to remove
+	 **/
+	private void unlinkFromLRU(int slot)
+	{
+		if (this.prev[this.base + slot] != NONE)
+			this.next[this.base + this.prev[this.base + slot]] = this.next[this.base + slot];
+		else
+			this.head = this.next[this.base + slot];
+
+		if (this.next[this.base + slot] != NONE)
+			this.prev[this.base + this.next[this.base + slot]] = this.prev[this.base + slot];
+		else
+			this.tail = this.prev[this.base + slot];
+	}
+
+
+	/**
+	 * Records an access to the key stored in the passed slot {@code slot}, according to the replacement policy.
+	 * @param slot the accessed slot
+	 **/
+	private void touch(int slot)
+	{
+		if (this.policy == Policy.LRU)
+		{
+			if (slot != this.tail)
+			{
+				this.unlinkFromLRU(slot);
+				this.appendToLRU(slot);
+			}
+		}
+		else
+			this.referenced[this.base + slot] = true;
+	}
+
+
+	/**
+	 * Selects the slot of the key to evict, according to the replacement policy.
+	 * @return the slot to evict.
+	 **/
+	private int selectVictim()
+	{
+		if (this.policy == Policy.LRU)
+			return this.head;
+
+		// CLOCK: the hand skips (clearing their reference bit) the slots referenced since its last visit
+		while (this.referenced[this.base + this.hand])
+		{
+			this.referenced[this.base + this.hand] = false;
+			this.hand = (this.hand + 1) % this.size;
+		}
+
+		final int victim = this.hand;
+		this.hand = (this.hand + 1) % this.size;
+		return victim;
+	}
+
+
+	/**
+	 * Checks if the passed key {@code key} is stored (the check counts as an access for the replacement policy). <br>
+	 * N.B. since it modifies the replacement state, it must be used only by the FPeer that owns the store (the others use
+	 * {@code peek}, at the barriers of the parallel engine).
+	 * @param key the key on which perform the check
+	 * @return {@code true} if the key is stored. {@code false} otherwise.
+	 **/
+	public boolean contains(double key)
+	{
+		final int slot = this.table[this.tableBase + this.findCell(key)];
+		if (slot == NONE)
+			return false;
+
+		this.touch(slot);
+		return true;
+	}
+
+
+	/**
+	 * Checks if the passed key {@code key} is stored, without counting the check as an access (e.g. for statistics).
+	 * @param key the key on which perform the check
+	 * @return {@code true} if the key is stored. {@code false} otherwise.
+	 **/
+	public boolean peek(double key)
+	{
+		return this.table[this.tableBase + this.findCell(key)] != NONE;
+	}
+
+
+	/**
+	 * Tries to add the passed key {@code key} to the store, evicting a key if the store is full.
+	 * @param key the key to add
+	 * @return {@code false} if the key is already stored (in this case, the store is unchanged apart from the access);
+	 * 		   {@code true} otherwise.
+	 **/
+	public boolean add(double key)
+	{
+		int cell = this.findCell(key);
+		if (this.table[this.tableBase + cell] != NONE)
+		{
+			this.touch(this.table[this.tableBase + cell]);
+			return false;
+		}
+
+		int slot;
+		if (this.capacity > 0 && this.size == this.capacity)
+		{
+			// the store is full: evict a key and re-use its slot
+			slot = this.selectVictim();
+			this.removeCell(this.findCell(this.keys[this.base + slot]));
+			if (this.policy == Policy.LRU)
+				this.unlinkFromLRU(slot);
+			if (this.filter != null)
+				this.filter.remove(this.keys[this.base + slot]);
+
+			this.evictions++;
+			cell = this.findCell(key);
+		}
+		else
+		{
+			// allocate (at the first insertion) or enlarge the store, if needed
+			if (this.size == this.slots)
+			{
+				this.allocateSlots(this.grownSlots());
+				cell = this.findCell(key);
+			}
+
+			if (this.filter == null && this.filterCounters > 0)
+				this.filter = new CountingBloomFilter(this.filterCounters, this.filterHashes);
+
+			slot = this.size++;
+		}
+
+		// store the key in the slot
+		this.keys[this.base + slot] = key;
+		this.table[this.tableBase + cell] = slot;
+		if (this.policy == Policy.LRU)
+			this.appendToLRU(slot);
+		else
+			this.referenced[this.base + slot] = true;
+		if (this.filter != null)
+			this.filter.add(key);
+
+		return true;
+	}
+
+
+	/**
+	 * Gets out the number of keys currently stored.
+	 * @return the number of stored keys.
+	 **/
+	public int size()
+	{
+		return this.size;
+	}
+
+
+	/**
+	 * Gets out the maximum number of keys stored.
+	 * @return the capacity of the store ({@code 0} for an unbounded store).
+	 **/
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+
+	/**
+	 * Releases the row of the store held by the shared {@code StoreColumns} (if any), when the store is no more used: the
+	 * store becomes empty.
+	 **/
+	public void release()
+	{
+		if (this.row != -1)
+			this.columns.release(this.row);
+
+		this.row = -1;
+		this.size = 0;
+		this.head = this.tail = NONE;
+		this.hand = 0;
+		this.keys = EMPTY_KEYS;
+		this.prev = this.next = null;
+		this.referenced = null;
+		this.base = 0;
+		this.slots = 0;
+		this.table = EMPTY_TABLE;
+		this.tableBase = 0;
+		this.tableLength = EMPTY_TABLE.length;
+		this.filter = null;
+	}
+
+
+	/**
+	 * Checks if the slots of the store are held by the shared {@code StoreColumns}.
+	 * @return {@code true} if the store is held by the columns. {@code false} if it owns its arrays.
+	 **/
+	public boolean isColumnar()
+	{
+		return this.columns != null;
+	}
+
+
+	/**
+	 * Gets out the number of keys evicted up to now.
+	 * @return the number of evicted keys.
+	 **/
+	public long getEvictions()
+	{
+		return this.evictions;
+	}
+
+
+	/**
+	 * Gets out the counting Bloom filter of the stored keys.
+	 * @return the Bloom filter of the store, or {@code null} if the store has no filter (or it has never stored a key).
+	 **/
+	public CountingBloomFilter getFilter()
+	{
+		return this.filter;
+	}
+
+
+	/**
+	 * Gets out the key stored in the passed slot {@code slot}, in [0, size()).
+	 * @param slot the slot to read
+	 * @return the key stored in the slot.
+	 **/
+	public double getKey(int slot)
+	{
+		return this.keys[this.base + slot];
+	}
+
+
+	/**
+	 * Writes the whole store (configuration, keys, replacement policy state and Bloom filter) on the passed {@code out} stream.
+	 * @param out the stream on which write the store
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(this.capacity);
+		out.writeByte(this.policy.ordinal());
+		out.writeInt(this.filterCounters);
+		out.writeInt(this.filterHashes);
+
+		out.writeInt(this.size);
+		for (int slot = 0; slot < this.size; slot++)
+		{
+			out.writeDouble(this.keys[this.base + slot]);
+			out.writeInt(this.prev[this.base + slot]);
+			out.writeInt(this.next[this.base + slot]);
+			out.writeBoolean(this.referenced[this.base + slot]);
+		}
+
+		out.writeInt(this.head);
+		out.writeInt(this.tail);
+		out.writeInt(this.hand);
+		out.writeLong(this.evictions);
+
+		out.writeBoolean(this.filter != null);
+		if (this.filter != null)
+			this.filter.writeTo(out);
+	}
+
+
+	/**
+	 * Creates a store with the content read from the passed {@code in} stream, as written by {@code writeTo}.
+	 * @param in the stream from which read the store
+	 * @return the read store.
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public static ContentStore readFrom(DataInput in) throws IOException
+	{
+		return readFrom(in, false);
+	}
+
+
+	/**
+	 * Creates a store with the content read from the passed {@code in} stream, as written by {@code writeTo}.
+	 * @param in		the stream from which read the store
+	 * @param columnar	flag that specifies if the slots of a bounded store are held by the shared {@code StoreColumns}
+	 * @return the read store.
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public static ContentStore readFrom(DataInput in, boolean columnar) throws IOException
+	{
+		final int capacity = in.readInt();
+		final Policy policy = Policy.values()[in.readByte()];
+		final int filterCounters = in.readInt();
+		final int filterHashes = in.readInt();
+		ContentStore store = new ContentStore(capacity, policy, filterCounters, filterHashes, columnar);
+
+		// allocate the slots of a not empty store
+		final int readSize = in.readInt();
+		if (readSize > 0)
+			store.allocateSlots(readSize);
+
+		for (int slot = 0; slot < readSize; slot++)
+		{
+			store.keys[store.base + slot] = in.readDouble();
+			store.prev[store.base + slot] = in.readInt();
+			store.next[store.base + slot] = in.readInt();
+			store.referenced[store.base + slot] = in.readBoolean();
+		}
+		store.size = readSize;
+		if (readSize > 0)
+			store.rebuildTable();
+
+		store.head = in.readInt();
+		store.tail = in.readInt();
+		store.hand = in.readInt();
+		store.evictions = in.readLong();
+
+		if (in.readBoolean())
+		{
+			store.filter = new CountingBloomFilter(filterCounters, filterHashes);
+			store.filter.readFrom(in);
+		}
+
+		return store;
+	}
+
+
+	/**
+	 * Serialize the stored keys in the string.
+	 * @return the serialized store as string.
+	 **/
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("[");
+		for (int slot = 0; slot < this.size; slot++)
+		{
+			if (slot > 0)
+				sb.append(", ");
+			sb.append(this.keys[this.base + slot]);
+		}
+
+		return sb.append("]").toString();
+	}
+}
@@ -0,0 +1,235 @@
+package structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  Class that implements a counting Bloom filter of content location keys, used by an FPeer to summarize its store to its
+ *  neighbors. Each position of the filter is a 4-bit counter (16 counters packed in a long), so that the keys can also be
+ *  removed (e.g. when evicted from the store). A saturated counter is never decremented, so the filter never produces
+ *  false negatives; false positives are possible, with a rate that depends on the number of counters and hash functions.
+ **/
+
+public class CountingBloomFilter
+{
+	// number of bits of each counter, and relative masks
+	private static final int COUNTER_BITS = 4;
+	private static final int COUNTERS_PER_WORD = 64 / COUNTER_BITS;
+	private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+	// the packed counters
+	private final long[] words;
+
+	// number of counters of the filter
+	private final int numCounters;
+
+	// number of hash functions
+	private final int numHashes;
+
+
+	/**
+	 * Constructor method.
+	 * @param _numCounters	the number of counters of the filter (rounded up to a multiple of 16)
+	 * @param _numHashes	the number of hash functions
+	 **/
+	public CountingBloomFilter(int _numCounters, int _numHashes)
+	{
+		this.words = new long[Math.max(1, (_numCounters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD)];
+		this.numCounters = this.words.length * COUNTERS_PER_WORD;
+		this.numHashes = Math.max(1, _numHashes);
+	}
+
+
+	/**
+	 * Mixes the bits of the passed value (SplitMix64 finalizer).
+	 * @param z the value to mix
+	 * @return the mixed value.
+	 **/
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * Computes the first hash of the passed key {@code key}, packed with the second one (double hashing: the i-th position
+	 * of the key is {@code (h1 + i * h2) mod numCounters}).
+	 * @param key the key to hash
+	 * @return the packed hashes ({@code h1} in the high 32 bits, {@code h2} in the low 32 bits).
+	 **/
+	private static long hashOf(double key)
+	{
+		return mix(Double.doubleToLongBits(key)) | 1L;
+	}
+
+
+	/**
+	 * Computes the {@code i}-th position of the key having the passed packed hashes {@code h}.
+	 * @param h	the packed hashes of the key
+	 * @param i	the index of the hash function
+	 * @return the position of the counter.
+	 **/
+	private int positionOf(long h, int i)
+	{
+		return (int) Long.remainderUnsigned((h >>> 32) + i * (h & 0xFFFFFFFFL), this.numCounters);
+	}
+
+
+	/**
+	 * Gets out the value of the counter at the passed position.
+	 * @param pos the position of the counter
+	 * @return the value of the counter.
+	 **/
+	private long counterAt(int pos)
+	{
+		return (this.words[pos / COUNTERS_PER_WORD] >>> ((pos % COUNTERS_PER_WORD) * COUNTER_BITS)) & COUNTER_MAX;
+	}
+
+
+	/**
+	 * Adds the passed {@code delta} (+1 or -1) to the counter at the passed position.
+	 * @param pos	the position of the counter
+	 * @param delta	the value to add
+	 **/
+	private void addToCounter(int pos, long delta)
+	{
+		final int shift = (pos % COUNTERS_PER_WORD) * COUNTER_BITS;
+		this.words[pos / COUNTERS_PER_WORD] += (delta << shift);
+	}
+
+
+	/**
+	 * Adds the passed key {@code key} to the filter.
+	 * @param key the key to add
+	 **/
+	public void add(double key)
+	{
+		final long h = hashOf(key);
+
+		for (int i = 0; i < this.numHashes; i++)
+		{
+			final int pos = this.positionOf(h, i);
+			if (this.counterAt(pos) < COUNTER_MAX)
+				this.addToCounter(pos, 1);
+		}
+	}
+
+
+	/**
+	 * Removes the passed key {@code key}, that must have been added before, from the filter.
+	 * @param key the key to remove
+	 **/
+	public void remove(double key)
+	{
+		// a key never added is removed only if it is claimed by the filter (i.e. all its counters are positive)
+		if (!this.mightContain(key))
+			return;
+
+		final long h = hashOf(key);
+		for (int i = 0; i < this.numHashes; i++)
+		{
+			final int pos = this.positionOf(h, i);
+			final long count = this.counterAt(pos);
+			if (count > 0 && count < COUNTER_MAX)
+				this.addToCounter(pos, -1);
+		}
+	}
+
+
+	/**
+	 * Checks if the passed key {@code key} could be in the filter.
+	 * @param key the key on which perform the check
+	 * @return {@code false} if the key is surely not in the filter. {@code true} if it could be (false positives are possible).
+	 **/
+	public boolean mightContain(double key)
+	{
+		final long h = hashOf(key);
+
+		for (int i = 0; i < this.numHashes; i++)
+			if (this.counterAt(this.positionOf(h, i)) == 0)
+				return false;
+
+		return true;
+	}
+
+
+	/**
+	 * Creates a copy (snapshot) of the filter, e.g. to send it to a neighbor.
+	 * @return a new filter, having the same counters of the filter.
+	 **/
+	public CountingBloomFilter copy()
+	{
+		CountingBloomFilter f = new CountingBloomFilter(this.numCounters, this.numHashes);
+		f.copyFrom(this);
+		return f;
+	}
+
+
+	/**
+	 * Replaces the counters of the filter with the ones of the passed filter {@code other}, that must have the same number
+	 * of counters (e.g. to refresh a snapshot without allocations).
+	 * @param other the filter to copy
+	 **/
+	public void copyFrom(CountingBloomFilter other)
+	{
+		System.arraycopy(other.words, 0, this.words, 0, this.words.length);
+	}
+
+
+	/**
+	 * Gets out the memory, in bytes, occupied by the counters of the filter.
+	 * @return the memory occupied by the filter.
+	 **/
+	public long memoryBytes()
+	{
+		return (long) this.words.length * Long.BYTES;
+	}
+
+
+	/**
+	 * Gets out the number of counters of the filter.
+	 * @return the number of counters of the filter.
+	 **/
+	public int getNumCounters()
+	{
+		return this.numCounters;
+	}
+
+
+	/**
+	 * Gets out the number of hash functions of the filter.
+	 * @return the number of hash functions of the filter.
+	 **/
+	public int getNumHashes()
+	{
+		return this.numHashes;
+	}
+
+
+	/**
+	 * Writes the counters of the filter on the passed {@code out} stream.
+	 * @param out the stream on which write the counters
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeTo(DataOutput out) throws IOException
+	{
+		for (long w : this.words)
+			out.writeLong(w);
+	}
+
+
+	/**
+	 * Replaces the counters of the filter with the ones read from the passed {@code in} stream, as written by {@code writeTo}
+	 * by a filter having the same number of counters.
+	 * @param in the stream from which read the counters
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public void readFrom(DataInput in) throws IOException
+	{
+		for (int i = 0; i < this.words.length; i++)
+			this.words[i] = in.readLong();
+	}
+}
@@ -0,0 +1,266 @@
+package structure;
+
+/**
+ *  Class that implements the batch kernels of the circular distances between a location key and an array of location keys
+ *  (e.g. the location keys of a neighborhood, see {@code LinkableProtocol}): distances, index of the minimum distance and
+ *  sum of the logarithms of the distances, each one computed in a single pass over a contiguous range of the array. <br><br>
+ *
+ *  The distances and the minimum are computed by the {@code VectorDistanceKernels} class with the Vector API, if it is
+ *  available at runtime: it is in the separate source folder {@code vector}, compiled with {@code --add-modules
+ *  jdk.incubator.vector} on top of the other classes, and it is loaded by reflection only if the JVM is started with the
+ *  same option (see {@code isVectorized}). Otherwise the kernels are the plain loops of this class: the two versions compute
+ *  the same distances, so the results of the simulation do not depend on the one used. <br><br>
+ *
+ *  The sum of the logarithms multiplies the distances in blocks of {@code BLOCK} and the blocks in a running product, taking
+ *  the logarithm only when the running product becomes too small: so a neighborhood needs very few logarithms, and the
+ *  products never underflow (the distances are at most 0.5, so the products only decrease). The {@code scalar*} method is
+ *  its reference version, one logarithm for each distance, used when the blocked computation would lose precision.
+ **/
+
+public class DistanceKernels
+{
+	// number of distances multiplied in a block (four independent partial products of two distances each)
+	private static final int BLOCK = 8;
+
+	// the product of a block not lower than BLOCK_MIN is accumulated in the running product, that is flushed (i.e. its
+	// logarithm is taken) when it is lower than FLUSH_MIN: so the running product is never lower than FLUSH_MIN * BLOCK_MIN
+	private static final double BLOCK_MIN = 1e-100;
+	private static final double FLUSH_MIN = 1e-200;
+
+	// the kernels implemented with the Vector API, or null if they are not available at runtime
+	private static final Kernels vector = loadVectorKernels();
+
+
+	/**
+	 *  Interface of the batch kernels that have an implementation with the Vector API (see {@code VectorDistanceKernels}).
+	 **/
+	interface Kernels
+	{
+		/**
+		 * See {@code DistanceKernels.circularDistances}.
+		 **/
+		void circularDistances(double[] locKeys, int from, int to, double locKey, double[] dists);
+
+		/**
+		 * See {@code DistanceKernels.argminDistance}.
+		 **/
+		int argminDistance(double[] locKeys, int from, int to, double locKey);
+
+		/**
+		 * See {@code DistanceKernels.argmin}.
+		 **/
+		int argmin(double[] values, int from, int to);
+
+		/**
+		 * Gets out the description of the implementation (e.g. the number of lanes of the vectors).
+		 * @return the description of the implementation.
+		 **/
+		String describe();
+	}
+
+
+	/**
+	 * Loads, by reflection, the kernels implemented with the Vector API.
+	 * @return the kernels, or {@code null} if the class is not compiled or the {@code jdk.incubator.vector} module is not
+	 * 		   available at runtime.
+	 **/
+	private static Kernels loadVectorKernels()
+	{
+		try
+		{
+			return (Kernels) Class.forName("structure.VectorDistanceKernels").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError exc)
+		{
+			return null;
+		}
+	}
+
+
+	/**
+	 * Checks if the kernels are implemented with the Vector API.
+	 * @return {@code true} if the Vector API kernels are loaded. {@code false} if the plain loops are used.
+	 **/
+	public static boolean isVectorized()
+	{
+		return vector != null;
+	}
+
+
+	/**
+	 * Gets out the description of the implementation of the kernels.
+	 * @return the description of the kernels (e.g. for the report of the simulation).
+	 **/
+	public static String describe()
+	{
+		return (vector != null) ? vector.describe() : "scalar loops";
+	}
+
+
+	/**
+	 * Computes the circular distance between the two passed location keys.
+	 * @param locKey1 the first location key
+	 * @param locKey2 the second location key
+	 * @return {@code min (abs(locKey1 - locKey2), 1 - abs(locKey1 - locKey2))}.
+	 **/
+	public static double circularDistance(double locKey1, double locKey2)
+	{
+		final double dist = Math.abs(locKey1 - locKey2);
+		return Math.min(dist, 1 - dist);
+	}
+
+
+	/**
+	 * Computes the circular distances between the passed location key {@code locKey} and the location keys in the range
+	 * [{@code from}, {@code to}) of {@code locKeys}.
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @param dists		the array in which store the distances, from index 0 (at least {@code to - from} long)
+	 **/
+	public static void circularDistances(double[] locKeys, int from, int to, double locKey, double[] dists)
+	{
+		if (vector != null)
+		{
+			vector.circularDistances(locKeys, from, to, locKey, dists);
+			return;
+		}
+
+		for (int i = from; i < to; i++)
+			dists[i - from] = circularDistance(locKeys[i], locKey);
+	}
+
+
+	/**
+	 * Finds the location key, in the range [{@code from}, {@code to}) of {@code locKeys}, having the minimum circular distance
+	 * from the passed location key {@code locKey}.
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @return the index, in {@code locKeys}, of the closest location key (the first one, if more than one), or {@code -1}
+	 * 		   if the range is empty.
+	 **/
+	public static int argminDistance(double[] locKeys, int from, int to, double locKey)
+	{
+		if (vector != null)
+			return vector.argminDistance(locKeys, from, to, locKey);
+
+		int index = -1;
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++)
+		{
+			final double dist = circularDistance(locKeys[i], locKey);
+			if (dist < min)
+			{
+				min = dist;
+				index = i;
+			}
+		}
+
+		return index;
+	}
+
+
+	/**
+	 * Finds the minimum value in the range [{@code from}, {@code to}) of {@code values} (e.g. distances computed by
+	 * {@code circularDistances}, where the excluded ones are set to {@code POSITIVE_INFINITY}).
+	 * @param values	the array of values
+	 * @param from		the first value of the range (included)
+	 * @param to		the last value of the range (excluded)
+	 * @return the index, in {@code values}, of the minimum value (the first one, if more than one), or {@code -1} if the
+	 * 		   range is empty or all its values are {@code POSITIVE_INFINITY}.
+	 **/
+	public static int argmin(double[] values, int from, int to)
+	{
+		if (vector != null)
+			return vector.argmin(values, from, to);
+
+		int index = -1;
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++)
+		{
+			if (values[i] < min)
+			{
+				min = values[i];
+				index = i;
+			}
+		}
+
+		return index;
+	}
+
+
+	/**
+	 * Computes the sum of the logarithms of the circular distances between the passed location key {@code locKey} and the
+	 * location keys in the range [{@code from}, {@code to}) of {@code locKeys}, with the blocked products.
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @return the sum of the logarithms of the distances (0 if the range is empty).
+	 **/
+	public static double logDistanceSum(double[] locKeys, int from, int to, double locKey)
+	{
+		double logSum = 0.0;
+		double partialProd = 1.0;
+
+		int i = from;
+		for (; i <= to - BLOCK; i += BLOCK)
+		{
+			// four independent partial products, so the multiplications of the block do not wait for each other
+			final double p0 = circularDistance(locKeys[i], locKey) * circularDistance(locKeys[i + 4], locKey);
+			final double p1 = circularDistance(locKeys[i + 1], locKey) * circularDistance(locKeys[i + 5], locKey);
+			final double p2 = circularDistance(locKeys[i + 2], locKey) * circularDistance(locKeys[i + 6], locKey);
+			final double p3 = circularDistance(locKeys[i + 3], locKey) * circularDistance(locKeys[i + 7], locKey);
+			final double blockProd = (p0 * p1) * (p2 * p3);
+
+			// a block with very small distances is summed apart (one distance at a time, if its product is not a normal value)
+			if (blockProd < BLOCK_MIN)
+			{
+				logSum += (blockProd >= Double.MIN_NORMAL) ? Math.log(blockProd) : scalarLogDistanceSum(locKeys, i, i + BLOCK, locKey);
+				continue;
+			}
+
+			partialProd *= blockProd;
+			if (partialProd < FLUSH_MIN)
+			{
+				logSum += Math.log(partialProd);
+				partialProd = 1.0;
+			}
+		}
+
+		// the last (incomplete) block
+		double tailProd = 1.0;
+		for (int j = i; j < to; j++)
+			tailProd *= circularDistance(locKeys[j], locKey);
+
+		if (tailProd < BLOCK_MIN)
+			logSum += (tailProd >= Double.MIN_NORMAL) ? Math.log(tailProd) : scalarLogDistanceSum(locKeys, i, to, locKey);
+		else
+			partialProd *= tailProd;
+
+		return logSum + Math.log(partialProd);
+	}
+
+
+	/**
+	 * Computes the sum of the logarithms of the circular distances between the passed location key {@code locKey} and the
+	 * location keys in the range [{@code from}, {@code to}) of {@code locKeys}, one logarithm for each distance (reference
+	 * version of {@code logDistanceSum}).
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @return the sum of the logarithms of the distances (0 if the range is empty).
+	 **/
+	public static double scalarLogDistanceSum(double[] locKeys, int from, int to, double locKey)
+	{
+		double logSum = 0.0;
+		for (int i = from; i < to; i++)
+			logSum += Math.log(circularDistance(locKeys[i], locKey));
+
+		return logSum;
+	}
+}
@@ -1,8 +1,14 @@
 package structure;
 
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
 
+import peersim.config.Configuration;
 import protocol.LinkableProtocol;
+import protocol.ProtocolEvents;
 
 /**
  *  Class that implements the prototype of Freenet 0.7 (and PeerSim node) used during the simulation.
@@ -13,17 +19,32 @@ import protocol.LinkableProtocol;
 
 public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 {
-	// unique and immutable string, assigned to the FPeer when retrieved from the given DataSet
-	private String identifier;	 			
+	// datastore (possibly bounded, with eviction) of all contents locations keys paired with the contents that the FPeer stores
+	private ContentStore storedContentLocationKeys;	
 	
-	// unique, pseudo-random assigned, double-precision number in [0.0, 1.0)
-	private double locationKey;  
+	// stable serial number of the FPeer in the FPeers directory (-1 for the prototype FPeer and for the detached ones, see
+	// "detach"). The identifier, the location key and the swap lease of the FPeer are held by the directory, in the columns
+	// indexed by this serial: the swap lease is accessed only via synchronized methods, since it is read and written also
+	// by the FPeers owned by other shards
+	private int serial;
 	
-	// HashSet for the storing of all contents locations keys paired with the contents that the FPeer stores
-	private HashSet<Double> storedContentLocationKeys;	
+	// the FPeers directory in which the FPeer is registered (the one of the simulation context that allocated it)
+	final FPeerDirectory directory;
 	
-	// indicates if FPeer is involved in a swapping process with the another FPeer
-	private boolean isInvolvedInSwap;
+	// sum of the logarithms of the distances between the FPeer's location key and the location keys of its neighbors,
+	// maintained incrementally by the swaps once computed (see "neighborsLogDistanceSumValid")
+	private double neighborsLogDistanceSum;
+	
+	// cache area of the FPeer, for the content location keys found by the relayed GET requests ({@code null} if not used)
+	private ContentCache contentCache;
+	
+	// copies of the store Bloom filters of the neighbors, refreshed periodically (see the "FilterExchange" control) and read
+	// by the GET routing in place of the live filters of the neighbors ({@code null} if never refreshed)
+	private HashMap<FPeer, CountingBloomFilter> neighborFilters;
+	
+	// indicates if the "neighborsLogDistanceSum" field is valid, or must be computed from scratch at the next request (volatile,
+	// since the sum can be read by the FPeers owned by other shards of the parallel engine: it is written after the sum)
+	private volatile boolean neighborsLogDistanceSumValid;
 	
 	/**
 	 * Basic constructor method. It is only checked by the simulator, but is unused in the rest of
@@ -33,6 +54,8 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	public FPeer(String prefix)
 	{
 		super(prefix);
+		this.serial = -1;
+		this.directory = null;
 	}
 
 
@@ -46,10 +69,25 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	public FPeer(String prefix, String _ID, double _locKey) 
 	{
 		super(prefix);
-		this.identifier = _ID;
-		this.locationKey = _locKey;
-		this.storedContentLocationKeys = new HashSet<Double>();
-		this.isInvolvedInSwap = false;
+
+		// with the columnar layout, the slots of the (bounded) store and the neighborhood are held by the shared columns
+		final boolean columnar = Configuration.getBoolean(prefix + ".columnarState", false);
+		this.storedContentLocationKeys = new ContentStore(Configuration.getInt(prefix + ".storeCapacity", 0), 
+										ContentStore.Policy.valueOf(Configuration.getString(prefix + ".storePolicy", "LRU").toUpperCase()),
+										Configuration.getInt(prefix + ".storeFilterCounters", 0), Configuration.getInt(prefix + ".storeFilterHashes", 4), columnar);
+		if (columnar)
+			for (int i = 0; i < this.protocolSize(); i++)
+				if (this.getProtocol(i) instanceof LinkableProtocol)
+					((LinkableProtocol) this.getProtocol(i)).useColumns();
+
+		this.contentCache = null;
+		this.neighborFilters = null;
+		this.neighborsLogDistanceSum = 0.0;
+		this.neighborsLogDistanceSumValid = false;
+		
+		// register the FPeer, and its initial state (free swap lease), into the FPeers directory
+		this.directory = FPeerDirectory.current();
+		this.serial = this.directory.register(this, _ID, _locKey);
 	}
 
 	
@@ -61,11 +99,82 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	 **/
 	public double getDistanceFromLocationKey(double locKey)
 	{
-		final double dist = Math.abs(this.locationKey - locKey);
-		return Math.min(dist, 1 - dist);
+		return DistanceKernels.circularDistance(this.directory.locationKeys[this.serial], locKey);
 	}
 	
 	
+	/**
+	 * Gets out the sum of the logarithms of the distances between the FPeer's location key and the location keys of its neighbors,
+	 * computing it from scratch (see {@code LinkableProtocol.logDistanceSum}) only if it is not valid.
+	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
+	 * @return the sum of the logarithms of the distances from the neighbors.
+	 **/
+	public double getNeighborsLogDistanceSum(int linkablePID)
+	{
+		if (!this.neighborsLogDistanceSumValid)
+		{
+			LinkableProtocol lp = (LinkableProtocol) this.getProtocol(linkablePID);
+			this.neighborsLogDistanceSum = lp.logDistanceSum(this.getLocationKey(), null);
+			this.neighborsLogDistanceSumValid = true;
+		}
+
+		return this.neighborsLogDistanceSum;
+	}
+
+
+	/**
+	 * Gets out the sum of the logarithms of the distances between the FPeer's location key and the location keys of its neighbors,
+	 * as {@code getNeighborsLogDistanceSum} does, but without caching it if it is computed from scratch: so it does not modify
+	 * the FPeer, and it can be used by the FPeers owned by other shards of the parallel engine.
+	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
+	 * @return the sum of the logarithms of the distances from the neighbors.
+	 **/
+	public double peekNeighborsLogDistanceSum(int linkablePID)
+	{
+		if (this.neighborsLogDistanceSumValid)
+			return this.neighborsLogDistanceSum;
+
+		LinkableProtocol lp = (LinkableProtocol) this.getProtocol(linkablePID);
+		return lp.logDistanceSum(this.getLocationKey(), null);
+	}
+
+
+	/**
+	 * Invalidates the sum of the logarithms of the distances from the neighbors (e.g. when the neighborhood changes), so that
+	 * it is computed from scratch at the next request.
+	 **/
+	public void invalidateNeighborsLogDistanceSum()
+	{
+		this.neighborsLogDistanceSumValid = false;
+	}
+
+
+	/**
+	 * Updates the sum of the logarithms of the distances from the neighbors, after that a neighbor has moved from the passed 
+	 * location key {@code oldLocKey} to the passed location key {@code newLocKey}.
+	 * @param oldLocKey the old location key of the neighbor
+	 * @param newLocKey the new location key of the neighbor
+	 **/
+	private void neighborMoved(double oldLocKey, double newLocKey)
+	{
+		if (this.neighborsLogDistanceSumValid)
+			this.neighborsLogDistanceSum += Math.log(this.getDistanceFromLocationKey(newLocKey)) - Math.log(this.getDistanceFromLocationKey(oldLocKey));
+	}
+
+
+	/**
+	 * Updates the sum of the logarithms of the distances from the neighbors, after that a neighbor having the passed location
+	 * key {@code locKey} has been added to (if {@code sign} is 1) or removed from (if {@code sign} is -1) the neighborhood.
+	 * @param locKey the location key of the added/removed neighbor
+	 * @param sign	 1 for an added neighbor, -1 for a removed one
+	 **/
+	private void neighborChanged(double locKey, int sign)
+	{
+		if (this.neighborsLogDistanceSumValid)
+			this.neighborsLogDistanceSum += sign * Math.log(this.getDistanceFromLocationKey(locKey));
+	}
+
+
 	/**
 	 * Compares the passed FPeer {@code p} with the FPeer {@code this}, via address-comparison.
 	 * In other words, two FPeers are equals if they are the same object.
@@ -109,7 +218,17 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	 **/
 	public String getIdentifier()
 	{
-		return this.identifier;
+		return (this.serial < 0) ? null : this.directory.identifiers.get(this.serial);
+	}
+
+
+	/**
+	 * Gets out the stable serial number of the FPeer in the FPeers directory.
+	 * @return the serial number of the FPeer, or {@code -1} if the FPeer is not registered.
+	 **/
+	public int getSerial()
+	{
+		return this.serial;
 	}
 
 
@@ -119,7 +238,27 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	 **/
 	public double getLocationKey()
 	{
-		return this.locationKey;
+		return this.directory.locationKeys[this.serial];
+	}
+
+
+	/**
+	 * Checks if the FPeer has left the overlay network.
+	 * @return {@code true} if the FPeer has left the overlay network. {@code false} otherwise.
+	 **/
+	public boolean isDeparted()
+	{
+		return this.serial < 0 || this.directory.departureTimes[this.serial] >= 0;
+	}
+
+
+	/**
+	 * Gets out the time in which the FPeer has left the overlay network.
+	 * @return the departure time of the FPeer, or {@code -1} if it is still in the overlay network.
+	 **/
+	public long getDepartureTime()
+	{
+		return this.directory.departureTimes[this.serial];
 	}
 
 
@@ -137,6 +276,7 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 
 	/**
 	 * Tries to add the passed location key {@code locKey} to the local storage of contents location keys of the FPeer {@code this}.
+	 * If the storage is bounded and full, a content location key is evicted according to the storage replacement policy.
 	 * @param locKey the key to add to the set of contents locations keys
 	 * @return {@code false} if the local set already contains the passed location key (in this case, the set leave unchanged);
 	 * 		   {@code true} otherwise.
@@ -147,76 +287,450 @@ public class FPeer extends peersim.core.GeneralNode implements Comparable<FPeer>
 	}
 
 	/**
-	 * Gets out the swapping status of the FPeer {@code this}.
-	 * @return {@code true} if it is currently involved in a SWAP process with another FPeer. {@code false} otherwise.
+	 * Gets out the local storage of contents location keys of the FPeer {@code this}.
+	 * @return the datastore of the FPeer.
 	 **/
-	public boolean isInvolvedInSwap()
+	public ContentStore getContentStore()
 	{
-		return this.isInvolvedInSwap;
+		return this.storedContentLocationKeys;
 	}
-	
-	
+
+
+	/**
+	 * Gets out the cache area of the FPeer {@code this}.
+	 * @return the cache of the FPeer, or {@code null} if the FPeer has no cache.
+	 **/
+	public ContentCache getContentCache()
+	{
+		return this.contentCache;
+	}
+
+
+	/**
+	 * Sets the cache area of the FPeer {@code this}.
+	 * @param cache the cache to assign to the FPeer
+	 **/
+	public void setContentCache(ContentCache cache)
+	{
+		this.contentCache = cache;
+	}
+
+
+	/**
+	 * Refreshes the copies of the store Bloom filters of the neighbors of the FPeer {@code this}: each neighbor having a
+	 * filter sends its current snapshot, copied into the previous copy (if any); the copies of the FPeers that are no more
+	 * neighbors are dropped. <br>
+	 * N.B. it reads the stores of the neighbors, so it must be invoked serially (e.g. by a control).
+	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
+	 * @return the number of bytes of the copied filters (i.e. sent by the neighbors).
+	 **/
+	public long refreshNeighborFilters(int linkablePID)
+	{
+		LinkableProtocol lp = (LinkableProtocol) this.getProtocol(linkablePID);
+		HashMap<FPeer, CountingBloomFilter> refreshed = new HashMap<FPeer, CountingBloomFilter>(2 * lp.degree());
+		long copiedBytes = 0;
+
+		Iterator<FPeer> it = lp.getNeighborsIterator();
+		while (it.hasNext())
+		{
+			final FPeer neighbor = it.next();
+			final CountingBloomFilter live = neighbor.getContentStore().getFilter();
+			if (live == null)
+				continue;
+
+			// re-use the previous copy of the neighbor's filter, if any
+			CountingBloomFilter snapshot = (this.neighborFilters == null) ? null : this.neighborFilters.get(neighbor);
+			if (snapshot == null)
+				snapshot = live.copy();
+			else
+				snapshot.copyFrom(live);
+
+			refreshed.put(neighbor, snapshot);
+			copiedBytes += live.memoryBytes();
+		}
+
+		this.neighborFilters = refreshed;
+		return copiedBytes;
+	}
+
+
+	/**
+	 * Gets out the last copy, received by the FPeer {@code this}, of the store Bloom filter of the passed neighbor.
+	 * @param neighbor the neighbor of the FPeer
+	 * @return the copy of the neighbor's filter, or {@code null} if the FPeer has not received it.
+	 **/
+	public CountingBloomFilter getNeighborFilter(FPeer neighbor)
+	{
+		return (this.neighborFilters == null) ? null : this.neighborFilters.get(neighbor);
+	}
+
+
+	/**
+	 * Gets out the memory, in bytes, occupied by the counters of the copies of the neighbors' filters held by the FPeer {@code this}.
+	 * @return the memory occupied by the copies of the neighbors' filters.
+	 **/
+	public long getNeighborFiltersMemory()
+	{
+		long bytes = 0;
+		if (this.neighborFilters != null)
+			for (CountingBloomFilter snapshot : this.neighborFilters.values())
+				bytes += snapshot.memoryBytes();
+
+		return bytes;
+	}
+
+
+	/**
+	 * Gets out the swapping status of the FPeer {@code this} at the passed simulated time {@code now}.
+	 * @param now the current simulated time
+	 * @return {@code true} if it is currently involved in a SWAP process (its swap lease is held and not expired). 
+	 * 		   {@code false} otherwise.
+	 **/
+	public synchronized boolean isInvolvedInSwap(long now)
+	{
+		return this.directory.swapSessionIDs[this.serial] != -1 && now < this.directory.swapLeaseExpiries[this.serial];
+	}
+
+
+	/**
+	 * Tries to acquire (or to renew, if already held by the same session) the swap lease of the FPeer {@code this} for the 
+	 * SWAP session {@code sessionID}, until the time {@code now + duration}.
+	 * @param sessionID	the identifier of the SWAP session that acquires the lease
+	 * @param now		the current simulated time
+	 * @param duration	the duration of the lease
+	 * @return {@code true} if the lease is acquired. {@code false} if it is held by another (not expired) session.
+	 **/
+	public synchronized boolean acquireSwapLease(long sessionID, long now, long duration)
+	{
+		if (this.isInvolvedInSwap(now) && this.directory.swapSessionIDs[this.serial] != sessionID)
+			return false;
+
+		this.directory.swapSessionIDs[this.serial] = sessionID;
+		this.directory.swapLeaseExpiries[this.serial] = (duration > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + duration;
+		return true;
+	}
+
+
+	/**
+	 * Tries to acquire, atomically, the swap leases of the FPeer {@code this} and of the passed FPeer {@code other} for the SWAP
+	 * session {@code sessionID} (see {@code acquireSwapLease}): either both the leases are acquired, or none of them is modified.
+	 * The two FPeers are locked in increasing serial order, so concurrent acquisitions can not deadlock.
+	 * @param other		the other FPeer involved in the SWAP session
+	 * @param sessionID	the identifier of the SWAP session that acquires the leases
+	 * @param now		the current simulated time
+	 * @param duration	the duration of the leases
+	 * @return {@code true} if both the leases are acquired. {@code false} if one of them is held by another (not expired) session.
+	 **/
+	public boolean acquireSwapLeases(FPeer other, long sessionID, long now, long duration)
+	{
+		final FPeer first = (this.serial < other.serial) ? this : other;
+		final FPeer second = (first == this) ? other : this;
+
+		synchronized (first)
+		{
+			synchronized (second)
+			{
+				if (!first.isFreeForSession(sessionID, now) || !second.isFreeForSession(sessionID, now))
+					return false;
+
+				first.acquireSwapLease(sessionID, now, duration);
+				second.acquireSwapLease(sessionID, now, duration);
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Checks if the swap lease of the FPeer {@code this} can be acquired by the SWAP session {@code sessionID} (to invoke
+	 * while holding the lock of the FPeer).
+	 * @param sessionID	the identifier of the SWAP session
+	 * @param now		the current simulated time
+	 * @return {@code true} if the lease is free, expired or already held by the session. {@code false} otherwise.
+	 **/
+	private boolean isFreeForSession(long sessionID, long now)
+	{
+		return !this.isInvolvedInSwap(now) || this.directory.swapSessionIDs[this.serial] == sessionID;
+	}
+
+
+	/**
+	 * Checks if the swap lease of the FPeer {@code this} is still held by the SWAP session {@code sessionID}.
+	 * @param sessionID	the identifier of the SWAP session
+	 * @param now		the current simulated time
+	 * @return {@code true} if the lease is held by the session and not expired. {@code false} otherwise.
+	 **/
+	public synchronized boolean holdsSwapLease(long sessionID, long now)
+	{
+		return this.directory.swapSessionIDs[this.serial] == sessionID && now < this.directory.swapLeaseExpiries[this.serial];
+	}
+
+
 	/**
-	 * Sets the swapping status of the FPeer {@code this}.
-	 * @param involved	the new swapping status of {@code this}
-	 */
-	public void setSwapStatus(boolean involved)
+	 * Releases the swap lease of the FPeer {@code this}, if it is held by the SWAP session {@code sessionID}.
+	 * @param sessionID the identifier of the SWAP session that releases the lease
+	 **/
+	public synchronized void releaseSwapLease(long sessionID)
 	{
-		this.isInvolvedInSwap = involved;
+		// a detached FPeer holds no lease
+		if (this.serial >= 0 && this.directory.swapSessionIDs[this.serial] == sessionID)
+			this.directory.swapSessionIDs[this.serial] = -1;
 	}
 	
 	
 	/**
-	 * Performs the swap of the location key and of the stored content location keys of the running FPeer with the relative fields
+	 * Writes the state of the FPeer (location key, store, cache, swap lease and departure flag) on the passed {@code out} stream. The expiry
+	 * of the swap lease is written relative to the passed current time {@code now}.
+	 * @param out the stream on which write the state
+	 * @param now the current simulation time
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public synchronized void writeStateTo(DataOutput out, long now) throws IOException
+	{
+		final long sessionID = this.directory.swapSessionIDs[this.serial];
+
+		out.writeDouble(this.getLocationKey());
+		this.storedContentLocationKeys.writeTo(out);
+
+		out.writeBoolean(this.contentCache != null);
+		if (this.contentCache != null)
+			this.contentCache.writeTo(out);
+
+		out.writeLong(sessionID);
+		out.writeLong((sessionID == -1) ? 0 : Math.max(0, this.directory.swapLeaseExpiries[this.serial] - now));
+
+		out.writeBoolean(this.isDeparted());
+	}
+
+
+	/**
+	 * Replaces the state of the FPeer with the one read from the passed {@code in} stream, as written by {@code writeStateTo}.
+	 * @param in  the stream from which read the state
+	 * @param now the current simulation time, to which the remaining duration of the swap lease is added
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public synchronized void readStateFrom(DataInput in, long now) throws IOException
+	{
+		this.directory.locationKeys[this.serial] = in.readDouble();
+		final ContentStore oldStore = this.storedContentLocationKeys;
+		this.storedContentLocationKeys = ContentStore.readFrom(in, oldStore.isColumnar());
+		oldStore.release();
+		this.contentCache = in.readBoolean() ? ContentCache.readFrom(in) : null;
+
+		this.directory.swapSessionIDs[this.serial] = in.readLong();
+		this.directory.swapLeaseExpiries[this.serial] = now + in.readLong();
+
+		// a departed FPeer is resumed as departed at the current time
+		this.directory.departureTimes[this.serial] = in.readBoolean() ? now : -1;
+
+		// the log-distance sum is computed from scratch at the next request
+		this.neighborsLogDistanceSumValid = false;
+	}
+
+
+	/**
+	 * Performs the swap of the location key and of the stored (and cached) content location keys of the running FPeer with the relative fields
 	 * of the passed FPeer {@code fpeer}.
-	 * Furthermore, updates the neighbor's trees neighborhood representation with the new locations-changed FPeers. 
-	 * This last operation is needed to maintains the trees sorted by FPeer's location keys and ensure O(logN) operations on its.
+	 * Furthermore, marks as dirty the neighborhood representations that contain the locations-changed FPeers, so that they are
+	 * re-sorted by FPeer's location keys (in bulk) before their next access.
 	 * @param fpeer  the FPeer with which perform the swap
 	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
 	 **/
 	public void swapWith(FPeer fpeer, int linkablePID)
 	{
+		// start the flight recorder event of the swap
+		final ProtocolEvents.LocationSwap event = new ProtocolEvents.LocationSwap();
+		event.begin();
+
 		// get Linkable protocols of the FPeers to swap
 		LinkableProtocol this_lp = (LinkableProtocol) this.getProtocol(linkablePID);
 		LinkableProtocol fpeer_lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);	
 
-		// remove-update for this's neighbors tree representation, at exception of the neighbor "fpeer"
-		this_lp.updateNeighborhood(this, fpeer, linkablePID, true);
-
-		// remove-update for fpeer's neighbors tree representation, at exception of the neighbor "this"
-		fpeer_lp.updateNeighborhood(fpeer, this, linkablePID, true);
-
-		// ad-hoc remove-update for "fpeer" in the neighborhood of "this", and vice-versa
-		this_lp.removeNeighbor(fpeer);
-		fpeer_lp.removeNeighbor(this);
-
 		// storing temporary for swapping
-		double oldLocKey = this.locationKey;
-		HashSet<Double> oldSet = this.storedContentLocationKeys;		
+		final double oldLocKey = this.getLocationKey();
+		final double newLocKey = fpeer.getLocationKey();
+		ContentStore oldSet = this.storedContentLocationKeys;		
+		ContentCache oldCache = this.contentCache;
 
-		// performs location keys and stored content location keys swapping for "this"
-		this.locationKey = fpeer.locationKey;
+		// performs location keys and stored content location keys (and cached ones) swapping for "this"
+		this.directory.locationKeys[this.serial] = newLocKey;
 		this.storedContentLocationKeys = fpeer.storedContentLocationKeys;
+		this.contentCache = fpeer.contentCache;
 
-		// performs location keys and stored content location keys swapping for "fpeer"
-		fpeer.locationKey = oldLocKey;
+		// performs location keys and stored content location keys (and cached ones) swapping for "fpeer"
+		this.directory.locationKeys[fpeer.serial] = oldLocKey;
 		fpeer.storedContentLocationKeys = oldSet;
+		fpeer.contentCache = oldCache;
+
+		// the location ring (if maintained) keeps the same location keys, with exchanged owners
+		if (LocationRing.isEnabled())
+			LocationRing.swapped(oldLocKey, newLocKey);
+
+		// the neighborhoods of the neighbors of "this" and "fpeer" (including "this" and "fpeer" themselves, if neighbors) are
+		// no longer sorted: mark them as dirty, so they are re-sorted in bulk only when they are accessed next time
+		this_lp.markNeighborhoodDirty(linkablePID);
+		fpeer_lp.markNeighborhoodDirty(linkablePID);
 
-		// add-update for this's neighbors tree representation, at exception of the neighbor "fpeer"
-		this_lp.updateNeighborhood(this, fpeer, linkablePID, false);
+		// after the swap, "this" and "fpeer" are always neighbors of each other
+		final boolean thisLinked = this_lp.addNeighbor(fpeer);
+		final boolean fpeerLinked = fpeer_lp.addNeighbor(this);
 
-		// add-update for fpeer's neighbors tree representation, at exception of the neighbor "this"
-		fpeer_lp.updateNeighborhood(fpeer, this, linkablePID, false);
+		// the global links lengths statistics are updated (if maintained) only for the links changed by the swap
+		final boolean updateLinkStats = LinkLengthStatistics.isEnabled();
+		if (updateLinkStats)
+		{
+			if (thisLinked)
+				LinkLengthStatistics.linkAdded(this.getDistanceFromLocationKey(oldLocKey));
+			if (fpeerLinked)
+				LinkLengthStatistics.linkAdded(fpeer.getDistanceFromLocationKey(newLocKey));
+		}
 
-		// ad-hoc add-update for "fpeer" in the neighborhood of "this", and vice-versa
-		this_lp.addNeighbor(fpeer);
-		fpeer_lp.addNeighbor(this);
+		// update the log-distance sums of the neighbors of the swapped FPeers (a common neighbor is updated twice, 
+		// once for each moved FPeer), and recompute the ones of the swapped FPeers
+		Iterator<FPeer> it = this_lp.getNeighborsIterator();
+		while (it.hasNext())
+		{
+			FPeer neighbor = it.next();
+			if (neighbor != fpeer)
+			{
+				neighbor.neighborMoved(oldLocKey, newLocKey);
+				if (updateLinkStats)
+					LinkLengthStatistics.linkMoved(neighbor.getDistanceFromLocationKey(oldLocKey), neighbor.getDistanceFromLocationKey(newLocKey));
+			}
+		}
 
+		it = fpeer_lp.getNeighborsIterator();
+		while (it.hasNext())
+		{
+			FPeer neighbor = it.next();
+			if (neighbor != this)
+			{
+				neighbor.neighborMoved(newLocKey, oldLocKey);
+				if (updateLinkStats)
+					LinkLengthStatistics.linkMoved(neighbor.getDistanceFromLocationKey(newLocKey), neighbor.getDistanceFromLocationKey(oldLocKey));
+			}
+		}
+
+		this.neighborsLogDistanceSumValid = false;
+		fpeer.neighborsLogDistanceSumValid = false;
+
+		// commit the flight recorder event, only if it is recorded (the neighborhoods of both FPeers are scanned twice)
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.firstSerial = this.serial;
+			event.secondSerial = fpeer.serial;
+			event.neighborsScanned = 2 * (this_lp.degree() + fpeer_lp.degree());
+			event.commit();
+		}
+	}
+
+
+	/**
+	 * Links the FPeer {@code this} and the passed FPeer {@code fpeer} as neighbors of each other (e.g. when {@code this} joins
+	 * the overlay network), updating the log-distance sums of both and the global links lengths statistics (if maintained).
+	 * @param fpeer		  the FPeer to link with {@code this}
+	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
+	 * @return {@code true} if the link is added. {@code false} if the two FPeers are already neighbors (or the same FPeer).
+	 **/
+	public boolean linkWith(FPeer fpeer, int linkablePID)
+	{
+		if (fpeer == this || !((LinkableProtocol) this.getProtocol(linkablePID)).addNeighbor(fpeer))
+			return false;
+
+		((LinkableProtocol) fpeer.getProtocol(linkablePID)).addNeighbor(this);
+
+		final double locKey = this.getLocationKey();
+		final double fpeer_locKey = fpeer.getLocationKey();
+		this.neighborChanged(fpeer_locKey, 1);
+		fpeer.neighborChanged(locKey, 1);
+
+		// the link is counted once for each direction
+		if (LinkLengthStatistics.isEnabled())
+		{
+			LinkLengthStatistics.linkAdded(this.getDistanceFromLocationKey(fpeer_locKey));
+			LinkLengthStatistics.linkAdded(this.getDistanceFromLocationKey(fpeer_locKey));
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Performs the departure of the FPeer {@code this} from the overlay network at the passed time {@code now}, in O(degree):
+	 * it is removed from the neighborhoods of all its neighbors (updating their log-distance sums and the global links lengths
+	 * statistics, if maintained), its stored content location keys are handed off (each one to the neighbor closest to it)
+	 * or lost, its cache is dropped and its neighborhood is released. <br>
+	 * N.B. the FPeer is only marked as departed: it is removed from the PeerSim network (and from the simulation) by the caller.
+	 * @param linkablePID the protocol identifier of the Linkable protocol used during the simulation
+	 * @param handoff	  flag that specifies if the stored content location keys are handed off to the neighbors
+	 * @param now		  the current simulation time
+	 * @return the number of content location keys handed off to the neighbors.
+	 **/
+	public int leave(int linkablePID, boolean handoff, long now)
+	{
+		LinkableProtocol lp = (LinkableProtocol) this.getProtocol(linkablePID);
+		final double locKey = this.getLocationKey();
+
+		// hand off the stored content location keys, while the neighborhood is still available
+		int handedOff = 0;
+		if (handoff && lp.degree() > 0)
+		{
+			for (int slot = 0; slot < this.storedContentLocationKeys.size(); slot++)
+			{
+				final double contentLocKey = this.storedContentLocationKeys.getKey(slot);
+				lp.retrieveTopKNeighbors(contentLocKey, 1).get(0).addContentLocationKey(contentLocKey);
+				handedOff++;
+			}
+		}
+
+		// remove the FPeer from the neighborhoods of its neighbors
+		final boolean updateLinkStats = LinkLengthStatistics.isEnabled();
+		Iterator<FPeer> it = lp.getNeighborsIterator();
+		while (it.hasNext())
+		{
+			FPeer neighbor = it.next();
+			((LinkableProtocol) neighbor.getProtocol(linkablePID)).removeNeighbor(this);
+			neighbor.neighborChanged(locKey, -1);
+
+			// the link is counted once for each direction
+			if (updateLinkStats)
+			{
+				final double dist = neighbor.getDistanceFromLocationKey(locKey);
+				LinkLengthStatistics.linkRemoved(dist);
+				LinkLengthStatistics.linkRemoved(dist);
+			}
+		}
+
+		// remove its location key from the location ring (if maintained)
+		if (LocationRing.isEnabled())
+			LocationRing.removed(locKey);
+
+		// release the state that is no more reachable by the other FPeers
+		lp.onKill();
+		this.contentCache = null;
+		this.neighborFilters = null;
+		this.neighborsLogDistanceSumValid = false;
+		this.directory.departureTimes[this.serial] = now;
+
+		return handedOff;
 	}
 
 	
 	/**
-	 * Serialize the class fields in the string (identifier, locationKey, localStorageContentsKeys).
+	 * Detaches the departed FPeer {@code this} from its serial number, when the directory recycles it (see
+	 * {@code FPeerDirectory.recycle}), and releases its store. The routing entries of the other FPeers can still refer to the
+	 * FPeer: detached, it is seen only as departed (its identifier, location key and swap lease are no more available).
+	 **/
+	void detach()
+	{
+		this.storedContentLocationKeys.release();
+		this.serial = -1;
+	}
+
+
+	/**
+	 * Serialize the class fields in the string (identifier, location key, localStorageContentsKeys).
 	 * @return the serialized FPeer as string
 	 **/
 	@Override
@@ -0,0 +1,289 @@
+package structure;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import engine.SimulationContext;
+
+/**
+ *  Class that assigns to each FPeer of the overlay network a stable, dense serial number and allows to retrieve the FPeer
+ *  from its serial in O(1). Unlike the PeerSim network index, the serial never changes during the simulation (e.g. it is
+ *  not touched by the {@code Shuffle} control), so it can be safely stored inside packed messages and snapshots. <br><br>
+ *
+ *  The directory also holds the scalar state of the FPeers as columns indexed by serial (identifiers, location keys, swap
+ *  leases and departure times), of which the FPeer objects are views: so the state of a large overlay network takes a few
+ *  primitive arrays instead of a field set (and an identifier string) for each FPeer object (see {@code PackedIdentifiers}).
+ *  <br><br>
+ *
+ *  The serial of an FPeer removed from the simulation (see the {@code ChurnControl}) is recycled, once no in-flight message
+ *  refers to it (see {@code retain}): the FPeer releases its store and is detached from its serial, that is re-assigned to
+ *  a next registered FPeer. So the directory grows with the peak size of the overlay network, not with the churn. <br><br>
+ *
+ *  The directory of a simulation is held by its {@code SimulationContext}; the static methods act on the directory of the
+ *  running simulation, while each FPeer keeps a reference to the directory in which it is registered.
+ **/
+
+public class FPeerDirectory
+{
+	// initial capacity of the FPeers directory
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// the registered FPeers, indexed by their serial number
+	private FPeer[] fpeers;
+
+	// the serial number to assign to the next registered FPeer, if no recycled serial is available
+	private int nextSerial;
+
+	// the recycled serial numbers (a stack), re-assigned before the new ones
+	private int[] freeSerials;
+	private int freeCount;
+
+	// the (packed) identifiers of the FPeers, indexed by serial number
+	final PackedIdentifiers identifiers;
+
+	// the location keys of the FPeers, indexed by serial number (accessed directly by the FPeer views)
+	double[] locationKeys;
+
+	// the swap leases of the FPeers (session identifier, -1 if free, and expiry time), indexed by serial number; they are
+	// accessed only while holding the lock of the relative FPeer
+	long[] swapSessionIDs;
+	long[] swapLeaseExpiries;
+
+	// the times in which the FPeers left the overlay network (-1 if still in the overlay), indexed by serial number; the
+	// departed FPeers keep their serial until it is recycled
+	long[] departureTimes;
+
+	// the number of references to the FPeers held by the in-flight messages (as last hop or responder), indexed by serial
+	// number: a serial is recycled only if it has no references (atomic, since the shards of the parallel engine send and
+	// deliver the messages concurrently)
+	private AtomicIntegerArray references;
+
+
+	/**
+	 * Constructor method. Creates an empty directory (the directory of a simulation is created by its context).
+	 **/
+	public FPeerDirectory()
+	{
+		this.fpeers = new FPeer[INITIAL_CAPACITY];
+		this.nextSerial = 0;
+		this.freeSerials = new int[16];
+		this.freeCount = 0;
+		this.identifiers = new PackedIdentifiers(INITIAL_CAPACITY);
+		this.locationKeys = new double[INITIAL_CAPACITY];
+		this.swapSessionIDs = new long[INITIAL_CAPACITY];
+		this.swapLeaseExpiries = new long[INITIAL_CAPACITY];
+		this.departureTimes = new long[INITIAL_CAPACITY];
+		this.references = new AtomicIntegerArray(INITIAL_CAPACITY);
+	}
+
+
+	/**
+	 * Gets out the FPeers directory of the running simulation, held by the simulation context.
+	 * @return the FPeers directory of the running simulation.
+	 **/
+	static FPeerDirectory current()
+	{
+		return SimulationContext.current().getFPeerDirectory();
+	}
+
+
+	/**
+	 * Registers the passed FPeer {@code fpeer} into the directory, assigning it the last recycled serial number (or the next
+	 * new one, if none) and storing its initial state (free swap lease, not departed).
+	 * @param fpeer		the FPeer to register
+	 * @param ID		the identifier of the FPeer
+	 * @param locKey	the location key of the FPeer
+	 * @return the serial number assigned to {@code fpeer}.
+	 **/
+	int register(FPeer fpeer, String ID, double locKey)
+	{
+		// re-use the last recycled serial, if any
+		if (this.freeCount > 0)
+		{
+			final int serial = this.freeSerials[--this.freeCount];
+			this.fpeers[serial] = fpeer;
+			this.locationKeys[serial] = locKey;
+			this.departureTimes[serial] = -1;
+			this.identifiers.set(serial, ID);
+
+			return serial;
+		}
+
+		// if the directory is full, doubles its capacity
+		if (this.nextSerial == this.fpeers.length)
+		{
+			final int capacity = this.fpeers.length * 2;
+			this.fpeers = Arrays.copyOf(this.fpeers, capacity);
+			this.locationKeys = Arrays.copyOf(this.locationKeys, capacity);
+			this.swapSessionIDs = Arrays.copyOf(this.swapSessionIDs, capacity);
+			this.swapLeaseExpiries = Arrays.copyOf(this.swapLeaseExpiries, capacity);
+			this.departureTimes = Arrays.copyOf(this.departureTimes, capacity);
+
+			AtomicIntegerArray newReferences = new AtomicIntegerArray(capacity);
+			for (int i = 0; i < this.nextSerial; i++)
+				newReferences.set(i, this.references.get(i));
+			this.references = newReferences;
+		}
+
+		final int serial = this.nextSerial++;
+		this.fpeers[serial] = fpeer;
+		this.locationKeys[serial] = locKey;
+		this.swapSessionIDs[serial] = -1;
+		this.swapLeaseExpiries[serial] = 0;
+		this.departureTimes[serial] = -1;
+		this.identifiers.add(ID);
+
+		return serial;
+	}
+
+
+	/**
+	 * Counts a reference to the passed FPeer {@code fpeer}, held by an in-flight message (e.g. as its last hop).
+	 * @param fpeer the referred FPeer (nothing is counted if {@code null} or detached)
+	 **/
+	public static void retain(FPeer fpeer)
+	{
+		if (fpeer != null && fpeer.getSerial() >= 0)
+			fpeer.directory.references.incrementAndGet(fpeer.getSerial());
+	}
+
+
+	/**
+	 * Discounts a reference to the passed FPeer {@code fpeer}, counted by {@code retain} (e.g. when the message is delivered).
+	 * @param fpeer the referred FPeer (nothing is discounted if {@code null} or detached)
+	 **/
+	public static void release(FPeer fpeer)
+	{
+		if (fpeer != null && fpeer.getSerial() >= 0)
+			fpeer.directory.references.decrementAndGet(fpeer.getSerial());
+	}
+
+
+	/**
+	 * Recycles the serial number of the passed FPeer {@code fpeer}, removed from the simulation after that it has left the
+	 * overlay network, if no in-flight message refers to it: the FPeer releases its store and it is detached from the
+	 * serial (it stays departed, see {@code FPeer.detach}), and the serial is re-assigned by the next registration. <br>
+	 * N.B. it must be invoked while no message is sent or delivered (e.g. by a control).
+	 * @param fpeer the departed FPeer to recycle
+	 * @return {@code true} if the serial is recycled. {@code false} if in-flight messages still refer to the FPeer.
+	 **/
+	public static boolean recycle(FPeer fpeer)
+	{
+		final FPeerDirectory d = fpeer.directory;
+		final int serial = fpeer.getSerial();
+		if (serial < 0 || d.references.get(serial) != 0)
+			return false;
+
+		fpeer.detach();
+		d.fpeers[serial] = null;
+		d.identifiers.clear(serial);
+		d.swapSessionIDs[serial] = -1;
+
+		if (d.freeCount == d.freeSerials.length)
+			d.freeSerials = Arrays.copyOf(d.freeSerials, d.freeCount * 2);
+		d.freeSerials[d.freeCount++] = serial;
+
+		return true;
+	}
+
+
+	/**
+	 * Gets out the identifier of the FPeer having the passed serial number {@code serial}.
+	 * @param serial the serial number of the FPeer
+	 * @return the identifier of the FPeer, or {@code null} if {@code serial} is negative.
+	 **/
+	static String getIdentifier(int serial)
+	{
+		return (serial < 0) ? null : current().identifiers.get(serial);
+	}
+
+
+	/**
+	 * Gets out the location key of the FPeer having the passed serial number {@code serial}.
+	 * @param serial the serial number of the FPeer
+	 * @return the location key of the FPeer.
+	 **/
+	public static double getLocationKey(int serial)
+	{
+		return current().locationKeys[serial];
+	}
+
+
+	/**
+	 * Gets out the FPeer having the passed serial number {@code serial}.
+	 * @param serial the serial number of the FPeer to retrieve
+	 * @return the FPeer having serial number {@code serial}, or {@code null} if {@code serial} is negative or recycled.
+	 **/
+	public static FPeer get(int serial)
+	{
+		return (serial < 0) ? null : current().fpeers[serial];
+	}
+
+
+	/**
+	 * Gets out the memory, in bytes, occupied by the columns of the directory (with compressed references to the FPeers).
+	 * @return the memory of the columns.
+	 **/
+	public static long memoryBytes()
+	{
+		final FPeerDirectory d = current();
+
+		// 4 bytes of reference, 8 of location key, 16 of swap lease, 8 of departure time and 4 of references count for each
+		// serial
+		return 40L * d.fpeers.length + 4L * d.freeSerials.length + d.identifiers.memoryBytes();
+	}
+
+
+	/**
+	 * Gets out the number of serial numbers assigned by the directory, i.e. the FPeers registered into the directory plus the
+	 * recycled serials not yet re-assigned (for which {@code get} returns {@code null}).
+	 * @return the number of serial numbers assigned by the directory.
+	 **/
+	public static int size()
+	{
+		return current().nextSerial;
+	}
+
+
+	/**
+	 * Gets out the recycled serial numbers not yet re-assigned, in the order in which they will be re-assigned (e.g. to
+	 * write them in a checkpoint).
+	 * @return the recycled serial numbers, the next one to re-assign first.
+	 **/
+	public static int[] getFreeSerials()
+	{
+		final FPeerDirectory d = current();
+		int[] free = new int[d.freeCount];
+		for (int i = 0; i < d.freeCount; i++)
+			free[i] = d.freeSerials[d.freeCount - 1 - i];
+
+		return free;
+	}
+
+
+	/**
+	 * Skips the next serial number, that is recycled without being assigned to an FPeer (e.g. to resume from a checkpoint
+	 * the recycled serials, see {@code setFreeSerials}).
+	 **/
+	public static void skip()
+	{
+		final FPeerDirectory d = current();
+		final int serial = d.register(null, null, 0.0);
+		d.identifiers.clear(serial);
+	}
+
+
+	/**
+	 * Replaces the recycled serial numbers with the passed ones, as returned by {@code getFreeSerials} (the serials must
+	 * have been skipped, see {@code skip}).
+	 * @param free the recycled serial numbers, the next one to re-assign first
+	 **/
+	public static void setFreeSerials(int[] free)
+	{
+		final FPeerDirectory d = current();
+		d.freeSerials = new int[Math.max(16, free.length)];
+		d.freeCount = free.length;
+		for (int i = 0; i < free.length; i++)
+			d.freeSerials[free.length - 1 - i] = free[i];
+	}
+}
@@ -1,5 +1,8 @@
 package structure;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
 
@@ -21,6 +24,11 @@ public class HashMapEntry
 	// the entry's last use time stamp 
 	private long lastUseTimetamp;
 
+	// number of walkers still in flight of the multi-walker GET relative to the entry (only in the entry of the requester, 
+	// 0 otherwise; negated once the request has ended, i.e. the cancelled walkers; not written in the checkpoints, like the
+	// in-flight messages)
+	private int walkers;
+
     
 	/**
 	 * Constructor method. Initializes the {@code receivedFrom} object field to the passed {@code _receivedFrom} FPeer,
@@ -32,6 +40,7 @@ public class HashMapEntry
 	{
 		this.receivedFrom = _receivedFrom;
 		this.sentTo = null;
+		this.walkers = 0;
 		
 		// update last use time stamp
 		setTimestampToNow();
@@ -97,6 +106,27 @@ public class HashMapEntry
 	}
 	
 	
+	/**
+	 * Gets out the number of walkers still in flight of the multi-walker GET relative to the entry.
+	 * @return the number of walkers in flight (0 if the entry is not the one of the requester of a multi-walker GET), or
+	 * 		   minus the number of cancelled walkers in flight, if the request has ended with a GET_FOUND.
+	 **/
+	public int getWalkers()
+	{
+		return this.walkers;
+	}
+
+
+	/**
+	 * Changes the number of walkers still in flight of the multi-walker GET relative to the entry.
+	 * @param _walkers the number of walkers in flight
+	 **/
+	public void setWalkers(int _walkers)
+	{
+		this.walkers = _walkers;
+	}
+	
+	
 	/**
 	 * Returns the time of the last modification on the object (field {@code lastModTimetamp}).
 	 * @return the time of the last modification on the object.
@@ -107,6 +137,50 @@ public class HashMapEntry
 	}
 
 	
+	/**
+	 * Writes the entry (serials of the FPeers from which and to which the message was received and sent) on the passed 
+	 * {@code out} stream.
+	 * @param out the stream on which write the entry
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(this.receivedFrom.getSerial());
+
+		// the FPeers detached from their serials (see "FPeerDirectory.recycle") are departed, so they are not written
+		int sent = 0;
+		if (this.sentTo != null)
+			for (FPeer fpeer : this.sentTo)
+				if (fpeer.getSerial() >= 0)
+					sent++;
+
+		out.writeInt(sent);
+		if (this.sentTo != null)
+			for (FPeer fpeer : this.sentTo)
+				if (fpeer.getSerial() >= 0)
+					out.writeInt(fpeer.getSerial());
+	}
+
+
+	/**
+	 * Creates an entry with the content read from the passed {@code in} stream, as written by {@code writeTo}. 
+	 * The last use time stamp of the entry is set to the current time.
+	 * @param in the stream from which read the entry
+	 * @return the read entry.
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public static HashMapEntry readFrom(DataInput in) throws IOException
+	{
+		HashMapEntry entry = new HashMapEntry(FPeerDirectory.get(in.readInt()));
+
+		final int sent = in.readInt();
+		for (int i = 0; i < sent; i++)
+			entry.addSent(FPeerDirectory.get(in.readInt()));
+
+		return entry;
+	}
+
+	
 	/**
 	 * Serializes the class fields in the string (receivedFromID, [locKey1,...], timestamp).
 	 * @return  the serialized message as string.
@@ -0,0 +1,158 @@
+package structure;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Class that implements a histogram of (non-negative) latency values, from which the percentiles are computed at the end
+ *  of the simulation. The buckets are log-linear: the values lower than 64 have an exact bucket each, while each greater
+ *  power of two is split into 32 buckets (so the relative error of a percentile is at most ~3%). All the buckets are
+ *  allocated once, in the constructor, and updated atomically, so a value is recorded without allocations also by the
+ *  shards of the parallel engine.
+ **/
+
+public class LatencyHistogram
+{
+	// number of values with an exact bucket
+	private static final int LINEAR_LIMIT = 64;
+
+	// log2 of the number of buckets of each power of two greater than LINEAR_LIMIT
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// log2 of LINEAR_LIMIT, i.e. the first power of two split into sub-buckets
+	private static final int FIRST_EXPONENT = 6;
+
+	// total number of buckets (up to the power of two 2^62)
+	private static final int NUM_BUCKETS = LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+	// the counts of the buckets
+	private final AtomicLongArray counts;
+
+	// number, sum and maximum of the recorded values
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+
+	/**
+	 * Constructor method. Allocates all the buckets of the histogram.
+	 **/
+	public LatencyHistogram()
+	{
+		this.counts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new AtomicLong(0);
+		this.sum = new AtomicLong(0);
+		this.max = new AtomicLong(0);
+	}
+
+
+	/**
+	 * Computes the bucket of the passed value {@code value}.
+	 * @param value the (non-negative) value
+	 * @return the index of the bucket of the value.
+	 **/
+	private static int bucketOf(long value)
+	{
+		if (value < LINEAR_LIMIT)
+			return (int) value;
+
+		// the exponent of the highest bit selects the power of two, the following SUB_BUCKET_BITS bits the sub-bucket
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+	}
+
+
+	/**
+	 * Computes the greatest value that falls in the passed bucket {@code bucket}.
+	 * @param bucket the index of the bucket
+	 * @return the upper bound (included) of the bucket.
+	 **/
+	private static long upperBoundOf(int bucket)
+	{
+		if (bucket < LINEAR_LIMIT)
+			return bucket;
+
+		final int exponent = FIRST_EXPONENT + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+		final long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+
+	/**
+	 * Records the passed value {@code value} (the negative values are recorded as 0).
+	 * @param value the value to record
+	 **/
+	public void record(long value)
+	{
+		final long v = Math.max(0, value);
+
+		this.counts.incrementAndGet(bucketOf(v));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(v);
+
+		// update the maximum, retrying only if a greater value is not already recorded
+		long m = this.max.get();
+		while (v > m && !this.max.compareAndSet(m, v))
+			m = this.max.get();
+	}
+
+
+	/**
+	 * Gets out the number of recorded values.
+	 * @return the number of recorded values.
+	 **/
+	public long getCount()
+	{
+		return this.count.get();
+	}
+
+
+	/**
+	 * Gets out the mean of the recorded values.
+	 * @return the mean of the recorded values, or {@code 0} if no value is recorded.
+	 **/
+	public double getMean()
+	{
+		final long n = this.count.get();
+		return (n == 0) ? 0.0 : (double) this.sum.get() / n;
+	}
+
+
+	/**
+	 * Gets out the maximum recorded value.
+	 * @return the maximum recorded value, or {@code 0} if no value is recorded.
+	 **/
+	public long getMax()
+	{
+		return this.max.get();
+	}
+
+
+	/**
+	 * Computes the passed percentile {@code p} of the recorded values, as the upper bound of the bucket that contains it
+	 * (bounded by the maximum recorded value).
+	 * @param p the percentile to compute, in [0, 100]
+	 * @return the percentile of the recorded values, or {@code 0} if no value is recorded.
+	 **/
+	public long getPercentile(double p)
+	{
+		final long n = this.count.get();
+		if (n == 0)
+			return 0;
+
+		// rank (1-based) of the value of the percentile
+		final long rank = Math.max(1, (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, p)) / 100.0));
+
+		long seen = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++)
+		{
+			seen += this.counts.get(bucket);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(bucket), this.max.get());
+		}
+
+		return this.max.get();
+	}
+}
@@ -0,0 +1,182 @@
+package structure;
+
+import engine.SimulationContext;
+import peersim.core.Network;
+import protocol.LinkableProtocol;
+
+/**
+ *  Class that maintains the global statistics of the links lengths of the overlay network: the sum of the logarithms of the
+ *  circular distances between the location keys of neighbors (so their mean) and the histogram of those distances, by powers
+ *  of two. Both are computed once with a full scan of the overlay network ({@code rebuild}) and then updated incrementally
+ *  by {@code FPeer.swapWith} (and by the joins and leaves of the FPeers), only for the links changed by each swap, so they can be sampled during the warm-up without
+ *  scanning again the overlay network. <br><br>
+ *
+ *  Each link is counted once for each direction (the neighborhoods are symmetric). The statistics are updated only while
+ *  enabled, and the swaps are performed at the barriers of the parallel engine, so no synchronization is needed. The
+ *  statistics of a simulation are held by its {@code SimulationContext}, and the static methods act on the ones of the
+ *  running simulation.
+ **/
+
+public class LinkLengthStatistics
+{
+	// number of buckets of the histogram: the bucket i counts the distances in [2^-(i+1), 2^-i), the last one also the shorter
+	public static final int NUM_BUCKETS = 32;
+
+	// flag that indicates if the statistics are maintained (i.e. after the first rebuild)
+	private boolean enabled;
+
+	// number of (directed) links and sum of the logarithms of their lengths
+	private long numLinks;
+	private double logLengthSum;
+
+	// histogram of the links lengths
+	private final long[] histogram;
+
+
+	/**
+	 * Constructor method. Creates empty statistics, not enabled (the statistics of a simulation are created by its context).
+	 **/
+	public LinkLengthStatistics()
+	{
+		this.enabled = false;
+		this.numLinks = 0;
+		this.logLengthSum = 0.0;
+		this.histogram = new long[NUM_BUCKETS];
+	}
+
+
+	/**
+	 * Gets out the links lengths statistics of the running simulation, held by the simulation context.
+	 * @return the links lengths statistics of the running simulation.
+	 **/
+	private static LinkLengthStatistics current()
+	{
+		return SimulationContext.current().getLinkLengthStatistics();
+	}
+
+
+	/**
+	 * Recomputes the statistics scanning all the links of the overlay network and enables their incremental updating.
+	 * @param linkablePID the PID of the used Linkable protocol
+	 **/
+	public static void rebuild(int linkablePID)
+	{
+		final LinkLengthStatistics st = current();
+		st.numLinks = 0;
+		st.logLengthSum = 0.0;
+		for (int b = 0; b < NUM_BUCKETS; b++)
+			st.histogram[b] = 0;
+
+		// the distances of each neighborhood are computed in a single pass (see "DistanceKernels"), in a buffer enlarged as needed
+		double[] dists = new double[0];
+		for (int i = 0; i < Network.size(); i++)
+		{
+			final FPeer fpeer = (FPeer) Network.get(i);
+			final LinkableProtocol lp = (LinkableProtocol) fpeer.getProtocol(linkablePID);
+			final int degree = lp.degree();
+			if (dists.length < degree)
+				dists = new double[Math.max(degree, 2 * dists.length)];
+
+			lp.computeDistances(fpeer.getLocationKey(), dists);
+			st.logLengthSum += lp.logDistanceSum(fpeer.getLocationKey(), null);
+			for (int j = 0; j < degree; j++)
+				st.histogram[bucketOf(dists[j])]++;
+			st.numLinks += degree;
+		}
+
+		st.enabled = true;
+	}
+
+
+	/**
+	 * Verifies if the statistics are maintained by the swaps.
+	 * @return {@code true} if the statistics are enabled. {@code false} otherwise.
+	 **/
+	public static boolean isEnabled()
+	{
+		return current().enabled;
+	}
+
+
+	/**
+	 * Gets out the bucket of the histogram of the passed link length {@code dist}.
+	 * @param dist the circular distance between two location keys, in (0, 0.5]
+	 * @return the index of the bucket.
+	 **/
+	private static int bucketOf(double dist)
+	{
+		// the binary exponent of a distance in [2^-(i+1), 2^-i) is -(i+1)
+		return Math.max(0, Math.min(NUM_BUCKETS - 1, -Math.getExponent(dist) - 1));
+	}
+
+
+	/**
+	 * Updates the statistics after that the length of a (symmetric) link has changed from {@code oldDist} to {@code newDist}.
+	 * @param oldDist the length of the link before the swap
+	 * @param newDist the length of the link after the swap
+	 **/
+	static void linkMoved(double oldDist, double newDist)
+	{
+		final LinkLengthStatistics st = current();
+		st.logLengthSum += 2 * (Math.log(newDist) - Math.log(oldDist));
+		st.histogram[bucketOf(oldDist)] -= 2;
+		st.histogram[bucketOf(newDist)] += 2;
+	}
+
+
+	/**
+	 * Updates the statistics after that a new (directed) link of length {@code dist} has been added.
+	 * @param dist the length of the added link
+	 **/
+	static void linkAdded(double dist)
+	{
+		final LinkLengthStatistics st = current();
+		st.logLengthSum += Math.log(dist);
+		st.histogram[bucketOf(dist)]++;
+		st.numLinks++;
+	}
+
+
+	/**
+	 * Updates the statistics after that a (directed) link of length {@code dist} has been removed.
+	 * @param dist the length of the removed link
+	 **/
+	static void linkRemoved(double dist)
+	{
+		final LinkLengthStatistics st = current();
+		st.logLengthSum -= Math.log(dist);
+		st.histogram[bucketOf(dist)]--;
+		st.numLinks--;
+	}
+
+
+	/**
+	 * Gets out the number of (directed) links of the overlay network.
+	 * @return the number of links.
+	 **/
+	public static long getNumLinks()
+	{
+		return current().numLinks;
+	}
+
+
+	/**
+	 * Gets out the mean of the logarithms of the links lengths.
+	 * @return the mean log link length (0 if there are no links).
+	 **/
+	public static double getMeanLogLength()
+	{
+		final LinkLengthStatistics st = current();
+		return (st.numLinks == 0) ? 0.0 : st.logLengthSum / st.numLinks;
+	}
+
+
+	/**
+	 * Gets out a copy of the histogram of the links lengths.
+	 * @return the number of (directed) links for each bucket.
+	 **/
+	public static long[] getHistogram()
+	{
+		return current().histogram.clone();
+	}
+}
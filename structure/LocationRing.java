@@ -0,0 +1,489 @@
+package structure;
+
+import java.util.Arrays;
+
+import engine.SimulationContext;
+import peersim.core.Network;
+
+/**
+ *  Class that maintains the global location ring of the overlay network: the location keys of all the FPeers, sorted, with
+ *  the serial of the FPeer that owns each of them. It is the oracle used to check the routing accuracy: given a content
+ *  location key, it finds in O(log n) the FPeer truly closest to it, and how many positions of the ring separate two location
+ *  keys. <br><br>
+ *
+ *  The ring is computed once with a full scan of the overlay network ({@code rebuild}) and then updated incrementally: a
+ *  swap exchanges only the owners of the two swapped location keys (see {@code FPeer.swapWith}), while the joins and the
+ *  leaves of the FPeers insert and remove a location key. The location keys are held by a treap (a binary search tree
+ *  balanced by pseudo-random priorities) stored in primitive columns, whose nodes keep the sizes of their subtrees: so the
+ *  updates, the closest location key and the positions of the location keys all take O(log n) expected time. <br><br>
+ *
+ *  The ring is updated only while enabled, by the swaps (performed at the barriers of the parallel engine) and by the churn
+ *  control, so it is read by the shards without synchronization. The ring of a simulation is held by its
+ *  {@code SimulationContext}, and the static methods act on the ring of the running simulation.
+ **/
+
+public class LocationRing
+{
+	// the null node of the treap
+	private static final int NIL = -1;
+
+	// flag that indicates if the ring is maintained (i.e. after the first rebuild)
+	private boolean enabled;
+
+	// the nodes of the treap: location keys, serials of their owners, children, subtree sizes and priorities
+	private double[] keys;
+	private int[] owners;
+	private int[] left;
+	private int[] right;
+	private int[] sizes;
+	private int[] priorities;
+
+	// the root of the treap, and the first node never used
+	private int root;
+	private int top;
+
+	// the released nodes (a stack)
+	private int[] freeNodes;
+	private int freeCount;
+
+	// the state of the generator of the priorities (independent from the simulation one, so the ring does not change the
+	// results of the simulation)
+	private long seed;
+
+	// the two treaps produced by the last split
+	private int splitLeft;
+	private int splitRight;
+
+
+	/**
+	 * Constructor method. Creates an empty ring, not enabled (the ring of a simulation is created by its context).
+	 **/
+	public LocationRing()
+	{
+		this.enabled = false;
+		this.keys = new double[0];
+		this.owners = new int[0];
+		this.left = new int[0];
+		this.right = new int[0];
+		this.sizes = new int[0];
+		this.priorities = new int[0];
+		this.root = NIL;
+		this.top = 0;
+		this.freeNodes = new int[0];
+		this.freeCount = 0;
+		this.seed = 0x2545F4914F6CDD1DL;
+		this.splitLeft = NIL;
+		this.splitRight = NIL;
+	}
+
+
+	/**
+	 * Gets out the location ring of the running simulation, held by the simulation context.
+	 * @return the location ring of the running simulation.
+	 **/
+	private static LocationRing current()
+	{
+		return SimulationContext.current().getLocationRing();
+	}
+
+
+	/**
+	 * Recomputes the ring scanning all the FPeers of the overlay network (the departed ones excluded) and enables its
+	 * incremental updating.
+	 **/
+	public static void rebuild()
+	{
+		final LocationRing ring = current();
+		final int capacity = Math.max(16, Network.size());
+		ring.keys = new double[capacity];
+		ring.owners = new int[capacity];
+		ring.left = new int[capacity];
+		ring.right = new int[capacity];
+		ring.sizes = new int[capacity];
+		ring.priorities = new int[capacity];
+		ring.freeNodes = new int[capacity];
+		ring.freeCount = 0;
+		ring.root = NIL;
+		ring.top = 0;
+
+		for (int i = 0; i < Network.size(); i++)
+		{
+			final FPeer fpeer = (FPeer) Network.get(i);
+			if (!fpeer.isDeparted())
+				ring.insert(fpeer.getLocationKey(), fpeer.getSerial());
+		}
+
+		ring.enabled = true;
+	}
+
+
+	/**
+	 * Verifies if the ring is maintained by the swaps, the joins and the leaves.
+	 * @return {@code true} if the ring is enabled. {@code false} otherwise.
+	 **/
+	public static boolean isEnabled()
+	{
+		return current().enabled;
+	}
+
+
+	/**
+	 * Gets out the number of location keys of the ring.
+	 * @return the number of FPeers of the ring.
+	 **/
+	public static int size()
+	{
+		return current().count();
+	}
+
+
+	/**
+	 * Gets out the number of location keys of the treap.
+	 * @return the number of location keys.
+	 **/
+	int count()
+	{
+		return size(this.root);
+	}
+
+
+	/**
+	 * Gets out the number of nodes of the passed subtree {@code node}.
+	 * @param node the root of the subtree
+	 * @return the size of the subtree (0 for {@code NIL}).
+	 **/
+	private int size(int node)
+	{
+		return (node == NIL) ? 0 : sizes[node];
+	}
+
+
+	/**
+	 * Exchanges the owners of the two passed location keys, after that their FPeers have swapped them.
+	 * @param locKey1 the first swapped location key
+	 * @param locKey2 the second swapped location key
+	 **/
+	static void swapped(double locKey1, double locKey2)
+	{
+		current().exchange(locKey1, locKey2);
+	}
+
+
+	/**
+	 * Exchanges the owners of the two passed location keys of the treap (nothing changes if one of them is not in the treap).
+	 * @param locKey1 the first location key
+	 * @param locKey2 the second location key
+	 **/
+	void exchange(double locKey1, double locKey2)
+	{
+		final int i = find(locKey1);
+		final int j = find(locKey2);
+		if (i == NIL || j == NIL)
+			return;
+
+		final int owner = owners[i];
+		owners[i] = owners[j];
+		owners[j] = owner;
+	}
+
+
+	/**
+	 * Inserts into the ring the location key of the passed FPeer {@code fpeer} (e.g. when it joins the overlay network).
+	 * @param fpeer the FPeer to insert
+	 **/
+	public static void added(FPeer fpeer)
+	{
+		final LocationRing ring = current();
+		if (ring.enabled)
+			ring.insert(fpeer.getLocationKey(), fpeer.getSerial());
+	}
+
+
+	/**
+	 * Removes from the ring the passed location key (e.g. when its FPeer leaves the overlay network).
+	 * @param locKey the location key to remove
+	 **/
+	static void removed(double locKey)
+	{
+		current().remove(locKey);
+	}
+
+
+	/**
+	 * Removes from the treap the passed location key, if it is in the treap.
+	 * @param locKey the location key to remove
+	 **/
+	void remove(double locKey)
+	{
+		if (find(locKey) == NIL)
+			return;
+
+		// cut out the (single) node of the location key, and merge the rest
+		split(root, locKey, false);
+		final int less = splitLeft;
+		split(splitRight, locKey, true);
+		final int node = splitLeft;
+		root = merge(less, splitRight);
+
+		if (freeCount == freeNodes.length)
+			freeNodes = Arrays.copyOf(freeNodes, Math.max(16, 2 * freeCount));
+		freeNodes[freeCount++] = node;
+	}
+
+
+	/**
+	 * Inserts into the treap the passed location key {@code locKey}, owned by the FPeer having serial {@code owner}, if it
+	 * is not already in the ring.
+	 * @param locKey the location key to insert
+	 * @param owner	 the serial of the FPeer that owns the location key
+	 **/
+	void insert(double locKey, int owner)
+	{
+		if (find(locKey) != NIL)
+			return;
+
+		// allocate the node, re-using a released one if possible (if the columns are full, doubles their capacity)
+		int node;
+		if (freeCount > 0)
+			node = freeNodes[--freeCount];
+		else
+		{
+			if (top == keys.length)
+			{
+				final int capacity = Math.max(16, 2 * top);
+				keys = Arrays.copyOf(keys, capacity);
+				owners = Arrays.copyOf(owners, capacity);
+				left = Arrays.copyOf(left, capacity);
+				right = Arrays.copyOf(right, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				priorities = Arrays.copyOf(priorities, capacity);
+			}
+
+			node = top++;
+		}
+
+		// xorshift generator of the priorities
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+
+		keys[node] = locKey;
+		owners[node] = owner;
+		left[node] = right[node] = NIL;
+		sizes[node] = 1;
+		priorities[node] = (int) seed;
+
+		split(root, locKey, false);
+		root = merge(merge(splitLeft, node), splitRight);
+	}
+
+
+	/**
+	 * Splits the passed treap {@code node} in the treap of the location keys lower than (or equal to, if {@code inclusive})
+	 * the passed location key {@code locKey}, and the treap of the other ones: they are left in {@code splitLeft} and
+	 * {@code splitRight}.
+	 * @param node		the root of the treap to split
+	 * @param locKey	the location key on which split
+	 * @param inclusive	flag that specifies if the location key equal to {@code locKey} goes in the left treap
+	 **/
+	private void split(int node, double locKey, boolean inclusive)
+	{
+		if (node == NIL)
+		{
+			splitLeft = splitRight = NIL;
+			return;
+		}
+
+		if (keys[node] < locKey || (inclusive && keys[node] == locKey))
+		{
+			split(right[node], locKey, inclusive);
+			right[node] = splitLeft;
+			splitLeft = node;
+		}
+		else
+		{
+			split(left[node], locKey, inclusive);
+			left[node] = splitRight;
+			splitRight = node;
+		}
+
+		sizes[node] = 1 + size(left[node]) + size(right[node]);
+	}
+
+
+	/**
+	 * Merges the two passed treaps, all the location keys of {@code first} being lower than the ones of {@code second}.
+	 * @param first	 the root of the first treap
+	 * @param second the root of the second treap
+	 * @return the root of the merged treap.
+	 **/
+	private int merge(int first, int second)
+	{
+		if (first == NIL)
+			return second;
+		if (second == NIL)
+			return first;
+
+		if (priorities[first] > priorities[second])
+		{
+			right[first] = merge(right[first], second);
+			sizes[first] = 1 + size(left[first]) + size(right[first]);
+			return first;
+		}
+
+		left[second] = merge(first, left[second]);
+		sizes[second] = 1 + size(left[second]) + size(right[second]);
+		return second;
+	}
+
+
+	/**
+	 * Finds the node of the passed location key {@code locKey}.
+	 * @param locKey the location key to find
+	 * @return the node of the location key, or {@code NIL} if it is not in the ring.
+	 **/
+	private int find(double locKey)
+	{
+		int node = root;
+		while (node != NIL && keys[node] != locKey)
+			node = (locKey < keys[node]) ? left[node] : right[node];
+
+		return node;
+	}
+
+
+	/**
+	 * Computes the position of the passed location key {@code locKey} in the ring, i.e. the number of location keys lower
+	 * than it (so a location key not in the ring is placed at its insertion position).
+	 * @param locKey the location key
+	 * @return the position of the location key.
+	 **/
+	int rank(double locKey)
+	{
+		int rank = 0;
+		int node = root;
+		while (node != NIL)
+		{
+			if (keys[node] < locKey)
+			{
+				rank += size(left[node]) + 1;
+				node = right[node];
+			}
+			else
+				node = left[node];
+		}
+
+		return rank;
+	}
+
+
+	/**
+	 * Finds the node at the passed position {@code rank} of the ring.
+	 * @param rank the position, in [0, {@code size()})
+	 * @return the node at the position.
+	 **/
+	private int select(int rank)
+	{
+		int node = root;
+		while (size(left[node]) != rank)
+		{
+			if (rank < size(left[node]))
+				node = left[node];
+			else
+			{
+				rank -= size(left[node]) + 1;
+				node = right[node];
+			}
+		}
+
+		return node;
+	}
+
+
+	/**
+	 * Finds the node of the ring whose location key is the closest (w.r.t. the circular distance) to the passed location key
+	 * {@code locKey}.
+	 * @param locKey the location key (e.g. a content location key)
+	 * @return the node of the closest location key, or {@code NIL} if the ring is empty.
+	 **/
+	private int nodeOfClosest(double locKey)
+	{
+		final int size = this.count();
+		if (size == 0)
+			return NIL;
+
+		final int node = find(locKey);
+		if (node != NIL)
+			return node;
+
+		// the candidates are the location keys immediately before and after the passed one, on the ring
+		final int after = rank(locKey) % size;
+		final int before = (after + size - 1) % size;
+		final int afterNode = select(after);
+		final int beforeNode = select(before);
+
+		return (DistanceKernels.circularDistance(keys[beforeNode], locKey) <= DistanceKernels.circularDistance(keys[afterNode], locKey)) ? beforeNode : afterNode;
+	}
+
+
+	/**
+	 * Gets out the location key, among the ones of the FPeers of the overlay network, closest to the passed location key.
+	 * @param locKey the location key (e.g. a content location key)
+	 * @return the closest location key of an FPeer, or {@code NaN} if the ring is empty.
+	 **/
+	public static double getClosestLocationKey(double locKey)
+	{
+		return current().closestKey(locKey);
+	}
+
+
+	/**
+	 * Gets out the location key of the treap closest to the passed location key.
+	 * @param locKey the location key
+	 * @return the closest location key, or {@code NaN} if the treap is empty.
+	 **/
+	double closestKey(double locKey)
+	{
+		final int node = nodeOfClosest(locKey);
+		return (node == NIL) ? Double.NaN : this.keys[node];
+	}
+
+
+	/**
+	 * Gets out the FPeer of the overlay network whose location key is the closest to the passed location key.
+	 * @param locKey the location key (e.g. a content location key)
+	 * @return the closest FPeer, or {@code null} if the ring is empty.
+	 **/
+	public static FPeer getClosestFPeer(double locKey)
+	{
+		final int owner = current().closestOwner(locKey);
+		return (owner < 0) ? null : FPeerDirectory.get(owner);
+	}
+
+
+	/**
+	 * Gets out the serial of the owner of the location key of the treap closest to the passed location key.
+	 * @param locKey the location key
+	 * @return the serial of the owner of the closest location key, or {@code -1} if the treap is empty.
+	 **/
+	int closestOwner(double locKey)
+	{
+		final int node = nodeOfClosest(locKey);
+		return (node == NIL) ? -1 : this.owners[node];
+	}
+
+
+	/**
+	 * Computes the number of positions of the ring that separate the two passed location keys, in the shortest direction
+	 * (a location key not in the ring is placed at its insertion position).
+	 * @param locKey1 the first location key
+	 * @param locKey2 the second location key
+	 * @return the circular distance, in positions, between the two location keys.
+	 **/
+	public static int rankDistance(double locKey1, double locKey2)
+	{
+		final LocationRing ring = current();
+		final int dist = Math.abs(ring.rank(locKey1) - ring.rank(locKey2));
+		return Math.min(dist, ring.count() - dist);
+	}
+}
@@ -1,5 +1,7 @@
 package structure;
 
+import engine.SimulationContext;
+
 /**
  *  Class that implements the prototype of the message exchanged by the FPeers during the simulation.
  * 
@@ -13,9 +15,6 @@ public class Message implements Cloneable
 	public static enum Type {GET, GET_FOUND, GET_NOTFOUND, PUT, PUT_OK, 
 		PUT_COLLISION, PUT_REPLICATION, PUT_REPL_COLLISION, SWAP, SWAP_OK, SWAP_REFUSED}
 	
-	// static counter to assigns an unique identifier to new messages
-	private static long nextMessageID = 0;
-	
 	// the unique identifier of the message
 	private long messageID;
 	
@@ -37,6 +36,20 @@ public class Message implements Cloneable
 	// the True-Hops-Counter of the message (statistics only)
 	private int THC;
 	
+	// the simulated time at which the request relative to the message has been created (-1 if not set; statistics only)
+	private long creationTime;
+	
+	// the reference to the FPeer that has answered the request relative to the message, or the closest one (w.r.t. the
+	// content location key) reached by a GET not yet answered (null if not set; statistics only)
+	private FPeer responderFPeer;
+	
+	// flag that indicates if the message is immutable (e.g. shared by several receivers of a multicast)
+	private boolean frozen;
+	
+	// flag that indicates if the message is a flyweight re-filled by the {@code PackedMessageStore} at every delivery (so
+	// it is valid only until the handling of the delivery ends)
+	private boolean flyweight;
+	
 	
 	/**
 	 * Constructor method for a generic message. Initializes the object fields with the relative passed values. <br>
@@ -47,15 +60,154 @@ public class Message implements Cloneable
 	 **/
 	public Message(Type _messageType, double _messageLocKey, int _HTL)
 	{
-		this.messageID = Message.nextMessageID++;
+		this.messageID = SimulationContext.current().newMessageID();
 		this.messageType = _messageType;
 		this.messageLocationKey = _messageLocKey;
 		this.lastHopFPeer = null;
 		this.HTL = _HTL;	
 		this.pathClosestLocKey = -1.0;
 		this.THC = 0;
+		this.creationTime = -1;
+		this.responderFPeer = null;
+		this.frozen = false;
+		this.flyweight = false;
 	}
-	
+
+
+	/**
+	 * Constructor method used to rebuild an already existing message (e.g. unpacked from a {@code PackedMessageStore}).
+	 * Differently from the public constructor, it does NOT assign a new unique identifier to the message.
+	 * @param _messageID			the unique identifier of the message
+	 * @param _messageType			the type of the message
+	 * @param _messageLocKey		the location key of the message
+	 * @param _lastHopFPeer			the FPeer that have sent the last time the message
+	 * @param _HTL					the HTL value of the message
+	 * @param _pathClosestLocKey	the closest FPeer location key encountered during the routing of the message
+	 * @param _THC					the THC value of the message
+	 * @param _creationTime			the simulated creation time of the request relative to the message
+	 * @param _responderFPeer		the FPeer that has answered the request relative to the message
+	 **/
+	Message(long _messageID, Type _messageType, double _messageLocKey, FPeer _lastHopFPeer, int _HTL, double _pathClosestLocKey, int _THC, long _creationTime, FPeer _responderFPeer)
+	{
+		this.messageID = _messageID;
+		this.messageType = _messageType;
+		this.messageLocationKey = _messageLocKey;
+		this.lastHopFPeer = _lastHopFPeer;
+		this.HTL = _HTL;
+		this.pathClosestLocKey = _pathClosestLocKey;
+		this.THC = _THC;
+		this.creationTime = _creationTime;
+		this.responderFPeer = _responderFPeer;
+		this.frozen = false;
+		this.flyweight = false;
+	}
+
+
+	/**
+	 * Re-fills the message with the fields of another (already existing) message, as the package constructor does, and
+	 * marks it as a flyweight (used by the {@code PackedMessageStore} to deliver the unpacked messages without allocations).
+	 * @param _messageID			the unique identifier of the message
+	 * @param _messageType			the type of the message
+	 * @param _messageLocKey		the location key of the message
+	 * @param _lastHopFPeer			the FPeer that have sent the last time the message
+	 * @param _HTL					the HTL value of the message
+	 * @param _pathClosestLocKey	the closest FPeer location key encountered during the routing of the message
+	 * @param _THC					the THC value of the message
+	 * @param _creationTime			the simulated creation time of the request relative to the message
+	 * @param _responderFPeer		the FPeer that has answered the request relative to the message
+	 **/
+	void reload(long _messageID, Type _messageType, double _messageLocKey, FPeer _lastHopFPeer, int _HTL, double _pathClosestLocKey, int _THC, long _creationTime, FPeer _responderFPeer)
+	{
+		this.messageID = _messageID;
+		this.messageType = _messageType;
+		this.messageLocationKey = _messageLocKey;
+		this.lastHopFPeer = _lastHopFPeer;
+		this.HTL = _HTL;
+		this.pathClosestLocKey = _pathClosestLocKey;
+		this.THC = _THC;
+		this.creationTime = _creationTime;
+		this.responderFPeer = _responderFPeer;
+		this.frozen = false;
+		this.flyweight = true;
+	}
+
+
+	/**
+	 * Gets out the unique identifier that will be assigned to the next created message.
+	 * @return the next message identifier.
+	 **/
+	public static long getNextMessageID()
+	{
+		return SimulationContext.current().getNextMessageID();
+	}
+
+
+	/**
+	 * Changes the unique identifier that will be assigned to the next created message (e.g. when a simulation is resumed
+	 * from a checkpoint).
+	 * @param messageID the next message identifier
+	 **/
+	public static void setNextMessageID(long messageID)
+	{
+		SimulationContext.current().setNextMessageID(messageID);
+	}
+
+
+	/**
+	 * Checks that the message can be modified.
+	 * @throws IllegalStateException if the message is frozen.
+	 **/
+	private void checkMutable()
+	{
+		if (this.frozen)
+			throw new IllegalStateException("attempt to modify a frozen (shared) message...");
+	}
+
+
+	/**
+	 * Makes the message immutable, so that it can be safely shared by several receivers.
+	 **/
+	public void freeze()
+	{
+		this.frozen = true;
+	}
+
+
+	/**
+	 * Checks if the message is immutable.
+	 * @return {@code true} if the message is frozen. {@code false} otherwise.
+	 **/
+	public boolean isFrozen()
+	{
+		return this.frozen;
+	}
+
+
+	/**
+	 * Gets out a modifiable version of the message: the message itself, if it is not frozen, or a modifiable clone otherwise.
+	 * @return a modifiable version of the message.
+	 **/
+	public Message mutable()
+	{
+		if (!this.frozen)
+			return this;
+
+		Message m = (Message) this.clone();
+		m.frozen = false;
+		return m;
+	}
+
+
+	/**
+	 * Gets out a version of the message that can be kept after the end of the handling of its delivery (e.g. by a task
+	 * executed later): the message itself, if it is not a flyweight, or a clone otherwise.
+	 * @return a version of the message that can be kept.
+	 **/
+	public Message retain()
+	{
+		return this.flyweight ? (Message) this.clone() : this;
+	}
+
 	
 	/**
 	 * Gets out the unique identifier of the message.
@@ -83,6 +235,7 @@ public class Message implements Cloneable
 	 **/
 	public void changeMessageType(Type t)
 	{
+		checkMutable();
 		this.messageType = t;
 	}
 	
@@ -112,6 +265,7 @@ public class Message implements Cloneable
 	 **/
 	public void changeLastHopFPeer(FPeer fpeer)
 	{
+		checkMutable();
 		this.lastHopFPeer = fpeer;
 	}
 	
@@ -130,6 +284,7 @@ public class Message implements Cloneable
 	 **/
 	public void decreaseHTL()
 	{
+		checkMutable();
 		this.HTL--;
 	}
 	
@@ -140,6 +295,7 @@ public class Message implements Cloneable
 	 **/
 	public void resetHTLTo(int value)
 	{
+		checkMutable();
 		this.HTL = value;
 	}
 	
@@ -163,6 +319,7 @@ public class Message implements Cloneable
 	 */
 	public void changePathClosestLocKey(double locKey)
 	{
+		checkMutable();
 		this.pathClosestLocKey = locKey;
 	}
 	
@@ -182,10 +339,55 @@ public class Message implements Cloneable
 	 **/
 	public void increaseTHC()
 	{
+		checkMutable();
 		this.THC++;
 	}
 	
 	
+	/**
+	 * Gets out the simulated time at which the request relative to the message has been created.
+	 * @return the creation time of the request, or {@code -1} if not set.
+	 **/
+	public long getCreationTime()
+	{
+		return this.creationTime;
+	}
+	
+	
+	/**
+	 * Changes the simulated creation time of the request relative to the message with the passed value {@code time}.
+	 * @param time the creation time of the request
+	 **/
+	public void changeCreationTime(long time)
+	{
+		checkMutable();
+		this.creationTime = time;
+	}
+	
+	
+	/**
+	 * Gets out the reference to the FPeer that has answered the request relative to the message (e.g. the FPeer that has
+	 * found the content of a GET, or stored the content of a PUT). For a GET not found (or not yet found), it is the FPeer
+	 * closest to the content location key reached by the request.
+	 * @return the FPeer that has answered the request, or {@code null} if it is not answered yet.
+	 **/
+	public FPeer getResponderFPeer()
+	{
+		return this.responderFPeer;
+	}
+	
+	
+	/**
+	 * Changes the reference to the FPeer that has answered the request relative to the message with the passed reference {@code fpeer}.
+	 * @param fpeer the FPeer that answers the request
+	 **/
+	public void changeResponderFPeer(FPeer fpeer)
+	{
+		checkMutable();
+		this.responderFPeer = fpeer;
+	}
+	
+	
 	/**
 	 * Creates an exact clone of the message.
 	 * @return the clone of the message.
@@ -205,6 +407,9 @@ public class Message implements Cloneable
 			cloned_mex.HTL = this.HTL;
 			cloned_mex.pathClosestLocKey = this.pathClosestLocKey;
 			cloned_mex.THC = this.THC;
+			cloned_mex.creationTime = this.creationTime;
+			cloned_mex.responderFPeer = this.responderFPeer;
+			cloned_mex.flyweight = false;
 		}
 		catch (CloneNotSupportedException exc)
 		{
@@ -0,0 +1,50 @@
+package structure;
+
+import java.util.List;
+
+/**
+ *  Class that implements the event used to deliver the same (immutable) message to several FPeers with a single scheduling
+ *  operation. The receivers share the payload and copy it only if they need to modify or to forward it.
+ **/
+
+public class MulticastEnvelope
+{
+	// the frozen message shared by all the receivers
+	private final Message payload;
+
+	// the FPeers to which deliver the message, in delivery order
+	private final FPeer[] receivers;
+
+
+	/**
+	 * Constructor method. Freezes the passed message {@code _payload}, that must not be modified anymore by the sender.
+	 * @param _payload	 the message to deliver
+	 * @param _receivers the FPeers to which deliver the message
+	 **/
+	public MulticastEnvelope(Message _payload, List<FPeer> _receivers)
+	{
+		_payload.freeze();
+		this.payload = _payload;
+		this.receivers = _receivers.toArray(new FPeer[_receivers.size()]);
+	}
+
+
+	/**
+	 * Gets out the (frozen) message shared by all the receivers.
+	 * @return the message shared by all the receivers.
+	 **/
+	public Message getPayload()
+	{
+		return this.payload;
+	}
+
+
+	/**
+	 * Gets out the FPeers to which deliver the message.
+	 * @return the FPeers to which deliver the message.
+	 **/
+	public FPeer[] getReceivers()
+	{
+		return this.receivers;
+	}
+}
@@ -0,0 +1,238 @@
+package structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import engine.SimulationContext;
+
+/**
+ *  Class that holds the neighborhoods of the FPeers (with {@code columnarState}) as regions of shared columns: the serial
+ *  numbers of the neighbors and their cached location keys, instead of two arrays for each FPeer (see {@code LinkableProtocol}).
+ *  <br><br>
+ *
+ *  The columns are split in pages (of doubling size, up to {@code PAGE_SIZE} entries) that are never moved, so a neighborhood keeps the references
+ *  to the pages of its region. A region is allocated with the exact capacity when the final degree is known (e.g. at the
+ *  creation of the overlay network), otherwise with a power of two capacity: a region that is full is replaced by one of
+ *  double capacity, and the released regions are re-used by the next allocations of (at most) their capacity. A region
+ *  larger than a page takes a page of its own. <br><br>
+ *
+ *  The columns of a simulation are held by its {@code SimulationContext}, and the static methods act on the columns of the
+ *  running simulation (synchronized on them).
+ **/
+
+public class NeighborColumns
+{
+	// number of entries of the first page, and maximum number of entries of a page
+	private static final int FIRST_PAGE_SIZE = 1 << 10;
+	private static final int PAGE_SIZE = 1 << 14;
+
+	// capacity of the smallest region
+	public static final int MIN_CAPACITY = 8;
+
+	// the pages of the columns: serials and location keys of the neighbors
+	private final ArrayList<int[]> serialsPages;
+	private final ArrayList<double[]> locKeysPages;
+
+	// the page in which the regions are allocated (the pages of the regions larger than PAGE_SIZE are apart), its number of
+	// entries and its first free entry
+	private int lastPage;
+	private int lastPageSize;
+	private int top;
+
+	// the released regions, by capacity class (log2 of the capacity, rounded down): each one is (page << 32 | base)
+	private long[][] freeRegions;
+	private int[] freeCounts;
+
+	// number of entries in the regions currently allocated
+	private long allocatedEntries;
+
+
+	/**
+	 * Constructor method. Creates empty columns (the columns of a simulation are created by its context).
+	 **/
+	public NeighborColumns()
+	{
+		this.serialsPages = new ArrayList<int[]>();
+		this.locKeysPages = new ArrayList<double[]>();
+		this.lastPage = -1;
+		this.lastPageSize = 0;
+		this.top = 0;
+		this.freeRegions = new long[32][];
+		this.freeCounts = new int[32];
+		this.allocatedEntries = 0;
+	}
+
+
+	/**
+	 * Gets out the neighborhoods columns of the running simulation, held by the simulation context.
+	 * @return the neighborhoods columns of the running simulation.
+	 **/
+	private static NeighborColumns current()
+	{
+		return SimulationContext.current().getNeighborColumns();
+	}
+
+
+	/**
+	 * Allocates a region of the passed capacity {@code capacity}, exact or rounded up to a power of two (see {@code regionCapacity}).
+	 * @param capacity	the minimum capacity of the region
+	 * @param exact		flag that specifies if the region has exactly the passed capacity
+	 * @return the region, as {@code (page << 32 | base)}: see {@code getSerialsPage}, {@code getLocationKeysPage}
+	 * 		   and {@code getBase}.
+	 **/
+	public static long allocate(int capacity, boolean exact)
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			final int regionClass = capacityClass(capacity);
+			final int regionCapacity = exact ? capacity : 1 << regionClass;
+			nc.allocatedEntries += regionCapacity;
+
+			// re-use a released region of (at least) the same capacity, if any
+			if (!exact && nc.freeCounts[regionClass] > 0)
+				return nc.freeRegions[regionClass][--nc.freeCounts[regionClass]];
+
+			// a region larger than a page takes a page of its own
+			if (regionCapacity > PAGE_SIZE)
+			{
+				nc.serialsPages.add(new int[regionCapacity]);
+				nc.locKeysPages.add(new double[regionCapacity]);
+				return (long) (nc.serialsPages.size() - 1) << 32;
+			}
+
+			// open a new page, twice as large as the last one, if the region does not fit in the last one (the rest of the last
+			// page is left unused)
+			if (nc.top + regionCapacity > nc.lastPageSize)
+			{
+				nc.lastPageSize = Math.max(regionCapacity, Math.min(PAGE_SIZE, Math.max(FIRST_PAGE_SIZE, 2 * nc.lastPageSize)));
+				nc.serialsPages.add(new int[nc.lastPageSize]);
+				nc.locKeysPages.add(new double[nc.lastPageSize]);
+				nc.lastPage = nc.serialsPages.size() - 1;
+				nc.top = 0;
+			}
+
+			final long region = ((long) nc.lastPage << 32) | nc.top;
+			nc.top += regionCapacity;
+			return region;
+		}
+	}
+
+
+	/**
+	 * Releases the passed region {@code region}, of capacity {@code capacity}, so that it can be re-used.
+	 * @param region	the region to release
+	 * @param capacity	the capacity of the region
+	 **/
+	public static void release(long region, int capacity)
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			final int regionClass = 31 - Integer.numberOfLeadingZeros(capacity);
+			nc.allocatedEntries -= capacity;
+
+			if (nc.freeRegions[regionClass] == null)
+				nc.freeRegions[regionClass] = new long[16];
+			else if (nc.freeCounts[regionClass] == nc.freeRegions[regionClass].length)
+				nc.freeRegions[regionClass] = Arrays.copyOf(nc.freeRegions[regionClass], nc.freeCounts[regionClass] * 2);
+
+			nc.freeRegions[regionClass][nc.freeCounts[regionClass]++] = region;
+		}
+	}
+
+
+	/**
+	 * Computes the capacity of the region allocated for the passed minimum capacity {@code capacity}.
+	 * @param capacity the minimum capacity of the region
+	 * @return the smallest power of two not lower than {@code capacity} and {@code MIN_CAPACITY}.
+	 **/
+	public static int regionCapacity(int capacity)
+	{
+		return 1 << capacityClass(capacity);
+	}
+
+
+	/**
+	 * Computes the capacity class (log2 of the region capacity) for the passed minimum capacity {@code capacity}.
+	 * @param capacity the minimum capacity of the region
+	 * @return the capacity class.
+	 **/
+	private static int capacityClass(int capacity)
+	{
+		return 32 - Integer.numberOfLeadingZeros(Math.max(MIN_CAPACITY, capacity) - 1);
+	}
+
+
+	/**
+	 * Gets out the page of the serials column that holds the passed region {@code region}.
+	 * @param region the region
+	 * @return the page of the serials of the region.
+	 **/
+	public static int[] getSerialsPage(long region)
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			return nc.serialsPages.get((int) (region >>> 32));
+		}
+	}
+
+
+	/**
+	 * Gets out the page of the location keys column that holds the passed region {@code region}.
+	 * @param region the region
+	 * @return the page of the location keys of the region.
+	 **/
+	public static double[] getLocationKeysPage(long region)
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			return nc.locKeysPages.get((int) (region >>> 32));
+		}
+	}
+
+
+	/**
+	 * Gets out the index, in its pages, of the first entry of the passed region {@code region}.
+	 * @param region the region
+	 * @return the base index of the region.
+	 **/
+	public static int getBase(long region)
+	{
+		return (int) region;
+	}
+
+
+	/**
+	 * Gets out the memory, in bytes, occupied by the pages of the columns.
+	 * @return the memory of the columns.
+	 **/
+	public static long memoryBytes()
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			long bytes = 0;
+			for (int[] page : nc.serialsPages)
+				bytes += 12L * page.length;
+
+			return bytes;
+		}
+	}
+
+
+	/**
+	 * Gets out the number of entries of the regions currently allocated (used or not by the neighborhoods).
+	 * @return the number of allocated entries.
+	 **/
+	public static long getAllocatedEntries()
+	{
+		final NeighborColumns nc = current();
+		synchronized (nc)
+		{
+			return nc.allocatedEntries;
+		}
+	}
+}
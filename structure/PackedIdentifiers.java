@@ -0,0 +1,173 @@
+package structure;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ *  Class that implements a growable column of FPeers identifiers, indexed by position. The identifiers made of 32 (lowercase)
+ *  hexadecimal digits, as the ones of the Facebook Data Sets, are packed into two {@code long}s, instead of a string object
+ *  and its array of characters; the other identifiers are kept as strings.
+ **/
+
+public class PackedIdentifiers
+{
+	// the hexadecimal digits of the packed identifiers
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	// the packed identifiers (high and low 64 bits), by position
+	private long[] high;
+	private long[] low;
+
+	// the identifiers that cannot be packed, by position
+	private final HashMap<Integer, String> unpacked;
+
+	// the number of identifiers of the column
+	private int size;
+
+
+	/**
+	 * Constructor method.
+	 * @param initialCapacity the initial number of identifiers that the column can hold without being enlarged
+	 **/
+	public PackedIdentifiers(int initialCapacity)
+	{
+		this.high = new long[Math.max(1, initialCapacity)];
+		this.low = new long[Math.max(1, initialCapacity)];
+		this.unpacked = new HashMap<Integer, String>();
+		this.size = 0;
+	}
+
+
+	/**
+	 * Appends the passed identifier {@code ID} to the column.
+	 * @param ID the identifier to append
+	 * @return the position of the identifier.
+	 **/
+	public int add(String ID)
+	{
+		// if the column is full, doubles its capacity
+		if (this.size == this.high.length)
+		{
+			this.high = Arrays.copyOf(this.high, this.size * 2);
+			this.low = Arrays.copyOf(this.low, this.size * 2);
+		}
+
+		final int index = this.size++;
+		this.set(index, ID);
+
+		return index;
+	}
+
+
+	/**
+	 * Replaces the identifier at the passed position {@code index} with the passed identifier {@code ID} (e.g. when the
+	 * position is re-used).
+	 * @param index the position of the identifier
+	 * @param ID	the new identifier
+	 **/
+	public void set(int index, String ID)
+	{
+		if (ID != null && ID.length() == 32 && isHexadecimal(ID))
+		{
+			this.unpacked.remove(index);
+			this.high[index] = Long.parseUnsignedLong(ID.substring(0, 16), 16);
+			this.low[index] = Long.parseUnsignedLong(ID.substring(16), 16);
+		}
+		else
+			this.unpacked.put(index, ID);
+	}
+
+
+	/**
+	 * Clears the identifier at the passed position {@code index}, releasing its string (if it cannot be packed), until the
+	 * position is re-used (see {@code set}).
+	 * @param index the position of the identifier
+	 **/
+	public void clear(int index)
+	{
+		this.unpacked.remove(index);
+		this.high[index] = 0;
+		this.low[index] = 0;
+	}
+
+
+	/**
+	 * Checks if the passed string {@code s} is made only of lowercase hexadecimal digits.
+	 * @param s the string to check
+	 * @return {@code true} if {@code s} is an hexadecimal string. {@code false} otherwise.
+	 **/
+	private static boolean isHexadecimal(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+		{
+			final char c = s.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Gets out the identifier at the passed position {@code index} (a new string, for the packed identifiers).
+	 * @param index the position of the identifier
+	 * @return the identifier.
+	 **/
+	public String get(int index)
+	{
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException();
+
+		if (this.unpacked.containsKey(index))
+			return this.unpacked.get(index);
+
+		// unpack the identifier, most significant digit first
+		char[] digits = new char[32];
+		long h = this.high[index], l = this.low[index];
+		for (int i = 15; i >= 0; i--)
+		{
+			digits[i] = HEX_DIGITS[(int) (h & 0xf)];
+			digits[i + 16] = HEX_DIGITS[(int) (l & 0xf)];
+			h >>>= 4;
+			l >>>= 4;
+		}
+
+		return new String(digits);
+	}
+
+
+	/**
+	 * Gets out the approximate memory, in bytes, occupied by the column: 16 bytes for each packed identifier, and the
+	 * string and the map entry of each identifier that cannot be packed.
+	 * @return the memory of the column.
+	 **/
+	public long memoryBytes()
+	{
+		long bytes = 16L * this.high.length;
+		for (String ID : this.unpacked.values())
+			bytes += 72 + 2L * ID.length();
+
+		return bytes;
+	}
+
+
+	/**
+	 * Gets out the number of identifiers of the column.
+	 * @return the number of identifiers.
+	 **/
+	public int size()
+	{
+		return this.size;
+	}
+
+
+	/**
+	 * Trims the capacity of the column to its size (e.g. when no more identifiers will be appended).
+	 **/
+	public void trimToSize()
+	{
+		this.high = Arrays.copyOf(this.high, Math.max(1, this.size));
+		this.low = Arrays.copyOf(this.low, Math.max(1, this.size));
+	}
+}
@@ -0,0 +1,312 @@
+package structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import structure.Message.Type;
+
+/**
+ *  Class that implements a struct-of-arrays representation of the in-flight messages. Each message lives in a slot of
+ *  primitive columns (type, HTL and THC packed into a single long, identifier, location keys, serials of the last-hop
+ *  and responder FPeers and creation time), so that PeerSim events only need to carry the (cached, never re-allocated) integer handle of the slot.
+ *  Slots are recycled through a free-list, and a taken message is unpacked into a flyweight {@code Message} of the taking
+ *  thread (re-filled at every take, so valid only until the handling of its delivery ends: see {@code Message.retain}),
+ *  so the store does not produce garbage in steady state. The store and take operations are synchronized, so the store 
+ *  can be shared by the shards of the parallel engine; each simulation has its own store (see {@code SimulationContext}).
+ **/
+
+public class PackedMessageStore
+{
+	// initial number of slots of the store
+	private static final int INITIAL_CAPACITY = 256;
+
+	// bit layout of the packed header: [ type : 8 bits | HTL : 24 bits | THC : 32 bits ]
+	private static final int TYPE_SHIFT = 56;
+	private static final int HTL_SHIFT = 32;
+	private static final long HTL_MASK = 0xFFFFFFL;
+	private static final long THC_MASK = 0xFFFFFFFFL;
+
+	// cached array of the message types, indexed by ordinal
+	private static final Type[] TYPES = Type.values();
+
+	// packed (type, HTL, THC) column
+	private long[] headers;
+
+	// message identifiers column
+	private long[] messageIDs;
+
+	// message location keys column
+	private double[] messageLocationKeys;
+
+	// path-closest location keys column
+	private double[] pathClosestLocKeys;
+
+	// serials of the last-hop FPeers column (-1 if no last-hop FPeer)
+	private int[] lastHopSerials;
+
+	// creation times column
+	private long[] creationTimes;
+
+	// serials of the responder FPeers column (-1 if no responder FPeer)
+	private int[] responderSerials;
+
+	// boxed handles of the slots, allocated once per slot and re-used for all the messages stored in it
+	private Integer[] handles;
+
+	// stack of the free slots
+	private int[] freeSlots;
+
+	// number of free slots in the stack
+	private int freeCount;
+
+	// number of slots allocated up to now (high watermark)
+	private int allocated;
+
+	// flyweight message of each thread, into which the taken messages are unpacked
+	private final ThreadLocal<Message> flyweights = new ThreadLocal<Message>()
+	{
+		@Override
+		protected Message initialValue()
+		{
+			return new Message(-1, Type.GET, 0.0, null, 0, -1.0, 0, -1, null);
+		}
+	};
+
+
+	/**
+	 * Constructor method. Allocates the columns with a default initial capacity.
+	 **/
+	public PackedMessageStore()
+	{
+		this.allocateColumns(INITIAL_CAPACITY);
+		this.freeCount = 0;
+		this.allocated = 0;
+	}
+
+
+	/**
+	 * Allocates (or enlarges, preserving the content) all the columns of the store to the passed {@code capacity}.
+	 * @param capacity the new number of slots of the store
+	 **/
+	private void allocateColumns(int capacity)
+	{
+		final int oldCapacity = (this.headers == null) ? 0 : this.headers.length;
+
+		long[] newHeaders = new long[capacity];
+		long[] newMessageIDs = new long[capacity];
+		double[] newMessageLocationKeys = new double[capacity];
+		double[] newPathClosestLocKeys = new double[capacity];
+		int[] newLastHopSerials = new int[capacity];
+		long[] newCreationTimes = new long[capacity];
+		int[] newResponderSerials = new int[capacity];
+		Integer[] newHandles = new Integer[capacity];
+		int[] newFreeSlots = new int[capacity];
+
+		if (oldCapacity > 0)
+		{
+			System.arraycopy(this.headers, 0, newHeaders, 0, oldCapacity);
+			System.arraycopy(this.messageIDs, 0, newMessageIDs, 0, oldCapacity);
+			System.arraycopy(this.messageLocationKeys, 0, newMessageLocationKeys, 0, oldCapacity);
+			System.arraycopy(this.pathClosestLocKeys, 0, newPathClosestLocKeys, 0, oldCapacity);
+			System.arraycopy(this.lastHopSerials, 0, newLastHopSerials, 0, oldCapacity);
+			System.arraycopy(this.creationTimes, 0, newCreationTimes, 0, oldCapacity);
+			System.arraycopy(this.responderSerials, 0, newResponderSerials, 0, oldCapacity);
+			System.arraycopy(this.handles, 0, newHandles, 0, oldCapacity);
+			System.arraycopy(this.freeSlots, 0, newFreeSlots, 0, oldCapacity);
+		}
+
+		this.headers = newHeaders;
+		this.messageIDs = newMessageIDs;
+		this.messageLocationKeys = newMessageLocationKeys;
+		this.pathClosestLocKeys = newPathClosestLocKeys;
+		this.lastHopSerials = newLastHopSerials;
+		this.creationTimes = newCreationTimes;
+		this.responderSerials = newResponderSerials;
+		this.handles = newHandles;
+		this.freeSlots = newFreeSlots;
+	}
+
+
+	/**
+	 * Packs the passed type {@code t}, HTL value {@code HTL} and THC value {@code THC} into a single long.
+	 * @param t		the message type
+	 * @param HTL	the HTL value, in [-2^23, 2^23)
+	 * @param THC	the THC value
+	 * @return the packed header.
+	 **/
+	public static long packHeader(Type t, int HTL, int THC)
+	{
+		return ((long) t.ordinal() << TYPE_SHIFT) | ((HTL & HTL_MASK) << HTL_SHIFT) | (THC & THC_MASK);
+	}
+
+
+	/**
+	 * Extracts the message type from the passed packed header.
+	 * @param header the packed header
+	 * @return the message type.
+	 **/
+	public static Type unpackType(long header)
+	{
+		return TYPES[(int) (header >>> TYPE_SHIFT)];
+	}
+
+
+	/**
+	 * Extracts the (sign-extended) HTL value from the passed packed header.
+	 * @param header the packed header
+	 * @return the HTL value.
+	 **/
+	public static int unpackHTL(long header)
+	{
+		return ((int) ((header >>> HTL_SHIFT) & HTL_MASK) << 8) >> 8;
+	}
+
+
+	/**
+	 * Extracts the THC value from the passed packed header.
+	 * @param header the packed header
+	 * @return the THC value.
+	 **/
+	public static int unpackTHC(long header)
+	{
+		return (int) (header & THC_MASK);
+	}
+
+
+	/**
+	 * Stores the passed message {@code m} into a free slot of the store.
+	 * @param m the message to store
+	 * @return the (cached) handle of the slot in which the message is stored.
+	 **/
+	public synchronized Integer store(Message m)
+	{
+		// select a free slot, re-using a released one if possible
+		int slot;
+		if (this.freeCount > 0)
+			slot = this.freeSlots[--this.freeCount];
+		else
+		{
+			if (this.allocated == this.headers.length)
+				this.allocateColumns(this.headers.length * 2);
+
+			slot = this.allocated++;
+			this.handles[slot] = Integer.valueOf(slot);
+		}
+
+		// fill the slot columns with the message fields
+		final FPeer lastHop = m.getLastHopFPeer();
+		final FPeer responder = m.getResponderFPeer();
+		this.headers[slot] = packHeader(m.getMessageType(), m.getHTL(), m.getTHC());
+		this.messageIDs[slot] = m.getMessageID();
+		this.messageLocationKeys[slot] = m.getMessageLocationKey();
+		this.pathClosestLocKeys[slot] = m.getPathClosestLocKey();
+		this.lastHopSerials[slot] = (lastHop == null) ? -1 : lastHop.getSerial();
+		this.creationTimes[slot] = m.getCreationTime();
+		this.responderSerials[slot] = (responder == null) ? -1 : responder.getSerial();
+
+		return this.handles[slot];
+	}
+
+
+	/**
+	 * Unpacks the message stored in the slot having the passed {@code handle} into the flyweight message of the running
+	 * thread, and releases the slot. <br>
+	 * N.B. the returned message is re-filled by the next take of the same thread: to keep it after the handling of its
+	 * delivery, use {@code Message.retain}.
+	 * @param handle the handle of the slot to read
+	 * @return the flyweight message, filled with the message stored in the slot.
+	 **/
+	public Message take(int handle)
+	{
+		final Message m = this.flyweights.get();
+		this.unpack(handle, m);
+		return m;
+	}
+
+
+	/**
+	 * Fills the passed message {@code m} with the message stored in the slot having the passed {@code handle}, and
+	 * releases the slot.
+	 * @param handle the handle of the slot to read
+	 * @param m		 the message to fill
+	 **/
+	private synchronized void unpack(int handle, Message m)
+	{
+		final long header = this.headers[handle];
+		m.reload(this.messageIDs[handle], unpackType(header), this.messageLocationKeys[handle],
+				 FPeerDirectory.get(this.lastHopSerials[handle]), unpackHTL(header), this.pathClosestLocKeys[handle], unpackTHC(header),
+				 this.creationTimes[handle], FPeerDirectory.get(this.responderSerials[handle]));
+
+		// release the slot
+		this.freeSlots[this.freeCount++] = handle;
+	}
+
+
+	/**
+	 * Gets out the number of messages currently stored (in-flight) in the store.
+	 * @return the number of messages currently stored in the store.
+	 **/
+	public synchronized int size()
+	{
+		return this.allocated - this.freeCount;
+	}
+
+
+	/**
+	 * Writes the store content on the passed {@code out} stream, in a compact binary format.
+	 * @param out the stream on which write the store
+	 * @throws IOException if an error occurs during the writing
+	 **/
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(this.allocated);
+		out.writeInt(this.freeCount);
+
+		for (int i = 0; i < this.freeCount; i++)
+			out.writeInt(this.freeSlots[i]);
+
+		for (int slot = 0; slot < this.allocated; slot++)
+		{
+			out.writeLong(this.headers[slot]);
+			out.writeLong(this.messageIDs[slot]);
+			out.writeDouble(this.messageLocationKeys[slot]);
+			out.writeDouble(this.pathClosestLocKeys[slot]);
+			out.writeInt(this.lastHopSerials[slot]);
+			out.writeLong(this.creationTimes[slot]);
+			out.writeInt(this.responderSerials[slot]);
+		}
+	}
+
+
+	/**
+	 * Replaces the store content with the content read from the passed {@code in} stream, as written by {@code writeTo}.
+	 * @param in the stream from which read the store
+	 * @throws IOException if an error occurs during the reading
+	 **/
+	public void readFrom(DataInput in) throws IOException
+	{
+		final int readAllocated = in.readInt();
+		final int readFreeCount = in.readInt();
+
+		this.headers = null;
+		this.allocateColumns(Math.max(INITIAL_CAPACITY, readAllocated));
+		this.allocated = readAllocated;
+		this.freeCount = readFreeCount;
+
+		for (int i = 0; i < readFreeCount; i++)
+			this.freeSlots[i] = in.readInt();
+
+		for (int slot = 0; slot < readAllocated; slot++)
+		{
+			this.headers[slot] = in.readLong();
+			this.messageIDs[slot] = in.readLong();
+			this.messageLocationKeys[slot] = in.readDouble();
+			this.pathClosestLocKeys[slot] = in.readDouble();
+			this.lastHopSerials[slot] = in.readInt();
+			this.creationTimes[slot] = in.readLong();
+			this.responderSerials[slot] = in.readInt();
+			this.handles[slot] = Integer.valueOf(slot);
+		}
+	}
+}
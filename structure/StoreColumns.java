@@ -0,0 +1,244 @@
+package structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import engine.SimulationContext;
+
+/**
+ *  Class that holds the slots of the bounded stores of the FPeers (with {@code columnarState}) as rows of shared columns:
+ *  the keys, the LRU links and the CLOCK reference bits of the slots, and the cells of the hash tables, instead of five
+ *  arrays for each store (see {@code ContentStore}). <br><br>
+ *
+ *  All the rows of the columns have the same number of slots (the capacity of the stores) and of hash table cells, and the
+ *  columns are split in pages of rows (of doubling size, up to about {@code PAGE_SLOTS} slots) that are never moved, so a
+ *  store keeps the references to the pages of its row. A row is allocated at the first insertion of the store, and the
+ *  released rows are re-used by the next allocations. The columns of a simulation, by capacity, are held by its
+ *  {@code SimulationContext}.
+ **/
+
+public class StoreColumns
+{
+	// marker of the empty cells of the hash tables
+	private static final int NONE = -1;
+
+	// number of rows of the first page, and approximate maximum number of slots of a page
+	private static final int FIRST_PAGE_ROWS = 64;
+	private static final int PAGE_SLOTS = 1 << 14;
+
+	// number of slots and of hash table cells of a row
+	private final int rowSlots;
+	private final int rowCells;
+
+	// maximum number of rows of a page, and number of rows of the last page
+	private final int pageRows;
+	private int lastPageRows;
+
+	// the pages of the columns
+	private final ArrayList<double[]> keysPages;
+	private final ArrayList<int[]> prevPages;
+	private final ArrayList<int[]> nextPages;
+	private final ArrayList<boolean[]> referencedPages;
+	private final ArrayList<int[]> tablePages;
+
+	// the first free row of the last page
+	private int top;
+
+	// the released rows, each one as (page << 32 | row)
+	private long[] freeRows;
+	private int freeCount;
+
+
+	/**
+	 * Constructor method.
+	 * @param capacity the number of slots of a row
+	 **/
+	private StoreColumns(int capacity)
+	{
+		this.rowSlots = capacity;
+		this.rowCells = ContentStore.tableLength(capacity);
+		this.pageRows = Math.max(1, PAGE_SLOTS / capacity);
+		this.keysPages = new ArrayList<double[]>();
+		this.prevPages = new ArrayList<int[]>();
+		this.nextPages = new ArrayList<int[]>();
+		this.referencedPages = new ArrayList<boolean[]>();
+		this.tablePages = new ArrayList<int[]>();
+		this.lastPageRows = 0;
+		this.top = 0;
+		this.freeRows = new long[16];
+		this.freeCount = 0;
+	}
+
+
+	/**
+	 * Gets out the columns of the stores having the passed capacity {@code capacity}, creating them at the first request.
+	 * @param capacity the capacity of the stores
+	 * @return the columns of the stores.
+	 **/
+	static synchronized StoreColumns forCapacity(int capacity)
+	{
+		final HashMap<Integer, StoreColumns> columns = SimulationContext.current().getStoreColumns();
+		StoreColumns sc = columns.get(capacity);
+		if (sc == null)
+		{
+			sc = new StoreColumns(capacity);
+			columns.put(capacity, sc);
+		}
+
+		return sc;
+	}
+
+
+	/**
+	 * Allocates a row, with all the hash table cells empty.
+	 * @return the row, as {@code (page << 32 | row)}.
+	 **/
+	synchronized long allocate()
+	{
+		long row;
+		if (this.freeCount > 0)
+			row = this.freeRows[--this.freeCount];
+		else
+		{
+			// open a new page, twice as large as the last one, if the last one is full
+			if (this.top == this.lastPageRows)
+			{
+				this.lastPageRows = Math.min(this.pageRows, Math.max(FIRST_PAGE_ROWS, 2 * this.lastPageRows));
+				this.keysPages.add(new double[this.lastPageRows * this.rowSlots]);
+				this.prevPages.add(new int[this.lastPageRows * this.rowSlots]);
+				this.nextPages.add(new int[this.lastPageRows * this.rowSlots]);
+				this.referencedPages.add(new boolean[this.lastPageRows * this.rowSlots]);
+				this.tablePages.add(new int[this.lastPageRows * this.rowCells]);
+				this.top = 0;
+			}
+
+			row = ((long) (this.keysPages.size() - 1) << 32) | this.top++;
+		}
+
+		// a re-used row keeps the cells of its previous store
+		final int cellsBase = this.getCellsBase(row);
+		Arrays.fill(this.getTablePage(row), cellsBase, cellsBase + this.rowCells, NONE);
+
+		return row;
+	}
+
+
+	/**
+	 * Releases the passed row {@code row}, so that it can be re-used.
+	 * @param row the row to release
+	 **/
+	synchronized void release(long row)
+	{
+		if (this.freeCount == this.freeRows.length)
+			this.freeRows = Arrays.copyOf(this.freeRows, this.freeCount * 2);
+
+		this.freeRows[this.freeCount++] = row;
+	}
+
+
+	/**
+	 * Gets out the number of hash table cells of a row.
+	 * @return the number of cells of a row.
+	 **/
+	int getRowCells()
+	{
+		return this.rowCells;
+	}
+
+
+	/**
+	 * Gets out the index, in the pages of the slots, of the first slot of the passed row {@code row}.
+	 * @param row the row
+	 * @return the index of the first slot of the row.
+	 **/
+	int getSlotsBase(long row)
+	{
+		return (int) row * this.rowSlots;
+	}
+
+
+	/**
+	 * Gets out the index, in the pages of the hash tables, of the first cell of the passed row {@code row}.
+	 * @param row the row
+	 * @return the index of the first cell of the row.
+	 **/
+	int getCellsBase(long row)
+	{
+		return (int) row * this.rowCells;
+	}
+
+
+	/**
+	 * Gets out the page of the keys that holds the passed row {@code row}.
+	 * @param row the row
+	 * @return the page of the keys of the row.
+	 **/
+	synchronized double[] getKeysPage(long row)
+	{
+		return this.keysPages.get((int) (row >>> 32));
+	}
+
+
+	/**
+	 * Gets out the page of the LRU links to the previous slots that holds the passed row {@code row}.
+	 * @param row the row
+	 * @return the page of the previous links of the row.
+	 **/
+	synchronized int[] getPrevPage(long row)
+	{
+		return this.prevPages.get((int) (row >>> 32));
+	}
+
+
+	/**
+	 * Gets out the page of the LRU links to the next slots that holds the passed row {@code row}.
+	 * @param row the row
+	 * @return the page of the next links of the row.
+	 **/
+	synchronized int[] getNextPage(long row)
+	{
+		return this.nextPages.get((int) (row >>> 32));
+	}
+
+
+	/**
+	 * Gets out the page of the CLOCK reference bits that holds the passed row {@code row}.
+	 * @param row the row
+	 * @return the page of the reference bits of the row.
+	 **/
+	synchronized boolean[] getReferencedPage(long row)
+	{
+		return this.referencedPages.get((int) (row >>> 32));
+	}
+
+
+	/**
+	 * Gets out the page of the hash tables that holds the passed row {@code row}.
+	 * @param row the row
+	 * @return the page of the hash table cells of the row.
+	 **/
+	synchronized int[] getTablePage(long row)
+	{
+		return this.tablePages.get((int) (row >>> 32));
+	}
+
+
+	/**
+	 * Gets out the memory, in bytes, occupied by the pages of the columns of all the capacities.
+	 * @return the memory of the columns.
+	 **/
+	public static synchronized long memoryBytes()
+	{
+		long bytes = 0;
+		for (StoreColumns sc : SimulationContext.current().getStoreColumns().values())
+			synchronized (sc)
+			{
+				// 8 bytes of key, 4 + 4 of LRU links and 1 of reference bit for each slot, 4 bytes for each cell
+				for (int[] page : sc.tablePages)
+					bytes += (long) (page.length / sc.rowCells) * (17L * sc.rowSlots + 4L * sc.rowCells);
+			}
+
+		return bytes;
+	}
+}
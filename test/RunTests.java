@@ -0,0 +1,51 @@
+import java.util.Properties;
+
+import control.CheckpointTest;
+import engine.CalendarEventQueueTest;
+import peersim.config.Configuration;
+import protocol.LinkableProtocolTest;
+import structure.ContentStoreTest;
+import structure.CountingBloomFilterTest;
+import structure.DistanceKernelsTest;
+import structure.LatencyHistogramTest;
+import structure.LocationRingTest;
+import structure.PackedMessageStoreTest;
+
+/**
+ *  Runs all the tests of the data structures, of the protocols and of the checkpoints. Each test class can also be run alone (it has its own
+ *  {@code main}); a failed check throws an {@code AssertionError}. <br><br>
+ *
+ *  The tests are compiled on top of the classes of the simulator, e.g. from the root of the project: <br>
+ *  {@code javac -cp <classes>:lib/peersim-1.0.5.jar -d <test classes> $(find test -name "*.java")} <br>
+ *  {@code java -cp <test classes>:<classes>:lib/peersim-1.0.5.jar:lib/jep-2.3.0.jar:lib/djep-1.0.0.jar RunTests} <br>
+ *  adding {@code --add-modules jdk.incubator.vector} to the run, to test also the Vector API kernels.
+ **/
+
+public class RunTests
+{
+	/**
+	 * Runs all the tests.
+	 * @param args not used
+	 * @throws Exception if a test fails
+	 **/
+	public static void main(String[] args) throws Exception
+	{
+		// the PeerSim configuration can be set only once, so it is filled with the parameters of all the tests
+		Properties config = new Properties();
+		CalendarEventQueueTest.configure(config);
+		LinkableProtocolTest.configure(config);
+		Configuration.setConfig(config);
+
+		ContentStoreTest.main(args);
+		CountingBloomFilterTest.main(args);
+		LatencyHistogramTest.main(args);
+		PackedMessageStoreTest.run();
+		CalendarEventQueueTest.run();
+		DistanceKernelsTest.main(args);
+		LinkableProtocolTest.run();
+		LocationRingTest.main(args);
+		CheckpointTest.main(args);
+
+		System.out.println("All the tests passed.");
+	}
+}
@@ -0,0 +1,177 @@
+package control;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ *  Tests of the checkpoints ({@code CheckpointWriter} and {@code CheckpointInit}): a checkpoint written during a simulation
+ *  of {@code run/conf.cfg}, resumed by another simulation and immediately written again (before any event), gives the same
+ *  file but the time field. <br><br>
+ *
+ *  PeerSim keeps its state in static fields, so each simulation runs in its own JVM, in a temporary directory that has the
+ *  layout of the project (the simulations write their files in {@code ../statistics} and {@code ../checkpoints}). The test
+ *  must be run from the root of the project.
+ **/
+
+public class CheckpointTest
+{
+	// the configuration file of the simulations, and the Data Set of their overlay network
+	private static final File CONFIG = new File("run/conf.cfg");
+	private static final File DATASET = new File("datasets/FacebookDataset_Small.csv");
+
+	// the time at which the first simulation writes the checkpoint, and its end time
+	private static final long CHECKPOINT_TIME = 150;
+	private static final long END_TIME = 200;
+
+
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 * @throws Exception if a simulation can not be run, or a checkpoint can not be read
+	 **/
+	public static void main(String[] args) throws Exception
+	{
+		writeResumeWrite();
+
+		System.out.println("CheckpointTest: OK");
+	}
+
+
+	/**
+	 * Checks that a checkpoint, resumed and written again at the time 0 of the resumed simulation, is the same but the time
+	 * field (the neighborhoods, the stores and the HashMaps are not empty at the checkpoint time, and the FPeers use the
+	 * columnar layout with bounded stores).
+	 * @throws Exception if a simulation can not be run, or a checkpoint can not be read
+	 **/
+	private static void writeResumeWrite() throws Exception
+	{
+		final File root = Files.createTempDirectory("checkpoint-test").toFile();
+		final File runDir = new File(root, "run");
+		final File checkpointsDir = new File(root, "checkpoints");
+		check(runDir.mkdir() && checkpointsDir.mkdir() && new File(root, "statistics").mkdir(), "temporary directories created");
+
+		// the first simulation writes the checkpoint at CHECKPOINT_TIME
+		simulate(runDir, "simulation.endtime=" + END_TIME, "control.zcheckpoint=control.CheckpointWriter", "control.zcheckpoint.linkable_pid=lp",
+				 "control.zcheckpoint.protocol=hp", "control.zcheckpoint.file=../checkpoints/first.ckpt", "control.zcheckpoint.at=" + CHECKPOINT_TIME);
+
+		// the second one resumes it and writes it again at time 0, before the first cycles and the first shuffle
+		simulate(runDir, "simulation.endtime=1", "init.ovinit=control.CheckpointInit", "init.ovinit.protocol=hp", "init.ovinit.file=../checkpoints/first.ckpt",
+				 "protocol.hp.from=1", "control.shf.from=1", "control.zcheckpoint=control.CheckpointWriter", "control.zcheckpoint.linkable_pid=lp",
+				 "control.zcheckpoint.protocol=hp", "control.zcheckpoint.file=../checkpoints/second.ckpt", "control.zcheckpoint.at=0");
+
+		final byte[] first = readCheckpoint(new File(checkpointsDir, "first.ckpt"));
+		final byte[] second = readCheckpoint(new File(checkpointsDir, "second.ckpt"));
+
+		// header: magic number, version and time (the only field that differs)
+		DataInputStream firstHeader = new DataInputStream(new ByteArrayInputStream(first));
+		DataInputStream secondHeader = new DataInputStream(new ByteArrayInputStream(second));
+		check(firstHeader.readInt() == CheckpointWriter.MAGIC && firstHeader.readInt() == CheckpointWriter.VERSION, "header of the first checkpoint");
+		check(secondHeader.readInt() == CheckpointWriter.MAGIC && secondHeader.readInt() == CheckpointWriter.VERSION, "header of the second checkpoint");
+		check(firstHeader.readLong() == CHECKPOINT_TIME && secondHeader.readLong() == 0, "times of the checkpoints");
+
+		final int headerSize = 16;
+		check(first.length == second.length, "size of the checkpoints (" + first.length + " and " + second.length + " bytes)");
+		check(Arrays.equals(Arrays.copyOfRange(first, headerSize, first.length), Arrays.copyOfRange(second, headerSize, second.length)),
+			  "same checkpoints but the time");
+
+		// the temporary directory is removed only if the test passes (otherwise the logs of the simulations are kept)
+		delete(root);
+	}
+
+
+	/**
+	 * Runs a simulation of the configuration file, in a new JVM having the class path of the test.
+	 * @param runDir	the working directory of the simulation
+	 * @param overrides	the parameters of the configuration to override, as "name=value"
+	 * @throws IOException if the simulation can not be started
+	 * @throws InterruptedException if the test is interrupted while waiting for the simulation
+	 **/
+	private static void simulate(File runDir, String... overrides) throws IOException, InterruptedException
+	{
+		// the entries of the class path are made absolute, since the simulation runs in another directory
+		StringBuilder classPath = new StringBuilder();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+			classPath.append((classPath.length() > 0) ? File.pathSeparator : "").append(new File(entry).getAbsolutePath());
+
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(classPath.toString());
+		command.add("peersim.Simulator");
+		command.add(CONFIG.getAbsolutePath());
+		command.add("init.ovinit.dataset_path=" + DATASET.getAbsolutePath());
+		command.add("init.statinit.dataset_path=" + DATASET.getAbsolutePath());
+		command.add("network.node.storeCapacity=12");
+		command.add("network.node.columnarState=true");
+		command.addAll(Arrays.asList(overrides));
+
+		final File log = new File(runDir, "simulation.log");
+		Process simulation = new ProcessBuilder(command).directory(runDir).redirectErrorStream(true).redirectOutput(log).start();
+		check(simulation.waitFor() == 0, "simulation ended (see " + log.getAbsolutePath() + ")");
+	}
+
+
+	/**
+	 * Reads the whole (uncompressed) content of the passed checkpoint file.
+	 * @param file the checkpoint file
+	 * @return the bytes of the checkpoint.
+	 * @throws IOException if the file can not be read
+	 **/
+	private static byte[] readCheckpoint(File file) throws IOException
+	{
+		check(file.isFile(), "checkpoint " + file.getName() + " written");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = null;
+		try
+		{
+			in = new GZIPInputStream(new FileInputStream(file));
+			final byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				bytes.write(buffer, 0, read);
+		}
+		finally
+		{
+			if (in != null)
+				in.close();
+		}
+
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Deletes the passed file or directory, with all its content.
+	 * @param file the file or directory to delete
+	 **/
+	private static void delete(File file)
+	{
+		final File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("CheckpointTest: " + what);
+	}
+}
@@ -0,0 +1,185 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+
+import peersim.config.Configuration;
+import peersim.edsim.PriorityQ;
+
+/**
+ *  Tests of the {@code CalendarEventQueue}: time order, FIFO order of the events having the same time, events beyond the
+ *  ring window (overflow), events with explicit priority, and a random sequence of additions and removals checked against
+ *  a reference ordering, on a ring of a few buckets so that the window wraps many times.
+ **/
+
+public class CalendarEventQueueTest
+{
+	// the prefix of the tested queues, with a ring of 4 buckets (see "configure")
+	private static final String PREFIX = "queue";
+
+
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 **/
+	public static void main(String[] args)
+	{
+		Properties config = new Properties();
+		configure(config);
+		Configuration.setConfig(config);
+
+		run();
+	}
+
+
+	/**
+	 * Adds to the passed PeerSim configuration {@code config} the parameters of the tested queues (the configuration can
+	 * be set only once, so the runner of all the tests sets it for all of them).
+	 * @param config the configuration to fill
+	 **/
+	public static void configure(Properties config)
+	{
+		config.setProperty(PREFIX + ".buckets", "4");
+	}
+
+
+	/**
+	 * Runs all the tests of the class, with the configuration already set.
+	 **/
+	public static void run()
+	{
+		timeAndFifoOrder();
+		overflowEvents();
+		prioritizedEvents();
+		randomSequence();
+
+		System.out.println("CalendarEventQueueTest: OK");
+	}
+
+
+	/**
+	 * Checks that the events are removed in time order, and in insertion order among the events having the same time.
+	 **/
+	private static void timeAndFifoOrder()
+	{
+		CalendarEventQueue queue = new CalendarEventQueue(PREFIX);
+		queue.add(2, "c", null, (byte) 0);
+		queue.add(1, "a", null, (byte) 0);
+		queue.add(2, "d", null, (byte) 0);
+		queue.add(1, "b", null, (byte) 0);
+		queue.add(3, "e", null, (byte) 0);
+		check(queue.size() == 5, "size");
+
+		check(removed(queue).equals("a@1 b@1 c@2 d@2 e@3"), "time and FIFO order");
+		check(queue.size() == 0 && queue.removeFirst() == null, "empty queue");
+	}
+
+
+	/**
+	 * Checks the order of the events beyond the ring window, also when they are added before earlier events.
+	 **/
+	private static void overflowEvents()
+	{
+		CalendarEventQueue queue = new CalendarEventQueue(PREFIX);
+		queue.add(100, "x", null, (byte) 0);
+		queue.add(9, "w", null, (byte) 0);
+		queue.add(100, "y", null, (byte) 0);
+		queue.add(2, "v", null, (byte) 0);
+		queue.add(1000000, "z", null, (byte) 0);
+
+		check(removed(queue).equals("v@2 w@9 x@100 y@100 z@1000000"), "overflow order");
+
+		// the events added at the current time, after a jump of the window, are delivered at that time
+		queue.add(1000005, "b", null, (byte) 0);
+		queue.add(1000000, "a", null, (byte) 0);
+		check(removed(queue).equals("a@1000000 b@1000005"), "events after the jump");
+	}
+
+
+	/**
+	 * Checks that the events having an explicit priority are removed before the other events having the same time, in
+	 * priority order.
+	 **/
+	private static void prioritizedEvents()
+	{
+		CalendarEventQueue queue = new CalendarEventQueue(PREFIX);
+		queue.add(5, "a", null, (byte) 0);
+		queue.add(5, "p2", null, (byte) 0, 2);
+		queue.add(3, "b", null, (byte) 0);
+		queue.add(5, "p1", null, (byte) 0, 1);
+		queue.add(6, "c", null, (byte) 0);
+		queue.add(20, "p0", null, (byte) 0, 0);
+
+		check(removed(queue).equals("b@3 p1@5 p2@5 a@5 c@6 p0@20"), "prioritized order");
+	}
+
+
+	/**
+	 * Checks a random sequence of additions (never in the past) and removals against the reference order (time, then
+	 * insertion).
+	 **/
+	private static void randomSequence()
+	{
+		CalendarEventQueue queue = new CalendarEventQueue(PREFIX);
+		Random random = new Random(42);
+
+		// the reference queue: the times and the insertion numbers of the enqueued events
+		ArrayList<long[]> reference = new ArrayList<long[]>();
+		long now = 0, seq = 0;
+
+		for (int op = 0; op < 20000; op++)
+		{
+			if (reference.isEmpty() || random.nextInt(3) > 0)
+			{
+				// mostly short delays (in the ring), sometimes long ones (in the overflow heap)
+				final long time = now + ((random.nextInt(10) == 0) ? random.nextInt(100) : random.nextInt(4));
+				queue.add(time, Long.valueOf(seq), null, (byte) 0);
+				reference.add(new long[] {time, seq++});
+				continue;
+			}
+
+			int first = 0;
+			for (int i = 1; i < reference.size(); i++)
+			{
+				final long[] e = reference.get(i), f = reference.get(first);
+				if (e[0] < f[0] || (e[0] == f[0] && e[1] < f[1]))
+					first = i;
+			}
+
+			final long[] expected = reference.remove(first);
+			final PriorityQ.Event ev = queue.removeFirst();
+			check(ev.time == expected[0] && ((Long) ev.event).longValue() == expected[1],
+				  "operation " + op + ": expected " + expected[1] + "@" + expected[0] + ", removed " + ev.event + "@" + ev.time);
+			check(queue.size() == reference.size(), "size at operation " + op);
+			now = ev.time;
+		}
+	}
+
+
+	/**
+	 * Removes all the events of the passed queue {@code queue}.
+	 * @param queue the queue to empty
+	 * @return the removed events, as "event@time" separated by spaces.
+	 **/
+	private static String removed(CalendarEventQueue queue)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (PriorityQ.Event ev = queue.removeFirst(); ev != null; ev = queue.removeFirst())
+			sb.append((sb.length() > 0) ? " " : "").append(ev.event).append("@").append(ev.time);
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("CalendarEventQueueTest: " + what);
+	}
+}
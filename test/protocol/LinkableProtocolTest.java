@@ -0,0 +1,235 @@
+package protocol;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Random;
+
+import peersim.config.Configuration;
+import structure.FPeer;
+
+/**
+ *  Tests of the {@code LinkableProtocol} after the location keys swaps: membership, search by location key, order and
+ *  removal of the neighbors of the FPeers involved (and of their neighbors) checked against a reference adjacency, with
+ *  the neighborhoods held by the protocols and by the shared columns, and the removal of a neighbor reached by an
+ *  asymmetric link, whose swap does not mark the neighborhood as dirty.
+ **/
+
+public class LinkableProtocolTest
+{
+	// the name of the tested Linkable protocol, and the prefixes of the FPeers with and without the columnar layout
+	private static final String LINKABLE = "lp";
+	private static final String PREFIX = "fpeer";
+	private static final String COLUMNAR_PREFIX = "cfpeer";
+
+	// counter of the created FPeers, used for their identifiers
+	private static int created = 0;
+
+
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 **/
+	public static void main(String[] args)
+	{
+		Properties config = new Properties();
+		configure(config);
+		Configuration.setConfig(config);
+
+		run();
+	}
+
+
+	/**
+	 * Adds to the passed PeerSim configuration {@code config} the protocol of the tested FPeers and their layouts (the
+	 * configuration can be set only once, so the runner of all the tests sets it for all of them).
+	 * @param config the configuration to fill
+	 **/
+	public static void configure(Properties config)
+	{
+		config.setProperty("protocol." + LINKABLE, LinkableProtocol.class.getName());
+		config.setProperty(COLUMNAR_PREFIX + ".columnarState", "true");
+	}
+
+
+	/**
+	 * Runs all the tests of the class, with the configuration already set.
+	 **/
+	public static void run()
+	{
+		final int pid = Configuration.lookupPid(LINKABLE);
+
+		swapsAgainstReference(PREFIX, pid);
+		swapsAgainstReference(COLUMNAR_PREFIX, pid);
+		asymmetricLinkRemoval(PREFIX, pid);
+		asymmetricLinkRemoval(COLUMNAR_PREFIX, pid);
+
+		System.out.println("LinkableProtocolTest: OK");
+	}
+
+
+	/**
+	 * Checks, after each of a random sequence of swaps, the neighborhoods of the swapped FPeers and of their neighbors against
+	 * a reference adjacency; at last, removes all the links and checks that the neighborhoods are empty.
+	 * @param prefix	the prefix of the FPeers to create
+	 * @param pid		the protocol identifier of the Linkable protocol
+	 **/
+	private static void swapsAgainstReference(String prefix, int pid)
+	{
+		Random random = new Random(3);
+		final int n = 60;
+		ArrayList<FPeer> fpeers = createFPeers(prefix, n, random);
+
+		// the reference adjacency: symmetric links between pseudo-random FPeers
+		ArrayList<HashSet<FPeer>> adjacency = new ArrayList<HashSet<FPeer>>();
+		for (int i = 0; i < n; i++)
+			adjacency.add(new HashSet<FPeer>());
+		for (int link = 0; link < 4 * n; link++)
+		{
+			final int i = random.nextInt(n), j = random.nextInt(n);
+			if (i != j && fpeers.get(i).linkWith(fpeers.get(j), pid))
+			{
+				adjacency.get(i).add(fpeers.get(j));
+				adjacency.get(j).add(fpeers.get(i));
+			}
+		}
+
+		for (int swap = 0; swap < 300; swap++)
+		{
+			final int i = random.nextInt(n), j = random.nextInt(n);
+			if (i == j)
+				continue;
+
+			// after the swap, the two FPeers are always neighbors of each other
+			fpeers.get(i).swapWith(fpeers.get(j), pid);
+			adjacency.get(i).add(fpeers.get(j));
+			adjacency.get(j).add(fpeers.get(i));
+
+			// the neighborhoods of the swapped FPeers and of their neighbors are the affected ones
+			HashSet<FPeer> affected = new HashSet<FPeer>(adjacency.get(i));
+			affected.addAll(adjacency.get(j));
+			for (FPeer fpeer : affected)
+				checkNeighborhood(fpeer, adjacency.get(fpeers.indexOf(fpeer)), fpeers, pid, "swap " + swap);
+		}
+
+		// remove all the links (each one from both the sides), checking the neighborhoods after each removal
+		for (int i = 0; i < n; i++)
+		{
+			final FPeer fpeer = fpeers.get(i);
+			for (FPeer neighbor : new ArrayList<FPeer>(adjacency.get(i)))
+			{
+				final int j = fpeers.indexOf(neighbor);
+				check(lp(fpeer, pid).removeNeighbor(neighbor) && lp(neighbor, pid).removeNeighbor(fpeer), prefix + ": link " + i + "-" + j + " removed");
+				check(!lp(fpeer, pid).removeNeighbor(neighbor), prefix + ": link " + i + "-" + j + " removed only once");
+				adjacency.get(i).remove(neighbor);
+				adjacency.get(j).remove(fpeer);
+				checkNeighborhood(fpeer, adjacency.get(i), fpeers, pid, "removal of " + i + "-" + j);
+				checkNeighborhood(neighbor, adjacency.get(j), fpeers, pid, "removal of " + j + "-" + i);
+			}
+		}
+
+		for (FPeer fpeer : fpeers)
+			check(lp(fpeer, pid).degree() == 0, prefix + ": empty neighborhoods");
+	}
+
+
+	/**
+	 * Checks the removal of a neighbor reached by an asymmetric link (the neighbor does not link back): its swap does not
+	 * mark the neighborhood as dirty, so the removal can not find it by its (new) location key.
+	 * @param prefix	the prefix of the FPeers to create
+	 * @param pid		the protocol identifier of the Linkable protocol
+	 **/
+	private static void asymmetricLinkRemoval(String prefix, int pid)
+	{
+		ArrayList<FPeer> fpeers = createFPeers(prefix, 5, new Random(5));
+		final FPeer x = fpeers.get(0), a = fpeers.get(1), b = fpeers.get(2);
+
+		// "x" links to "a" (not back), and to two other FPeers; "a" and "b" are not neighbors of "x" after the swap
+		lp(x, pid).addNeighbor(a);
+		lp(x, pid).addNeighbor(fpeers.get(3));
+		lp(x, pid).addNeighbor(fpeers.get(4));
+		a.swapWith(b, pid);
+
+		check(lp(x, pid).removeNeighbor(a), prefix + ": stale neighbor removed");
+		check(lp(x, pid).degree() == 2 && !lp(x, pid).removeNeighbor(a), prefix + ": stale neighbor removed only once");
+		check(!lp(x, pid).removeNeighbor(b), prefix + ": not neighbor FPeer not removed");
+
+		HashSet<FPeer> expected = new HashSet<FPeer>();
+		expected.add(fpeers.get(3));
+		expected.add(fpeers.get(4));
+		checkNeighborhood(x, expected, fpeers, pid, "removal of the stale neighbor");
+	}
+
+
+	/**
+	 * Checks the neighborhood of {@code fpeer} against the expected neighbors: the membership of all the FPeers, the search
+	 * of each neighbor by its location key and the order of the neighbors by location key.
+	 * @param fpeer		the FPeer whose neighborhood is checked
+	 * @param expected	the expected neighbors of {@code fpeer}
+	 * @param fpeers	all the created FPeers
+	 * @param pid		the protocol identifier of the Linkable protocol
+	 * @param when		the description of the moment of the check
+	 **/
+	private static void checkNeighborhood(FPeer fpeer, HashSet<FPeer> expected, ArrayList<FPeer> fpeers, int pid, String when)
+	{
+		final LinkableProtocol lp = lp(fpeer, pid);
+		check(lp.degree() == expected.size(), when + ": degree of " + fpeer.getIdentifier());
+
+		for (FPeer other : fpeers)
+			check(lp.contains(other) == expected.contains(other), when + ": membership of " + other.getIdentifier() + " in " + fpeer.getIdentifier());
+
+		for (FPeer neighbor : expected)
+			check(lp.getNeighborByLocationKey(neighbor.getLocationKey()) == neighbor, when + ": search of " + neighbor.getIdentifier() + " in " + fpeer.getIdentifier());
+
+		double previous = -1.0;
+		Iterator<FPeer> it = lp.getNeighborsIterator();
+		while (it.hasNext())
+		{
+			final double locKey = it.next().getLocationKey();
+			check(locKey > previous, when + ": order of the neighbors of " + fpeer.getIdentifier());
+			previous = locKey;
+		}
+	}
+
+
+	/**
+	 * Creates {@code n} FPeers having distinct pseudo-random location keys.
+	 * @param prefix	the prefix of the FPeers to create
+	 * @param n			the number of FPeers to create
+	 * @param random	the pseudo-random generator of the location keys
+	 * @return the created FPeers.
+	 **/
+	private static ArrayList<FPeer> createFPeers(String prefix, int n, Random random)
+	{
+		ArrayList<FPeer> fpeers = new ArrayList<FPeer>(n);
+		for (int i = 0; i < n; i++)
+			fpeers.add(new FPeer(prefix, "test" + (created++), random.nextDouble()));
+
+		return fpeers;
+	}
+
+
+	/**
+	 * Gets out the Linkable protocol of the passed FPeer.
+	 * @param fpeer	the FPeer
+	 * @param pid	the protocol identifier of the Linkable protocol
+	 * @return the Linkable protocol of {@code fpeer}.
+	 **/
+	private static LinkableProtocol lp(FPeer fpeer, int pid)
+	{
+		return (LinkableProtocol) fpeer.getProtocol(pid);
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("LinkableProtocolTest: " + what);
+	}
+}
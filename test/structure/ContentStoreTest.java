@@ -0,0 +1,174 @@
+package structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import structure.ContentStore.Policy;
+
+/**
+ *  Tests of the {@code ContentStore}: eviction order of the LRU and CLOCK policies, accesses that do not count for the
+ *  replacement ({@code peek}), growth of the unbounded stores, Bloom filter following the evictions, rows of the shared
+ *  {@code StoreColumns} and binary round trip.
+ **/
+
+public class ContentStoreTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 * @throws IOException if the round trip fails
+	 **/
+	public static void main(String[] args) throws IOException
+	{
+		lruEvictsLeastRecentlyUsed(false);
+		lruEvictsLeastRecentlyUsed(true);
+		clockGivesSecondChance(false);
+		clockGivesSecondChance(true);
+		peekDoesNotTouch();
+		unboundedStoreGrows();
+		filterFollowsEvictions();
+		roundTrip();
+
+		System.out.println("ContentStoreTest: OK");
+	}
+
+
+	/**
+	 * Checks that the LRU policy evicts the least recently added or accessed key.
+	 * @param columnar flag that specifies if the store is held by the shared columns
+	 **/
+	private static void lruEvictsLeastRecentlyUsed(boolean columnar)
+	{
+		ContentStore store = new ContentStore(3, Policy.LRU, 0, 0, columnar);
+		check(store.isColumnar() == columnar, "columnar layout");
+
+		store.add(0.1);
+		store.add(0.2);
+		store.add(0.3);
+		check(store.size() == 3 && store.getEvictions() == 0, "no eviction before the capacity");
+
+		// 0.1 becomes the most recently used, so 0.2 is the first victim
+		check(store.contains(0.1), "stored key");
+		check(!store.add(0.1), "duplicated key not added");
+		store.add(0.4);
+		check(!store.peek(0.2), "least recently used key evicted");
+		check(store.peek(0.1) && store.peek(0.3) && store.peek(0.4), "other keys kept");
+
+		store.add(0.5);
+		check(!store.peek(0.3), "next least recently used key evicted");
+		check(store.size() == 3 && store.getEvictions() == 2, "evictions counted");
+
+		store.release();
+	}
+
+
+	/**
+	 * Checks that the CLOCK policy skips the keys referenced since the last visit of the hand.
+	 * @param columnar flag that specifies if the store is held by the shared columns
+	 **/
+	private static void clockGivesSecondChance(boolean columnar)
+	{
+		ContentStore store = new ContentStore(3, Policy.CLOCK, 0, 0, columnar);
+		store.add(0.1);
+		store.add(0.2);
+		store.add(0.3);
+
+		// all the keys are referenced: the hand clears them all and evicts the first one
+		store.add(0.4);
+		check(!store.peek(0.1) && store.peek(0.2) && store.peek(0.3) && store.peek(0.4), "first key evicted");
+
+		// 0.2 is referenced again, so the hand skips it and evicts 0.3
+		store.contains(0.2);
+		store.add(0.5);
+		check(store.peek(0.2) && !store.peek(0.3), "referenced key skipped");
+		check(store.getEvictions() == 2, "evictions counted");
+
+		store.release();
+	}
+
+
+	/**
+	 * Checks that {@code peek} does not count as an access for the replacement policy.
+	 **/
+	private static void peekDoesNotTouch()
+	{
+		ContentStore store = new ContentStore(2, Policy.LRU);
+		store.add(0.1);
+		store.add(0.2);
+
+		check(store.peek(0.1), "peeked key");
+		store.add(0.3);
+		check(!store.peek(0.1) && store.peek(0.2), "peeked key still least recently used");
+	}
+
+
+	/**
+	 * Checks that an unbounded store keeps all the keys, in insertion order, without evictions.
+	 **/
+	private static void unboundedStoreGrows()
+	{
+		ContentStore store = new ContentStore(0, Policy.LRU);
+		for (int i = 0; i < 1000; i++)
+			check(store.add(i / 1000.0), "new key added");
+
+		check(store.size() == 1000 && store.getEvictions() == 0, "no eviction in an unbounded store");
+		for (int i = 0; i < 1000; i++)
+			check(store.getKey(i) == i / 1000.0 && store.peek(i / 1000.0), "key kept in its slot");
+	}
+
+
+	/**
+	 * Checks that the Bloom filter of the store is created at the first insertion and loses the evicted keys.
+	 **/
+	private static void filterFollowsEvictions()
+	{
+		ContentStore store = new ContentStore(2, Policy.LRU, 1024, 3);
+		check(store.getFilter() == null, "no filter before the first insertion");
+
+		store.add(0.1);
+		store.add(0.2);
+		store.add(0.3);
+		check(store.getFilter().mightContain(0.2) && store.getFilter().mightContain(0.3), "stored keys in the filter");
+		check(!store.getFilter().mightContain(0.1), "evicted key removed from the filter");
+	}
+
+
+	/**
+	 * Checks that a store read from its binary form has the same keys and evicts them in the same order.
+	 * @throws IOException if the round trip fails
+	 **/
+	private static void roundTrip() throws IOException
+	{
+		ContentStore store = new ContentStore(4, Policy.LRU, 256, 2);
+		for (int i = 1; i <= 6; i++)
+			store.add(i / 10.0);
+		store.contains(0.3);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		store.writeTo(new DataOutputStream(bytes));
+		ContentStore read = ContentStore.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		check(read.size() == store.size() && read.getCapacity() == 4 && read.getEvictions() == store.getEvictions(), "same state");
+		check(read.toString().equals(store.toString()), "same keys");
+
+		store.add(0.7);
+		read.add(0.7);
+		check(read.toString().equals(store.toString()), "same victim after the round trip");
+		check(read.getFilter() != null && read.getFilter().mightContain(0.7), "filter read");
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("ContentStoreTest: " + what);
+	}
+}
@@ -0,0 +1,164 @@
+package structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ *  Tests of the {@code CountingBloomFilter}: no false negatives, removals of single and repeated keys, saturated counters,
+ *  false positive rate of a filter sized as the stores' ones, copies and binary round trip.
+ **/
+
+public class CountingBloomFilterTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 * @throws IOException if the round trip fails
+	 **/
+	public static void main(String[] args) throws IOException
+	{
+		sizing();
+		noFalseNegatives();
+		removeCountsMultiplicity();
+		saturatedCountersAreKept();
+		falsePositiveRate();
+		copyAndRoundTrip();
+
+		System.out.println("CountingBloomFilterTest: OK");
+	}
+
+
+	/**
+	 * Checks that the number of counters is rounded up to whole words of 16 counters.
+	 **/
+	private static void sizing()
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(100, 0);
+		check(filter.getNumCounters() == 112 && filter.memoryBytes() == 56, "counters rounded up to whole words");
+		check(filter.getNumHashes() == 1, "at least one hash function");
+	}
+
+
+	/**
+	 * Checks that all the added keys are claimed.
+	 **/
+	private static void noFalseNegatives()
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(8192, 4);
+		for (int i = 0; i < 1000; i++)
+			filter.add(key(i));
+
+		for (int i = 0; i < 1000; i++)
+			check(filter.mightContain(key(i)), "added key claimed");
+	}
+
+
+	/**
+	 * Checks that a key added twice is claimed until it is removed twice.
+	 **/
+	private static void removeCountsMultiplicity()
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(1024, 3);
+		check(!filter.mightContain(0.5), "empty filter");
+
+		filter.add(0.5);
+		filter.add(0.5);
+		filter.remove(0.5);
+		check(filter.mightContain(0.5), "key claimed after the first removal");
+
+		filter.remove(0.5);
+		check(!filter.mightContain(0.5), "key not claimed after the second removal");
+
+		// the removal of a key not claimed leaves the filter unchanged
+		filter.add(0.25);
+		filter.remove(0.75);
+		check(filter.mightContain(0.25), "unrelated removal ignored");
+	}
+
+
+	/**
+	 * Checks that the saturated counters are never decremented, so no false negative follows the removals.
+	 **/
+	private static void saturatedCountersAreKept()
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(1024, 3);
+		for (int i = 0; i < 20; i++)
+			filter.add(0.5);
+		for (int i = 0; i < 20; i++)
+			filter.remove(0.5);
+
+		check(filter.mightContain(0.5), "saturated key still claimed");
+	}
+
+
+	/**
+	 * Checks the false positive rate of a filter with 8 counters and 4 hash functions for each key (about 2.4% expected).
+	 **/
+	private static void falsePositiveRate()
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(8192, 4);
+		for (int i = 0; i < 1024; i++)
+			filter.add(key(i));
+
+		int positives = 0;
+		for (int i = 1024; i < 1024 + 100000; i++)
+			if (filter.mightContain(key(i)))
+				positives++;
+
+		check(positives < 5000, "false positive rate below 5% (" + positives + " on 100000)");
+	}
+
+
+	/**
+	 * Checks that a copy is independent from its filter, and that a filter read from its binary form has the same counters.
+	 * @throws IOException if the round trip fails
+	 **/
+	private static void copyAndRoundTrip() throws IOException
+	{
+		CountingBloomFilter filter = new CountingBloomFilter(512, 3);
+		filter.add(0.1);
+		filter.add(0.2);
+
+		CountingBloomFilter copy = filter.copy();
+		filter.remove(0.1);
+		check(copy.mightContain(0.1) && !filter.mightContain(0.1), "copy independent from the filter");
+
+		filter.copyFrom(copy);
+		check(filter.mightContain(0.1), "counters copied back");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filter.writeTo(new DataOutputStream(bytes));
+		CountingBloomFilter read = new CountingBloomFilter(512, 3);
+		read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		check(read.mightContain(0.1) && read.mightContain(0.2), "counters read");
+
+		read.remove(0.1);
+		check(!read.mightContain(0.1) && read.mightContain(0.2), "read counters removable");
+	}
+
+
+	/**
+	 * Computes the {@code i}-th test key, spread over [0, 1).
+	 * @param i the index of the key
+	 * @return the test key.
+	 **/
+	private static double key(int i)
+	{
+		return (i * 0.6180339887498949) % 1.0;
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("CountingBloomFilterTest: " + what);
+	}
+}
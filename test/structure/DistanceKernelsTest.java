@@ -0,0 +1,134 @@
+package structure;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *  Tests of the {@code DistanceKernels}: distances and minimums of the loaded kernels (Vector API or scalar, see
+ *  {@code isVectorized}) against plain reference loops, on ranges of every length and offset, and the blocked sum of the
+ *  logarithms against its reference version. Run it with and without {@code --add-modules jdk.incubator.vector} to test
+ *  both the implementations.
+ **/
+
+public class DistanceKernelsTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 **/
+	public static void main(String[] args)
+	{
+		circularDistance();
+		batchKernels();
+		argminTies();
+		logDistanceSum();
+
+		System.out.println("DistanceKernelsTest: OK (" + DistanceKernels.describe() + ")");
+	}
+
+
+	/**
+	 * Checks the circular distance, also across the 0/1 boundary.
+	 **/
+	private static void circularDistance()
+	{
+		check(DistanceKernels.circularDistance(0.2, 0.5) == 0.3, "linear distance");
+		check(DistanceKernels.circularDistance(0.9, 0.1) == 1 - 0.8, "distance across the boundary");
+		check(DistanceKernels.circularDistance(0.4, 0.4) == 0.0, "null distance");
+	}
+
+
+	/**
+	 * Checks the distances and the minimums of the kernels against the reference loops, for all the lengths and offsets of
+	 * the ranges up to some vectors long (so both the vector loops and their tails are covered).
+	 **/
+	private static void batchKernels()
+	{
+		Random random = new Random(7);
+		double[] locKeys = new double[80];
+		double[] dists = new double[80];
+		for (int i = 0; i < locKeys.length; i++)
+			locKeys[i] = random.nextDouble();
+
+		for (int from = 0; from < 8; from++)
+			for (int to = from; to <= locKeys.length; to++)
+			{
+				final double locKey = random.nextDouble();
+				DistanceKernels.circularDistances(locKeys, from, to, locKey, dists);
+
+				int expectedIndex = -1;
+				double min = Double.POSITIVE_INFINITY;
+				for (int i = from; i < to; i++)
+				{
+					final double dist = DistanceKernels.circularDistance(locKeys[i], locKey);
+					check(dists[i - from] == dist, "distance " + i + " of [" + from + ", " + to + ")");
+					if (dist < min)
+					{
+						min = dist;
+						expectedIndex = i;
+					}
+				}
+
+				check(DistanceKernels.argminDistance(locKeys, from, to, locKey) == expectedIndex, "argminDistance of [" + from + ", " + to + ")");
+				check(DistanceKernels.argmin(dists, 0, to - from) == ((expectedIndex < 0) ? -1 : expectedIndex - from), "argmin of [" + from + ", " + to + ")");
+			}
+	}
+
+
+	/**
+	 * Checks that the minimums are the first ones among equal values, and that the excluded values are skipped.
+	 **/
+	private static void argminTies()
+	{
+		double[] values = new double[37];
+		Arrays.fill(values, 0.25);
+		values[20] = 0.125;
+		values[30] = 0.125;
+		check(DistanceKernels.argmin(values, 0, values.length) == 20, "first of the equal minimums");
+
+		values[20] = Double.POSITIVE_INFINITY;
+		check(DistanceKernels.argmin(values, 0, values.length) == 30, "excluded minimum skipped");
+
+		Arrays.fill(values, Double.POSITIVE_INFINITY);
+		check(DistanceKernels.argmin(values, 0, values.length) == -1, "all the values excluded");
+
+		// 0.25 and 0.75 are at the same distance from 0.5, while 0.02 is the closest key to 0.95 (across the boundary)
+		double[] locKeys = {0.02, 0.25, 0.75, 0.85};
+		check(DistanceKernels.argminDistance(locKeys, 0, 4, 0.5) == 1, "first of the equally distant keys");
+		check(DistanceKernels.argminDistance(locKeys, 0, 4, 0.95) == 0, "closest key across the boundary");
+		check(DistanceKernels.argminDistance(locKeys, 2, 2, 0.5) == -1, "empty range");
+	}
+
+
+	/**
+	 * Checks the blocked sum of the logarithms against the reference version, also with very small distances (from the
+	 * location key 0, the keys close to 0 keep their distance exactly).
+	 **/
+	private static void logDistanceSum()
+	{
+		Random random = new Random(11);
+		for (int n = 0; n < 300; n += 7)
+		{
+			double[] locKeys = new double[n];
+			final double locKey = 0.0;
+			for (int i = 0; i < n; i++)
+				locKeys[i] = (i % 5 == 0) ? 1e-300 * (i + 1) : random.nextDouble();
+
+			final double blocked = DistanceKernels.logDistanceSum(locKeys, 0, n, locKey);
+			final double reference = DistanceKernels.scalarLogDistanceSum(locKeys, 0, n, locKey);
+			check(Math.abs(blocked - reference) <= 1e-9 * Math.max(1.0, Math.abs(reference)), "sum of the logarithms of " + n + " distances");
+		}
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("DistanceKernelsTest: " + what);
+	}
+}
@@ -0,0 +1,135 @@
+package structure;
+
+/**
+ *  Tests of the {@code LatencyHistogram}: exact buckets of the small values, bounded relative error of the sub-buckets of
+ *  the powers of two, percentiles bounded by the maximum, count/mean/maximum and concurrent recording.
+ **/
+
+public class LatencyHistogramTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 * @throws InterruptedException if the recording threads are interrupted
+	 **/
+	public static void main(String[] args) throws InterruptedException
+	{
+		emptyHistogram();
+		exactSmallValues();
+		subBucketsError();
+		summaryValues();
+		concurrentRecording();
+
+		System.out.println("LatencyHistogramTest: OK");
+	}
+
+
+	/**
+	 * Checks that an empty histogram has all its values at 0.
+	 **/
+	private static void emptyHistogram()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		check(h.getCount() == 0 && h.getMean() == 0.0 && h.getMax() == 0 && h.getPercentile(99) == 0, "empty histogram");
+	}
+
+
+	/**
+	 * Checks that the values lower than 64 have a bucket each, so their percentiles are exact.
+	 **/
+	private static void exactSmallValues()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		for (int v = 0; v < 64; v++)
+			h.record(v);
+
+		check(h.getPercentile(0) == 0, "minimum");
+		check(h.getPercentile(50) == 31, "median of 0..63");
+		check(h.getPercentile(90) == 57, "90th percentile of 0..63");
+		check(h.getPercentile(100) == 63, "maximum");
+	}
+
+
+	/**
+	 * Checks that the upper bound of the bucket of a value is at most 1/32 greater than the value.
+	 **/
+	private static void subBucketsError()
+	{
+		for (long v = 64; v < (1L << 40); v = v * 3 / 2 + 1)
+		{
+			// the greater value makes the percentile of v the upper bound of its bucket (not bounded by the maximum)
+			LatencyHistogram h = new LatencyHistogram();
+			h.record(v);
+			h.record(Long.MAX_VALUE / 2);
+
+			final long bound = h.getPercentile(50);
+			check(bound >= v && bound - v <= v / 32, "bucket bound of " + v + " is " + bound);
+		}
+
+		// the bucket of 1000 is [992, 1007]
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(1000);
+		h.record(5000);
+		check(h.getPercentile(50) == 1007, "bucket bound of 1000");
+		check(h.getPercentile(100) == 5000, "percentile bounded by the maximum");
+	}
+
+
+	/**
+	 * Checks the count, mean and maximum, and that the negative values are recorded as 0.
+	 **/
+	private static void summaryValues()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(-5);
+		h.record(10);
+		h.record(20);
+
+		check(h.getCount() == 3 && h.getMax() == 20, "count and maximum");
+		check(h.getMean() == 10.0, "mean with the negative value as 0");
+		check(h.getPercentile(1) == 0, "negative value in the first bucket");
+	}
+
+
+	/**
+	 * Checks that the values recorded by concurrent threads are all counted.
+	 * @throws InterruptedException if the recording threads are interrupted
+	 **/
+	private static void concurrentRecording() throws InterruptedException
+	{
+		final LatencyHistogram h = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int offset = t;
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 10000; i++)
+						h.record(i + offset);
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		check(h.getCount() == 40000, "all the values counted");
+		check(h.getMax() == 9999 + threads.length - 1, "maximum of all the threads");
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("LatencyHistogramTest: " + what);
+	}
+}
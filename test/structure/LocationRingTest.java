@@ -0,0 +1,164 @@
+package structure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ *  Tests of the {@code LocationRing}: empty ring, closest location key across the 0/1 boundary, and a random sequence of
+ *  insertions, removals and swaps (exchanges of the owners) checked against a reference ring (a sorted set of the location
+ *  keys, with a map of their owners) on the count, the positions and the closest location keys and owners.
+ **/
+
+public class LocationRingTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 **/
+	public static void main(String[] args)
+	{
+		emptyRing();
+		boundaryWrap();
+		randomSequence();
+
+		System.out.println("LocationRingTest: OK");
+	}
+
+
+	/**
+	 * Checks that an empty ring has no closest location key and no closest owner.
+	 **/
+	private static void emptyRing()
+	{
+		LocationRing ring = new LocationRing();
+		check(ring.count() == 0 && ring.rank(0.5) == 0, "empty ring");
+		check(Double.isNaN(ring.closestKey(0.5)) && ring.closestOwner(0.5) == -1, "nothing closest in the empty ring");
+
+		// the removal and the exchange of absent location keys change nothing
+		ring.remove(0.5);
+		ring.exchange(0.5, 0.25);
+		check(ring.count() == 0, "nothing removed from the empty ring");
+	}
+
+
+	/**
+	 * Checks the closest location keys across the 0/1 boundary, and that the lower one wins between equally distant keys.
+	 **/
+	private static void boundaryWrap()
+	{
+		LocationRing ring = new LocationRing();
+		ring.insert(0.02, 1);
+		ring.insert(0.5, 2);
+		ring.insert(0.9, 3);
+
+		check(ring.closestKey(0.99) == 0.02 && ring.closestOwner(0.99) == 1, "closest key after the boundary");
+		check(ring.closestKey(0.01) == 0.02, "closest key before the first one");
+		check(ring.closestKey(0.95) == 0.9, "closest key before the boundary");
+		check(ring.closestKey(0.7) == 0.5, "lower one of the equally distant keys");
+		check(ring.closestKey(0.5) == 0.5 && ring.closestOwner(0.5) == 2, "key in the ring");
+
+		// a second insertion of the same location key is ignored
+		ring.insert(0.5, 7);
+		check(ring.count() == 3 && ring.closestOwner(0.5) == 2, "duplicated key ignored");
+	}
+
+
+	/**
+	 * Checks a random sequence of insertions, removals and swaps against the reference ring, querying after each operation
+	 * both location keys of the ring and pseudo-random ones.
+	 **/
+	private static void randomSequence()
+	{
+		LocationRing ring = new LocationRing();
+		Random random = new Random(17);
+
+		// the reference ring: the sorted location keys, their owners and (for the random picks) their list
+		TreeSet<Double> keys = new TreeSet<Double>();
+		HashMap<Double, Integer> owners = new HashMap<Double, Integer>();
+		ArrayList<Double> list = new ArrayList<Double>();
+		int nextOwner = 0;
+
+		for (int op = 0; op < 20000; op++)
+		{
+			final int kind = random.nextInt(10);
+			if (list.isEmpty() || kind < 4)
+			{
+				// insertion of a new location key (sometimes of one already in the ring, ignored)
+				final double locKey = (!list.isEmpty() && kind == 0) ? list.get(random.nextInt(list.size())) : random.nextDouble();
+				ring.insert(locKey, nextOwner);
+				if (keys.add(locKey))
+				{
+					owners.put(locKey, nextOwner);
+					list.add(locKey);
+				}
+				nextOwner++;
+			}
+			else if (kind < 7)
+			{
+				// removal of a location key of the ring (sometimes of an absent one, ignored)
+				final double locKey = (kind == 4) ? random.nextDouble() : list.remove(random.nextInt(list.size()));
+				ring.remove(locKey);
+				keys.remove(locKey);
+				owners.remove(locKey);
+			}
+			else
+			{
+				// swap of two location keys of the ring (with an absent one, the owners do not change)
+				final double locKey1 = list.get(random.nextInt(list.size()));
+				final double locKey2 = (kind == 7) ? random.nextDouble() : list.get(random.nextInt(list.size()));
+				ring.exchange(locKey1, locKey2);
+				if (owners.containsKey(locKey2))
+					owners.put(locKey1, owners.put(locKey2, owners.get(locKey1)));
+			}
+
+			check(ring.count() == keys.size(), "count at operation " + op);
+			checkQuery(ring, keys, owners, random.nextDouble(), op);
+			if (!list.isEmpty())
+				checkQuery(ring, keys, owners, list.get(random.nextInt(list.size())), op);
+		}
+	}
+
+
+	/**
+	 * Checks the position, the closest location key and the closest owner of the passed location key against the reference.
+	 * @param ring		the tested ring
+	 * @param keys		the location keys of the reference ring
+	 * @param owners	the owners of the location keys of the reference ring
+	 * @param locKey	the location key to query
+	 * @param op		the number of the last operation
+	 **/
+	private static void checkQuery(LocationRing ring, TreeSet<Double> keys, HashMap<Double, Integer> owners, double locKey, int op)
+	{
+		check(ring.rank(locKey) == keys.headSet(locKey, false).size(), "position of " + locKey + " at operation " + op);
+
+		// the closest location key is the key itself, or the closest between the ones before and after it on the ring
+		double expected = Double.NaN;
+		if (keys.contains(locKey))
+			expected = locKey;
+		else if (!keys.isEmpty())
+		{
+			final Double lower = keys.lower(locKey), higher = keys.higher(locKey);
+			final double before = (lower != null) ? lower : keys.last();
+			final double after = (higher != null) ? higher : keys.first();
+			expected = (DistanceKernels.circularDistance(before, locKey) <= DistanceKernels.circularDistance(after, locKey)) ? before : after;
+		}
+
+		final double closest = ring.closestKey(locKey);
+		check((Double.isNaN(expected) && Double.isNaN(closest)) || closest == expected, "closest key of " + locKey + " at operation " + op);
+		check(ring.closestOwner(locKey) == (Double.isNaN(expected) ? -1 : owners.get(expected).intValue()), "closest owner of " + locKey + " at operation " + op);
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("LocationRingTest: " + what);
+	}
+}
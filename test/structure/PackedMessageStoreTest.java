@@ -0,0 +1,202 @@
+package structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import peersim.config.Configuration;
+import structure.Message.Type;
+
+/**
+ *  Tests of the {@code PackedMessageStore}: packing of the (type, HTL, THC) headers, round trip of the message fields
+ *  through the columns, re-use of the released slots, growth of the columns and binary round trip of the in-flight messages.
+ **/
+
+public class PackedMessageStoreTest
+{
+	/**
+	 * Runs all the tests of the class.
+	 * @param args not used
+	 * @throws IOException if the round trip fails
+	 **/
+	public static void main(String[] args) throws IOException
+	{
+		// the identifiers of the messages are assigned by the context of the simulation, that reads the configuration
+		Configuration.setConfig(new Properties());
+
+		run();
+	}
+
+
+	/**
+	 * Runs all the tests of the class, with the configuration already set.
+	 * @throws IOException if the round trip fails
+	 **/
+	public static void run() throws IOException
+	{
+		headerPacking();
+		fieldsRoundTrip();
+		slotsReuse();
+		columnsGrowth();
+		binaryRoundTrip();
+
+		System.out.println("PackedMessageStoreTest: OK");
+	}
+
+
+	/**
+	 * Checks that the type, the (signed) HTL and the THC are unpacked as they are packed.
+	 **/
+	private static void headerPacking()
+	{
+		final int[] HTLs = {0, 1, 18, -1, -2, (1 << 23) - 1, -(1 << 23)};
+		final int[] THCs = {0, 1, 12345, Integer.MAX_VALUE, -1};
+
+		for (Type t : Type.values())
+			for (int HTL : HTLs)
+				for (int THC : THCs)
+				{
+					final long header = PackedMessageStore.packHeader(t, HTL, THC);
+					check(PackedMessageStore.unpackType(header) == t, "type of " + t + "/" + HTL + "/" + THC);
+					check(PackedMessageStore.unpackHTL(header) == HTL, "HTL of " + t + "/" + HTL + "/" + THC);
+					check(PackedMessageStore.unpackTHC(header) == THC, "THC of " + t + "/" + HTL + "/" + THC);
+				}
+	}
+
+
+	/**
+	 * Checks that a taken message has the fields of the stored one.
+	 **/
+	private static void fieldsRoundTrip()
+	{
+		PackedMessageStore store = new PackedMessageStore();
+
+		Message m = newMessage(Type.GET, 0.375, 18, 7);
+		final int handle = store.store(m);
+		check(store.size() == 1, "one stored message");
+
+		Message taken = store.take(handle);
+		check(sameFields(taken, m), "same fields");
+		check(taken.getLastHopFPeer() == null && taken.getResponderFPeer() == null, "no last-hop and responder FPeers");
+		check(store.size() == 0, "slot released by the take");
+	}
+
+
+	/**
+	 * Checks that the released slots are re-used (with the same cached handle) before allocating new ones.
+	 **/
+	private static void slotsReuse()
+	{
+		PackedMessageStore store = new PackedMessageStore();
+
+		final Integer first = store.store(newMessage(Type.PUT, 0.1, 10, 0));
+		final Integer second = store.store(newMessage(Type.PUT, 0.2, 10, 0));
+		store.take(first);
+
+		final Integer third = store.store(newMessage(Type.GET_FOUND, 0.3, 5, 2));
+		check(third == first, "released slot re-used, with its cached handle");
+		check(third.intValue() != second.intValue() && store.size() == 2, "two in-flight messages");
+	}
+
+
+	/**
+	 * Checks that the columns grow beyond their initial capacity, keeping the stored messages.
+	 **/
+	private static void columnsGrowth()
+	{
+		PackedMessageStore store = new PackedMessageStore();
+
+		final int n = 5000;
+		Message[] messages = new Message[n];
+		int[] handles = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			messages[i] = newMessage(Type.values()[i % Type.values().length], i / (double) n, i % 20, i);
+			handles[i] = store.store(messages[i]);
+		}
+
+		check(store.size() == n, "all the messages stored");
+		for (int i = n - 1; i >= 0; i--)
+			check(sameFields(store.take(handles[i]), messages[i]), "message " + i + " kept by the growth");
+
+		check(store.size() == 0, "all the slots released");
+	}
+
+
+	/**
+	 * Checks that a store read from its binary form has the same in-flight messages and the same free slots.
+	 * @throws IOException if the round trip fails
+	 **/
+	private static void binaryRoundTrip() throws IOException
+	{
+		PackedMessageStore store = new PackedMessageStore();
+		Message[] messages = new Message[4];
+		int[] handles = new int[4];
+		for (int i = 0; i < messages.length; i++)
+		{
+			messages[i] = newMessage(Type.PUT_REPLICATION, 0.2 * i, -i, 3 * i);
+			handles[i] = store.store(messages[i]);
+		}
+		store.take(handles[1]);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		store.writeTo(new DataOutputStream(bytes));
+		PackedMessageStore read = new PackedMessageStore();
+		read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		check(read.size() == 3, "in-flight messages read");
+		check(read.store(newMessage(Type.GET, 0.9, 1, 0)) == handles[1], "free slot read");
+		for (int i : new int[] {0, 2, 3})
+			check(sameFields(read.take(handles[i]), messages[i]), "message " + i + " read");
+	}
+
+
+	/**
+	 * Creates a message having the passed fields.
+	 * @param t			the type of the message
+	 * @param locKey	the location key of the message
+	 * @param HTL		the HTL of the message
+	 * @param THC		the THC of the message
+	 * @return the message.
+	 **/
+	private static Message newMessage(Type t, double locKey, int HTL, int THC)
+	{
+		Message m = new Message(t, locKey, HTL);
+		for (int i = 0; i < THC; i++)
+			m.increaseTHC();
+		m.changePathClosestLocKey(1.0 - locKey);
+		m.changeCreationTime(1000L * THC + HTL);
+
+		return m;
+	}
+
+
+	/**
+	 * Checks if the passed messages have the same packed fields.
+	 * @param m1 the first message
+	 * @param m2 the second message
+	 * @return {@code true} if the fields are the same. {@code false} otherwise.
+	 **/
+	private static boolean sameFields(Message m1, Message m2)
+	{
+		return m1.getMessageID() == m2.getMessageID() && m1.getMessageType() == m2.getMessageType()
+			   && m1.getMessageLocationKey() == m2.getMessageLocationKey() && m1.getHTL() == m2.getHTL()
+			   && m1.getTHC() == m2.getTHC() && m1.getPathClosestLocKey() == m2.getPathClosestLocKey()
+			   && m1.getCreationTime() == m2.getCreationTime();
+	}
+
+
+	/**
+	 * Fails the test if the passed condition {@code condition} is not satisfied.
+	 * @param condition	the condition to check
+	 * @param what		the description of the condition
+	 **/
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError("PackedMessageStoreTest: " + what);
+	}
+}
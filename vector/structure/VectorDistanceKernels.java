@@ -0,0 +1,154 @@
+package structure;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *  Class that implements the batch kernels of {@code DistanceKernels} with the Vector API, on the preferred vector size of
+ *  the machine. The lanes compute exactly the same operations of the plain loops ({@code abs(a - b)}, then the minimum with
+ *  {@code 1 - abs(a - b)}), so the distances are the same. The minimum is found in two passes: the first one reduces the
+ *  lanes to the minimum value, the second one finds its first index. <br><br>
+ *
+ *  The class is compiled apart (the {@code jdk.incubator.vector} module is needed both to compile and to run it) and it is
+ *  loaded by reflection by {@code DistanceKernels}.
+ **/
+
+public class VectorDistanceKernels implements DistanceKernels.Kernels
+{
+	// the vector species (preferred size of the machine) of the kernels
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+
+	/**
+	 * Computes the circular distances between the passed location key {@code locKey} and the location keys in the range
+	 * [{@code from}, {@code to}) of {@code locKeys}.
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @param dists		the array in which store the distances, from index 0 (at least {@code to - from} long)
+	 **/
+	@Override
+	public void circularDistances(double[] locKeys, int from, int to, double locKey, double[] dists)
+	{
+		final int bound = from + SPECIES.loopBound(to - from);
+
+		int i = from;
+		for (; i < bound; i += SPECIES.length())
+			distances(locKeys, i, locKey).intoArray(dists, i - from);
+
+		for (; i < to; i++)
+			dists[i - from] = DistanceKernels.circularDistance(locKeys[i], locKey);
+	}
+
+
+	/**
+	 * Finds the location key, in the range [{@code from}, {@code to}) of {@code locKeys}, having the minimum circular distance
+	 * from the passed location key {@code locKey}.
+	 * @param locKeys	the array of location keys
+	 * @param from		the first location key of the range (included)
+	 * @param to		the last location key of the range (excluded)
+	 * @param locKey	the location key from which compute the distances
+	 * @return the index, in {@code locKeys}, of the closest location key (the first one, if more than one), or {@code -1}
+	 * 		   if the range is empty.
+	 **/
+	@Override
+	public int argminDistance(double[] locKeys, int from, int to, double locKey)
+	{
+		final int bound = from + SPECIES.loopBound(to - from);
+
+		// first pass: the minimum distance
+		DoubleVector mins = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+		int i = from;
+		for (; i < bound; i += SPECIES.length())
+			mins = mins.min(distances(locKeys, i, locKey));
+
+		double min = mins.reduceLanes(VectorOperators.MIN);
+		for (int j = i; j < to; j++)
+			min = Math.min(min, DistanceKernels.circularDistance(locKeys[j], locKey));
+
+		// second pass: the first location key at the minimum distance
+		for (i = from; i < bound; i += SPECIES.length())
+		{
+			final VectorMask<Double> equal = distances(locKeys, i, locKey).eq(min);
+			if (equal.anyTrue())
+				return i + equal.firstTrue();
+		}
+
+		for (; i < to; i++)
+			if (DistanceKernels.circularDistance(locKeys[i], locKey) == min)
+				return i;
+
+		return -1;
+	}
+
+
+	/**
+	 * Finds the minimum value in the range [{@code from}, {@code to}) of {@code values}.
+	 * @param values	the array of values
+	 * @param from		the first value of the range (included)
+	 * @param to		the last value of the range (excluded)
+	 * @return the index, in {@code values}, of the minimum value (the first one, if more than one), or {@code -1} if the
+	 * 		   range is empty or all its values are {@code POSITIVE_INFINITY}.
+	 **/
+	@Override
+	public int argmin(double[] values, int from, int to)
+	{
+		final int bound = from + SPECIES.loopBound(to - from);
+
+		// first pass: the minimum value
+		DoubleVector mins = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+		int i = from;
+		for (; i < bound; i += SPECIES.length())
+			mins = mins.min(DoubleVector.fromArray(SPECIES, values, i));
+
+		double min = mins.reduceLanes(VectorOperators.MIN);
+		for (int j = i; j < to; j++)
+			min = Math.min(min, values[j]);
+
+		if (min == Double.POSITIVE_INFINITY)
+			return -1;
+
+		// second pass: the first index of the minimum value
+		for (i = from; i < bound; i += SPECIES.length())
+		{
+			final VectorMask<Double> equal = DoubleVector.fromArray(SPECIES, values, i).eq(min);
+			if (equal.anyTrue())
+				return i + equal.firstTrue();
+		}
+
+		for (; i < to; i++)
+			if (values[i] == min)
+				return i;
+
+		return -1;
+	}
+
+
+	/**
+	 * Gets out the description of the implementation.
+	 * @return the description, with the number of lanes of the vectors.
+	 **/
+	@Override
+	public String describe()
+	{
+		return "Vector API (" + SPECIES.length() + " lanes)";
+	}
+
+
+	/**
+	 * Computes the circular distances between the passed location key {@code locKey} and the location keys of a vector,
+	 * starting from the index {@code index} of {@code locKeys}.
+	 * @param locKeys	the array of location keys
+	 * @param index		the index of the first location key of the vector
+	 * @param locKey	the location key from which compute the distances
+	 * @return the vector of the distances.
+	 **/
+	private static DoubleVector distances(double[] locKeys, int index, double locKey)
+	{
+		final DoubleVector dist = DoubleVector.fromArray(SPECIES, locKeys, index).sub(locKey).abs();
+		return dist.min(dist.neg().add(1.0));
+	}
+}